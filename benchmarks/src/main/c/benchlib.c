@@ -0,0 +1,32 @@
+/*
+ * Copyright (C) 2025, Yasumasa Suenaga
+ *
+ * This file is part of nativebinder.
+ *
+ * nativebinder is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * nativebinder is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with nativebinder. If not, see <http://www.gnu.org/licenses/>.
+ */
+#include <stdint.h>
+
+#ifdef __WIN64__
+#define EXPORT __declspec(dllexport)
+#else
+#define EXPORT
+#endif
+
+/* SplitMix64 finalizer */
+EXPORT uint64_t hash64(uint64_t x){
+  x = (x ^ (x >> 30)) * 0xbf58476d1ce4e5b9ULL;
+  x = (x ^ (x >> 27)) * 0x94d049bb133111ebULL;
+  return x ^ (x >> 31);
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2025, Yasumasa Suenaga
+ *
+ * This file is part of nativebinder.
+ *
+ * nativebinder is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * nativebinder is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with nativebinder. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.yasuenag.nativebinder.benchmarks;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.FunctionDescriptor;
+import java.lang.foreign.Linker;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.yasuenag.nativebinder.NativeBinder;
+
+
+/**
+ * Compare upcall stub in FFM with callback by NativeBinder.
+ * Both of them sort random ints by qsort() in libc with comparator in Java.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--enable-native-access=ALL-UNNAMED"})
+public class CallbackBenchmark{
+
+  private static final MemorySegment ALL = MemorySegment.NULL.reinterpret(Long.MAX_VALUE);
+
+  // void qsort(void *base, size_t nmemb, size_t size, int (*compar)(const void *, const void *));
+  public static native void qsort(long base, long nmemb, long size, long compar);
+
+  public static int compare(long a, long b){
+    return Integer.compare(ALL.get(ValueLayout.JAVA_INT, a), ALL.get(ValueLayout.JAVA_INT, b));
+  }
+
+  @Param({"1000000"})
+  private int count;
+
+  private Arena arena;
+
+  private MemorySegment source;
+
+  private MemorySegment array;
+
+  private MemorySegment upcall;
+
+  private MemorySegment callback;
+
+  @Setup(Level.Trial)
+  public void setup() throws Throwable{
+    var cls = CallbackBenchmark.class;
+    var p_qsort = Linker.nativeLinker()
+                        .defaultLookup()
+                        .find("qsort")
+                        .get();
+    var binder = NativeBinder.getInstance();
+    var method = cls.getMethod("qsort", long.class, long.class, long.class, long.class);
+    binder.bind(cls, new NativeBinder.BindMethod[]{new NativeBinder.BindMethod(method, p_qsort)});
+
+    arena = Arena.ofShared();
+    var compare = MethodHandles.lookup().findStatic(cls, "compare", MethodType.methodType(int.class, long.class, long.class));
+    upcall = Linker.nativeLinker().upcallStub(compare, FunctionDescriptor.of(ValueLayout.JAVA_INT, ValueLayout.JAVA_LONG, ValueLayout.JAVA_LONG), arena);
+    callback = binder.createCallback(cls.getMethod("compare", long.class, long.class));
+
+    source = arena.allocate(ValueLayout.JAVA_INT, count);
+    array = arena.allocate(ValueLayout.JAVA_INT, count);
+    var random = new Random(0);
+    for(int i = 0; i < count; i++){
+      source.setAtIndex(ValueLayout.JAVA_INT, i, random.nextInt());
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown(){
+    arena.close();
+  }
+
+  @Benchmark
+  public void upcallStub(Blackhole bh){
+    array.copyFrom(source);
+    qsort(array.address(), count, 4, upcall.address());
+    bh.consume(array);
+  }
+
+  @Benchmark
+  public void nativeBinderCallback(Blackhole bh){
+    array.copyFrom(source);
+    qsort(array.address(), count, 4, callback.address());
+    bh.consume(array);
+  }
+
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2025, Yasumasa Suenaga
+ *
+ * This file is part of nativebinder.
+ *
+ * nativebinder is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * nativebinder is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with nativebinder. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.yasuenag.nativebinder.benchmarks;
+
+import java.lang.foreign.SymbolLookup;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.yasuenag.nativebinder.NativeBinder;
+
+
+/**
+ * Compare hand-written native method with interface binding.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--enable-native-access=ALL-UNNAMED"})
+public class InterfaceBenchmark{
+
+  public static interface HashLib{
+    public long hash64(long x);
+  }
+
+  public static native long hash64(long x);
+
+  private static final HashLib lib;
+
+  static{
+    try{
+      System.loadLibrary("benchlib");
+      var lookup = SymbolLookup.loaderLookup();
+      var binder = NativeBinder.getInstance();
+
+      var method = InterfaceBenchmark.class.getMethod("hash64", long.class);
+      binder.bind(InterfaceBenchmark.class, new NativeBinder.BindMethod[]{new NativeBinder.BindMethod(method, lookup.find("hash64").get())});
+
+      lib = binder.bindInterface(HashLib.class, lookup);
+    }
+    catch(Throwable t){
+      throw new ExceptionInInitializerError(t);
+    }
+  }
+
+  private long value = 12345L;
+
+  @Benchmark
+  public long handWritten(){
+    return hash64(value);
+  }
+
+  @Benchmark
+  public long boundInterface(){
+    return lib.hash64(value);
+  }
+
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2025, Yasumasa Suenaga
+ *
+ * This file is part of nativebinder.
+ *
+ * nativebinder is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * nativebinder is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with nativebinder. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.yasuenag.nativebinder.benchmarks;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.SymbolLookup;
+import java.lang.foreign.ValueLayout;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.yasuenag.nativebinder.NativeBinder;
+
+
+/**
+ * Compare per-element JNI call with map binding.
+ * Both of them apply hash64() to all of elements in the segment.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--enable-native-access=ALL-UNNAMED"})
+public class MapBenchmark{
+
+  public static native long hash64(long x);
+
+  public static native void hash64All(long args, long results, long count);
+
+  @Param({"16", "1024", "65536"})
+  private int count;
+
+  private Arena arena;
+
+  private MemorySegment input;
+
+  private MemorySegment output;
+
+  @Setup(Level.Trial)
+  public void setup() throws Throwable{
+    System.loadLibrary("benchlib");
+    var target = SymbolLookup.loaderLookup().find("hash64").get();
+    var cls = MapBenchmark.class;
+    var scalar = cls.getMethod("hash64", long.class);
+    var map = cls.getMethod("hash64All", long.class, long.class, long.class);
+
+    var binder = NativeBinder.getInstance();
+    binder.bind(cls, new NativeBinder.BindMethod[]{new NativeBinder.BindMethod(scalar, target)});
+    binder.bindMap(cls, new NativeBinder.MapMethod[]{new NativeBinder.MapMethod(map, target, scalar)});
+
+    arena = Arena.ofShared();
+    input = arena.allocate(ValueLayout.JAVA_LONG, count);
+    output = arena.allocate(ValueLayout.JAVA_LONG, count);
+    for(int i = 0; i < count; i++){
+      input.setAtIndex(ValueLayout.JAVA_LONG, i, i);
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown(){
+    arena.close();
+  }
+
+  @Benchmark
+  public void perElement(Blackhole bh){
+    for(int i = 0; i < count; i++){
+      output.setAtIndex(ValueLayout.JAVA_LONG, i, hash64(input.getAtIndex(ValueLayout.JAVA_LONG, i)));
+    }
+    bh.consume(output);
+  }
+
+  @Benchmark
+  public void map(Blackhole bh){
+    hash64All(input.address(), output.address(), count);
+    bh.consume(output);
+  }
+
+}
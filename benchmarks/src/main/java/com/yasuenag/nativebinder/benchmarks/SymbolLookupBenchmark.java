@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2025, Yasumasa Suenaga
+ *
+ * This file is part of nativebinder.
+ *
+ * nativebinder is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * nativebinder is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with nativebinder. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.yasuenag.nativebinder.benchmarks;
+
+import java.lang.foreign.Linker;
+import java.lang.foreign.SymbolLookup;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.yasuenag.nativebinder.ElfSymbolIndex;
+
+
+/**
+ * Compare default lookup (dlsym) with ElfSymbolIndex for bulk resolution.
+ * Symbol names are taken from the index which are also found by default
+ * lookup, and they are repeated until `count`.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--enable-native-access=ALL-UNNAMED"})
+public class SymbolLookupBenchmark{
+
+  @Param({"10000"})
+  private int count;
+
+  private SymbolLookup defaultLookup;
+
+  private ElfSymbolIndex index;
+
+  private String[] names;
+
+  @Setup
+  public void setup() throws Throwable{
+    defaultLookup = Linker.nativeLinker().defaultLookup();
+    index = ElfSymbolIndex.create(defaultLookup);
+
+    var found = new ArrayList<String>();
+    for(var name : index.names()){
+      if(defaultLookup.find(name).isPresent()){
+        found.add(name);
+      }
+    }
+
+    names = new String[count];
+    for(int i = 0; i < count; i++){
+      names[i] = found.get(i % found.size());
+    }
+  }
+
+  private static int resolveAll(SymbolLookup lookup, String[] names){
+    int resolved = 0;
+    for(var name : names){
+      if(lookup.find(name).isPresent()){
+        resolved++;
+      }
+    }
+    return resolved;
+  }
+
+  @Benchmark
+  public int defaultLookup(){
+    return resolveAll(defaultLookup, names);
+  }
+
+  @Benchmark
+  public int symbolIndex(){
+    return resolveAll(index, names);
+  }
+
+  @Benchmark
+  public int symbolIndexWithCreation() throws Throwable{
+    return resolveAll(ElfSymbolIndex.create(defaultLookup), names);
+  }
+
+}
@@ -0,0 +1,488 @@
+/*
+ * Copyright (C) 2025, Yasumasa Suenaga
+ *
+ * This file is part of nativebinder.
+ *
+ * nativebinder is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * nativebinder is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with nativebinder. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.yasuenag.nativebinder;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.FunctionDescriptor;
+import java.lang.foreign.Linker;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.SymbolLookup;
+import java.lang.foreign.ValueLayout;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * Ring buffer to call C functions asynchronously in native worker thread.
+ * Java threads put records into the ring without JNI transition, and the
+ * worker thread which is started by NativeBinder calls them in order.
+ * Multiple Java threads can put records concurrently.
+ * The worker calls records in order of {@link #claim(int)}, so every
+ * claimed slot should be published or cancelled. Otherwise the worker
+ * stops at the slot.
+ *
+ * Each slot in the ring has the record which is same layout with
+ * {@link CallBatch}, and the state of the slot is placed after arguments.
+ *
+ * Usage:
+ * <pre>
+ * int slot = ring.claim(0);
+ * ring.setLong(slot, 0, fd);
+ * ring.publish(slot); // fire-and-forget
+ *
+ * int slot = ring.claim(1);
+ * try{
+ *   ring.setLong(slot, 0, fd);
+ * }
+ * catch(Throwable t){
+ *   ring.cancel(slot); // the worker skips the slot
+ *   throw t;
+ * }
+ * ring.publishForResult(slot);
+ * var completion = ring.await(slot);
+ * </pre>
+ *
+ * @author Yasumasa Suenaga
+ * @see NativeBinder#createAsyncRing(NativeBinder.BindMethod[], int, Arena, boolean)
+ */
+public class AsyncRing implements AutoCloseable{
+
+  /**
+   * Result of the call.
+   *
+   * @param value return value of C function
+   * @param errorCode error code just after the call. It is available when
+   *        the ring is created with error code.
+   */
+  public static record Completion(long value, int errorCode){}
+
+  /**
+   * Offset of address of 1st slot in the header.
+   */
+  public static final long FIRST_SLOT_OFFSET = 0;
+
+  /**
+   * Offset of stop flag in the header.
+   */
+  public static final long STOP_OFFSET = 8;
+
+  /**
+   * Offset of ticket counter for producers in the header.
+   * It is placed at another cache line from others.
+   */
+  public static final long TAIL_OFFSET = 64;
+
+  /**
+   * Size of the header.
+   */
+  public static final long HEADER_SIZE = 128;
+
+  /**
+   * The slot is available.
+   */
+  public static final long STATE_FREE = 0;
+
+  /**
+   * The slot is being written by Java thread.
+   */
+  public static final long STATE_WRITING = 1;
+
+  /**
+   * The call has been completed, and the result is not yet read.
+   */
+  public static final long STATE_DONE = 2;
+
+  /**
+   * The slot is ready to call.
+   * The worker calls the slot if the state is greater than or equal to this.
+   */
+  public static final long STATE_READY = 3;
+
+  /**
+   * The slot is cancelled. The worker skips it without the call.
+   */
+  public static final long STATE_CANCELLED = 4;
+
+  private static final VarHandle LONG_HANDLE = ValueLayout.JAVA_LONG.varHandle();
+
+  private static final boolean isWindows = System.getProperty("os.name").startsWith("Windows");
+
+  private static final MethodHandle hndCreateThread;
+
+  private static final MethodHandle hndJoin;
+
+  private static final MethodHandle hndCloseHandle;
+
+  /**
+   * Function pointer to sleep in the worker when the ring is empty.
+   */
+  private static final MemorySegment sleeper;
+
+  static{
+    var linker = Linker.nativeLinker();
+    if(isWindows){
+      var kernel32 = SymbolLookup.libraryLookup("Kernel32", Arena.global());
+      hndCreateThread = linker.downcallHandle(kernel32.find("CreateThread").get(),
+                                              FunctionDescriptor.of(ValueLayout.ADDRESS, ValueLayout.ADDRESS, ValueLayout.JAVA_LONG, ValueLayout.ADDRESS, ValueLayout.ADDRESS, ValueLayout.JAVA_INT, ValueLayout.ADDRESS));
+      hndJoin = linker.downcallHandle(kernel32.find("WaitForSingleObject").get(),
+                                      FunctionDescriptor.of(ValueLayout.JAVA_INT, ValueLayout.ADDRESS, ValueLayout.JAVA_INT));
+      hndCloseHandle = linker.downcallHandle(kernel32.find("CloseHandle").get(),
+                                             FunctionDescriptor.of(ValueLayout.JAVA_INT, ValueLayout.ADDRESS));
+      sleeper = kernel32.find("Sleep").get();
+    }
+    else{
+      var libc = linker.defaultLookup();
+      hndCreateThread = linker.downcallHandle(libc.find("pthread_create").get(),
+                                              FunctionDescriptor.of(ValueLayout.JAVA_INT, ValueLayout.ADDRESS, ValueLayout.ADDRESS, ValueLayout.ADDRESS, ValueLayout.ADDRESS));
+      hndJoin = linker.downcallHandle(libc.find("pthread_join").get(),
+                                      FunctionDescriptor.of(ValueLayout.JAVA_INT, ValueLayout.JAVA_LONG, ValueLayout.ADDRESS));
+      hndCloseHandle = null;
+      sleeper = libc.find("usleep").get();
+    }
+  }
+
+  private final MemorySegment[] thunks;
+
+  private final int maxArgs;
+
+  private final long slotSize;
+
+  private final long stateOffset;
+
+  private final int capacity;
+
+  private final MemorySegment header;
+
+  private final MemorySegment slots;
+
+  /**
+   * pthread_t in Linux, HANDLE in Windows
+   */
+  private long thread;
+
+  private volatile boolean closed;
+
+  /**
+   * Number of slots which are claimed, but are not yet published nor
+   * cancelled. close() waits for them.
+   */
+  private final AtomicInteger inflight;
+
+  /**
+   * Get offset of the state in the slot.
+   *
+   * @param maxArgs max number of arguments of C functions
+   * @return offset of the state
+   */
+  public static long stateOffset(int maxArgs){
+    return CallBatch.ARGS_OFFSET + (8L * maxArgs);
+  }
+
+  /**
+   * Get offset of the state which is set after the call.
+   *
+   * @param maxArgs max number of arguments of C functions
+   * @return offset of the state which is set after the call
+   */
+  public static long releaseOffset(int maxArgs){
+    return stateOffset(maxArgs) + 8;
+  }
+
+  /**
+   * Get function pointer to sleep in the worker when the ring is empty.
+   *
+   * @return function pointer (usleep() in Linux, Sleep() in Windows)
+   */
+  public static MemorySegment sleeper(){
+    return sleeper;
+  }
+
+  /**
+   * Get argument for the sleeper.
+   *
+   * @return 100 (usec) in Linux, 1 (msec) in Windows
+   */
+  public static long sleeperArgument(){
+    return isWindows ? 1 : 100;
+  }
+
+  AsyncRing(MemorySegment[] thunks, int maxArgs, int capacity, Arena arena, MemorySegment worker){
+    this.thunks = thunks;
+    this.maxArgs = maxArgs;
+    this.stateOffset = stateOffset(maxArgs);
+    // Each slot is aligned to cache line to avoid false sharing.
+    this.slotSize = ((releaseOffset(maxArgs) + 8) + 63) & ~63L;
+    this.capacity = capacity;
+    this.header = arena.allocate(HEADER_SIZE, 64);
+    this.slots = arena.allocate(slotSize * capacity, 64);
+    this.closed = false;
+    this.inflight = new AtomicInteger();
+
+    header.set(ValueLayout.JAVA_LONG, FIRST_SLOT_OFFSET, slots.address());
+    for(int i = 0; i < capacity; i++){
+      long next = slots.address() + (slotSize * ((i + 1) % capacity));
+      slots.set(ValueLayout.JAVA_LONG, (slotSize * i) + CallBatch.NEXT_OFFSET, next);
+    }
+
+    startWorker(worker);
+  }
+
+  private void startWorker(MemorySegment worker){
+    try{
+      if(isWindows){
+        var handle = (MemorySegment)hndCreateThread.invokeExact(MemorySegment.NULL, 0L, worker, header, 0, MemorySegment.NULL);
+        if(handle.equals(MemorySegment.NULL)){
+          throw new IllegalStateException("CreateThread() failed");
+        }
+        thread = handle.address();
+      }
+      else{
+        try(var tmpArena = Arena.ofConfined()){
+          var tid = tmpArena.allocate(ValueLayout.JAVA_LONG);
+          int result = (int)hndCreateThread.invokeExact(tid, MemorySegment.NULL, worker, header);
+          if(result != 0){
+            throw new IllegalStateException("pthread_create() failed: " + result);
+          }
+          thread = tid.get(ValueLayout.JAVA_LONG, 0);
+        }
+      }
+    }
+    catch(RuntimeException e){
+      throw e;
+    }
+    catch(Throwable t){
+      throw new RuntimeException(t);
+    }
+  }
+
+  private long stateAddress(int slot){
+    return (slotSize * slot) + stateOffset;
+  }
+
+  private long argOffset(int slot, int arg){
+    if((slot < 0) || (slot >= capacity)){
+      throw new IndexOutOfBoundsException(slot);
+    }
+    if((arg < 0) || (arg >= maxArgs)){
+      throw new IndexOutOfBoundsException(arg);
+    }
+    return (slotSize * slot) + CallBatch.ARGS_OFFSET + (8L * arg);
+  }
+
+  private static void spinWait(int count){
+    if(count < 100){
+      Thread.onSpinWait();
+    }
+    else{
+      Thread.yield();
+    }
+  }
+
+  /**
+   * Claim the slot to put new record.
+   * This method waits until the slot is available if the ring is full.
+   * The slot should be passed to publish(), publishForResult(), or
+   * cancel().
+   *
+   * @param target index of the target in BindMethod array which is passed to NativeBinder.
+   * @return index of the slot
+   * @throws IllegalStateException thrown when the ring is already closed
+   * @throws IndexOutOfBoundsException thrown when the target does not exist
+   */
+  public int claim(int target){
+    var thunk = thunks[target];
+
+    // close() sets the flag before it waits for inflight slots, so either
+    // this thread sees the flag, or close() sees this slot.
+    inflight.incrementAndGet();
+    if(closed){
+      inflight.decrementAndGet();
+      throw new IllegalStateException("Ring is already closed");
+    }
+    long ticket = (long)LONG_HANDLE.getAndAdd(header, TAIL_OFFSET, 1L);
+    int slot = (int)Long.remainderUnsigned(ticket, capacity);
+    long state = stateAddress(slot);
+    for(int i = 0; !LONG_HANDLE.compareAndSet(slots, state, STATE_FREE, STATE_WRITING); i++){
+      spinWait(i);
+    }
+    slots.set(ValueLayout.JAVA_LONG, (slotSize * slot) + CallBatch.THUNK_OFFSET, thunk.address());
+    return slot;
+  }
+
+  /**
+   * Set integer (or pointer) argument.
+   *
+   * @param slot index of the slot
+   * @param arg index of the argument
+   * @param value value to set
+   */
+  public void setLong(int slot, int arg, long value){
+    slots.set(ValueLayout.JAVA_LONG, argOffset(slot, arg), value);
+  }
+
+  /**
+   * Set integer argument.
+   *
+   * @param slot index of the slot
+   * @param arg index of the argument
+   * @param value value to set
+   */
+  public void setInt(int slot, int arg, int value){
+    setLong(slot, arg, value);
+  }
+
+  /**
+   * Set double argument.
+   *
+   * @param slot index of the slot
+   * @param arg index of the argument
+   * @param value value to set
+   */
+  public void setDouble(int slot, int arg, double value){
+    slots.set(ValueLayout.JAVA_DOUBLE, argOffset(slot, arg), value);
+  }
+
+  /**
+   * Set float argument.
+   *
+   * @param slot index of the slot
+   * @param arg index of the argument
+   * @param value value to set
+   */
+  public void setFloat(int slot, int arg, float value){
+    slots.set(ValueLayout.JAVA_FLOAT, argOffset(slot, arg), value);
+  }
+
+  private void publish(int slot, long state, long release){
+    if((slot < 0) || (slot >= capacity)){
+      throw new IndexOutOfBoundsException(slot);
+    }
+    if((long)LONG_HANDLE.getAcquire(slots, stateAddress(slot)) != STATE_WRITING){
+      throw new IllegalStateException("Slot is not claimed: " + slot);
+    }
+    slots.set(ValueLayout.JAVA_LONG, stateAddress(slot) + 8, release);
+    LONG_HANDLE.setRelease(slots, stateAddress(slot), state);
+    inflight.decrementAndGet();
+  }
+
+  /**
+   * Publish the slot to the worker.
+   * The slot would be reused after the call, so the result cannot be obtained.
+   *
+   * @param slot index of the slot
+   */
+  public void publish(int slot){
+    publish(slot, STATE_READY, STATE_FREE);
+  }
+
+  /**
+   * Publish the slot to the worker.
+   * The slot is kept until {@link #await(int)} is called.
+   *
+   * @param slot index of the slot
+   */
+  public void publishForResult(int slot){
+    publish(slot, STATE_READY, STATE_DONE);
+  }
+
+  /**
+   * Cancel the claimed slot.
+   * The worker skips it, and releases it without the call. It should be
+   * used when the record cannot be completed after {@link #claim(int)}
+   * (e.g. an exception is thrown while arguments are set).
+   *
+   * @param slot index of the slot
+   */
+  public void cancel(int slot){
+    publish(slot, STATE_CANCELLED, STATE_FREE);
+  }
+
+  /**
+   * Check the call has been completed.
+   * It is available for the slot which is published by publishForResult().
+   *
+   * @param slot index of the slot
+   * @return true if the call has been completed
+   */
+  public boolean isDone(int slot){
+    return (long)LONG_HANDLE.getAcquire(slots, stateAddress(slot)) == STATE_DONE;
+  }
+
+  /**
+   * Wait for the completion of the call, and release the slot.
+   * It is available for the slot which is published by publishForResult().
+   *
+   * @param slot index of the slot
+   * @return result of the call
+   */
+  public Completion await(int slot){
+    for(int i = 0; !isDone(slot); i++){
+      spinWait(i);
+    }
+    long offset = slotSize * slot;
+    var completion = new Completion(slots.get(ValueLayout.JAVA_LONG, offset + CallBatch.RESULT_OFFSET),
+                                    slots.get(ValueLayout.JAVA_INT, offset + CallBatch.ERROR_CODE_OFFSET));
+    LONG_HANDLE.setRelease(slots, stateAddress(slot), STATE_FREE);
+    return completion;
+  }
+
+  /**
+   * Stop the worker thread.
+   * This method waits for slots which are claimed by other threads to be
+   * published or cancelled, and the worker calls all of published slots
+   * before it exits.
+   * Memory of the ring should be alive until this method returns.
+   */
+  @Override
+  public synchronized void close(){
+    if(closed){
+      return;
+    }
+    closed = true;
+    for(int i = 0; inflight.get() > 0; i++){
+      spinWait(i);
+    }
+    LONG_HANDLE.setRelease(header, STOP_OFFSET, 1L);
+
+    try{
+      if(isWindows){
+        var handle = MemorySegment.ofAddress(thread);
+        int result = (int)hndJoin.invokeExact(handle, 0xffffffff); // INFINITE
+        if(result == 0xffffffff){ // WAIT_FAILED
+          throw new IllegalStateException("WaitForSingleObject() failed");
+        }
+        result = (int)hndCloseHandle.invokeExact(handle);
+      }
+      else{
+        int result = (int)hndJoin.invokeExact(thread, MemorySegment.NULL);
+        if(result != 0){
+          throw new IllegalStateException("pthread_join() failed: " + result);
+        }
+      }
+    }
+    catch(RuntimeException e){
+      throw e;
+    }
+    catch(Throwable t){
+      throw new RuntimeException(t);
+    }
+  }
+
+}
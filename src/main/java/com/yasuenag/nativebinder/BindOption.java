@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2025, Yasumasa Suenaga
+ *
+ * This file is part of nativebinder.
+ *
+ * nativebinder is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * nativebinder is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with nativebinder. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.yasuenag.nativebinder;
+
+import java.lang.foreign.StructLayout;
+
+/**
+ * Additional option for binding C function.
+ * Options are passed to {@link NativeBinder.BindMethod}.
+ *
+ * @author Yasumasa Suenaga
+ */
+public sealed interface BindOption{
+
+  /**
+   * Constant arguments which are passed before arguments from Java.
+   * They are baked into the stub as immediate values, so they should be
+   * integer or pointer (e.g. address of MemorySegment) values.
+   *
+   * @param values constant values to pass
+   */
+  public static record LeadingArgs(long... values) implements BindOption{}
+
+  /**
+   * Constant arguments which are passed after arguments from Java.
+   * They are baked into the stub as immediate values, so they should be
+   * integer or pointer (e.g. address of MemorySegment) values.
+   *
+   * @param values constant values to pass
+   */
+  public static record TrailingArgs(long... values) implements BindOption{}
+
+  /**
+   * Value in per-thread slot which is loaded by the stub in each call.
+   * It is inserted into the arguments of C function at `index`.
+   * `index` is the position in arguments of C function, it includes
+   * constant arguments and other ThreadContextArg.
+   *
+   * @param context slot to load
+   * @param index position of the argument in C function
+   */
+  public static record ThreadContextArg(ThreadContext context, int index) implements BindOption{}
+
+  /**
+   * Pointer to per-thread scratch area which is passed as out-parameter.
+   * It is inserted into the arguments of C function at `index` as
+   * ThreadContextArg, so Java method does not need to declare it.
+   * Results can be read from {@link ScratchBuffer#segment()} after the call.
+   *
+   * @param scratch scratch area to pass
+   * @param index position of the argument in C function
+   */
+  public static record ScratchArg(ScratchBuffer scratch, int index) implements BindOption{}
+
+  /**
+   * Small struct which is passed by value.
+   * Java parameters from `param` are packed into the struct in order of
+   * members of `layout`, so Java method declares members of the struct
+   * as flattened parameters (e.g. {@code float x, float y}).
+   * Members should be ValueLayout, and PaddingLayout is skipped.
+   *
+   * @param param index of the parameter in Java method for 1st member
+   * @param layout layout of the struct
+   */
+  public static record StructArg(int param, StructLayout layout) implements BindOption{}
+
+  /**
+   * Variadic C function (e.g. {@code printf}, {@code open}, {@code ioctl}).
+   * The stub follows the rule of variadic call in the calling convention,
+   * e.g. AL holds the number of vector registers in System V AMD64.
+   *
+   * @param fixedArgs number of fixed arguments of C function before
+   *        {@code ...}. It includes arguments which are inserted by other
+   *        options.
+   */
+  public static record Variadic(int fixedArgs) implements BindOption{}
+
+  /**
+   * Lock which is held by the stub while C function is called.
+   * Bindings which have same lock are serialized.
+   *
+   * @param lock lock to acquire
+   */
+  public static record Lock(NativeLock lock) implements BindOption{}
+
+  /**
+   * Counter which is incremented by the stub in each call.
+   * It is available for {@link NativeBinder.BindMethod} only because
+   * calls are aggregated by Java method.
+   *
+   * @param counters counters to record calls
+   */
+  public static record Counter(CallCounters counters) implements BindOption{}
+
+  /**
+   * Sampler which measures latency of C function in the stub.
+   * It is available for {@link NativeBinder.BindMethod} only because
+   * latencies are aggregated by Java method.
+   *
+   * @param sampler sampler to record latencies
+   */
+  public static record Sampler(LatencySampler sampler) implements BindOption{}
+
+  /**
+   * Tracer which records each call into per-thread ring buffer.
+   * It is available for {@link NativeBinder.BindMethod} only because
+   * records have Java method.
+   *
+   * @param tracer tracer to record calls
+   */
+  public static record Trace(CallTracer tracer) implements BindOption{}
+
+}
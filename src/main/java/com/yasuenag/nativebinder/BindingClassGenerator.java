@@ -0,0 +1,355 @@
+/*
+ * Copyright (C) 2025, Yasumasa Suenaga
+ *
+ * This file is part of nativebinder.
+ *
+ * nativebinder is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * nativebinder is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with nativebinder. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.yasuenag.nativebinder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.Map;
+
+
+/**
+ * Class file generator for interface binding.
+ * The class implements the interface, and each method in the interface
+ * calls private static native method which is bound to C function.
+ * The class is final, so the JIT can inline the call through the interface.
+ *
+ * <pre>
+ * final class Binding implements Iface{
+ *   private static native int native$foo(int a);
+ *   public final int foo(int a){ return native$foo(a); }
+ * }
+ * </pre>
+ *
+ * Method which is served by downcall handle in FFM calls the handle in
+ * class data instead. The handle is loaded via dynamic constant, so it is
+ * a constant for the JIT.
+ *
+ * <pre>
+ *   public final int bar(int a){ return ((MethodHandle)classDataAt(1)).invokeExact(a); }
+ * </pre>
+ *
+ * @author Yasumasa Suenaga
+ */
+class BindingClassGenerator{
+
+  /**
+   * Prefix of native methods in generated class.
+   */
+  static final String NATIVE_PREFIX = "native$";
+
+  private static final int CLASS_VERSION = 61; // Java 17: no newer feature is needed
+
+  private static final int ACC_PUBLIC = 0x0001;
+  private static final int ACC_PRIVATE = 0x0002;
+  private static final int ACC_STATIC = 0x0008;
+  private static final int ACC_FINAL = 0x0010;
+  private static final int ACC_SUPER = 0x0020;
+  private static final int ACC_NATIVE = 0x0100;
+  private static final int ACC_SYNTHETIC = 0x1000;
+
+  private static final int CONSTANT_UTF8 = 1;
+  private static final int CONSTANT_INTEGER = 3;
+  private static final int CONSTANT_CLASS = 7;
+  private static final int CONSTANT_METHODREF = 10;
+  private static final int CONSTANT_NAME_AND_TYPE = 12;
+  private static final int CONSTANT_METHOD_HANDLE = 15;
+  private static final int CONSTANT_DYNAMIC = 17;
+
+  private static final int REF_INVOKE_STATIC = 6;
+
+  private static final int OP_ALOAD_0 = 0x2a;
+  private static final int OP_LDC_W = 0x13;
+  private static final int OP_INVOKEVIRTUAL = 0xb6;
+  private static final int OP_INVOKESPECIAL = 0xb7;
+  private static final int OP_INVOKESTATIC = 0xb8;
+  private static final int OP_RETURN = 0xb1;
+
+  private final ByteArrayOutputStream cpBytes = new ByteArrayOutputStream();
+
+  private final DataOutputStream cp = new DataOutputStream(cpBytes);
+
+  private final Map<String, Integer> cpIndex = new HashMap<>();
+
+  private int cpCount = 1;
+
+  private int addConstant(String key, int tag, int... refs) throws IOException{
+    var index = cpIndex.get(key);
+    if(index != null){
+      return index;
+    }
+    cp.writeByte(tag);
+    for(int ref : refs){
+      cp.writeShort(ref);
+    }
+    cpIndex.put(key, cpCount);
+    return cpCount++;
+  }
+
+  private int utf8(String str) throws IOException{
+    var key = "U:" + str;
+    var index = cpIndex.get(key);
+    if(index != null){
+      return index;
+    }
+    cp.writeByte(CONSTANT_UTF8);
+    cp.writeUTF(str);
+    cpIndex.put(key, cpCount);
+    return cpCount++;
+  }
+
+  private int integer(int value) throws IOException{
+    var key = "I:" + value;
+    var index = cpIndex.get(key);
+    if(index != null){
+      return index;
+    }
+    cp.writeByte(CONSTANT_INTEGER);
+    cp.writeInt(value);
+    cpIndex.put(key, cpCount);
+    return cpCount++;
+  }
+
+  private int classRef(String internalName) throws IOException{
+    int name = utf8(internalName);
+    return addConstant("C:" + internalName, CONSTANT_CLASS, name);
+  }
+
+  private int methodRef(String owner, String name, String desc) throws IOException{
+    int cls = classRef(owner);
+    int nameIdx = utf8(name);
+    int descIdx = utf8(desc);
+    int nat = addConstant("N:" + name + desc, CONSTANT_NAME_AND_TYPE, nameIdx, descIdx);
+    return addConstant("M:" + owner + "." + name + desc, CONSTANT_METHODREF, cls, nat);
+  }
+
+  private int invokeStaticHandle(int methodRef) throws IOException{
+    var key = "H:" + methodRef;
+    var index = cpIndex.get(key);
+    if(index != null){
+      return index;
+    }
+    cp.writeByte(CONSTANT_METHOD_HANDLE);
+    cp.writeByte(REF_INVOKE_STATIC);
+    cp.writeShort(methodRef);
+    cpIndex.put(key, cpCount);
+    return cpCount++;
+  }
+
+  private static int slotSize(Class<?> cls){
+    return (cls.equals(long.class) || cls.equals(double.class)) ? 2 : 1;
+  }
+
+  private static int loadOpcode(Class<?> cls){
+    if(!cls.isPrimitive()){
+      return 0x19; // aload
+    }
+    else if(cls.equals(long.class)){
+      return 0x16; // lload
+    }
+    else if(cls.equals(float.class)){
+      return 0x17; // fload
+    }
+    else if(cls.equals(double.class)){
+      return 0x18; // dload
+    }
+    else{
+      return 0x15; // iload
+    }
+  }
+
+  private static int returnOpcode(Class<?> cls){
+    if(cls.equals(void.class)){
+      return OP_RETURN;
+    }
+    else if(!cls.isPrimitive()){
+      return 0xb0; // areturn
+    }
+    else if(cls.equals(long.class)){
+      return 0xad; // lreturn
+    }
+    else if(cls.equals(float.class)){
+      return 0xae; // freturn
+    }
+    else if(cls.equals(double.class)){
+      return 0xaf; // dreturn
+    }
+    else{
+      return 0xac; // ireturn
+    }
+  }
+
+  private static void writeMethod(DataOutputStream out, int access, int name, int desc, byte[] code, int maxStack, int maxLocals, int codeAttr) throws IOException{
+    out.writeShort(access);
+    out.writeShort(name);
+    out.writeShort(desc);
+    if(code == null){
+      out.writeShort(0); // no attribute
+      return;
+    }
+    out.writeShort(1);
+    out.writeShort(codeAttr);
+    out.writeInt(12 + code.length);
+    out.writeShort(maxStack);
+    out.writeShort(maxLocals);
+    out.writeInt(code.length);
+    out.write(code);
+    out.writeShort(0); // exception table
+    out.writeShort(0); // attributes
+  }
+
+  /**
+   * Generate class file which implements the interface.
+   *
+   * @param className internal name of the class to generate
+   * @param iface interface to implement
+   * @param methods abstract methods in the interface
+   * @return class file
+   */
+  byte[] generate(String className, Class<?> iface, Method[] methods){
+    return generate(className, iface, methods, new boolean[methods.length]);
+  }
+
+  /**
+   * Generate class file which implements the interface.
+   * Method which is marked in `downcalls` calls MethodHandle in class
+   * data at same index. Class data should be List of MethodHandle.
+   *
+   * @param className internal name of the class to generate
+   * @param iface interface to implement
+   * @param methods abstract methods in the interface
+   * @param downcalls true if the method at same index is served by
+   *        MethodHandle in class data
+   * @return class file
+   */
+  byte[] generate(String className, Class<?> iface, Method[] methods, boolean[] downcalls){
+    try{
+      int thisClass = classRef(className);
+      int superClass = classRef("java/lang/Object");
+      int ifaceClass = classRef(iface.getName().replace('.', '/'));
+      int codeAttr = utf8("Code");
+      int initName = utf8("<init>");
+      int initDesc = utf8("()V");
+      int objectInit = methodRef("java/lang/Object", "<init>", "()V");
+
+      var methodBytes = new ByteArrayOutputStream();
+      var out = new DataOutputStream(methodBytes);
+      int methodCount = 1;
+
+      // BootstrapMethods: MethodHandles.classDataAt(lookup, name, type, index)
+      var bootstrapBytes = new ByteArrayOutputStream();
+      var bootstrap = new DataOutputStream(bootstrapBytes);
+      int bootstrapCount = 0;
+
+      // constructor
+      var ctor = new byte[]{(byte)OP_ALOAD_0, (byte)OP_INVOKESPECIAL, (byte)(objectInit >> 8), (byte)objectInit, (byte)OP_RETURN};
+      writeMethod(out, ACC_PUBLIC, initName, initDesc, ctor, 1, 1, codeAttr);
+
+      for(int i = 0; i < methods.length; i++){
+        var method = methods[i];
+        var desc = MethodType.methodType(method.getReturnType(), method.getParameterTypes())
+                             .toMethodDescriptorString();
+        var code = new ByteArrayOutputStream();
+        int invokeRef;
+        int invokeOpcode;
+        int extraStack;
+        if(downcalls[i]){
+          // ldc_w <MethodHandle at i in class data>
+          int bsm = invokeStaticHandle(methodRef("java/lang/invoke/MethodHandles", "classDataAt", "(Ljava/lang/invoke/MethodHandles$Lookup;Ljava/lang/String;Ljava/lang/Class;I)Ljava/lang/Object;"));
+          bootstrap.writeShort(bsm);
+          bootstrap.writeShort(1); // number of arguments
+          bootstrap.writeShort(integer(i));
+          int nat = addConstant("N:_Ljava/lang/invoke/MethodHandle;", CONSTANT_NAME_AND_TYPE, utf8("_"), utf8("Ljava/lang/invoke/MethodHandle;"));
+          int handle = addConstant("D:" + bootstrapCount, CONSTANT_DYNAMIC, bootstrapCount, nat);
+          bootstrapCount++;
+          code.write(OP_LDC_W);
+          code.write(handle >> 8);
+          code.write(handle);
+
+          invokeRef = methodRef("java/lang/invoke/MethodHandle", "invokeExact", desc);
+          invokeOpcode = OP_INVOKEVIRTUAL;
+          extraStack = 1;
+        }
+        else{
+          var nativeName = NATIVE_PREFIX + method.getName();
+          invokeRef = methodRef(className, nativeName, desc);
+          invokeOpcode = OP_INVOKESTATIC;
+          extraStack = 0;
+
+          // private static native <ret> native$<name>(<params>);
+          writeMethod(out, ACC_PRIVATE | ACC_STATIC | ACC_NATIVE | ACC_SYNTHETIC, utf8(nativeName), utf8(desc), null, 0, 0, codeAttr);
+          methodCount++;
+        }
+
+        // public final <ret> <name>(<params>){ return native$<name>(<params>); }
+        // or
+        // public final <ret> <name>(<params>){ return handle.invokeExact(<params>); }
+        int slot = 1;
+        for(var param : method.getParameterTypes()){
+          code.write(loadOpcode(param));
+          code.write(slot);
+          slot += slotSize(param);
+        }
+        code.write(invokeOpcode);
+        code.write(invokeRef >> 8);
+        code.write(invokeRef);
+        code.write(returnOpcode(method.getReturnType()));
+        int maxStack = Math.max(slot - 1 + extraStack, method.getReturnType().equals(void.class) ? 0 : slotSize(method.getReturnType()));
+        writeMethod(out, ACC_PUBLIC | ACC_FINAL, utf8(method.getName()), utf8(desc), code.toByteArray(), maxStack, slot, codeAttr);
+        methodCount++;
+      }
+
+      int bootstrapAttr = (bootstrapCount > 0) ? utf8("BootstrapMethods") : 0;
+
+      var classBytes = new ByteArrayOutputStream();
+      var cls = new DataOutputStream(classBytes);
+      cls.writeInt(0xcafebabe);
+      cls.writeShort(0); // minor version
+      cls.writeShort(CLASS_VERSION);
+      cls.writeShort(cpCount);
+      cls.write(cpBytes.toByteArray());
+      cls.writeShort(ACC_FINAL | ACC_SUPER | ACC_SYNTHETIC);
+      cls.writeShort(thisClass);
+      cls.writeShort(superClass);
+      cls.writeShort(1); // interfaces
+      cls.writeShort(ifaceClass);
+      cls.writeShort(0); // fields
+      cls.writeShort(methodCount);
+      cls.write(methodBytes.toByteArray());
+      if(bootstrapCount > 0){
+        cls.writeShort(1); // attributes
+        cls.writeShort(bootstrapAttr);
+        cls.writeInt(2 + bootstrapBytes.size());
+        cls.writeShort(bootstrapCount);
+        cls.write(bootstrapBytes.toByteArray());
+      }
+      else{
+        cls.writeShort(0); // attributes
+      }
+      return classBytes.toByteArray();
+    }
+    catch(IOException e){
+      throw new RuntimeException(e);
+    }
+  }
+
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2025, Yasumasa Suenaga
+ *
+ * This file is part of nativebinder.
+ *
+ * nativebinder is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * nativebinder is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with nativebinder. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.yasuenag.nativebinder;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * Executor to call blocking native methods from virtual threads.
+ * Call of native method pins the carrier thread of virtual thread.
+ * This class hands the call to the pool of platform threads if the caller
+ * is a virtual thread, then the virtual thread is unmounted while it waits.
+ * The call from platform thread is invoked directly.
+ *
+ * Error code of the method which is bound by bindWithErrorCode() is
+ * propagated to the caller, so {@link NativeBinder#errorCodeInPreviousCall()}
+ * can be used after the call as usual.
+ *
+ * <pre>
+ * var executor = new BlockingCallExecutor(8);
+ * int result = executor.call(() -&gt; inst.read(fd, buf, len));
+ * </pre>
+ *
+ * @author Yasumasa Suenaga
+ */
+public class BlockingCallExecutor implements AutoCloseable{
+
+  /**
+   * Call of native method.
+   *
+   * @param <T> type of return value
+   */
+  @FunctionalInterface
+  public static interface NativeCall<T>{
+
+    /**
+     * Call native method.
+     *
+     * @return return value of the call
+     * @throws Throwable thrown by the call
+     */
+    public T call() throws Throwable;
+
+  }
+
+  /**
+   * Result of the call in the pool.
+   */
+  private static record Result<T>(T value, Integer errorCode, Throwable thrown){}
+
+  private static final AtomicInteger poolNumber = new AtomicInteger();
+
+  private final ExecutorService pool;
+
+  /**
+   * Create new executor.
+   *
+   * @param nThreads number of platform threads in the pool
+   */
+  public BlockingCallExecutor(int nThreads){
+    var prefix = "nativebinder-blocking-" + poolNumber.incrementAndGet() + "-";
+    var counter = new AtomicInteger();
+    ThreadFactory factory = r -> {
+      var thread = new Thread(r, prefix + counter.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    };
+    pool = Executors.newFixedThreadPool(nThreads, factory);
+  }
+
+  private static <T> Result<T> invoke(NativeCall<T> nativeCall){
+    // Clear error code in previous task on this pooled thread.
+    NativeBinder.setErrorCode(null);
+    try{
+      T value = nativeCall.call();
+      return new Result<>(value, NativeBinder.getErrorCode(), null);
+    }
+    catch(Throwable t){
+      return new Result<>(null, NativeBinder.getErrorCode(), t);
+    }
+  }
+
+  /**
+   * Call native method.
+   * The call is handed to the pool if current thread is virtual thread.
+   *
+   * @param <T> type of return value
+   * @param nativeCall call of native method
+   * @return return value of the call
+   * @throws Throwable thrown by the call
+   */
+  public <T> T call(NativeCall<T> nativeCall) throws Throwable{
+    if(!Thread.currentThread().isVirtual()){
+      return nativeCall.call();
+    }
+
+    Result<T> result;
+    try{
+      // Virtual thread would be unmounted while it waits for the future.
+      result = pool.submit(() -> invoke(nativeCall)).get();
+    }
+    catch(ExecutionException e){
+      throw e.getCause();
+    }
+
+    if(result.errorCode() != null){
+      NativeBinder.setErrorCode(result.errorCode());
+    }
+    if(result.thrown() != null){
+      throw result.thrown();
+    }
+    return result.value();
+  }
+
+  /**
+   * Call native method which does not return any value.
+   * The call is handed to the pool if current thread is virtual thread.
+   *
+   * @param nativeCall call of native method
+   * @throws Throwable thrown by the call
+   */
+  public void run(Runnable nativeCall) throws Throwable{
+    call(() -> {
+      nativeCall.run();
+      return null;
+    });
+  }
+
+  /**
+   * Shutdown the pool.
+   * Calls which are already handed to the pool would be completed.
+   */
+  @Override
+  public void close(){
+    pool.shutdown();
+  }
+
+}
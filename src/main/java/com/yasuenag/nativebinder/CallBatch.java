@@ -0,0 +1,274 @@
+/*
+ * Copyright (C) 2025, Yasumasa Suenaga
+ *
+ * This file is part of nativebinder.
+ *
+ * nativebinder is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * nativebinder is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with nativebinder. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.yasuenag.nativebinder;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+
+
+/**
+ * Buffer of native calls which are executed in one JNI call.
+ * Each record in the buffer holds the target, arguments, and the result
+ * of the call. Records are executed by the dispatcher in native in order.
+ *
+ * Layout of the record:
+ * <pre>
+ *   +0: entry point of the target (thunk)
+ *   +8: address of next record
+ *  +16: return value
+ *  +24: error code (errno in Linux, GetLastError() in Windows)
+ *  +32: arguments (8 bytes per argument)
+ * </pre>
+ *
+ * This class is not thread-safe.
+ *
+ * @author Yasumasa Suenaga
+ * @see NativeBinder#createCallBatch(NativeBinder.BindMethod[], int, Arena, boolean)
+ */
+public class CallBatch{
+
+  /**
+   * Offset of entry point of the target in the record.
+   */
+  public static final long THUNK_OFFSET = 0;
+
+  /**
+   * Offset of address of next record in the record.
+   */
+  public static final long NEXT_OFFSET = 8;
+
+  /**
+   * Offset of return value in the record.
+   */
+  public static final long RESULT_OFFSET = 16;
+
+  /**
+   * Offset of error code in the record.
+   */
+  public static final long ERROR_CODE_OFFSET = 24;
+
+  /**
+   * Offset of 1st argument in the record.
+   */
+  public static final long ARGS_OFFSET = 32;
+
+  private final MemorySegment[] thunks;
+
+  private final int maxArgs;
+
+  private final long recordSize;
+
+  private final int capacity;
+
+  private final MemorySegment buffer;
+
+  private int count;
+
+  /**
+   * Call all of records in native.
+   * This method is bound by NativeBinder.
+   *
+   * @param first address of 1st record
+   * @param count number of records
+   */
+  private static native void dispatch(long first, long count);
+
+  CallBatch(MemorySegment[] thunks, int maxArgs, int capacity, Arena arena){
+    this.thunks = thunks;
+    this.maxArgs = maxArgs;
+    this.recordSize = ARGS_OFFSET + (8L * maxArgs);
+    this.capacity = capacity;
+    this.buffer = arena.allocate(recordSize * capacity, 16);
+    this.count = 0;
+
+    for(int i = 0; i < capacity; i++){
+      buffer.set(ValueLayout.JAVA_LONG, (recordSize * i) + NEXT_OFFSET, buffer.address() + (recordSize * (i + 1)));
+    }
+  }
+
+  private long offsetOf(int index){
+    if((index < 0) || (index >= count)){
+      throw new IndexOutOfBoundsException(index);
+    }
+    return recordSize * index;
+  }
+
+  private long argOffsetOf(int index, int arg){
+    if((arg < 0) || (arg >= maxArgs)){
+      throw new IndexOutOfBoundsException(arg);
+    }
+    return offsetOf(index) + ARGS_OFFSET + (8L * arg);
+  }
+
+  /**
+   * Add new record.
+   *
+   * @param target index of the target in BindMethod array which is passed to NativeBinder.
+   * @return index of the record
+   * @throws IllegalStateException thrown when the buffer is full
+   */
+  public int add(int target){
+    if(count == capacity){
+      throw new IllegalStateException("Batch is full");
+    }
+    buffer.set(ValueLayout.JAVA_LONG, (recordSize * count) + THUNK_OFFSET, thunks[target].address());
+    return count++;
+  }
+
+  /**
+   * Set integer (or pointer) argument.
+   *
+   * @param index index of the record
+   * @param arg index of the argument
+   * @param value value to set
+   * @throws IndexOutOfBoundsException thrown when the record or the
+   *         argument does not exist
+   */
+  public void setLong(int index, int arg, long value){
+    buffer.set(ValueLayout.JAVA_LONG, argOffsetOf(index, arg), value);
+  }
+
+  /**
+   * Set integer argument.
+   *
+   * @param index index of the record
+   * @param arg index of the argument
+   * @param value value to set
+   * @throws IndexOutOfBoundsException thrown when the record or the
+   *         argument does not exist
+   */
+  public void setInt(int index, int arg, int value){
+    setLong(index, arg, value);
+  }
+
+  /**
+   * Set double argument.
+   *
+   * @param index index of the record
+   * @param arg index of the argument
+   * @param value value to set
+   * @throws IndexOutOfBoundsException thrown when the record or the
+   *         argument does not exist
+   */
+  public void setDouble(int index, int arg, double value){
+    buffer.set(ValueLayout.JAVA_DOUBLE, argOffsetOf(index, arg), value);
+  }
+
+  /**
+   * Set float argument.
+   *
+   * @param index index of the record
+   * @param arg index of the argument
+   * @param value value to set
+   * @throws IndexOutOfBoundsException thrown when the record or the
+   *         argument does not exist
+   */
+  public void setFloat(int index, int arg, float value){
+    buffer.set(ValueLayout.JAVA_FLOAT, argOffsetOf(index, arg), value);
+  }
+
+  /**
+   * Execute all of records in one JNI call.
+   * Records are kept after the execution to obtain results.
+   */
+  public void execute(){
+    if(count > 0){
+      dispatch(buffer.address(), count);
+    }
+  }
+
+  /**
+   * Get integer (or pointer) return value.
+   *
+   * @param index index of the record
+   * @return return value
+   */
+  public long resultAsLong(int index){
+    return buffer.get(ValueLayout.JAVA_LONG, offsetOf(index) + RESULT_OFFSET);
+  }
+
+  /**
+   * Get integer return value.
+   *
+   * @param index index of the record
+   * @return return value
+   */
+  public int resultAsInt(int index){
+    return buffer.get(ValueLayout.JAVA_INT, offsetOf(index) + RESULT_OFFSET);
+  }
+
+  /**
+   * Get double return value.
+   *
+   * @param index index of the record
+   * @return return value
+   */
+  public double resultAsDouble(int index){
+    return buffer.get(ValueLayout.JAVA_DOUBLE, offsetOf(index) + RESULT_OFFSET);
+  }
+
+  /**
+   * Get float return value.
+   *
+   * @param index index of the record
+   * @return return value
+   */
+  public float resultAsFloat(int index){
+    return buffer.get(ValueLayout.JAVA_FLOAT, offsetOf(index) + RESULT_OFFSET);
+  }
+
+  /**
+   * Get error code just after the call.
+   * It is available when the batch is created with error code.
+   *
+   * @param index index of the record
+   * @return error code
+   */
+  public int errorCode(int index){
+    return buffer.get(ValueLayout.JAVA_INT, offsetOf(index) + ERROR_CODE_OFFSET);
+  }
+
+  /**
+   * Get MemorySegment of the record.
+   *
+   * @param index index of the record
+   * @return MemorySegment of the record
+   */
+  public MemorySegment record(int index){
+    return buffer.asSlice(offsetOf(index), recordSize);
+  }
+
+  /**
+   * Get number of records.
+   *
+   * @return number of records
+   */
+  public int size(){
+    return count;
+  }
+
+  /**
+   * Remove all of records.
+   */
+  public void clear(){
+    count = 0;
+  }
+
+}
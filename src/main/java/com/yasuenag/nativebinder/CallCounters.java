@@ -0,0 +1,219 @@
+/*
+ * Copyright (C) 2025, Yasumasa Suenaga
+ *
+ * This file is part of nativebinder.
+ *
+ * nativebinder is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * nativebinder is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with nativebinder. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.yasuenag.nativebinder;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+
+/**
+ * Call counters in native memory which are incremented by stubs.
+ * Pass it to {@link BindOption.Counter} to count calls of the binding.
+ * The stub increments the counter without calling any function, and
+ * Java can aggregate counts by {@link Method} at any time.
+ *
+ * Counters are striped to avoid cache-line ping-pong between threads.
+ * The stub chooses the stripe from bits 16-23 of the stack pointer, so
+ * threads (which have their own stacks) update different cache lines in
+ * most cases. Memory is allocated per 32 bindings:
+ * <pre>
+ *   +(stripe * 256) + (slot * 8): counter of the slot in the stripe
+ * </pre>
+ * The block is aligned to 64KB, thus the stub can compute the address by
+ * replacing 2nd byte of the address of the slot with the stripe.
+ *
+ * Note that the counter is not incremented atomically. Calls might be
+ * lost rarely if threads which share same stripe call concurrently.
+ *
+ * @author Yasumasa Suenaga
+ */
+public class CallCounters implements CallCountersMXBean{
+
+  /**
+   * Number of stripes.
+   */
+  public static final int STRIPES = 256;
+
+  /**
+   * Number of slots (bindings) in each block.
+   */
+  public static final int SLOTS_PER_BLOCK = 32;
+
+  /**
+   * Size of each stripe in the block.
+   */
+  public static final long STRIPE_SIZE = SLOTS_PER_BLOCK * ValueLayout.JAVA_LONG.byteSize();
+
+  private static final long BLOCK_SIZE = STRIPES * STRIPE_SIZE;
+
+  /**
+   * Slot of the binding.
+   *
+   * @param block memory block which includes the slot
+   * @param offset offset of the slot in 1st stripe
+   */
+  private static record Slot(MemorySegment block, long offset){}
+
+  private final List<MemorySegment> blocks;
+
+  private final Map<Method, List<Slot>> slots;
+
+  private int nextSlot;
+
+  private CallCounters(){
+    blocks = new ArrayList<>();
+    slots = new LinkedHashMap<>();
+    nextSlot = 0;
+  }
+
+  /**
+   * Create new counters.
+   * Memory would not be released because stubs might refer it.
+   *
+   * @return new CallCounters instance
+   */
+  public static CallCounters create(){
+    return new CallCounters();
+  }
+
+  /**
+   * Allocate the counter for the binding.
+   * The method can have several counters if it is bound several times.
+   *
+   * @param method Java method of the binding
+   * @return MemorySegment of the counter in 1st stripe
+   */
+  synchronized MemorySegment register(Method method){
+    int index = nextSlot % SLOTS_PER_BLOCK;
+    if(index == 0){
+      blocks.add(Arena.global().allocate(BLOCK_SIZE, BLOCK_SIZE));
+    }
+    var block = blocks.getLast();
+    var slot = new Slot(block, index * ValueLayout.JAVA_LONG.byteSize());
+    slots.computeIfAbsent(method, k -> new ArrayList<>()).add(slot);
+    nextSlot++;
+    return block.asSlice(slot.offset(), ValueLayout.JAVA_LONG.byteSize());
+  }
+
+  private static long sum(Slot slot){
+    long count = 0;
+    for(int i = 0; i < STRIPES; i++){
+      count += slot.block().get(ValueLayout.JAVA_LONG, (i * STRIPE_SIZE) + slot.offset());
+    }
+    return count;
+  }
+
+  private static long sum(List<Slot> slotList){
+    return slotList.stream()
+                   .mapToLong(CallCounters::sum)
+                   .sum();
+  }
+
+  /**
+   * Get number of calls of the method.
+   * The value might be stale because it is read without synchronization
+   * with stubs.
+   *
+   * @param method Java method of the binding
+   * @return number of calls, or 0 if the method is not bound with this
+   *         counters.
+   */
+  public synchronized long count(Method method){
+    var slotList = slots.get(method);
+    return (slotList == null) ? 0 : sum(slotList);
+  }
+
+  /**
+   * Get number of calls of all methods which are bound with this counters.
+   *
+   * @return map of the method and number of calls
+   */
+  public synchronized Map<Method, Long> counts(){
+    var result = new LinkedHashMap<Method, Long>();
+    for(var entry : slots.entrySet()){
+      result.put(entry.getKey(), sum(entry.getValue()));
+    }
+    return result;
+  }
+
+  /**
+   * Get the name of the method for MXBean and JFR events.
+   * It consists of class name, method name, and parameter types.
+   *
+   * @param method Java method
+   * @return name of the method (e.g. {@code com.example.Foo.strlen(long)})
+   */
+  static String getMethodName(Method method){
+    return method.getDeclaringClass().getName() + "." + method.getName() +
+           Arrays.stream(method.getParameterTypes())
+                 .map(Class::getTypeName)
+                 .collect(Collectors.joining(",", "(", ")"));
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public Map<String, Long> getCallCounts(){
+    var result = new HashMap<String, Long>();
+    for(var entry : counts().entrySet()){
+      result.merge(getMethodName(entry.getKey()), entry.getValue(), Long::sum);
+    }
+    return result;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public synchronized long getTotalCalls(){
+    return slots.values()
+                .stream()
+                .mapToLong(CallCounters::sum)
+                .sum();
+  }
+
+  /**
+   * Register this counters to platform MBeanServer as MXBean.
+   *
+   * @param name value of "name" key in ObjectName
+   * @return ObjectName of the MXBean
+   *         ({@code com.yasuenag.nativebinder:type=CallCounters,name=<name>})
+   * @throws JMException thrown when the MXBean cannot be registered
+   */
+  public ObjectName registerMXBean(String name) throws JMException{
+    var objName = new ObjectName("com.yasuenag.nativebinder:type=CallCounters,name=" + ObjectName.quote(name));
+    ManagementFactory.getPlatformMBeanServer()
+                     .registerMBean(this, objName);
+    return objName;
+  }
+
+}
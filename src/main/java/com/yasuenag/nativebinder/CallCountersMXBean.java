@@ -0,0 +1,47 @@
+/*
+ * Copyright (C) 2025, Yasumasa Suenaga
+ *
+ * This file is part of nativebinder.
+ *
+ * nativebinder is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * nativebinder is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with nativebinder. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.yasuenag.nativebinder;
+
+import java.util.Map;
+
+
+/**
+ * MXBean interface of {@link CallCounters}.
+ *
+ * @author Yasumasa Suenaga
+ */
+public interface CallCountersMXBean{
+
+  /**
+   * Get number of calls per bound method.
+   * The key is the name of the method which consists of class name,
+   * method name, and parameter types.
+   *
+   * @return map of the method name and number of calls
+   */
+  public Map<String, Long> getCallCounts();
+
+  /**
+   * Get total number of calls of all bound methods.
+   *
+   * @return number of calls
+   */
+  public long getTotalCalls();
+
+}
@@ -0,0 +1,421 @@
+/*
+ * Copyright (C) 2025, Yasumasa Suenaga
+ *
+ * This file is part of nativebinder.
+ *
+ * nativebinder is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * nativebinder is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with nativebinder. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.yasuenag.nativebinder;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.Linker;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.SymbolLookup;
+import java.lang.foreign.ValueLayout;
+import java.lang.invoke.VarHandle;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import jdk.jfr.FlightRecorder;
+
+
+/**
+ * Tracer which records recent calls of C functions into per-thread ring
+ * buffers in native memory. Pass it to {@link BindOption.Trace}.
+ * The stub records the id of the binding, time stamp counters before and
+ * after the call, return values (RAX and XMM0), and error code into the
+ * ring of current thread. Java can take snapshot or drain them concurrently.
+ *
+ * Each thread takes one ring from the pool at the first traced call.
+ * Only the thread writes into the ring, so the stub does not need any
+ * lock nor atomic operation. The pool is guarded by {@link NativeLock},
+ * but it is acquired only when new thread takes the ring.
+ * Threads after the pool is exhausted are not traced.
+ * The ring is not returned to the pool when the thread exits, so records
+ * from terminated threads can be read.
+ *
+ * Layout of the control block:
+ * <pre>
+ *   +0: address of next free ring
+ *   +8: number of free rings
+ *  +16: number of threads which could not take the ring
+ * </pre>
+ * Layout of each ring (64KB, aligned to 64KB):
+ * <pre>
+ *   +8: OS thread id
+ *  +16: address of next entry
+ *  +24: number of written entries
+ *  +64: entries (64 bytes each)
+ * </pre>
+ * Layout of each entry:
+ * <pre>
+ *   +0: id of the binding
+ *   +8: time stamp counter before the call
+ *  +16: time stamp counter after the call
+ *  +24: RAX after the call
+ *  +32: XMM0 after the call
+ *  +40: error code after the call (errno in Linux, GetLastError() in
+ *       Windows)
+ * </pre>
+ * The stub writes the entry at first, then increments the number of
+ * written entries. The reader validates the entry with the number after
+ * reading it, so it does not need to stop writers.
+ *
+ * @author Yasumasa Suenaga
+ * @see NativeBinder#createCallTracer(int)
+ */
+public class CallTracer{
+
+  /**
+   * Offset of address of next free ring in the control block.
+   */
+  public static final long NEXT_RING_OFFSET = 0;
+
+  /**
+   * Offset of number of free rings in the control block.
+   */
+  public static final long FREE_RINGS_OFFSET = 8;
+
+  /**
+   * Offset of number of threads which could not take the ring in the
+   * control block.
+   */
+  public static final long REJECTED_OFFSET = 16;
+
+  /**
+   * Size of the control block.
+   */
+  public static final long CONTROL_SIZE = 24;
+
+  /**
+   * Offset of OS thread id in the ring.
+   */
+  public static final long THREAD_ID_OFFSET = 8;
+
+  /**
+   * Offset of address of next entry in the ring.
+   */
+  public static final long CURSOR_OFFSET = 16;
+
+  /**
+   * Offset of number of written entries in the ring.
+   */
+  public static final long SEQUENCE_OFFSET = 24;
+
+  /**
+   * Offset of 1st entry in the ring.
+   */
+  public static final long ENTRIES_OFFSET = 64;
+
+  /**
+   * Size of each entry.
+   */
+  public static final long ENTRY_SIZE = 64;
+
+  /**
+   * Size of the ring. It should be 64KB.
+   */
+  public static final long RING_SIZE = 0x10000;
+
+  /**
+   * Number of entries in each ring. Readers can get up to
+   * {@code RING_ENTRIES - 1} latest records from each ring.
+   */
+  public static final int RING_ENTRIES = (int)((RING_SIZE - ENTRIES_OFFSET) / ENTRY_SIZE);
+
+  /**
+   * Record of the call.
+   *
+   * @param method Java method of the binding
+   * @param threadId OS thread id (tid in Linux, thread id in Windows)
+   * @param startTicks time stamp counter before the call
+   * @param endTicks time stamp counter after the call
+   * @param returnValue value in integer register (RAX) after the call.
+   *        It is sign-extended or zero-extended by the return type of the
+   *        method.
+   * @param fpReturnValue raw bits in floating point register (XMM0) after
+   *        the call
+   * @param errorCode error code after the call (errno in Linux,
+   *        GetLastError() in Windows). It is meaningful only if the
+   *        function reports the error with it.
+   */
+  public static record TraceRecord(Method method, long threadId, long startTicks, long endTicks, long returnValue, long fpReturnValue, int errorCode){}
+
+  /**
+   * Function pointer to get OS thread id.
+   */
+  private static final MemorySegment threadId;
+
+  static{
+    if(System.getProperty("os.name").startsWith("Windows")){
+      var kernel32 = SymbolLookup.libraryLookup("Kernel32", Arena.global());
+      threadId = kernel32.find("GetCurrentThreadId").get();
+    }
+    else{
+      // gettid() is available since glibc 2.30
+      var libc = Linker.nativeLinker().defaultLookup();
+      threadId = libc.find("gettid")
+                     .or(() -> libc.find("pthread_self"))
+                     .get();
+    }
+  }
+
+  private final ThreadContext context;
+
+  private final NativeLock lock;
+
+  private final MemorySegment control;
+
+  private final MemorySegment pool;
+
+  private final int maxThreads;
+
+  private final MemorySegment getter;
+
+  private final TimestampCounter counter;
+
+  private final List<Method> methods;
+
+  private final Map<Long, Long> drained;
+
+  private final Runnable eventHook;
+
+  CallTracer(ThreadContext context, NativeLock lock, MemorySegment control, MemorySegment pool, int maxThreads, MemorySegment getter, TimestampCounter counter){
+    this.context = context;
+    this.lock = lock;
+    this.control = control;
+    this.pool = pool;
+    this.maxThreads = maxThreads;
+    this.getter = getter;
+    this.counter = counter;
+    this.methods = new ArrayList<>();
+    this.drained = new HashMap<>();
+    this.eventHook = this::emitEvents;
+  }
+
+  /**
+   * Assign the id for the binding.
+   *
+   * @param method Java method of the binding
+   * @return id of the binding
+   */
+  synchronized int register(Method method){
+    methods.add(method);
+    return methods.size() - 1;
+  }
+
+  private synchronized Method getMethod(int id){
+    return ((id >= 0) && (id < methods.size())) ? methods.get(id) : null;
+  }
+
+  /**
+   * Normalize the value in RAX by the return type of the method.
+   * Upper bits of RAX are undefined if C function returns the value which
+   * is smaller than 64 bits.
+   *
+   * @param method Java method of the binding
+   * @param rax value in RAX after the call
+   * @return sign-extended or zero-extended value
+   */
+  private static long normalizeReturnValue(Method method, long rax){
+    if(method == null){
+      return rax;
+    }
+    var type = method.getReturnType();
+    if(type == int.class){
+      return (int)rax;
+    }
+    else if(type == short.class){
+      return (short)rax;
+    }
+    else if(type == byte.class){
+      return (byte)rax;
+    }
+    else if(type == char.class){
+      return rax & 0xffff;
+    }
+    else if(type == boolean.class){
+      return ((rax & 0xff) == 0) ? 0 : 1;
+    }
+    return rax;
+  }
+
+  private void readRing(MemorySegment ring, long from, long to, List<TraceRecord> records){
+    long threadId = ring.get(ValueLayout.JAVA_LONG, THREAD_ID_OFFSET);
+    for(long seq = from; seq < to; seq++){
+      long offset = ENTRIES_OFFSET + ((seq % RING_ENTRIES) * ENTRY_SIZE);
+      int id = (int)ring.get(ValueLayout.JAVA_LONG, offset);
+      long start = ring.get(ValueLayout.JAVA_LONG, offset + 8);
+      long end = ring.get(ValueLayout.JAVA_LONG, offset + 16);
+      long rax = ring.get(ValueLayout.JAVA_LONG, offset + 24);
+      long xmm0 = ring.get(ValueLayout.JAVA_LONG, offset + 32);
+      int errorCode = ring.get(ValueLayout.JAVA_INT, offset + 40);
+
+      // The entry might be overwritten while it is read.
+      VarHandle.loadLoadFence();
+      long written = ring.get(ValueLayout.JAVA_LONG, SEQUENCE_OFFSET);
+      if(written < (seq + RING_ENTRIES)){
+        var method = getMethod(id);
+        records.add(new TraceRecord(method, threadId, start, end, normalizeReturnValue(method, rax), xmm0, errorCode));
+      }
+    }
+  }
+
+  private List<TraceRecord> read(boolean drain){
+    var records = new ArrayList<TraceRecord>();
+    int usedRings = maxThreads - (int)control.get(ValueLayout.JAVA_LONG, FREE_RINGS_OFFSET);
+    for(int i = 0; i < usedRings; i++){
+      var ring = pool.asSlice(i * RING_SIZE, RING_SIZE);
+      long written = ring.get(ValueLayout.JAVA_LONG, SEQUENCE_OFFSET);
+      // The oldest entry shares the slot with the entry which is being
+      // written, so it cannot be read.
+      long from = Math.max(written - RING_ENTRIES + 1, drain ? drained.getOrDefault(ring.address(), 0L) : 0L);
+      readRing(ring, from, written, records);
+      if(drain){
+        drained.put(ring.address(), written);
+      }
+    }
+    return records;
+  }
+
+  /**
+   * Get records which are in rings now.
+   * Records are sorted per thread in order of the call.
+   *
+   * @return records in all rings
+   */
+  public synchronized List<TraceRecord> snapshot(){
+    return read(false);
+  }
+
+  /**
+   * Get records which are written after previous drain.
+   * Records are sorted per thread in order of the call. Records which are
+   * overwritten before the drain are lost.
+   *
+   * @return new records in all rings
+   */
+  public synchronized List<TraceRecord> drain(){
+    return read(true);
+  }
+
+  private void emitEvents(){
+    double ticksPerNanos = ticksPerNanos();
+    for(var record : drain()){
+      var event = new NativeCallEvent();
+      event.method = (record.method() == null) ? null : CallCounters.getMethodName(record.method());
+      event.osThreadId = record.threadId();
+      event.callDuration = (long)((record.endTicks() - record.startTicks()) / ticksPerNanos);
+      event.returnValue = record.returnValue();
+      event.errorCode = record.errorCode();
+      event.commit();
+    }
+  }
+
+  /**
+   * Emit records as JFR events ({@code com.yasuenag.nativebinder.NativeCall}).
+   * Records are drained periodically (every second by default) while
+   * the event is enabled in the recording, thus they cannot be obtained
+   * by {@link #drain()} at the same time.
+   *
+   * @throws IllegalArgumentException thrown when events are already
+   *         registered.
+   */
+  public void registerFlightRecorderEvents(){
+    FlightRecorder.addPeriodicEvent(NativeCallEvent.class, eventHook);
+  }
+
+  /**
+   * Stop emitting JFR events.
+   *
+   * @return true if events had been registered
+   */
+  public boolean unregisterFlightRecorderEvents(){
+    return FlightRecorder.removePeriodicEvent(eventHook);
+  }
+
+  /**
+   * Get number of threads which could not take the ring because the pool
+   * is exhausted.
+   *
+   * @return number of threads which are not traced
+   */
+  public long rejectedThreads(){
+    return control.get(ValueLayout.JAVA_LONG, REJECTED_OFFSET);
+  }
+
+  /**
+   * Get frequency of time stamp counter.
+   * It is calibrated with System.nanoTime() at the first call.
+   *
+   * @return ticks per nanosecond
+   */
+  public double ticksPerNanos(){
+    return counter.ticksPerNanos();
+  }
+
+  /**
+   * Get per-thread slot which holds the address of the ring.
+   * The slot holds 1 if the thread could not take the ring.
+   *
+   * @return ThreadContext instance
+   */
+  public ThreadContext context(){
+    return context;
+  }
+
+  /**
+   * Get the lock which guards the pool.
+   *
+   * @return NativeLock instance
+   */
+  public NativeLock lock(){
+    return lock;
+  }
+
+  /**
+   * Get control block of the pool.
+   *
+   * @return MemorySegment of the control block
+   */
+  public MemorySegment control(){
+    return control;
+  }
+
+  /**
+   * Get function pointer which returns the address of the ring of current
+   * thread. It takes the ring from the pool if current thread does not
+   * have it yet. It returns 1 if the pool is exhausted.
+   * The function does not take any argument.
+   *
+   * @return function pointer
+   */
+  public MemorySegment getter(){
+    return getter;
+  }
+
+  /**
+   * Get function pointer to get OS thread id.
+   * The function does not take any argument, and returns the id in EAX.
+   *
+   * @return function pointer (gettid() in Linux, GetCurrentThreadId() in
+   *         Windows)
+   */
+  public static MemorySegment threadId(){
+    return threadId;
+  }
+
+}
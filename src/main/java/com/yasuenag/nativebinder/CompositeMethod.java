@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2025, Yasumasa Suenaga
+ *
+ * This file is part of nativebinder.
+ *
+ * nativebinder is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * nativebinder is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with nativebinder. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.yasuenag.nativebinder;
+
+import java.lang.foreign.MemorySegment;
+import java.lang.reflect.Method;
+
+
+/**
+ * Record to store information of composite binding.
+ * The stub calls C functions in `steps` in order in one JNI call
+ * (e.g. lock -&gt; op -&gt; unlock).
+ * If the step fails, the stub returns immediately with the return value
+ * of the step. Otherwise the return value of the last step is returned.
+ *
+ * @param method native (JNI) method to bind.
+ * @param steps C functions to call.
+ * @author Yasumasa Suenaga
+ */
+public record CompositeMethod(Method method, Step... steps){
+
+  /**
+   * Condition to determine the failure of the step.
+   */
+  public static enum Failure{
+
+    /**
+     * The step never fails.
+     */
+    NONE,
+
+    /**
+     * The step fails if it returns non-zero int value
+     * (e.g. pthread_mutex_lock()).
+     */
+    NONZERO,
+
+    /**
+     * The step fails if it returns negative int value (e.g. write()).
+     */
+    NEGATIVE,
+
+    /**
+     * The step fails if it returns NULL pointer (e.g. malloc()).
+     */
+    NULL;
+  }
+
+  /**
+   * Argument of the step.
+   */
+  public static sealed interface Arg{
+
+    /**
+     * Argument of Java method.
+     *
+     * @param index index of the parameter in Java method
+     */
+    public static record Param(int index) implements Arg{}
+
+    /**
+     * Return value of previous step.
+     * It is available for the step which returns integer or pointer.
+     *
+     * @param step index of the step
+     */
+    public static record Result(int step) implements Arg{}
+
+    /**
+     * Constant value which is baked into the stub.
+     *
+     * @param value value to pass
+     */
+    public static record Constant(long value) implements Arg{}
+
+  }
+
+  /**
+   * C function to call in composite binding.
+   *
+   * @param seg MemorySegment to hold C function pointer.
+   * @param failure condition to determine the failure of the step
+   * @param args arguments for the function
+   */
+  public static record Step(MemorySegment seg, Failure failure, Arg... args){}
+
+}
@@ -0,0 +1,286 @@
+/*
+ * Copyright (C) 2025, Yasumasa Suenaga
+ *
+ * This file is part of nativebinder.
+ *
+ * nativebinder is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * nativebinder is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with nativebinder. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.yasuenag.nativebinder;
+
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.Linker;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.SymbolLookup;
+import java.lang.foreign.ValueLayout;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Predicate;
+
+import com.yasuenag.ffmasm.UnsupportedPlatformException;
+
+
+/**
+ * SymbolLookup which answers from in-memory index of ELF dynamic symbols.
+ * Shared objects which are loaded into the process are found from
+ * /proc/self/maps, and their .dynsym are parsed at once. Then lookups are
+ * answered from the hash table without dlsym().
+ *
+ * Following symbols are not indexed, they are resolved by fallback lookup:
+ * <ul>
+ *   <li>undefined or local symbols</li>
+ *   <li>thread local (TLS) symbol because its value is not an address</li>
+ *   <li>GNU indirect function (IFUNC) because it needs to call the resolver</li>
+ *   <li>non-default version of versioned symbol</li>
+ * </ul>
+ *
+ * If the symbol is defined in several objects, it is not indexed and it is
+ * resolved by fallback lookup, because the index does not know the search
+ * order of dlsym(). Note that shared objects which are loaded after creation
+ * are not indexed.
+ *
+ * All objects in the process (e.g. libjvm and the launcher) are indexed by
+ * default, so the index can find symbols which default lookup of native
+ * linker (libc only) does not. Pass the filter to
+ * {@link #create(SymbolLookup, Predicate)} to restrict indexed objects.
+ *
+ * @author Yasumasa Suenaga
+ */
+public class ElfSymbolIndex implements SymbolLookup{
+
+  private static final int ET_EXEC = 2;
+
+  private static final int PT_LOAD = 1;
+
+  private static final int SHT_DYNSYM = 11;
+
+  private static final int SHT_GNU_VERSYM = 0x6fffffff;
+
+  private static final int STB_LOCAL = 0;
+
+  private static final int STT_TLS = 6;
+
+  private static final int STT_GNU_IFUNC = 10;
+
+  private static final int SHN_UNDEF = 0;
+
+  private static final int VERSYM_HIDDEN = 0x8000;
+
+  private final Map<String, Long> symbols;
+
+  private final SymbolLookup fallback;
+
+  private ElfSymbolIndex(Map<String, Long> symbols, SymbolLookup fallback){
+    this.symbols = symbols;
+    this.fallback = fallback;
+  }
+
+  /**
+   * Create index of shared objects in current process.
+   * Symbols which are not in the index are resolved by default lookup of
+   * native linker.
+   *
+   * @return new ElfSymbolIndex instance
+   * @throws UnsupportedPlatformException thrown when the platform is not Linux.
+   */
+  public static ElfSymbolIndex create() throws UnsupportedPlatformException{
+    return create(Linker.nativeLinker().defaultLookup());
+  }
+
+  /**
+   * Create index of shared objects in current process.
+   *
+   * @param fallback lookup for symbols which are not in the index
+   * @return new ElfSymbolIndex instance
+   * @throws UnsupportedPlatformException thrown when the platform is not Linux.
+   */
+  public static ElfSymbolIndex create(SymbolLookup fallback) throws UnsupportedPlatformException{
+    return create(fallback, path -> true);
+  }
+
+  /**
+   * Create index of shared objects which are accepted by the filter.
+   *
+   * @param fallback lookup for symbols which are not in the index
+   * @param filter predicate for the path of the object to be indexed
+   * @return new ElfSymbolIndex instance
+   * @throws UnsupportedPlatformException thrown when the platform is not Linux.
+   */
+  public static ElfSymbolIndex create(SymbolLookup fallback, Predicate<Path> filter) throws UnsupportedPlatformException{
+    var osName = System.getProperty("os.name");
+    if(!osName.equals("Linux")){
+      throw new UnsupportedPlatformException(osName);
+    }
+
+    var symbols = new HashMap<String, Long>();
+    var duplicates = new HashSet<String>();
+    try{
+      for(var entry : findLoadedObjects().entrySet()){
+        if(filter.test(entry.getKey())){
+          indexObject(entry.getKey(), entry.getValue(), symbols, duplicates);
+        }
+      }
+    }
+    catch(IOException e){
+      throw new RuntimeException(e);
+    }
+    // Leave symbols which are defined in several objects to fallback lookup
+    symbols.keySet().removeAll(duplicates);
+    return new ElfSymbolIndex(symbols, fallback);
+  }
+
+  /**
+   * Find ELF files which are mapped into current process.
+   *
+   * @return map of path and start address of the mapping at file offset 0.
+   */
+  private static Map<Path, Long> findLoadedObjects() throws IOException{
+    var objects = new LinkedHashMap<Path, Long>();
+    for(var line : Files.readAllLines(Path.of("/proc/self/maps"))){
+      // address perms offset dev inode pathname
+      var fields = line.trim().split("\\s+", 6);
+      if((fields.length < 6) || !fields[5].startsWith("/") || (Long.parseLong(fields[2], 16) != 0)){
+        continue;
+      }
+      long start = Long.parseUnsignedLong(fields[0].substring(0, fields[0].indexOf('-')), 16);
+      objects.putIfAbsent(Path.of(fields[5]), start);
+    }
+    return objects;
+  }
+
+  private static void indexObject(Path path, long start, Map<String, Long> symbols, Set<String> duplicates){
+    try(var arena = Arena.ofConfined();
+        var channel = FileChannel.open(path, StandardOpenOption.READ)){
+      long size = channel.size();
+      if(size < 64){
+        return;
+      }
+      var elf = channel.map(FileChannel.MapMode.READ_ONLY, 0, size, arena);
+
+      // ELF magic, ELFCLASS64, ELFDATA2LSB
+      if((elf.get(ValueLayout.JAVA_INT_UNALIGNED, 0) != 0x464c457f) ||
+         (elf.get(ValueLayout.JAVA_BYTE, 4) != 2) ||
+         (elf.get(ValueLayout.JAVA_BYTE, 5) != 1)){
+        return;
+      }
+
+      int type = Short.toUnsignedInt(elf.get(ValueLayout.JAVA_SHORT_UNALIGNED, 16));
+      long phoff = elf.get(ValueLayout.JAVA_LONG_UNALIGNED, 32);
+      long shoff = elf.get(ValueLayout.JAVA_LONG_UNALIGNED, 40);
+      int phentsize = Short.toUnsignedInt(elf.get(ValueLayout.JAVA_SHORT_UNALIGNED, 54));
+      int phnum = Short.toUnsignedInt(elf.get(ValueLayout.JAVA_SHORT_UNALIGNED, 56));
+      int shentsize = Short.toUnsignedInt(elf.get(ValueLayout.JAVA_SHORT_UNALIGNED, 58));
+      int shnum = Short.toUnsignedInt(elf.get(ValueLayout.JAVA_SHORT_UNALIGNED, 60));
+      if(shoff == 0){
+        return; // section headers are stripped
+      }
+
+      // Load bias: symbols in shared object are relative to the lowest
+      // PT_LOAD which is mapped at file offset 0.
+      long base = 0;
+      if(type != ET_EXEC){
+        long lowest = Long.MAX_VALUE;
+        for(int i = 0; i < phnum; i++){
+          long ph = phoff + ((long)phentsize * i);
+          if(elf.get(ValueLayout.JAVA_INT_UNALIGNED, ph) == PT_LOAD){
+            lowest = Math.min(lowest, elf.get(ValueLayout.JAVA_LONG_UNALIGNED, ph + 16));
+          }
+        }
+        if(lowest == Long.MAX_VALUE){
+          return;
+        }
+        base = start - (lowest & ~0xfffL);
+      }
+
+      long dynsym = -1;
+      long versym = -1;
+      for(int i = 0; i < shnum; i++){
+        long sh = shoff + ((long)shentsize * i);
+        int shType = elf.get(ValueLayout.JAVA_INT_UNALIGNED, sh + 4);
+        if(shType == SHT_DYNSYM){
+          dynsym = sh;
+        }
+        else if(shType == SHT_GNU_VERSYM){
+          versym = sh;
+        }
+      }
+      if(dynsym < 0){
+        return;
+      }
+
+      long symOffset = elf.get(ValueLayout.JAVA_LONG_UNALIGNED, dynsym + 24);
+      long symSize = elf.get(ValueLayout.JAVA_LONG_UNALIGNED, dynsym + 32);
+      long symEntSize = elf.get(ValueLayout.JAVA_LONG_UNALIGNED, dynsym + 56);
+      int strIndex = elf.get(ValueLayout.JAVA_INT_UNALIGNED, dynsym + 40);
+      long strOffset = elf.get(ValueLayout.JAVA_LONG_UNALIGNED, shoff + ((long)shentsize * strIndex) + 24);
+      long verOffset = (versym < 0) ? -1 : elf.get(ValueLayout.JAVA_LONG_UNALIGNED, versym + 24);
+      if(symEntSize == 0){
+        return;
+      }
+
+      long count = symSize / symEntSize;
+      for(long i = 1; i < count; i++){ // index 0 is reserved
+        long sym = symOffset + (symEntSize * i);
+        int info = Byte.toUnsignedInt(elf.get(ValueLayout.JAVA_BYTE, sym + 4));
+        int shndx = Short.toUnsignedInt(elf.get(ValueLayout.JAVA_SHORT_UNALIGNED, sym + 6));
+        if((shndx == SHN_UNDEF) || ((info >>> 4) == STB_LOCAL) || ((info & 0xf) == STT_TLS) || ((info & 0xf) == STT_GNU_IFUNC)){
+          continue;
+        }
+        if((verOffset >= 0) &&
+           ((Short.toUnsignedInt(elf.get(ValueLayout.JAVA_SHORT_UNALIGNED, verOffset + (2 * i))) & VERSYM_HIDDEN) != 0)){
+          continue;
+        }
+
+        int nameOffset = elf.get(ValueLayout.JAVA_INT_UNALIGNED, sym);
+        var name = elf.getString(strOffset + Integer.toUnsignedLong(nameOffset));
+        long value = elf.get(ValueLayout.JAVA_LONG_UNALIGNED, sym + 8);
+        if(symbols.putIfAbsent(name, base + value) != null){
+          duplicates.add(name);
+        }
+      }
+    }
+    catch(IOException | IndexOutOfBoundsException e){
+      // Skip the object which cannot be read (e.g. deleted or truncated file)
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public Optional<MemorySegment> find(String name){
+    var address = symbols.get(name);
+    return (address == null) ? fallback.find(name)
+                             : Optional.of(MemorySegment.ofAddress(address));
+  }
+
+  /**
+   * Get names of indexed symbols.
+   *
+   * @return unmodifiable set of symbol names
+   */
+  public Set<String> names(){
+    return Collections.unmodifiableSet(symbols.keySet());
+  }
+
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2025, Yasumasa Suenaga
+ *
+ * This file is part of nativebinder.
+ *
+ * nativebinder is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * nativebinder is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with nativebinder. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.yasuenag.nativebinder;
+
+
+/**
+ * Log-bucketed histogram of latencies in ticks of time stamp counter.
+ * Bucket `n` holds latencies in [2^(n-1), 2^n) ticks.
+ *
+ * @param buckets number of samples in each bucket
+ * @param ticksPerNanos frequency of time stamp counter
+ * @author Yasumasa Suenaga
+ * @see LatencySampler#histogram(java.lang.reflect.Method)
+ */
+public record LatencyHistogram(long[] buckets, double ticksPerNanos){
+
+  /**
+   * Number of buckets.
+   */
+  public static final int BUCKETS = 64;
+
+  /**
+   * Get the index of the bucket for the latency.
+   *
+   * @param ticks latency in ticks
+   * @return index of the bucket
+   */
+  public static int bucketOf(long ticks){
+    return Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(ticks));
+  }
+
+  /**
+   * Get number of samples.
+   *
+   * @return number of samples
+   */
+  public long count(){
+    long count = 0;
+    for(var bucket : buckets){
+      count += bucket;
+    }
+    return count;
+  }
+
+  /**
+   * Get the percentile of latencies.
+   * The value is upper bound of the bucket which includes the percentile,
+   * so it might be up to twice as large as actual latency.
+   *
+   * @param percentile percentile (0.0 - 100.0)
+   * @return latency in nanoseconds, or 0 if there are no samples.
+   * @throws IllegalArgumentException thrown when the percentile is out of
+   *         range.
+   */
+  public double percentile(double percentile){
+    if((percentile < 0.0d) || (percentile > 100.0d)){
+      throw new IllegalArgumentException("Invalid percentile: " + percentile);
+    }
+
+    long count = count();
+    if(count == 0){
+      return 0.0d;
+    }
+
+    long rank = Math.max(1L, (long)Math.ceil(count * percentile / 100.0d));
+    long accumulated = 0;
+    for(int i = 0; i < buckets.length; i++){
+      accumulated += buckets[i];
+      if(accumulated >= rank){
+        return Math.scalb(1.0d, i) / ticksPerNanos;
+      }
+    }
+    throw new IllegalStateException("Should not reach here");
+  }
+
+}
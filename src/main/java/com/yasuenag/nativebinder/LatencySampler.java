@@ -0,0 +1,220 @@
+/*
+ * Copyright (C) 2025, Yasumasa Suenaga
+ *
+ * This file is part of nativebinder.
+ *
+ * nativebinder is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * nativebinder is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with nativebinder. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.yasuenag.nativebinder;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * Latency sampler which measures C function calls in stubs.
+ * Pass it to {@link BindOption.Sampler}. The stub reads time stamp counter
+ * before and after the call on every Nth call, and records them into the
+ * ring buffer of the binding in native memory. Java drains the ring, and
+ * folds latencies into log-bucketed histogram per {@link Method}.
+ *
+ * Layout of the header of each binding:
+ * <pre>
+ *   +0: countdown to next sample
+ *   +8: address of next entry in the ring
+ *  +16: (reserved)
+ *  +24: sampling interval
+ * </pre>
+ * Each entry in the ring has time stamp counter before the call (+0) and
+ * after the call (+8). The ring is 64KB, and it is aligned to 64KB, so the
+ * stub can wrap the address by restoring upper 6 bytes. The stub wraps it
+ * before publishing to the header, thus the cursor always points to the
+ * entry in the ring.
+ *
+ * The countdown and the cursor are updated without atomic operation.
+ * Samples would be lost if more than {@link #RING_ENTRIES} samples are
+ * recorded between drains, or if threads sample same binding
+ * concurrently. A sample might be taken earlier or later than the
+ * interval in that case.
+ *
+ * @author Yasumasa Suenaga
+ * @see NativeBinder#createLatencySampler(int)
+ */
+public class LatencySampler{
+
+  /**
+   * Offset of countdown to next sample.
+   */
+  public static final long COUNTDOWN_OFFSET = 0;
+
+  /**
+   * Offset of address of next entry in the ring.
+   */
+  public static final long CURSOR_OFFSET = 8;
+
+  /**
+   * Offset of sampling interval.
+   */
+  public static final long INTERVAL_OFFSET = 24;
+
+  /**
+   * Size of the header.
+   */
+  public static final long HEADER_SIZE = 32;
+
+  /**
+   * Size of each entry in the ring.
+   */
+  public static final long ENTRY_SIZE = 16;
+
+  /**
+   * Size of the ring. It should be 64KB.
+   */
+  public static final long RING_SIZE = 0x10000;
+
+  /**
+   * Number of entries in the ring.
+   */
+  public static final int RING_ENTRIES = (int)(RING_SIZE / ENTRY_SIZE);
+
+  /**
+   * Ring buffer of the binding.
+   */
+  private static class Ring{
+
+    private final MemorySegment header;
+
+    private final MemorySegment ring;
+
+    private final long[] buckets;
+
+    private long drained;
+
+    private Ring(MemorySegment header, MemorySegment ring){
+      this.header = header;
+      this.ring = ring;
+      this.buckets = new long[LatencyHistogram.BUCKETS];
+      this.drained = 0;
+    }
+
+    private void drain(){
+      long cursor = (header.get(ValueLayout.JAVA_LONG, CURSOR_OFFSET) - ring.address()) & (RING_SIZE - 1);
+      while(drained != cursor){
+        long start = ring.get(ValueLayout.JAVA_LONG, drained);
+        long end = ring.get(ValueLayout.JAVA_LONG, drained + 8);
+        if(end > start){
+          buckets[LatencyHistogram.bucketOf(end - start)]++;
+        }
+        drained = (drained + ENTRY_SIZE) & (RING_SIZE - 1);
+      }
+    }
+
+  }
+
+  private final int interval;
+
+  private final TimestampCounter counter;
+
+  private final Map<Method, List<Ring>> rings;
+
+  LatencySampler(int interval, TimestampCounter counter){
+    this.interval = interval;
+    this.counter = counter;
+    this.rings = new LinkedHashMap<>();
+  }
+
+  /**
+   * Allocate the header and the ring for the binding.
+   *
+   * @param method Java method of the binding
+   * @return MemorySegment of the header
+   */
+  synchronized MemorySegment register(Method method){
+    var header = Arena.global().allocate(HEADER_SIZE, 16);
+    var ring = Arena.global().allocate(RING_SIZE, RING_SIZE);
+    header.set(ValueLayout.JAVA_LONG, COUNTDOWN_OFFSET, interval);
+    header.set(ValueLayout.JAVA_LONG, CURSOR_OFFSET, ring.address());
+    header.set(ValueLayout.JAVA_LONG, INTERVAL_OFFSET, interval);
+    rings.computeIfAbsent(method, k -> new ArrayList<>()).add(new Ring(header, ring));
+    return header;
+  }
+
+  /**
+   * Get frequency of time stamp counter.
+   * It is calibrated with System.nanoTime() at the first call.
+   *
+   * @return ticks per nanosecond
+   */
+  public double ticksPerNanos(){
+    return counter.ticksPerNanos();
+  }
+
+  /**
+   * Get sampling interval.
+   *
+   * @return the stub samples once per this number of calls
+   */
+  public int interval(){
+    return interval;
+  }
+
+  /**
+   * Drain samples from all rings into histograms.
+   * It should be called often enough to avoid overwriting samples.
+   */
+  public synchronized void drain(){
+    rings.values()
+         .forEach(l -> l.forEach(Ring::drain));
+  }
+
+  /**
+   * Get latency histogram of the method.
+   * Samples in the ring are drained before creating the histogram.
+   *
+   * @param method Java method of the binding
+   * @return snapshot of the histogram. It is empty if the method is not
+   *         bound with this sampler.
+   */
+  public synchronized LatencyHistogram histogram(Method method){
+    var buckets = new long[LatencyHistogram.BUCKETS];
+    for(var ring : rings.getOrDefault(method, List.of())){
+      ring.drain();
+      for(int i = 0; i < buckets.length; i++){
+        buckets[i] += ring.buckets[i];
+      }
+    }
+    return new LatencyHistogram(buckets, ticksPerNanos());
+  }
+
+  /**
+   * Get latency histograms of all methods which are bound with this
+   * sampler.
+   *
+   * @return map of the method and its histogram
+   */
+  public synchronized Map<Method, LatencyHistogram> histograms(){
+    var result = new LinkedHashMap<Method, LatencyHistogram>();
+    for(var method : rings.keySet()){
+      result.put(method, histogram(method));
+    }
+    return result;
+  }
+
+}
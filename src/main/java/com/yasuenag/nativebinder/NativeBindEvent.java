@@ -0,0 +1,56 @@
+/*
+ * Copyright (C) 2025, Yasumasa Suenaga
+ *
+ * This file is part of nativebinder.
+ *
+ * nativebinder is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * nativebinder is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with nativebinder. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.yasuenag.nativebinder;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+
+/**
+ * JFR event for binding C functions to native methods.
+ * Duration of the event includes generating stubs and RegisterNatives().
+ *
+ * @author Yasumasa Suenaga
+ */
+@Name("com.yasuenag.nativebinder.Bind")
+@Label("Native Bind")
+@Category("NativeBinder")
+@Description("Binding C functions to native methods")
+class NativeBindEvent extends Event{
+
+  @Label("Target Class")
+  Class<?> targetClass;
+
+  @Label("Stubs")
+  @Description("Number of generated stubs")
+  int stubs;
+
+  @Label("Code Size")
+  @Description("Total size of generated stubs")
+  @DataAmount
+  long codeSize;
+
+  @Label("With Error Code")
+  boolean withErrorCode;
+
+}
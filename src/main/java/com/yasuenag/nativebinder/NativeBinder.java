@@ -21,14 +21,30 @@ package com.yasuenag.nativebinder;
 import java.lang.foreign.Arena;
 import java.lang.foreign.FunctionDescriptor;
 import java.lang.foreign.Linker;
+import java.lang.foreign.MemoryLayout;
 import java.lang.foreign.MemorySegment;
+import java.lang.foreign.PaddingLayout;
+import java.lang.foreign.StructLayout;
+import java.lang.foreign.SymbolLookup;
 import java.lang.foreign.ValueLayout;
+import java.lang.invoke.MethodHandle;
 import java.lang.invoke.MethodHandles;
 import java.lang.invoke.MethodType;
 import java.lang.ref.Cleaner;
 import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
 
 import com.yasuenag.ffmasm.CodeSegment;
+import com.yasuenag.ffmasm.NativeRegister;
 import com.yasuenag.ffmasm.PlatformException;
 import com.yasuenag.ffmasm.UnsupportedPlatformException;
 
@@ -52,8 +68,150 @@ public abstract class NativeBinder{
    *
    * @param method native (JNI) method to bind.
    * @param seg MemorySegment to hold C function pointer.
+   * @param options additional options for binding.
    */
-  public static record BindMethod(Method method, MemorySegment seg){};
+  public static record BindMethod(Method method, MemorySegment seg, BindOption... options){};
+
+  /**
+   * Record to store method information by name and JNI descriptor.
+   * Reflection is not needed to bind it.
+   *
+   * @param name name of native (JNI) method to bind.
+   * @param descriptor JNI descriptor of the method (e.g. "(IJD)I").
+   * @param seg MemorySegment to hold C function pointer.
+   * @param options additional options for binding.
+   */
+  public static record BindDescriptor(String name, String descriptor, MemorySegment seg, BindOption... options){};
+
+  /**
+   * Record to store information of map binding.
+   * JNI method should take 3 long parameters - address of argument
+   * tuples, address of results, and number of elements. Each tuple has
+   * 8 bytes slot per argument of `signature`, and each result has 8 bytes.
+   * Integral result which is narrower than long is sign-extended to 8
+   * bytes (zero-extended for boolean and char).
+   * The stub calls C function for each tuple in native.
+   *
+   * @param method native (JNI) method to bind.
+   * @param seg MemorySegment to hold C function pointer.
+   * @param signature method which represents the signature of C function.
+   *        It does not need to be native method.
+   * @param options additional options for binding.
+   */
+  public static record MapMethod(Method method, MemorySegment seg, Method signature, BindOption... options){};
+
+  /**
+   * Mechanism to call C function in interface binding.
+   */
+  public static enum Backend{
+    /**
+     * JNI native method which is bound to the stub by NativeBinder.
+     */
+    JNI,
+
+    /**
+     * Downcall handle in FFM with Linker.Option.critical(false).
+     * It skips thread state transition, so it is available for the
+     * function which does not block and does not call back to Java.
+     * Arguments and return value should be primitive.
+     */
+    FFM_CRITICAL,
+
+    /**
+     * Faster one in JNI and FFM_CRITICAL which is chosen by calibration
+     * run with the function which does nothing. JNI is chosen if
+     * FFM_CRITICAL is not available for the signature. The result is
+     * cached per signature in the process.
+     */
+    AUTO;
+  }
+
+  /**
+   * Feature which might not be available on some platforms.
+   * Use {@link #isSupported(Feature)} to check it on current platform.
+   */
+  public static enum Feature{
+    /**
+     * Primitive array argument
+     */
+    ARRAY_ARGUMENT("Primitive array argument"),
+
+    /**
+     * Direct ByteBuffer argument
+     */
+    BUFFER_ARGUMENT("ByteBuffer argument"),
+
+    /**
+     * String argument
+     */
+    STRING_ARGUMENT("String argument"),
+
+    /**
+     * Struct argument by {@link BindOption.StructArg}
+     */
+    STRUCT_ARGUMENT("Struct argument"),
+
+    /**
+     * Native lock by {@link BindOption.Lock}
+     */
+    LOCK("Native lock"),
+
+    /**
+     * Call counters by {@link BindOption.Counter}
+     */
+    COUNTER("Call counters"),
+
+    /**
+     * LatencySampler by {@link BindOption.Sampler}
+     */
+    SAMPLER("LatencySampler"),
+
+    /**
+     * CallTracer by {@link BindOption.Trace}
+     */
+    CALL_TRACER("CallTracer"),
+
+    /**
+     * ScratchBuffer and ScratchArena
+     */
+    SCRATCH_BUFFER("ScratchBuffer"),
+
+    /**
+     * Callback from C
+     */
+    CALLBACK("Callback"),
+
+    /**
+     * Composite binding
+     */
+    COMPOSITE("Composite binding"),
+
+    /**
+     * Map binding
+     */
+    MAP("Map binding"),
+
+    /**
+     * CallBatch
+     */
+    CALL_BATCH("CallBatch"),
+
+    /**
+     * AsyncRing
+     */
+    ASYNC_RING("AsyncRing");
+
+    private final String description;
+
+    private Feature(String description){
+      this.description = description;
+    }
+
+    @Override
+    public String toString(){
+      return description;
+    }
+  }
 
   /**
    * Argument type
@@ -70,6 +228,303 @@ public abstract class NativeBinder{
     FP;
   }
 
+  /**
+   * Source of the argument which is passed to C function.
+   */
+  protected static sealed interface ArgSource{
+
+    /**
+     * Get argument type of this source.
+     *
+     * @return argument type
+     */
+    public ArgType type();
+
+    /**
+     * Argument which is passed from Java.
+     *
+     * @param index index of the parameter in Java method
+     * @param type argument type
+     */
+    public static record Param(int index, ArgType type) implements ArgSource{}
+
+    /**
+     * Constant value which is baked into the stub.
+     *
+     * @param value value to pass
+     */
+    public static record Immediate(long value) implements ArgSource{
+
+      @Override
+      public ArgType type(){
+        return ArgType.INT;
+      }
+
+    }
+
+    /**
+     * Value in per-thread slot which is loaded by the stub.
+     *
+     * @param key key of the slot
+     * @see ThreadContext
+     */
+    public static record ThreadContextValue(int key) implements ArgSource{
+
+      @Override
+      public ArgType type(){
+        return ArgType.INT;
+      }
+
+    }
+
+    /**
+     * Address of per-thread scratch area which is loaded by the stub.
+     *
+     * @param getter function pointer which returns the address
+     * @see ScratchBuffer#getter()
+     */
+    public static record ScratchPointer(long getter) implements ArgSource{
+
+      @Override
+      public ArgType type(){
+        return ArgType.INT;
+      }
+
+    }
+
+    /**
+     * Member of the struct which is passed by value.
+     *
+     * @param index index of the parameter in Java method
+     * @param type argument type of the parameter
+     * @param offset offset in the chunk
+     */
+    public static record PackedField(int index, ArgType type, int offset){}
+
+    /**
+     * Chunk of the struct which is passed by value in one register or
+     * one stack slot. Members in the chunk are packed in the stub.
+     *
+     * @param fields members in the chunk in order of offset
+     * @param type argument type of the chunk
+     * @param struct index of the parameter for 1st member of the struct.
+     *        Chunks in same struct have same value.
+     */
+    public static record Packed(List<PackedField> fields, ArgType type, int struct) implements ArgSource{}
+
+    /**
+     * JNIEnv which is passed to the stub.
+     */
+    public static record Env() implements ArgSource{
+
+      @Override
+      public ArgType type(){
+        return ArgType.INT;
+      }
+
+    }
+
+    /**
+     * Pointer to elements of primitive array which is passed from Java.
+     * The array is pinned by GetPrimitiveArrayCritical() during the call,
+     * and NULL is passed if the array is null.
+     *
+     * @param index index of the parameter in Java method
+     */
+    public static record ArrayElements(int index) implements ArgSource{
+
+      @Override
+      public ArgType type(){
+        return ArgType.INT;
+      }
+
+    }
+
+    /**
+     * Address of direct ByteBuffer which is passed from Java.
+     * It is obtained by GetDirectBufferAddress(), so NULL is passed if
+     * the buffer is not direct buffer or is null.
+     *
+     * @param index index of the parameter in Java method
+     */
+    public static record BufferAddress(int index) implements ArgSource{
+
+      @Override
+      public ArgType type(){
+        return ArgType.INT;
+      }
+
+    }
+
+    /**
+     * Characters of String which is passed from Java.
+     * They are obtained by GetStringUTFChars() as modified UTF-8 which is
+     * terminated by NUL, and they are released after the call.
+     * NULL is passed if the string is null.
+     *
+     * @param index index of the parameter in Java method
+     */
+    public static record StringChars(int index) implements ArgSource{
+
+      @Override
+      public ArgType type(){
+        return ArgType.INT;
+      }
+
+    }
+
+    /**
+     * Return value of previous step in composite binding.
+     *
+     * @param step index of the step
+     * @see CompositeMethod
+     */
+    public static record Result(int step) implements ArgSource{
+
+      @Override
+      public ArgType type(){
+        return ArgType.INT;
+      }
+
+    }
+
+  }
+
+  /**
+   * Argument which is inserted into arguments of C function at `index`.
+   *
+   * @param index position of the argument in C function
+   * @param source source of the argument
+   */
+  private static record InsertedArg(int index, ArgSource source){}
+
+  /**
+   * Information to generate the stub.
+   *
+   * @param name name of native (JNI) method
+   * @param javaArgs argument types of native (JNI) method
+   * @param nativeArgs sources of arguments for C function
+   * @param seg MemorySegment to hold C function pointer.
+   * @param fixedArgs number of fixed arguments if C function is variadic,
+   *        or -1 if not.
+   * @param lock lock to hold while C function is called, or null
+   * @param counter counter in 1st stripe of {@link CallCounters} which
+   *        should be incremented in each call, or null
+   * @param sampler header of {@link LatencySampler} for the binding, or null
+   * @param trace trace point of {@link CallTracer} for the binding, or null
+   */
+  protected static record StubTarget(String name, ArgType[] javaArgs, ArgSource[] nativeArgs, MemorySegment seg, int fixedArgs, NativeLock lock, MemorySegment counter, MemorySegment sampler, TracePoint trace){}
+
+  /**
+   * Information to record calls into {@link CallTracer}.
+   *
+   * @param getter function pointer which returns the ring of current thread
+   * @param id id of the binding in the tracer
+   */
+  protected static record TracePoint(MemorySegment getter, int id){}
+
+  /**
+   * Information to generate the callback stub.
+   *
+   * @param name name of Java method
+   * @param args argument types of Java method
+   * @param vm address of JavaVM
+   * @param clazz global reference of the class which has Java method
+   * @param methodID jmethodID of Java method
+   * @param index index of CallStatic&lt;Type&gt;MethodA() in JNI function table
+   * @param attached ThreadContext which is set to 1 in the thread which is
+   *        attached by the callback stub
+   */
+  protected static record CallbackTarget(String name, ArgType[] args, long vm, long clazz, long methodID, int index, ThreadContext attached){}
+
+  /**
+   * Index of ExceptionDescribe() in JNI function table.
+   */
+  protected static final int JNI_EXCEPTION_DESCRIBE = 16;
+
+  /**
+   * Index of ExceptionClear() in JNI function table.
+   */
+  protected static final int JNI_EXCEPTION_CLEAR = 17;
+
+  /**
+   * Index of NewGlobalRef() in JNI function table.
+   */
+  protected static final int JNI_NEW_GLOBAL_REF = 21;
+
+  /**
+   * Index of DeleteGlobalRef() in JNI function table.
+   */
+  protected static final int JNI_DELETE_GLOBAL_REF = 22;
+
+  /**
+   * Index of GetStaticMethodID() in JNI function table.
+   */
+  protected static final int JNI_GET_STATIC_METHOD_ID = 113;
+
+  /**
+   * Index of CallStaticObjectMethodA() in JNI function table.
+   * CallStatic&lt;Type&gt;MethodA() for other types follow it at intervals
+   * of 3 in order of Object, Boolean, Byte, Char, Short, Int, Long, Float,
+   * Double, and Void.
+   */
+  protected static final int JNI_CALL_STATIC_OBJECT_METHOD_A = 116;
+
+  /**
+   * Index of GetStringUTFChars() in JNI function table.
+   */
+  protected static final int JNI_GET_STRING_UTF_CHARS = 169;
+
+  /**
+   * Index of ReleaseStringUTFChars() in JNI function table.
+   */
+  protected static final int JNI_RELEASE_STRING_UTF_CHARS = 170;
+
+  /**
+   * Index of RegisterNatives() in JNI function table.
+   */
+  protected static final int JNI_REGISTER_NATIVES = 215;
+
+  /**
+   * Index of GetJavaVM() in JNI function table.
+   */
+  protected static final int JNI_GET_JAVA_VM = 219;
+
+  /**
+   * Index of GetPrimitiveArrayCritical() in JNI function table.
+   */
+  protected static final int JNI_GET_PRIMITIVE_ARRAY_CRITICAL = 222;
+
+  /**
+   * Index of ReleasePrimitiveArrayCritical() in JNI function table.
+   */
+  protected static final int JNI_RELEASE_PRIMITIVE_ARRAY_CRITICAL = 223;
+
+  /**
+   * Index of ExceptionCheck() in JNI function table.
+   */
+  protected static final int JNI_EXCEPTION_CHECK = 228;
+
+  /**
+   * Index of GetDirectBufferAddress() in JNI function table.
+   */
+  protected static final int JNI_GET_DIRECT_BUFFER_ADDRESS = 230;
+
+  /**
+   * Index of GetEnv() in JNI invocation interface (JavaVM).
+   */
+  protected static final int JAVA_VM_GET_ENV = 6;
+
+  /**
+   * Index of AttachCurrentThreadAsDaemon() in JNI invocation interface (JavaVM).
+   */
+  protected static final int JAVA_VM_ATTACH_CURRENT_THREAD_AS_DAEMON = 7;
+
+  /**
+   * JNI_VERSION_1_8 to pass to GetEnv().
+   */
+  protected static final int JNI_VERSION_1_8 = 0x00010008;
+
   protected static CodeSegment seg = null;
 
   /**
@@ -79,6 +534,29 @@ public abstract class NativeBinder{
 
   private static final ThreadLocal<Integer> threadLocalErrorCode = new ThreadLocal<>();
 
+  private static boolean batchDispatcherBound = false;
+
+  private static boolean registerNativesBound = false;
+
+  private static boolean callbackSupportBound = false;
+
+  /**
+   * Address of JavaVM. It is obtained when the first callback is created.
+   */
+  private static long javaVM = 0L;
+
+  /**
+   * Per-thread flag which is set by callback stubs when they attach
+   * native thread to JVM.
+   */
+  private static ThreadContext callbackAttached = null;
+
+  /**
+   * Global references of the class for each callback.
+   * The key is the address of the callback stub.
+   */
+  private static final Map<Long, Long> callbackRefs = new HashMap<>();
+
   private static void errorCodeCallback(int errcode){
     threadLocalErrorCode.set(errcode);
   }
@@ -93,6 +571,25 @@ public abstract class NativeBinder{
     return threadLocalErrorCode.get();
   }
 
+  /**
+   * Get raw value of error code in previous call on current thread.
+   *
+   * @return error code, or null if it is not set
+   */
+  static Integer getErrorCode(){
+    return threadLocalErrorCode.get();
+  }
+
+  /**
+   * Set error code on current thread.
+   * It is used to propagate error code from other thread.
+   *
+   * @param errcode error code, or null to clear
+   */
+  static void setErrorCode(Integer errcode){
+    threadLocalErrorCode.set(errcode);
+  }
+
   private static void init() throws PlatformException, UnsupportedPlatformException{
     if(seg == null){
       seg = new CodeSegment();
@@ -134,35 +631,587 @@ public abstract class NativeBinder{
   }
 
   /**
-   * Check integer class or not.
+   * Get features which are available on this platform.
+   * This is the only place where the platform declares its limitation.
+   * Public APIs check it before generating any code, and protected
+   * generator of the feature which is not declared here is never called.
+   * All of features are available by default, so the platform which
+   * lacks some of them should override this method.
    *
-   * @param cls to check
-   * @return true if integer class
+   * @return set of available features
    */
-  protected boolean isIntegerClass(Class<?> cls){
-    return cls.equals(boolean.class) ||
-           cls.equals(byte.class) ||
-           cls.equals(char.class) ||
-           cls.equals(short.class) ||
-           cls.equals(int.class) ||
-           cls.equals(long.class);
+  protected Set<Feature> supportedFeatures(){
+    return EnumSet.allOf(Feature.class);
   }
 
   /**
-   * Check floating point class or not.
+   * Check whether the feature is available on this platform.
    *
-   * @param cls to check
-   * @return true if floating point class
+   * @param feature feature to check
+   * @return true if the feature is available
    */
-  protected boolean isFloatingPointClass(Class<?> cls){
-    return cls.equals(float.class) || cls.equals(double.class);
+  public boolean isSupported(Feature feature){
+    return supportedFeatures().contains(feature);
   }
 
   /**
-   * Bind C functions to JNI methods.
+   * Check the feature is available on this platform.
    *
-   * @param targetClass to hold JNI methods
-   * @param bindMethods array of binding information
+   * @param feature feature to check
+   * @throws UnsupportedOperationException thrown when the feature is not
+   *         available on this platform.
+   */
+  protected void checkSupported(Feature feature){
+    if(!isSupported(feature)){
+      throw unsupported(feature);
+    }
+  }
+
+  private static UnsupportedOperationException unsupported(Object feature){
+    return new UnsupportedOperationException(feature + " is not supported on this platform");
+  }
+
+  /**
+   * Check features which are required by binding options.
+   * It should be called before options are processed because some of
+   * them allocate resources for the binding.
+   *
+   * @param options additional options for binding
+   * @throws UnsupportedOperationException thrown when the option is not
+   *         available on this platform.
+   */
+  private void checkSupported(BindOption[] options){
+    for(var option : options){
+      switch(option){
+        case BindOption.StructArg arg -> checkSupported(Feature.STRUCT_ARGUMENT);
+        case BindOption.ScratchArg arg -> checkSupported(Feature.SCRATCH_BUFFER);
+        case BindOption.Lock lock -> checkSupported(Feature.LOCK);
+        case BindOption.Counter counter -> checkSupported(Feature.COUNTER);
+        case BindOption.Sampler sampler -> checkSupported(Feature.SAMPLER);
+        case BindOption.Trace trace -> checkSupported(Feature.CALL_TRACER);
+        default -> {} // available on all platforms
+      }
+    }
+  }
+
+  /**
+   * Check features which are required by arguments for C function.
+   *
+   * @param nativeArgs sources of arguments for C function
+   * @throws UnsupportedOperationException thrown when the argument is not
+   *         available on this platform.
+   */
+  private void checkSupported(ArgSource[] nativeArgs){
+    for(var arg : nativeArgs){
+      switch(arg){
+        case ArgSource.ArrayElements array -> checkSupported(Feature.ARRAY_ARGUMENT);
+        case ArgSource.BufferAddress buffer -> checkSupported(Feature.BUFFER_ARGUMENT);
+        case ArgSource.StringChars str -> checkSupported(Feature.STRING_ARGUMENT);
+        default -> {} // available on all platforms
+      }
+    }
+  }
+
+  /**
+   * Check integer class or not.
+   *
+   * @param cls to check
+   * @return true if integer class
+   */
+  protected boolean isIntegerClass(Class<?> cls){
+    return cls.equals(boolean.class) ||
+           cls.equals(byte.class) ||
+           cls.equals(char.class) ||
+           cls.equals(short.class) ||
+           cls.equals(int.class) ||
+           cls.equals(long.class);
+  }
+
+  /**
+   * Check floating point class or not.
+   *
+   * @param cls to check
+   * @return true if floating point class
+   */
+  protected boolean isFloatingPointClass(Class<?> cls){
+    return cls.equals(float.class) || cls.equals(double.class);
+  }
+
+  /**
+   * Check primitive array class or not.
+   *
+   * @param cls to check
+   * @return true if primitive array class (e.g. byte[])
+   */
+  protected boolean isPrimitiveArrayClass(Class<?> cls){
+    return cls.isArray() && cls.getComponentType().isPrimitive();
+  }
+
+  /**
+   * Check ByteBuffer class or not.
+   *
+   * @param cls to check
+   * @return true if ByteBuffer or its subclass
+   */
+  protected boolean isByteBufferClass(Class<?> cls){
+    return ByteBuffer.class.isAssignableFrom(cls);
+  }
+
+  /**
+   * Check String class or not.
+   *
+   * @param cls to check
+   * @return true if String class
+   */
+  protected boolean isStringClass(Class<?> cls){
+    return cls.equals(String.class);
+  }
+
+  /**
+   * Get argument type of the class.
+   *
+   * @param cls to check
+   * @return argument type
+   * @throws IllegalArgumentException thrown when the class is not supported
+   */
+  protected ArgType getArgType(Class<?> cls){
+    if(isIntegerClass(cls)){
+      return ArgType.INT;
+    }
+    else if(isFloatingPointClass(cls)){
+      return ArgType.FP;
+    }
+    else{
+      throw new IllegalArgumentException("Unsupported argument type: " + cls.getName());
+    }
+  }
+
+  /**
+   * Get argument types of Java method.
+   *
+   * @param method to check
+   * @return argument types
+   */
+  protected ArgType[] getArgTypes(Method method){
+    var argTypes = method.getParameterTypes();
+    var result = new ArgType[argTypes.length];
+    for(int i = 0; i < argTypes.length; i++){
+      result[i] = getArgType(argTypes[i]);
+    }
+    return result;
+  }
+
+  /**
+   * Get argument types of JNI method.
+   * Reference which is converted to the pointer in the stub (primitive
+   * array, ByteBuffer and String) is passed as INT because it is jobject.
+   *
+   * @param paramTypes parameter types of Java method
+   * @return argument types
+   * @throws IllegalArgumentException thrown when the class is not supported
+   */
+  protected ArgType[] getJNIArgTypes(Class<?>[] paramTypes){
+    var result = new ArgType[paramTypes.length];
+    for(int i = 0; i < paramTypes.length; i++){
+      boolean isReference = isPrimitiveArrayClass(paramTypes[i]) ||
+                            isByteBufferClass(paramTypes[i]) ||
+                            isStringClass(paramTypes[i]);
+      result[i] = isReference ? ArgType.INT : getArgType(paramTypes[i]);
+    }
+    return result;
+  }
+
+  private static Class<?> getPrimitiveClass(char type){
+    return switch(type){
+      case 'Z' -> boolean.class;
+      case 'B' -> byte.class;
+      case 'C' -> char.class;
+      case 'S' -> short.class;
+      case 'I' -> int.class;
+      case 'J' -> long.class;
+      case 'F' -> float.class;
+      case 'D' -> double.class;
+      default -> null;
+    };
+  }
+
+  /**
+   * Get parameter types from JNI descriptor.
+   *
+   * @param descriptor JNI descriptor (e.g. "(IJD)I")
+   * @return parameter types
+   * @throws IllegalArgumentException thrown when the descriptor is invalid
+   *         or it contains unsupported type.
+   */
+  protected Class<?>[] getParamTypes(String descriptor){
+    if(!descriptor.startsWith("(") || (descriptor.indexOf(')') < 0)){
+      throw new IllegalArgumentException("Invalid descriptor: " + descriptor);
+    }
+
+    var result = new ArrayList<Class<?>>();
+    int end = descriptor.indexOf(')');
+    for(int i = 1; i < end; i++){
+      if(descriptor.charAt(i) == 'L'){
+        int semicolon = descriptor.indexOf(';', i);
+        if((semicolon < 0) || (semicolon > end)){
+          throw new IllegalArgumentException("Invalid descriptor: " + descriptor);
+        }
+        var className = descriptor.substring(i + 1, semicolon);
+        result.add(switch(className){
+          case "java/nio/ByteBuffer" -> ByteBuffer.class;
+          case "java/lang/String" -> String.class;
+          default -> throw new IllegalArgumentException("Unsupported argument type in " + descriptor + ": " + className);
+        });
+        i = semicolon;
+        continue;
+      }
+
+      boolean isArray = descriptor.charAt(i) == '[';
+      if(isArray){
+        i++;
+      }
+
+      var cls = getPrimitiveClass(descriptor.charAt(i));
+      if(cls == null){
+        throw new IllegalArgumentException("Unsupported argument type in " + descriptor + ": " + descriptor.charAt(i));
+      }
+      result.add(isArray ? cls.arrayType() : cls);
+    }
+    return result.toArray(new Class<?>[0]);
+  }
+
+  /**
+   * Get argument types from JNI descriptor.
+   *
+   * @param descriptor JNI descriptor (e.g. "(IJD)I")
+   * @return argument types
+   * @throws IllegalArgumentException thrown when the descriptor is invalid
+   *         or it contains unsupported type.
+   */
+  protected ArgType[] getArgTypes(String descriptor){
+    return getJNIArgTypes(getParamTypes(descriptor));
+  }
+
+  /**
+   * Replace arguments which are references from Java (primitive array,
+   * ByteBuffer and String) with the source which converts them to
+   * pointers in the stub.
+   *
+   * @param sources sources of arguments for C function
+   * @param paramTypes parameter types of Java method
+   * @return sources of arguments for C function
+   */
+  protected ArgSource[] resolveReferenceArgs(ArgSource[] sources, Class<?>[] paramTypes){
+    var result = sources.clone();
+    for(int i = 0; i < result.length; i++){
+      if(result[i] instanceof ArgSource.Param param){
+        if(isPrimitiveArrayClass(paramTypes[param.index()])){
+          result[i] = new ArgSource.ArrayElements(param.index());
+        }
+        else if(isByteBufferClass(paramTypes[param.index()])){
+          result[i] = new ArgSource.BufferAddress(param.index());
+        }
+        else if(isStringClass(paramTypes[param.index()])){
+          result[i] = new ArgSource.StringChars(param.index());
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Create information to generate the stub from BindMethod.
+   *
+   * @param bindMethod binding information
+   * @return information to generate the stub
+   */
+  protected StubTarget createStubTarget(BindMethod bindMethod){
+    checkSupported(bindMethod.options());
+    var paramTypes = bindMethod.method().getParameterTypes();
+    var javaArgs = getJNIArgTypes(paramTypes);
+    var nativeArgs = resolveReferenceArgs(createArgSources(javaArgs, bindMethod.options()), paramTypes);
+    checkSupported(nativeArgs);
+    return new StubTarget(bindMethod.method().getName(), javaArgs, nativeArgs, bindMethod.seg(), getFixedArgs(nativeArgs, paramTypes, bindMethod.options()), getLock(bindMethod.options()), getCounter(bindMethod.method(), bindMethod.options()), getSampler(bindMethod.method(), bindMethod.options()), getTracePoint(bindMethod.method(), bindMethod.options()));
+  }
+
+  /**
+   * Create information to generate the stub from BindDescriptor.
+   *
+   * @param bindDescriptor binding information
+   * @return information to generate the stub
+   */
+  protected StubTarget createStubTarget(BindDescriptor bindDescriptor){
+    var paramTypes = getParamTypes(bindDescriptor.descriptor());
+    var javaArgs = getJNIArgTypes(paramTypes);
+    for(var option : bindDescriptor.options()){
+      if((option instanceof BindOption.Counter) || (option instanceof BindOption.Sampler) || (option instanceof BindOption.Trace)){
+        throw new IllegalArgumentException(option.getClass().getSimpleName() + " is not available for BindDescriptor: " + bindDescriptor.name());
+      }
+    }
+
+    checkSupported(bindDescriptor.options());
+
+    var nativeArgs = resolveReferenceArgs(createArgSources(javaArgs, bindDescriptor.options()), paramTypes);
+    checkSupported(nativeArgs);
+    return new StubTarget(bindDescriptor.name(), javaArgs, nativeArgs, bindDescriptor.seg(), getFixedArgs(nativeArgs, paramTypes, bindDescriptor.options()), getLock(bindDescriptor.options()), null, null, null);
+  }
+
+  /**
+   * Get number of fixed arguments of variadic C function.
+   *
+   * @param nativeArgs sources of arguments for C function
+   * @param paramTypes parameter types of Java method
+   * @param options additional options for binding
+   * @return number of fixed arguments, or -1 if C function is not variadic
+   * @throws IllegalArgumentException thrown when the number is out of
+   *         arguments, or float is passed as variadic argument
+   */
+  protected int getFixedArgs(ArgSource[] nativeArgs, Class<?>[] paramTypes, BindOption[] options){
+    for(var option : options){
+      if(option instanceof BindOption.Variadic variadic){
+        if((variadic.fixedArgs() < 0) || (variadic.fixedArgs() > nativeArgs.length)){
+          throw new IllegalArgumentException("Invalid number of fixed args: " + variadic.fixedArgs());
+        }
+        // float in variadic arguments is promoted to double in C, but the
+        // stub passes it as single precision value.
+        for(int i = variadic.fixedArgs(); i < nativeArgs.length; i++){
+          if((nativeArgs[i] instanceof ArgSource.Param param) && paramTypes[param.index()].equals(float.class)){
+            throw new IllegalArgumentException("float cannot be passed as variadic argument (declare double): parameter " + param.index());
+          }
+        }
+        return variadic.fixedArgs();
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Get the lock which is held while C function is called.
+   *
+   * @param options additional options for binding
+   * @return the lock, or null if it is not specified
+   */
+  protected NativeLock getLock(BindOption[] options){
+    for(var option : options){
+      if(option instanceof BindOption.Lock lock){
+        return lock.lock();
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Allocate the counter which is incremented by the stub.
+   *
+   * @param method Java method of the binding
+   * @param options additional options for binding
+   * @return the counter in 1st stripe, or null if it is not specified
+   */
+  protected MemorySegment getCounter(Method method, BindOption[] options){
+    for(var option : options){
+      if(option instanceof BindOption.Counter counter){
+        return counter.counters().register(method);
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Allocate the ring of latency sampler for the binding.
+   *
+   * @param method Java method of the binding
+   * @param options additional options for binding
+   * @return the header of the ring, or null if it is not specified
+   */
+  protected MemorySegment getSampler(Method method, BindOption[] options){
+    for(var option : options){
+      if(option instanceof BindOption.Sampler sampler){
+        return sampler.sampler().register(method);
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Assign the id of the binding in the tracer.
+   *
+   * @param method Java method of the binding
+   * @param options additional options for binding
+   * @return the trace point, or null if the tracer is not specified
+   */
+  protected TracePoint getTracePoint(Method method, BindOption[] options){
+    for(var option : options){
+      if(option instanceof BindOption.Trace trace){
+        return new TracePoint(trace.tracer().getter(), trace.tracer().register(method));
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Create list of arguments for C function.
+   * Arguments from Java and constant values in BindOption are
+   * merged in order of C function call.
+   *
+   * @param bindMethod binding information
+   * @return sources of arguments for C function
+   */
+  protected ArgSource[] createArgSources(BindMethod bindMethod){
+    return createArgSources(getArgTypes(bindMethod.method()), bindMethod.options());
+  }
+
+  /**
+   * Create list of arguments for C function.
+   *
+   * @param javaArgs argument types of Java method
+   * @param options additional options for binding
+   * @return sources of arguments for C function
+   */
+  protected ArgSource[] createArgSources(ArgType[] javaArgs, BindOption[] options){
+    var leading = new ArrayList<ArgSource>();
+    var trailing = new ArrayList<ArgSource>();
+    var inserted = new ArrayList<InsertedArg>();
+    var structs = new HashMap<Integer, StructLayout>();
+
+    for(var option : options){
+      switch(option){
+        case BindOption.LeadingArgs args -> {
+          for(var value : args.values()){
+            leading.add(new ArgSource.Immediate(value));
+          }
+        }
+        case BindOption.TrailingArgs args -> {
+          for(var value : args.values()){
+            trailing.add(new ArgSource.Immediate(value));
+          }
+        }
+        case BindOption.ThreadContextArg arg -> inserted.add(new InsertedArg(arg.index(), new ArgSource.ThreadContextValue(arg.context().key())));
+        case BindOption.ScratchArg arg -> inserted.add(new InsertedArg(arg.index(), new ArgSource.ScratchPointer(arg.scratch().getter().address())));
+        case BindOption.StructArg arg -> structs.put(arg.param(), arg.layout());
+        case BindOption.Variadic variadic -> {} // It does not affect arguments
+        case BindOption.Lock lock -> {} // It does not affect arguments
+        case BindOption.Counter counter -> {} // It does not affect arguments
+        case BindOption.Sampler sampler -> {} // It does not affect arguments
+        case BindOption.Trace trace -> {} // It does not affect arguments
+      }
+    }
+
+    var sources = new ArrayList<ArgSource>(leading);
+    for(int i = 0; i < javaArgs.length; i++){
+      var layout = structs.remove(i);
+      if(layout == null){
+        sources.add(new ArgSource.Param(i, javaArgs[i]));
+      }
+      else{
+        var fields = createPackedFields(javaArgs, i, layout);
+        sources.addAll(Arrays.asList(packStruct(layout, fields)));
+        i += fields.size() - 1;
+      }
+    }
+    if(!structs.isEmpty()){
+      throw new IllegalArgumentException("Invalid param of StructArg: " + structs.keySet());
+    }
+    sources.addAll(trailing);
+
+    // Insert from lower index because the index is the position in
+    // final arguments.
+    inserted.sort((a, b) -> Integer.compare(a.index(), b.index()));
+    for(var arg : inserted){
+      if((arg.index() < 0) || (arg.index() > sources.size())){
+        throw new IllegalArgumentException("Invalid index of " + ((arg.source() instanceof ArgSource.ScratchPointer) ? "ScratchArg" : "ThreadContextArg") + ": " + arg.index());
+      }
+      sources.add(arg.index(), arg.source());
+    }
+
+    return sources.toArray(new ArgSource[0]);
+  }
+
+  /**
+   * Create members of the struct which is passed by value.
+   * Offset of each member is the offset in the struct.
+   *
+   * @param javaArgs argument types of Java method
+   * @param param index of the parameter for 1st member
+   * @param layout layout of the struct
+   * @return members of the struct
+   * @throws IllegalArgumentException thrown when parameters do not match
+   *         with the layout
+   */
+  private List<ArgSource.PackedField> createPackedFields(ArgType[] javaArgs, int param, StructLayout layout){
+    var fields = new ArrayList<ArgSource.PackedField>();
+    int offset = 0;
+    for(var member : layout.memberLayouts()){
+      if(member instanceof ValueLayout value){
+        int index = param + fields.size();
+        var carrier = value.carrier();
+        var type = (carrier.equals(float.class) || carrier.equals(double.class)) ? ArgType.FP : ArgType.INT;
+        if((index >= javaArgs.length) || (javaArgs[index] != type)){
+          throw new IllegalArgumentException("Parameter " + index + " does not match with " + value + " in " + layout);
+        }
+        fields.add(new ArgSource.PackedField(index, type, offset));
+      }
+      else if(!(member instanceof PaddingLayout)){
+        throw new IllegalArgumentException("Unsupported member in struct: " + member);
+      }
+      offset += (int)member.byteSize();
+    }
+
+    if(fields.isEmpty()){
+      throw new IllegalArgumentException("No member in " + layout);
+    }
+    return fields;
+  }
+
+  /**
+   * Split the struct which is passed by value into chunks along with
+   * calling convention. Offset of PackedField in the chunk is the offset
+   * in the chunk.
+   *
+   * @param layout layout of the struct
+   * @param fields members of the struct. Offset is the offset in the struct.
+   * @return chunks of the struct
+   * @throws IllegalArgumentException thrown when the struct cannot be
+   *         passed by value in registers or stack slots.
+   * @throws UnsupportedOperationException thrown when the platform does
+   *         not support it.
+   */
+  protected ArgSource[] packStruct(StructLayout layout, List<ArgSource.PackedField> fields){
+    throw unsupported(Feature.STRUCT_ARGUMENT);
+  }
+
+  /**
+   * Create list of arguments for the step in composite binding.
+   *
+   * @param compositeMethod composite binding information
+   * @param step index of the step
+   * @return sources of arguments for C function in the step
+   */
+  protected ArgSource[] createArgSources(CompositeMethod compositeMethod, int step){
+    var javaArgs = getArgTypes(compositeMethod.method());
+    var args = compositeMethod.steps()[step].args();
+    var sources = new ArgSource[args.length];
+
+    for(int i = 0; i < args.length; i++){
+      sources[i] = switch(args[i]){
+        case CompositeMethod.Arg.Param param -> new ArgSource.Param(param.index(), javaArgs[param.index()]);
+        case CompositeMethod.Arg.Constant constant -> new ArgSource.Immediate(constant.value());
+        case CompositeMethod.Arg.Result result -> {
+          if((result.step() < 0) || (result.step() >= step)){
+            throw new IllegalArgumentException("Step " + step + " cannot refer the result of step " + result.step());
+          }
+          yield new ArgSource.Result(result.step());
+        }
+      };
+    }
+
+    return sources;
+  }
+
+  /**
+   * Bind C functions to JNI methods.
+   *
+   * @param targetClass to hold JNI methods
+   * @param bindMethods array of binding information
    */
   public abstract void bind(Class<?> targetClass, BindMethod[] bindMethods) throws Throwable;
 
@@ -175,4 +1224,1138 @@ public abstract class NativeBinder{
    */
   public abstract void bindWithErrorCode(Class<?> targetClass, BindMethod[] bindMethods) throws Throwable;
 
+  /**
+   * Generate the stub to call C function.
+   *
+   * @param target information to generate the stub
+   * @param withErrorCode true if error code should be obtained
+   * @return MemorySegment of the stub
+   * @throws UnsupportedOperationException thrown when the platform does
+   *         not support binding by JNI descriptor.
+   */
+  protected MemorySegment generateStub(StubTarget target, boolean withErrorCode) throws Throwable{
+    throw unsupported("Stub generation");
+  }
+
+  /**
+   * Generate the stub which calls JNI function with arguments from Java.
+   * JNIEnv which is passed to the stub is used as 1st argument.
+   *
+   * @param javaArgs argument types of Java method
+   * @param index index of the function in JNI function table
+   * @return MemorySegment of the stub
+   * @throws UnsupportedOperationException thrown when the platform does
+   *         not support it.
+   */
+  protected MemorySegment generateJNIFunctionStub(ArgType[] javaArgs, int index) throws Throwable{
+    throw unsupported("JNI function stub");
+  }
+
+  /**
+   * Call RegisterNatives() in JNI.
+   * This method is bound to the stub which calls RegisterNatives() directly.
+   *
+   * @param cls class which has native methods
+   * @param methods address of array of JNINativeMethod
+   * @param count number of methods
+   * @return result of RegisterNatives()
+   */
+  private static native int registerNatives0(Class<?> cls, long methods, int count);
+
+  private void registerNatives(Class<?> targetClass, BindDescriptor[] bindDescriptors, MemorySegment[] stubs) throws Throwable{
+    synchronized(NativeBinder.class){
+      if(!registerNativesBound){
+        var stub = generateJNIFunctionStub(new ArgType[]{ArgType.INT, ArgType.INT, ArgType.INT}, JNI_REGISTER_NATIVES);
+        var method = NativeBinder.class.getDeclaredMethod("registerNatives0", Class.class, long.class, int.class);
+        NativeRegister.create(NativeBinder.class)
+                      .registerNatives(Map.of(method, stub));
+        registerNativesBound = true;
+      }
+    }
+
+    // struct JNINativeMethod{ char *name; char *signature; void *fnPtr; }
+    try(var arena = Arena.ofConfined()){
+      var methods = arena.allocate(ValueLayout.ADDRESS.byteSize() * 3 * bindDescriptors.length, 8);
+      for(int i = 0; i < bindDescriptors.length; i++){
+        methods.setAtIndex(ValueLayout.ADDRESS, (3 * i), arena.allocateFrom(bindDescriptors[i].name()));
+        methods.setAtIndex(ValueLayout.ADDRESS, (3 * i) + 1, arena.allocateFrom(bindDescriptors[i].descriptor()));
+        methods.setAtIndex(ValueLayout.ADDRESS, (3 * i) + 2, stubs[i]);
+      }
+
+      int result = registerNatives0(targetClass, methods.address(), bindDescriptors.length);
+      if(result != 0){
+        throw new IllegalStateException("RegisterNatives() failed: " + result);
+      }
+    }
+  }
+
+  private void bindDescriptorsInner(Class<?> targetClass, BindDescriptor[] bindDescriptors, boolean withErrorCode) throws Throwable{
+    var event = new NativeBindEvent();
+    event.begin();
+
+    var stubs = new MemorySegment[bindDescriptors.length];
+    for(int i = 0; i < bindDescriptors.length; i++){
+      stubs[i] = generateStub(createStubTarget(bindDescriptors[i]), withErrorCode);
+    }
+    registerNatives(targetClass, bindDescriptors, stubs);
+
+    commitBindEvent(event, targetClass, stubs, withErrorCode);
+  }
+
+  private static void commitBindEvent(NativeBindEvent event, Class<?> targetClass, MemorySegment[] stubs, boolean withErrorCode){
+    event.end();
+    if(event.shouldCommit()){
+      event.targetClass = targetClass;
+      event.stubs = stubs.length;
+      event.codeSize = Arrays.stream(stubs)
+                             .mapToLong(MemorySegment::byteSize)
+                             .sum();
+      event.withErrorCode = withErrorCode;
+      event.commit();
+    }
+  }
+
+  /**
+   * Generate stubs for bindMethods, and register them to native methods.
+   * JFR event ({@code com.yasuenag.nativebinder.Bind}) is emitted with
+   * duration, number of stubs, and total size of them.
+   *
+   * @param targetClass to hold native methods
+   * @param bindMethods array of binding information
+   * @param withErrorCode true if error code should be obtained
+   */
+  protected void bindMethodsInner(Class<?> targetClass, BindMethod[] bindMethods, boolean withErrorCode) throws Throwable{
+    var event = new NativeBindEvent();
+    event.begin();
+
+    var stubs = new MemorySegment[bindMethods.length];
+    var methodMap = new HashMap<Method, MemorySegment>();
+    for(int i = 0; i < bindMethods.length; i++){
+      stubs[i] = generateStub(createStubTarget(bindMethods[i]), withErrorCode);
+      methodMap.put(bindMethods[i].method(), stubs[i]);
+    }
+    NativeRegister.create(targetClass)
+                  .registerNatives(methodMap);
+
+    commitBindEvent(event, targetClass, stubs, withErrorCode);
+  }
+
+  /**
+   * Bind C functions to JNI methods by name and JNI descriptor.
+   * Reflection is not used, and RegisterNatives() is called with them directly.
+   *
+   * @param targetClass to hold JNI methods
+   * @param bindDescriptors array of binding information
+   */
+  public void bind(Class<?> targetClass, BindDescriptor[] bindDescriptors) throws Throwable{
+    bindDescriptorsInner(targetClass, bindDescriptors, false);
+  }
+
+  /**
+   * Bind C functions to JNI methods by name and JNI descriptor.
+   * Error code (errno in Linux, GetLastError() in Windows) can be obtained.
+   *
+   * @param targetClass to hold JNI methods
+   * @param bindDescriptors array of binding information
+   */
+  public void bindWithErrorCode(Class<?> targetClass, BindDescriptor[] bindDescriptors) throws Throwable{
+    bindDescriptorsInner(targetClass, bindDescriptors, true);
+  }
+
+  /**
+   * Bind C functions to JNI methods as composite binding.
+   * Each JNI method calls several C functions in one JNI call.
+   *
+   * @param targetClass to hold JNI methods
+   * @param compositeMethods array of composite binding information
+   * @throws UnsupportedOperationException thrown when the platform does
+   *         not support composite binding.
+   */
+  public void bindComposite(Class<?> targetClass, CompositeMethod[] compositeMethods) throws Throwable{
+    bindCompositeInner(targetClass, compositeMethods, false);
+  }
+
+  /**
+   * Bind C functions to JNI methods as composite binding.
+   * Error code (errno in Linux, GetLastError() in Windows) of the last
+   * called step can be obtained.
+   *
+   * @param targetClass to hold JNI methods
+   * @param compositeMethods array of composite binding information
+   * @throws UnsupportedOperationException thrown when the platform does
+   *         not support composite binding.
+   */
+  public void bindCompositeWithErrorCode(Class<?> targetClass, CompositeMethod[] compositeMethods) throws Throwable{
+    bindCompositeInner(targetClass, compositeMethods, true);
+  }
+
+  private void bindCompositeInner(Class<?> targetClass, CompositeMethod[] compositeMethods, boolean withErrorCode) throws Throwable{
+    checkSupported(Feature.COMPOSITE);
+    var event = new NativeBindEvent();
+    event.begin();
+
+    var stubs = new MemorySegment[compositeMethods.length];
+    var methodMap = new HashMap<Method, MemorySegment>();
+    for(int i = 0; i < compositeMethods.length; i++){
+      if(compositeMethods[i].steps().length == 0){
+        throw new IllegalArgumentException("No step in " + compositeMethods[i].method().getName());
+      }
+      stubs[i] = generateCompositeStub(compositeMethods[i], withErrorCode);
+      methodMap.put(compositeMethods[i].method(), stubs[i]);
+    }
+    NativeRegister.create(targetClass)
+                  .registerNatives(methodMap);
+
+    commitBindEvent(event, targetClass, stubs, withErrorCode);
+  }
+
+  /**
+   * Generate stub for composite binding.
+   *
+   * @param compositeMethod composite binding information
+   * @param withErrorCode true if error code should be obtained
+   * @return MemorySegment of the stub
+   * @throws UnsupportedOperationException thrown when the platform does
+   *         not support composite binding.
+   */
+  protected MemorySegment generateCompositeStub(CompositeMethod compositeMethod, boolean withErrorCode) throws Throwable{
+    throw unsupported(Feature.COMPOSITE);
+  }
+
+  private static final int CALIBRATION_WARMUP = 20_000;
+
+  private static final int CALIBRATION_ITERATIONS = 100_000;
+
+  /**
+   * Generate the function which does nothing and returns 0.
+   * It is used for calibration of interface binding.
+   *
+   * @return MemorySegment of the function
+   * @throws UnsupportedOperationException thrown when the platform does
+   *         not support it.
+   */
+  protected MemorySegment generateCalibrationTarget() throws Throwable{
+    throw unsupported("Calibration");
+  }
+
+  private static ValueLayout toValueLayout(Class<?> cls){
+    if(cls.equals(boolean.class)){
+      return ValueLayout.JAVA_BOOLEAN;
+    }
+    else if(cls.equals(byte.class)){
+      return ValueLayout.JAVA_BYTE;
+    }
+    else if(cls.equals(char.class)){
+      return ValueLayout.JAVA_CHAR;
+    }
+    else if(cls.equals(short.class)){
+      return ValueLayout.JAVA_SHORT;
+    }
+    else if(cls.equals(int.class)){
+      return ValueLayout.JAVA_INT;
+    }
+    else if(cls.equals(long.class)){
+      return ValueLayout.JAVA_LONG;
+    }
+    else if(cls.equals(float.class)){
+      return ValueLayout.JAVA_FLOAT;
+    }
+    else if(cls.equals(double.class)){
+      return ValueLayout.JAVA_DOUBLE;
+    }
+    else{
+      throw new IllegalArgumentException("Unsupported type: " + cls.getName());
+    }
+  }
+
+  /**
+   * Check whether the method can be served by FFM_CRITICAL backend.
+   *
+   * @param method method to check
+   * @return true if all of arguments and return value are primitive
+   */
+  protected static boolean isDowncallAvailable(Method method){
+    return Arrays.stream(method.getParameterTypes()).allMatch(Class::isPrimitive) &&
+           method.getReturnType().isPrimitive();
+  }
+
+  private static MethodHandle createCriticalHandle(Method method, MemorySegment symbol){
+    var args = Arrays.stream(method.getParameterTypes())
+                     .map(NativeBinder::toValueLayout)
+                     .toArray(MemoryLayout[]::new);
+    var returnType = method.getReturnType();
+    var desc = returnType.equals(void.class) ? FunctionDescriptor.ofVoid(args)
+                                             : FunctionDescriptor.of(toValueLayout(returnType), args);
+    return Linker.nativeLinker().downcallHandle(symbol, desc, Linker.Option.critical(false));
+  }
+
+  private <T> T createBinding(MethodHandles.Lookup definer, Class<T> iface, Method[] methods, MemorySegment[] symbols, Backend[] backends, boolean withErrorCode) throws Throwable{
+    var downcalls = new boolean[methods.length];
+    var handles = new MethodHandle[methods.length];
+    for(int i = 0; i < methods.length; i++){
+      if(backends[i] == Backend.FFM_CRITICAL){
+        downcalls[i] = true;
+        handles[i] = createCriticalHandle(methods[i], symbols[i]);
+      }
+    }
+
+    // Hidden class should be in the package of the lookup class.
+    var packageName = definer.lookupClass().getPackageName();
+    var className = (packageName.isEmpty() ? "" : packageName.replace('.', '/') + "/") + "Binding$" + iface.getSimpleName();
+    var classBytes = new BindingClassGenerator().generate(className, iface, methods, downcalls);
+    var hiddenLookup = definer.defineHiddenClassWithClassData(classBytes, Arrays.asList(handles), true);
+    var hiddenClass = hiddenLookup.lookupClass();
+
+    var bindMethods = new ArrayList<BindMethod>();
+    for(int i = 0; i < methods.length; i++){
+      if(!downcalls[i]){
+        var nativeMethod = hiddenClass.getDeclaredMethod(BindingClassGenerator.NATIVE_PREFIX + methods[i].getName(), methods[i].getParameterTypes());
+        bindMethods.add(new BindMethod(nativeMethod, symbols[i]));
+      }
+    }
+
+    if(!bindMethods.isEmpty()){
+      if(withErrorCode){
+        bindWithErrorCode(hiddenClass, bindMethods.toArray(new BindMethod[0]));
+      }
+      else{
+        bind(hiddenClass, bindMethods.toArray(new BindMethod[0]));
+      }
+    }
+
+    var constructor = hiddenLookup.findConstructor(hiddenClass, MethodType.methodType(void.class));
+    return iface.cast(constructor.invoke());
+  }
+
+  private static long measure(MethodHandles.Lookup definer, Object binding, Method method) throws Throwable{
+    var args = new Object[method.getParameterCount()];
+    for(int i = 0; i < args.length; i++){
+      args[i] = MethodHandles.zero(method.getParameterTypes()[i]).invoke();
+    }
+    // () -> void with constant arguments
+    var handle = MethodHandles.dropReturn(definer.unreflect(method))
+                              .bindTo(binding);
+    handle = MethodHandles.insertArguments(handle, 0, args);
+
+    for(int i = 0; i < CALIBRATION_WARMUP; i++){
+      handle.invokeExact();
+    }
+    long start = System.nanoTime();
+    for(int i = 0; i < CALIBRATION_ITERATIONS; i++){
+      handle.invokeExact();
+    }
+    return System.nanoTime() - start;
+  }
+
+  /**
+   * Function which does nothing for calibration. It is shared by all of
+   * calibration runs.
+   */
+  private static MemorySegment calibrationTarget = null;
+
+  /**
+   * Backends which are chosen by calibration for each signature.
+   */
+  private static final Map<MethodType, Backend> calibratedBackends = new HashMap<>();
+
+  /**
+   * Choose backend for methods which are AUTO in `backends`.
+   * Both of backends are bound to the function which does nothing, and
+   * faster one is chosen for each method. The result is cached per
+   * signature (parameter types and return type), so calibration runs only
+   * for the signature which is not measured yet.
+   *
+   * @param definer lookup to define hidden classes
+   * @param iface interface to bind
+   * @param methods abstract methods in the interface
+   * @param backends backends of methods. AUTO is replaced with the result.
+   */
+  private void calibrate(MethodHandles.Lookup definer, Class<?> iface, Method[] methods, Backend[] backends) throws Throwable{
+    synchronized(NativeBinder.class){
+      // Measure only one method for each signature which is not cached.
+      var uncalibrated = new HashMap<MethodType, Method>();
+      for(int i = 0; i < methods.length; i++){
+        if(backends[i] == Backend.AUTO){
+          var type = MethodType.methodType(methods[i].getReturnType(), methods[i].getParameterTypes());
+          if(!calibratedBackends.containsKey(type)){
+            uncalibrated.putIfAbsent(type, methods[i]);
+          }
+        }
+      }
+
+      if(!uncalibrated.isEmpty()){
+        if(calibrationTarget == null){
+          calibrationTarget = generateCalibrationTarget();
+        }
+        // Bindings for measurement implement uncalibrated methods only.
+        var targets = uncalibrated.values().toArray(new Method[0]);
+        var symbols = new MemorySegment[targets.length];
+        var jniBackends = new Backend[targets.length];
+        var ffmBackends = new Backend[targets.length];
+        Arrays.fill(symbols, calibrationTarget);
+        Arrays.fill(jniBackends, Backend.JNI);
+        Arrays.fill(ffmBackends, Backend.FFM_CRITICAL);
+        var jni = createBinding(definer, iface, targets, symbols, jniBackends, false);
+        var ffm = createBinding(definer, iface, targets, symbols, ffmBackends, false);
+
+        for(var entry : uncalibrated.entrySet()){
+          long jniTime = measure(definer, jni, entry.getValue());
+          long ffmTime = measure(definer, ffm, entry.getValue());
+          calibratedBackends.put(entry.getKey(), (ffmTime < jniTime) ? Backend.FFM_CRITICAL : Backend.JNI);
+        }
+      }
+
+      for(int i = 0; i < methods.length; i++){
+        if(backends[i] == Backend.AUTO){
+          backends[i] = calibratedBackends.get(MethodType.methodType(methods[i].getReturnType(), methods[i].getParameterTypes()));
+        }
+      }
+    }
+  }
+
+  private <T> T bindInterfaceInner(MethodHandles.Lookup caller, Class<T> iface, SymbolLookup lookup, boolean withErrorCode, Function<Method, Backend> selector) throws Throwable{
+    if(!iface.isInterface()){
+      throw new IllegalArgumentException(iface.getName() + " is not an interface");
+    }
+
+    MethodHandles.Lookup definer;
+    if(caller == null){
+      // Hidden class is defined in this package, thus the interface should
+      // be public, and its package should be exported to this module.
+      if(!Modifier.isPublic(iface.getModifiers()) ||
+         !iface.getModule().isExported(iface.getPackageName(), NativeBinder.class.getModule())){
+        throw new IllegalArgumentException(iface.getName() + " is not accessible from NativeBinder. Pass MethodHandles.Lookup which can access it.");
+      }
+      definer = MethodHandles.lookup();
+    }
+    else{
+      // Lookup.defineHiddenClass() requires full privilege access.
+      if(!caller.hasFullPrivilegeAccess()){
+        throw new IllegalArgumentException(caller + " does not have full privilege access");
+      }
+      try{
+        caller.accessClass(iface);
+      }
+      catch(IllegalAccessException e){
+        throw new IllegalArgumentException(iface.getName() + " is not accessible from " + caller, e);
+      }
+      definer = caller;
+    }
+
+    var methods = Arrays.stream(iface.getMethods())
+                        .filter(m -> Modifier.isAbstract(m.getModifiers()))
+                        .toArray(Method[]::new);
+
+    var symbols = new MemorySegment[methods.length];
+    var missing = new ArrayList<String>();
+    for(int i = 0; i < methods.length; i++){
+      var symbol = lookup.find(methods[i].getName());
+      if(symbol.isPresent()){
+        symbols[i] = symbol.get();
+      }
+      else{
+        missing.add(methods[i].getName());
+      }
+    }
+    if(!missing.isEmpty()){
+      throw new IllegalArgumentException("Symbols not found: " + String.join(", ", missing));
+    }
+
+    var backends = new Backend[methods.length];
+    boolean needsCalibration = false;
+    for(int i = 0; i < methods.length; i++){
+      backends[i] = selector.apply(methods[i]);
+      if((backends[i] != Backend.JNI) && !isDowncallAvailable(methods[i])){
+        if(backends[i] == Backend.FFM_CRITICAL){
+          throw new IllegalArgumentException("FFM_CRITICAL is not available for " + methods[i].getName());
+        }
+        backends[i] = Backend.JNI;
+      }
+      needsCalibration |= (backends[i] == Backend.AUTO);
+    }
+
+    if(caller == null){
+      // Generated class in this module refers the interface.
+      NativeBinder.class.getModule().addReads(iface.getModule());
+    }
+
+    if(needsCalibration){
+      calibrate(definer, iface, methods, backends);
+    }
+    return createBinding(definer, iface, methods, symbols, backends, withErrorCode);
+  }
+
+  /**
+   * Bind C functions to the interface.
+   * NativeBinder generates hidden class which implements the interface,
+   * and C function which has same name with the method is bound to it.
+   * The class is final and calls static native method, so the JIT can
+   * inline the call through the interface.
+   * The hidden class is defined in the package of NativeBinder, so the
+   * interface should be public, and its package should be exported to
+   * NativeBinder. Use
+   * {@link #bindInterface(MethodHandles.Lookup, Class, SymbolLookup)} for
+   * other interfaces.
+   *
+   * @param <T> type of the interface
+   * @param iface interface to bind
+   * @param lookup lookup to find C functions
+   * @return instance of the interface
+   * @throws IllegalArgumentException thrown when `iface` is not an
+   *         interface, it is not accessible from NativeBinder, or some C
+   *         functions are not found.
+   */
+  public <T> T bindInterface(Class<T> iface, SymbolLookup lookup) throws Throwable{
+    return bindInterfaceInner(null, iface, lookup, false, m -> Backend.JNI);
+  }
+
+  /**
+   * Bind C functions to the interface through the lookup of the caller.
+   * The hidden class is defined in the package of the lookup class, so
+   * the interface does not need to be accessible from NativeBinder (e.g.
+   * package-private interface, or the package which is not exported).
+   *
+   * @param <T> type of the interface
+   * @param caller lookup which has full privilege access, and which can
+   *        access `iface`. Usually it is {@code MethodHandles.lookup()}.
+   * @param iface interface to bind
+   * @param lookup lookup to find C functions
+   * @return instance of the interface
+   * @throws IllegalArgumentException thrown when `iface` is not an
+   *         interface, `caller` does not have full privilege access or
+   *         cannot access `iface`, or some C functions are not found.
+   * @see #bindInterface(Class, SymbolLookup)
+   */
+  public <T> T bindInterface(MethodHandles.Lookup caller, Class<T> iface, SymbolLookup lookup) throws Throwable{
+    return bindInterfaceInner(caller, iface, lookup, false, m -> Backend.JNI);
+  }
+
+  /**
+   * Bind C functions to the interface with the backend.
+   *
+   * @param <T> type of the interface
+   * @param iface interface to bind
+   * @param lookup lookup to find C functions
+   * @param backend mechanism to call C functions
+   * @return instance of the interface
+   * @throws IllegalArgumentException thrown when `iface` is not an
+   *         interface, some C functions are not found, or FFM_CRITICAL
+   *         is not available for some methods.
+   * @see #bindInterface(Class, SymbolLookup)
+   */
+  public <T> T bindInterface(Class<T> iface, SymbolLookup lookup, Backend backend) throws Throwable{
+    return bindInterfaceInner(null, iface, lookup, false, m -> backend);
+  }
+
+  /**
+   * Bind C functions to the interface with the backend for each method.
+   *
+   * @param <T> type of the interface
+   * @param iface interface to bind
+   * @param lookup lookup to find C functions
+   * @param selector function to choose the backend for the method
+   * @return instance of the interface
+   * @throws IllegalArgumentException thrown when `iface` is not an
+   *         interface, some C functions are not found, or FFM_CRITICAL
+   *         is not available for some methods.
+   * @see #bindInterface(Class, SymbolLookup)
+   */
+  public <T> T bindInterface(Class<T> iface, SymbolLookup lookup, Function<Method, Backend> selector) throws Throwable{
+    return bindInterfaceInner(null, iface, lookup, false, selector);
+  }
+
+  /**
+   * Bind C functions to the interface through the lookup of the caller
+   * with the backend for each method.
+   *
+   * @param <T> type of the interface
+   * @param caller lookup which has full privilege access, and which can
+   *        access `iface`
+   * @param iface interface to bind
+   * @param lookup lookup to find C functions
+   * @param selector function to choose the backend for the method
+   * @return instance of the interface
+   * @throws IllegalArgumentException thrown when `iface` is not an
+   *         interface, `caller` does not have full privilege access or
+   *         cannot access `iface`, some C functions are not found, or
+   *         FFM_CRITICAL is not available for some methods.
+   * @see #bindInterface(MethodHandles.Lookup, Class, SymbolLookup)
+   */
+  public <T> T bindInterface(MethodHandles.Lookup caller, Class<T> iface, SymbolLookup lookup, Function<Method, Backend> selector) throws Throwable{
+    return bindInterfaceInner(caller, iface, lookup, false, selector);
+  }
+
+  /**
+   * Bind C functions to the interface.
+   * Error code (errno in Linux, GetLastError() in Windows) can be obtained.
+   *
+   * @param <T> type of the interface
+   * @param iface interface to bind
+   * @param lookup lookup to find C functions
+   * @return instance of the interface
+   * @throws IllegalArgumentException thrown when `iface` is not an
+   *         interface, or some C functions are not found.
+   * @see #bindInterface(Class, SymbolLookup)
+   */
+  public <T> T bindInterfaceWithErrorCode(Class<T> iface, SymbolLookup lookup) throws Throwable{
+    return bindInterfaceInner(null, iface, lookup, true, m -> Backend.JNI);
+  }
+
+  /**
+   * Bind C functions to the interface through the lookup of the caller.
+   * Error code (errno in Linux, GetLastError() in Windows) can be obtained.
+   *
+   * @param <T> type of the interface
+   * @param caller lookup which has full privilege access, and which can
+   *        access `iface`
+   * @param iface interface to bind
+   * @param lookup lookup to find C functions
+   * @return instance of the interface
+   * @throws IllegalArgumentException thrown when `iface` is not an
+   *         interface, `caller` does not have full privilege access or
+   *         cannot access `iface`, or some C functions are not found.
+   * @see #bindInterface(MethodHandles.Lookup, Class, SymbolLookup)
+   */
+  public <T> T bindInterfaceWithErrorCode(MethodHandles.Lookup caller, Class<T> iface, SymbolLookup lookup) throws Throwable{
+    return bindInterfaceInner(caller, iface, lookup, true, m -> Backend.JNI);
+  }
+
+  /**
+   * Bind C functions to all of native methods in the class.
+   * C function is resolved by the name of the method, or by
+   * {@link NativeFunction} annotation. All of methods are registered in
+   * one batch regardless of error code mode.
+   *
+   * @param targetClass to hold JNI methods
+   * @param lookup lookup to find C functions
+   * @throws IllegalArgumentException thrown when some C functions are not
+   *         found. All of missing symbols are reported in the message.
+   */
+  public void bindAll(Class<?> targetClass, SymbolLookup lookup) throws Throwable{
+    bindAll(targetClass, lookup, false);
+  }
+
+  /**
+   * Bind C functions to all of native methods in the class.
+   * If `lazy` is true, methods which are not resolved are not bound, and
+   * they are returned. They throw UnsatisfiedLinkError when they are
+   * called, and they can be bound later (e.g. after the library is loaded).
+   *
+   * @param targetClass to hold JNI methods
+   * @param lookup lookup to find C functions
+   * @param lazy true if missing symbols should be deferred
+   * @return methods which are not bound
+   * @throws IllegalArgumentException thrown when some C functions are not
+   *         found and `lazy` is false.
+   * @see #bindAll(Class, SymbolLookup)
+   */
+  public List<Method> bindAll(Class<?> targetClass, SymbolLookup lookup, boolean lazy) throws Throwable{
+    var event = new NativeBindEvent();
+    event.begin();
+
+    var libraries = new HashMap<String, SymbolLookup>();
+    var resolved = new ArrayList<BindMethod>();
+    var missing = new ArrayList<Method>();
+    var missingSymbols = new ArrayList<String>();
+
+    for(var method : targetClass.getDeclaredMethods()){
+      if(!Modifier.isNative(method.getModifiers())){
+        continue;
+      }
+
+      var annotation = method.getAnnotation(NativeFunction.class);
+      var symbol = method.getName();
+      var symbolLookup = lookup;
+      if(annotation != null){
+        if(!annotation.value().isEmpty()){
+          symbol = annotation.value();
+        }
+        if(!annotation.library().isEmpty()){
+          symbolLookup = libraries.computeIfAbsent(annotation.library(), l -> SymbolLookup.libraryLookup(l, Arena.global()));
+        }
+      }
+
+      var target = symbolLookup.find(symbol);
+      if(target.isEmpty()){
+        missing.add(method);
+        missingSymbols.add(symbol);
+        continue;
+      }
+
+      resolved.add(new BindMethod(method, target.get()));
+    }
+
+    // Stubs are generated after all of symbols are resolved because they
+    // cannot be released.
+    if(!missing.isEmpty() && !lazy){
+      throw new IllegalArgumentException("Symbols not found: " + String.join(", ", missingSymbols));
+    }
+
+    var methodMap = new HashMap<Method, MemorySegment>();
+    boolean anyErrorCode = false;
+    for(var bindMethod : resolved){
+      var annotation = bindMethod.method().getAnnotation(NativeFunction.class);
+      boolean withErrorCode = (annotation != null) && annotation.withErrorCode();
+      methodMap.put(bindMethod.method(), generateStub(createStubTarget(bindMethod), withErrorCode));
+      anyErrorCode |= withErrorCode;
+    }
+
+    if(!methodMap.isEmpty()){
+      NativeRegister.create(targetClass)
+                    .registerNatives(methodMap);
+      commitBindEvent(event, targetClass, methodMap.values().toArray(new MemorySegment[0]), anyErrorCode);
+    }
+    return missing;
+  }
+
+  /**
+   * Bind C functions to JNI methods as map binding.
+   * JNI method applies C function to all of argument tuples in one JNI call.
+   *
+   * @param targetClass to hold JNI methods
+   * @param mapMethods array of map binding information
+   * @throws UnsupportedOperationException thrown when the platform does
+   *         not support map binding.
+   */
+  public void bindMap(Class<?> targetClass, MapMethod[] mapMethods) throws Throwable{
+    checkSupported(Feature.MAP);
+    var event = new NativeBindEvent();
+    event.begin();
+
+    var stubs = new MemorySegment[mapMethods.length];
+    var methodMap = new HashMap<Method, MemorySegment>();
+    for(int i = 0; i < mapMethods.length; i++){
+      stubs[i] = generateMapStub(mapMethods[i]);
+      methodMap.put(mapMethods[i].method(), stubs[i]);
+    }
+    NativeRegister.create(targetClass)
+                  .registerNatives(methodMap);
+
+    commitBindEvent(event, targetClass, stubs, false);
+  }
+
+  /**
+   * Generate stub for map binding.
+   *
+   * @param mapMethod map binding information
+   * @return MemorySegment of the stub
+   * @throws UnsupportedOperationException thrown when the platform does
+   *         not support map binding.
+   */
+  protected MemorySegment generateMapStub(MapMethod mapMethod) throws Throwable{
+    throw unsupported(Feature.MAP);
+  }
+
+  /**
+   * Generate dispatcher for CallBatch.
+   * The dispatcher is bound to CallBatch::dispatch, and it calls thunk
+   * in each record in order.
+   *
+   * @return MemorySegment of the dispatcher
+   * @throws UnsupportedOperationException thrown when the platform does
+   *         not support CallBatch.
+   */
+  protected MemorySegment generateBatchDispatcher() throws Throwable{
+    throw unsupported(Feature.CALL_BATCH);
+  }
+
+  /**
+   * Generate thunk for CallBatch.
+   * The thunk takes the address of the record as 1st argument. It loads
+   * arguments from the record, calls C function, and stores the result
+   * (and error code) into the record.
+   *
+   * @param bindMethod binding information
+   * @param withErrorCode true if error code should be stored
+   * @return MemorySegment of the thunk
+   * @throws UnsupportedOperationException thrown when the platform does
+   *         not support CallBatch.
+   */
+  protected MemorySegment generateBatchThunk(BindMethod bindMethod, boolean withErrorCode) throws Throwable{
+    throw unsupported(Feature.CALL_BATCH);
+  }
+
+  /**
+   * Generate worker for AsyncRing.
+   * The worker is the start routine of native thread which takes the
+   * address of the header of the ring. It calls thunk in each slot which
+   * is ready, and sets the state in `releaseOffset` to the slot after the
+   * call. It exits when the stop flag is set and no slot is ready.
+   *
+   * @param stateOffset offset of the state in the slot
+   * @param releaseOffset offset of the state which is set after the call
+   * @return MemorySegment of the worker
+   * @throws UnsupportedOperationException thrown when the platform does
+   *         not support AsyncRing.
+   */
+  protected MemorySegment generateAsyncWorker(long stateOffset, long releaseOffset) throws Throwable{
+    throw unsupported(Feature.ASYNC_RING);
+  }
+
+  /**
+   * Create AsyncRing to call C functions in native worker thread.
+   * Method in BindMethod is used as signature of C function, so it does
+   * not need to be native method. Index of bindMethods is used as target
+   * of {@link AsyncRing#claim(int)}.
+   * The worker thread is started in this method, and it is stopped by
+   * {@link AsyncRing#close()}. `arena` should not be closed before that.
+   *
+   * @param bindMethods array of binding information
+   * @param capacity number of slots in the ring
+   * @param arena arena to allocate the ring
+   * @param withErrorCode true if error code should be stored into the slot
+   * @return new AsyncRing instance
+   * @throws UnsupportedOperationException thrown when the platform does
+   *         not support AsyncRing.
+   */
+  public AsyncRing createAsyncRing(BindMethod[] bindMethods, int capacity, Arena arena, boolean withErrorCode) throws Throwable{
+    checkSupported(Feature.ASYNC_RING);
+    var thunks = new MemorySegment[bindMethods.length];
+    int maxArgs = 0;
+    for(int i = 0; i < bindMethods.length; i++){
+      thunks[i] = generateBatchThunk(bindMethods[i], withErrorCode);
+      maxArgs = Math.max(maxArgs, bindMethods[i].method().getParameterCount());
+    }
+
+    var worker = generateAsyncWorker(AsyncRing.stateOffset(maxArgs), AsyncRing.releaseOffset(maxArgs));
+    return new AsyncRing(thunks, maxArgs, capacity, arena, worker);
+  }
+
+  /**
+   * Generate the function which returns the address of per-thread scratch
+   * area. It allocates zero-filled area by calloc() and sets it to
+   * `context` if it is not yet set in current thread.
+   *
+   * @param context per-thread slot to hold the address
+   * @param size size of the area
+   * @return MemorySegment of the function
+   * @throws UnsupportedOperationException thrown when the platform does
+   *         not support ScratchBuffer.
+   */
+  protected MemorySegment generateScratchGetter(ThreadContext context, long size) throws Throwable{
+    throw unsupported(Feature.SCRATCH_BUFFER);
+  }
+
+  /**
+   * Create per-thread scratch area for out-parameters.
+   * Pass it to C function via {@link BindOption.ScratchArg}.
+   *
+   * @param size size of the area in each thread
+   * @return new ScratchBuffer instance
+   * @throws IllegalArgumentException thrown when the size is not positive
+   * @throws UnsupportedOperationException thrown when the platform does
+   *         not support ScratchBuffer.
+   */
+  public ScratchBuffer createScratchBuffer(long size) throws Throwable{
+    checkSupported(Feature.SCRATCH_BUFFER);
+    if(size <= 0){
+      throw new IllegalArgumentException("Invalid size: " + size);
+    }
+
+    var free = Linker.nativeLinker()
+                     .defaultLookup()
+                     .find("free")
+                     .get();
+    var context = ThreadContext.create(free);
+    return new ScratchBuffer(context, size, generateScratchGetter(context, size));
+  }
+
+  /**
+   * Generate the function which returns current value of time stamp
+   * counter. The function does not take any argument.
+   *
+   * @return MemorySegment of the function
+   * @throws UnsupportedOperationException thrown when the platform does
+   *         not support LatencySampler.
+   */
+  protected MemorySegment generateTimestampReader() throws Throwable{
+    throw unsupported(Feature.SAMPLER);
+  }
+
+  /**
+   * Create latency sampler which measures C function calls in stubs.
+   * Pass it to the binding via {@link BindOption.Sampler}.
+   *
+   * @param interval the stub samples once per this number of calls
+   * @return new LatencySampler instance
+   * @throws IllegalArgumentException thrown when the interval is not
+   *         positive
+   * @throws UnsupportedOperationException thrown when the platform does
+   *         not support LatencySampler.
+   */
+  public LatencySampler createLatencySampler(int interval) throws Throwable{
+    checkSupported(Feature.SAMPLER);
+    if(interval <= 0){
+      throw new IllegalArgumentException("Invalid interval: " + interval);
+    }
+    return new LatencySampler(interval, new TimestampCounter(generateTimestampReader()));
+  }
+
+  /**
+   * Generate the function which returns the address of the ring of
+   * CallTracer for current thread. If the thread does not have it yet, it
+   * takes the ring from the pool with the lock, and sets it to `context`.
+   * 1 is set instead if the pool is exhausted.
+   *
+   * @param context per-thread slot to hold the address
+   * @param lock lock which guards the pool
+   * @param control control block of the pool
+   * @return MemorySegment of the function
+   * @throws UnsupportedOperationException thrown when the platform does
+   *         not support CallTracer.
+   */
+  protected MemorySegment generateTraceRingGetter(ThreadContext context, NativeLock lock, MemorySegment control) throws Throwable{
+    throw unsupported(Feature.CALL_TRACER);
+  }
+
+  /**
+   * Create tracer which records recent calls into per-thread ring buffers.
+   * Pass it to the binding via {@link BindOption.Trace}.
+   *
+   * @param maxThreads number of threads which can be traced
+   * @return new CallTracer instance
+   * @throws IllegalArgumentException thrown when the number is not
+   *         positive
+   * @throws UnsupportedOperationException thrown when the platform does
+   *         not support CallTracer.
+   */
+  public CallTracer createCallTracer(int maxThreads) throws Throwable{
+    checkSupported(Feature.CALL_TRACER);
+    if(maxThreads <= 0){
+      throw new IllegalArgumentException("Invalid number of threads: " + maxThreads);
+    }
+
+    var context = ThreadContext.create();
+    var lock = NativeLock.create();
+    var control = Arena.global().allocate(CallTracer.CONTROL_SIZE, 8);
+    var pool = Arena.global().allocate(CallTracer.RING_SIZE * maxThreads, CallTracer.RING_SIZE);
+    control.set(ValueLayout.JAVA_LONG, CallTracer.NEXT_RING_OFFSET, pool.address());
+    control.set(ValueLayout.JAVA_LONG, CallTracer.FREE_RINGS_OFFSET, maxThreads);
+    var getter = generateTraceRingGetter(context, lock, control);
+    return new CallTracer(context, lock, control, pool, maxThreads, getter, new TimestampCounter(generateTimestampReader()));
+  }
+
+  /**
+   * Create per-thread bump-pointer allocator for marshalling arguments.
+   *
+   * @param size capacity of the arena in each thread
+   * @return new ScratchArena instance
+   * @throws IllegalArgumentException thrown when the size is not positive
+   * @throws UnsupportedOperationException thrown when the platform does
+   *         not support ScratchBuffer.
+   */
+  public ScratchArena createScratchArena(long size) throws Throwable{
+    if(size <= 0){
+      throw new IllegalArgumentException("Invalid size: " + size);
+    }
+    return new ScratchArena(createScratchBuffer(size + ScratchArena.HEADER_SIZE));
+  }
+
+  /**
+   * Call NewGlobalRef() in JNI.
+   * This method is bound to the stub which calls NewGlobalRef() directly.
+   *
+   * @param obj object to refer
+   * @return global reference
+   */
+  private static native long newGlobalRef0(Object obj);
+
+  /**
+   * Call DeleteGlobalRef() in JNI.
+   * This method is bound to the stub which calls DeleteGlobalRef() directly.
+   *
+   * @param ref global reference to delete
+   */
+  private static native void deleteGlobalRef0(long ref);
+
+  /**
+   * Call GetStaticMethodID() in JNI.
+   * This method is bound to the stub which calls GetStaticMethodID() directly.
+   *
+   * @param cls class which has the method
+   * @param name address of the name of the method
+   * @param sig address of JNI descriptor of the method
+   * @return jmethodID
+   */
+  private static native long getStaticMethodID0(Class<?> cls, long name, long sig);
+
+  /**
+   * Call GetJavaVM() in JNI.
+   * This method is bound to the stub which calls GetJavaVM() directly.
+   *
+   * @param vm address to store JavaVM
+   * @return result of GetJavaVM()
+   */
+  private static native int getJavaVM0(long vm);
+
+  /**
+   * Get index of CallStatic&lt;Type&gt;MethodA() in JNI function table.
+   *
+   * @param returnType return type of Java method
+   * @return index in JNI function table
+   * @throws IllegalArgumentException thrown when the type is not primitive
+   *         nor void
+   */
+  protected static int getCallStaticMethodAIndex(Class<?> returnType){
+    var types = new Class<?>[]{boolean.class, byte.class, char.class, short.class, int.class, long.class, float.class, double.class, void.class};
+    for(int i = 0; i < types.length; i++){
+      if(types[i].equals(returnType)){
+        return JNI_CALL_STATIC_OBJECT_METHOD_A + (3 * (i + 1));
+      }
+    }
+    throw new IllegalArgumentException("Unsupported return type: " + returnType.getName());
+  }
+
+  /**
+   * Generate the callback stub which calls Java static method via
+   * CallStatic&lt;Type&gt;MethodA() in JNI. Arguments from C are stored
+   * into jvalue array in the stack.
+   *
+   * @param target information of Java method
+   * @return MemorySegment of the stub
+   * @throws UnsupportedOperationException thrown when the platform does
+   *         not support callback.
+   */
+  protected MemorySegment generateCallbackStub(CallbackTarget target) throws Throwable{
+    throw unsupported(Feature.CALLBACK);
+  }
+
+  private void bindCallbackSupport() throws Throwable{
+    synchronized(NativeBinder.class){
+      if(!callbackSupportBound){
+        var cls = NativeBinder.class;
+        var methodMap = Map.of(cls.getDeclaredMethod("newGlobalRef0", Object.class), generateJNIFunctionStub(new ArgType[]{ArgType.INT}, JNI_NEW_GLOBAL_REF),
+                               cls.getDeclaredMethod("deleteGlobalRef0", long.class), generateJNIFunctionStub(new ArgType[]{ArgType.INT}, JNI_DELETE_GLOBAL_REF),
+                               cls.getDeclaredMethod("getStaticMethodID0", Class.class, long.class, long.class), generateJNIFunctionStub(new ArgType[]{ArgType.INT, ArgType.INT, ArgType.INT}, JNI_GET_STATIC_METHOD_ID),
+                               cls.getDeclaredMethod("getJavaVM0", long.class), generateJNIFunctionStub(new ArgType[]{ArgType.INT}, JNI_GET_JAVA_VM));
+        NativeRegister.create(cls)
+                      .registerNatives(methodMap);
+
+        try(var arena = Arena.ofConfined()){
+          var vm = arena.allocate(ValueLayout.ADDRESS);
+          int result = getJavaVM0(vm.address());
+          if(result != 0){
+            throw new IllegalStateException("GetJavaVM() failed: " + result);
+          }
+          javaVM = vm.get(ValueLayout.JAVA_LONG, 0);
+        }
+        callbackAttached = ThreadContext.create();
+        callbackSupportBound = true;
+      }
+    }
+  }
+
+  /**
+   * Create function pointer which calls Java static method from C.
+   * It can be passed to C function as callback (e.g. comparator of
+   * qsort()). The stub calls the method via cached jmethodID, so it is
+   * lighter than upcall stub in FFM.
+   * Thread which is not attached to JVM is attached as daemon thread in
+   * the first call, and it is not detached.
+   *
+   * Arguments and return value should be primitive. Pointer in C should
+   * be declared as long. If the method throws exception, the callback
+   * returns 0, and the exception is thrown after the native method which
+   * invokes the callback returns to Java. The callback returns 0 without
+   * calling the method while the exception is pending. In the thread which
+   * is attached by the callback, the exception is printed via
+   * ExceptionDescribe(), and it is cleared because there is no Java frame
+   * to throw it. If the thread cannot be attached (e.g. during VM
+   * shutdown), the callback returns 0 without calling the method.
+   * Global reference of the class is kept until
+   * {@link #releaseCallback(MemorySegment)} is called.
+   *
+   * @param method static method to call
+   * @return function pointer of the callback
+   * @throws IllegalArgumentException thrown when the method is not
+   *         static or its signature is not supported
+   * @throws UnsupportedOperationException thrown when the platform does
+   *         not support callback.
+   */
+  public MemorySegment createCallback(Method method) throws Throwable{
+    checkSupported(Feature.CALLBACK);
+    if(!Modifier.isStatic(method.getModifiers())){
+      throw new IllegalArgumentException(method.getName() + " is not static method");
+    }
+    for(var paramType : method.getParameterTypes()){
+      if(!paramType.isPrimitive()){
+        throw new IllegalArgumentException("Unsupported parameter type: " + paramType.getName());
+      }
+    }
+    int index = getCallStaticMethodAIndex(method.getReturnType());
+
+    bindCallbackSupport();
+
+    long clazz = newGlobalRef0(method.getDeclaringClass());
+    long methodID;
+    try(var arena = Arena.ofConfined()){
+      var descriptor = MethodType.methodType(method.getReturnType(), method.getParameterTypes())
+                                 .toMethodDescriptorString();
+      methodID = getStaticMethodID0(method.getDeclaringClass(), arena.allocateFrom(method.getName()).address(), arena.allocateFrom(descriptor).address());
+    }
+
+    var callback = generateCallbackStub(new CallbackTarget(method.getName(), getArgTypes(method), javaVM, clazz, methodID, index, callbackAttached));
+    synchronized(NativeBinder.class){
+      callbackRefs.put(callback.address(), clazz);
+    }
+    return callback;
+  }
+
+  /**
+   * Release global reference which is held by the callback.
+   * The callback must not be called after this method. Machine code of
+   * the callback is not released.
+   *
+   * @param callback function pointer which is created by
+   *        {@link #createCallback(Method)}
+   * @throws IllegalArgumentException thrown when the callback is not
+   *         created by createCallback(), or it is already released
+   */
+  public void releaseCallback(MemorySegment callback){
+    Long clazz;
+    synchronized(NativeBinder.class){
+      clazz = callbackRefs.remove(callback.address());
+    }
+    if(clazz == null){
+      throw new IllegalArgumentException("Unknown callback: 0x" + Long.toHexString(callback.address()));
+    }
+    deleteGlobalRef0(clazz);
+  }
+
+  /**
+   * Create CallBatch to call C functions in one JNI call.
+   * Method in BindMethod is used as signature of C function, so it does
+   * not need to be native method. Index of bindMethods is used as target
+   * of {@link CallBatch#add(int)}.
+   *
+   * @param bindMethods array of binding information
+   * @param capacity max number of records in the batch
+   * @param arena arena to allocate the buffer
+   * @param withErrorCode true if error code should be stored into the record
+   * @return new CallBatch instance
+   * @throws UnsupportedOperationException thrown when the platform does
+   *         not support CallBatch.
+   */
+  public CallBatch createCallBatch(BindMethod[] bindMethods, int capacity, Arena arena, boolean withErrorCode) throws Throwable{
+    checkSupported(Feature.CALL_BATCH);
+    synchronized(NativeBinder.class){
+      if(!batchDispatcherBound){
+        var dispatcher = generateBatchDispatcher();
+        var method = CallBatch.class.getDeclaredMethod("dispatch", long.class, long.class);
+        NativeRegister.create(CallBatch.class)
+                      .registerNatives(Map.of(method, dispatcher));
+        batchDispatcherBound = true;
+      }
+    }
+
+    var thunks = new MemorySegment[bindMethods.length];
+    int maxArgs = 0;
+    for(int i = 0; i < bindMethods.length; i++){
+      thunks[i] = generateBatchThunk(bindMethods[i], withErrorCode);
+      maxArgs = Math.max(maxArgs, bindMethods[i].method().getParameterCount());
+    }
+
+    return new CallBatch(thunks, maxArgs, capacity, arena);
+  }
+
 }
@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) 2025, Yasumasa Suenaga
+ *
+ * This file is part of nativebinder.
+ *
+ * nativebinder is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * nativebinder is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with nativebinder. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.yasuenag.nativebinder;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Period;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+
+/**
+ * JFR event for the call of C function which is recorded by
+ * {@link CallTracer}. It is emitted periodically when records are
+ * drained from rings, so start time of the event is the time of the
+ * drain, not the call.
+ *
+ * @author Yasumasa Suenaga
+ * @see CallTracer#registerFlightRecorderEvents()
+ */
+@Name("com.yasuenag.nativebinder.NativeCall")
+@Label("Native Call")
+@Category("NativeBinder")
+@Description("Call of C function recorded by CallTracer")
+@Period("1 s")
+@StackTrace(false) // stack trace of the drain is meaningless
+class NativeCallEvent extends Event{
+
+  @Label("Method")
+  @Description("Java method of the binding")
+  String method;
+
+  @Label("OS Thread Id")
+  long osThreadId;
+
+  @Label("Call Duration")
+  @Timespan(Timespan.NANOSECONDS)
+  long callDuration;
+
+  @Label("Return Value")
+  long returnValue;
+
+  @Label("Error Code")
+  @Description("errno in Linux, GetLastError() in Windows")
+  int errorCode;
+
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2025, Yasumasa Suenaga
+ *
+ * This file is part of nativebinder.
+ *
+ * nativebinder is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * nativebinder is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with nativebinder. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.yasuenag.nativebinder;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+
+/**
+ * Annotation to specify C function which is bound to the native method
+ * by {@link NativeBinder#bindAll(Class, java.lang.foreign.SymbolLookup)}.
+ * The native method which does not have this annotation is bound to
+ * C function which has same name with the method.
+ *
+ * <pre>
+ * &#64;NativeFunction(value = "getauxval", withErrorCode = true)
+ * public native long getAuxVal(long type);
+ * </pre>
+ *
+ * @author Yasumasa Suenaga
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface NativeFunction{
+
+  /**
+   * Symbol name of C function.
+   * Name of the method is used if it is empty.
+   *
+   * @return symbol name
+   */
+  String value() default "";
+
+  /**
+   * Library which has C function.
+   * It is passed to SymbolLookup.libraryLookup(String, Arena).
+   * SymbolLookup which is passed to bindAll() is used if it is empty.
+   *
+   * @return library name
+   */
+  String library() default "";
+
+  /**
+   * Whether error code (errno in Linux, GetLastError() in Windows) should
+   * be obtained.
+   *
+   * @return true if error code should be obtained
+   * @see NativeBinder#errorCodeInPreviousCall()
+   */
+  boolean withErrorCode() default false;
+
+}
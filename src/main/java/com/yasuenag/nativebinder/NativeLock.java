@@ -0,0 +1,182 @@
+/*
+ * Copyright (C) 2025, Yasumasa Suenaga
+ *
+ * This file is part of nativebinder.
+ *
+ * nativebinder is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * nativebinder is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with nativebinder. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.yasuenag.nativebinder;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.Linker;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.SymbolLookup;
+import java.lang.foreign.ValueLayout;
+
+
+/**
+ * Lock in native which is acquired by the stub around the call of C
+ * function. It can serialize calls of non-reentrant C library without
+ * synchronized block in Java. Several bindings can share one lock via
+ * {@link BindOption.Lock}.
+ * The lock is pthread mutex (futex based) in Linux, and SRW lock in
+ * Windows. The stub tries to acquire it at first, and waits for it only
+ * if it is contended.
+ *
+ * Layout of the memory:
+ * <pre>
+ *   +0: number of acquisitions
+ *   +8: number of contended acquisitions
+ *  +16: lock object (pthread_mutex_t in Linux, SRWLOCK in Windows)
+ * </pre>
+ * Counters are updated by the stub while it holds the lock.
+ *
+ * @author Yasumasa Suenaga
+ */
+public class NativeLock{
+
+  /**
+   * Offset of number of acquisitions.
+   */
+  public static final long ACQUISITIONS_OFFSET = 0;
+
+  /**
+   * Offset of number of contended acquisitions.
+   */
+  public static final long CONTENTIONS_OFFSET = 8;
+
+  /**
+   * Offset of lock object.
+   */
+  public static final long LOCK_OFFSET = 16;
+
+  /**
+   * Size of lock object. It is enough for pthread_mutex_t (40 bytes in
+   * x86_64 Linux) and SRWLOCK (8 bytes).
+   */
+  private static final long LOCK_SIZE = 64;
+
+  /**
+   * Function pointer to try to acquire the lock.
+   */
+  private static final MemorySegment tryLock;
+
+  /**
+   * Function pointer to wait for the lock.
+   */
+  private static final MemorySegment lock;
+
+  /**
+   * Function pointer to release the lock.
+   */
+  private static final MemorySegment unlock;
+
+  static{
+    var osName = System.getProperty("os.name");
+    if(osName.startsWith("Windows")){
+      var kernel32 = SymbolLookup.libraryLookup("Kernel32", Arena.global());
+      tryLock = kernel32.find("TryAcquireSRWLockExclusive").get();
+      lock = kernel32.find("AcquireSRWLockExclusive").get();
+      unlock = kernel32.find("ReleaseSRWLockExclusive").get();
+    }
+    else{
+      var libc = Linker.nativeLinker().defaultLookup();
+      tryLock = libc.find("pthread_mutex_trylock").get();
+      lock = libc.find("pthread_mutex_lock").get();
+      unlock = libc.find("pthread_mutex_unlock").get();
+    }
+  }
+
+  private final MemorySegment mem;
+
+  private NativeLock(MemorySegment mem){
+    this.mem = mem;
+  }
+
+  /**
+   * Create new lock.
+   * Zero-filled memory is valid as both of PTHREAD_MUTEX_INITIALIZER
+   * and SRWLOCK_INIT. The lock would not be released because stubs might
+   * refer it.
+   *
+   * @return new NativeLock instance
+   */
+  public static NativeLock create(){
+    return new NativeLock(Arena.global().allocate(LOCK_OFFSET + LOCK_SIZE, 16));
+  }
+
+  /**
+   * Get number of acquisitions by stubs.
+   * The value might be stale because it is read without the lock.
+   *
+   * @return number of acquisitions
+   */
+  public long acquisitions(){
+    return mem.get(ValueLayout.JAVA_LONG, ACQUISITIONS_OFFSET);
+  }
+
+  /**
+   * Get number of acquisitions which had to wait for other thread.
+   * The value might be stale because it is read without the lock.
+   *
+   * @return number of contended acquisitions
+   */
+  public long contentions(){
+    return mem.get(ValueLayout.JAVA_LONG, CONTENTIONS_OFFSET);
+  }
+
+  /**
+   * Get MemorySegment of the lock.
+   *
+   * @return MemorySegment which includes counters and lock object
+   */
+  public MemorySegment segment(){
+    return mem;
+  }
+
+  /**
+   * Get function pointer to try to acquire the lock.
+   * The function takes the lock object as 1st argument.
+   *
+   * @return function pointer (pthread_mutex_trylock() in Linux,
+   *         TryAcquireSRWLockExclusive() in Windows)
+   */
+  public static MemorySegment tryLock(){
+    return tryLock;
+  }
+
+  /**
+   * Get function pointer to wait for the lock.
+   * The function takes the lock object as 1st argument.
+   *
+   * @return function pointer (pthread_mutex_lock() in Linux,
+   *         AcquireSRWLockExclusive() in Windows)
+   */
+  public static MemorySegment lock(){
+    return lock;
+  }
+
+  /**
+   * Get function pointer to release the lock.
+   * The function takes the lock object as 1st argument.
+   * It does not change errno nor GetLastError().
+   *
+   * @return function pointer (pthread_mutex_unlock() in Linux,
+   *         ReleaseSRWLockExclusive() in Windows)
+   */
+  public static MemorySegment unlock(){
+    return unlock;
+  }
+
+}
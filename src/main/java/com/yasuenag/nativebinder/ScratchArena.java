@@ -0,0 +1,288 @@
+/*
+ * Copyright (C) 2025, Yasumasa Suenaga
+ *
+ * This file is part of nativebinder.
+ *
+ * nativebinder is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * nativebinder is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with nativebinder. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.yasuenag.nativebinder;
+
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.charset.StandardCharsets;
+
+
+/**
+ * Per-thread bump-pointer allocator in native memory for marshalling
+ * arguments (e.g. C strings, arrays) of bound functions.
+ * It is built on {@link ScratchBuffer}: the area is allocated at the first
+ * use in each native thread, and it is reused by subsequent calls, so
+ * marshalling needs neither Arena nor malloc() in steady state.
+ *
+ * The current offset is held at the head of the area, thus each thread has
+ * its own offset. Release the memory with {@link #mark()} and
+ * {@link #reset(long)}:
+ *
+ * <pre>{@code
+ * long mark = scratch.mark();
+ * try{
+ *   inst.puts(scratch.allocateString("Hello").address());
+ * }
+ * finally{
+ *   scratch.reset(mark);
+ * }
+ * }</pre>
+ *
+ * Note that the area belongs to the native thread as ScratchBuffer.
+ * Virtual thread might be mounted on another carrier thread, so allocation,
+ * the call, and reset should be done before the virtual thread is unmounted.
+ *
+ * @author Yasumasa Suenaga
+ * @see NativeBinder#createScratchArena(long)
+ */
+public class ScratchArena{
+
+  /**
+   * Size of the header which holds current offset.
+   * It keeps 16 bytes alignment of the first allocation.
+   */
+  static final long HEADER_SIZE = 16;
+
+  private final ScratchBuffer buffer;
+
+  ScratchArena(ScratchBuffer buffer){
+    this.buffer = buffer;
+  }
+
+  /**
+   * Get current offset in current thread.
+   * Memory which is allocated after this call can be released with
+   * {@link #reset(long)}.
+   *
+   * @return current offset
+   * @throws IllegalStateException thrown when the area cannot be allocated
+   */
+  public long mark(){
+    return buffer.segment().get(ValueLayout.JAVA_LONG, 0);
+  }
+
+  /**
+   * Release memory which is allocated after {@link #mark()} in current
+   * thread.
+   *
+   * @param mark the value of {@link #mark()}
+   * @throws IllegalArgumentException thrown when the mark is out of range
+   * @throws IllegalStateException thrown when the area cannot be allocated
+   */
+  public void reset(long mark){
+    var area = buffer.segment();
+    if((mark < 0) || (mark > area.get(ValueLayout.JAVA_LONG, 0))){
+      throw new IllegalArgumentException("Invalid mark: " + mark);
+    }
+    area.set(ValueLayout.JAVA_LONG, 0, mark);
+  }
+
+  /**
+   * Release all memory which is allocated in current thread.
+   *
+   * @throws IllegalStateException thrown when the area cannot be allocated
+   */
+  public void reset(){
+    buffer.segment().set(ValueLayout.JAVA_LONG, 0, 0L);
+  }
+
+  /**
+   * Allocate memory from the area of current thread.
+   * Contents of the memory are not cleared.
+   *
+   * @param size size in bytes
+   * @param alignment alignment in bytes. It should be power of 2.
+   * @return allocated memory
+   * @throws IllegalArgumentException thrown when the size or the alignment
+   *         is invalid
+   * @throws IllegalStateException thrown when the area is exhausted
+   */
+  public MemorySegment allocate(long size, long alignment){
+    if(size < 0){
+      throw new IllegalArgumentException("Invalid size: " + size);
+    }
+    if((alignment <= 0) || ((alignment & (alignment - 1)) != 0)){
+      throw new IllegalArgumentException("Invalid alignment: " + alignment);
+    }
+
+    var area = buffer.segment();
+    long base = area.address() + HEADER_SIZE;
+    long top = base + area.get(ValueLayout.JAVA_LONG, 0);
+    long start = (top + alignment - 1) & -alignment;
+    long offset = start - base;
+    long capacity = area.byteSize() - HEADER_SIZE;
+    // Compare with remaining bytes to avoid overflow of (offset + size).
+    // The stored offset is not changed on failure.
+    if((offset < 0) || (offset > capacity) || (size > (capacity - offset))){
+      throw new IllegalStateException("Scratch arena is exhausted: requested " + size + " bytes");
+    }
+
+    area.set(ValueLayout.JAVA_LONG, 0, offset + size);
+    return area.asSlice(start - area.address(), size);
+  }
+
+  /**
+   * Allocate memory from the area of current thread with 8 bytes alignment.
+   *
+   * @param size size in bytes
+   * @return allocated memory
+   * @throws IllegalArgumentException thrown when the size is invalid
+   * @throws IllegalStateException thrown when the area is exhausted
+   */
+  public MemorySegment allocate(long size){
+    return allocate(size, 8);
+  }
+
+  /**
+   * Allocate NUL terminated UTF-8 string.
+   * ASCII string is copied without intermediate byte array.
+   *
+   * @param str string to copy
+   * @return allocated C string
+   * @throws IllegalStateException thrown when the area is exhausted
+   */
+  public MemorySegment allocateString(String str){
+    int len = str.length();
+    boolean isASCII = true;
+    for(int i = 0; i < len; i++){
+      if(str.charAt(i) >= 0x80){
+        isASCII = false;
+        break;
+      }
+    }
+
+    if(isASCII){
+      var seg = allocate(len + 1, 1);
+      for(int i = 0; i < len; i++){
+        seg.set(ValueLayout.JAVA_BYTE, i, (byte)str.charAt(i));
+      }
+      seg.set(ValueLayout.JAVA_BYTE, len, (byte)0);
+      return seg;
+    }
+    else{
+      var bytes = str.getBytes(StandardCharsets.UTF_8);
+      var seg = allocate(bytes.length + 1, 1);
+      MemorySegment.copy(bytes, 0, seg, ValueLayout.JAVA_BYTE, 0, bytes.length);
+      seg.set(ValueLayout.JAVA_BYTE, bytes.length, (byte)0);
+      return seg;
+    }
+  }
+
+  private MemorySegment allocateArray(Object array, ValueLayout layout, int length){
+    var seg = allocate(layout.byteSize() * length, layout.byteAlignment());
+    MemorySegment.copy(array, 0, seg, layout, 0, length);
+    return seg;
+  }
+
+  /**
+   * Allocate memory and copy byte array to it.
+   *
+   * @param array array to copy
+   * @return allocated memory
+   * @throws IllegalStateException thrown when the area is exhausted
+   */
+  public MemorySegment allocateArray(byte[] array){
+    return allocateArray(array, ValueLayout.JAVA_BYTE, array.length);
+  }
+
+  /**
+   * Allocate memory and copy short array to it.
+   *
+   * @param array array to copy
+   * @return allocated memory
+   * @throws IllegalStateException thrown when the area is exhausted
+   */
+  public MemorySegment allocateArray(short[] array){
+    return allocateArray(array, ValueLayout.JAVA_SHORT, array.length);
+  }
+
+  /**
+   * Allocate memory and copy char array to it.
+   *
+   * @param array array to copy
+   * @return allocated memory
+   * @throws IllegalStateException thrown when the area is exhausted
+   */
+  public MemorySegment allocateArray(char[] array){
+    return allocateArray(array, ValueLayout.JAVA_CHAR, array.length);
+  }
+
+  /**
+   * Allocate memory and copy int array to it.
+   *
+   * @param array array to copy
+   * @return allocated memory
+   * @throws IllegalStateException thrown when the area is exhausted
+   */
+  public MemorySegment allocateArray(int[] array){
+    return allocateArray(array, ValueLayout.JAVA_INT, array.length);
+  }
+
+  /**
+   * Allocate memory and copy long array to it.
+   *
+   * @param array array to copy
+   * @return allocated memory
+   * @throws IllegalStateException thrown when the area is exhausted
+   */
+  public MemorySegment allocateArray(long[] array){
+    return allocateArray(array, ValueLayout.JAVA_LONG, array.length);
+  }
+
+  /**
+   * Allocate memory and copy float array to it.
+   *
+   * @param array array to copy
+   * @return allocated memory
+   * @throws IllegalStateException thrown when the area is exhausted
+   */
+  public MemorySegment allocateArray(float[] array){
+    return allocateArray(array, ValueLayout.JAVA_FLOAT, array.length);
+  }
+
+  /**
+   * Allocate memory and copy double array to it.
+   *
+   * @param array array to copy
+   * @return allocated memory
+   * @throws IllegalStateException thrown when the area is exhausted
+   */
+  public MemorySegment allocateArray(double[] array){
+    return allocateArray(array, ValueLayout.JAVA_DOUBLE, array.length);
+  }
+
+  /**
+   * Get capacity of the area in each thread.
+   *
+   * @return capacity in bytes
+   */
+  public long capacity(){
+    return buffer.size() - HEADER_SIZE;
+  }
+
+  /**
+   * Get ScratchBuffer which backs this arena.
+   *
+   * @return ScratchBuffer instance
+   */
+  public ScratchBuffer buffer(){
+    return buffer;
+  }
+
+}
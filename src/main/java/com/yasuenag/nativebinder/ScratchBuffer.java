@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2025, Yasumasa Suenaga
+ *
+ * This file is part of nativebinder.
+ *
+ * nativebinder is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * nativebinder is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with nativebinder. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.yasuenag.nativebinder;
+
+import java.lang.foreign.FunctionDescriptor;
+import java.lang.foreign.Linker;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.lang.invoke.MethodHandle;
+
+
+/**
+ * Per-thread native scratch area for out-parameters.
+ * The area is allocated at the first use in each native thread, and
+ * the stub passes its address to C function via
+ * {@link BindOption.ScratchArg}. Java can read results from
+ * {@link #segment()} after the call without allocation.
+ *
+ * The area is released when the thread exits in Linux. It is not released
+ * in Windows because TLS in Windows does not have destructor.
+ *
+ * Note that the area belongs to the native thread. Virtual thread might
+ * be mounted on another carrier thread, so results should be read before
+ * the virtual thread is unmounted.
+ *
+ * @author Yasumasa Suenaga
+ * @see NativeBinder#createScratchBuffer(long)
+ */
+public class ScratchBuffer{
+
+  private final ThreadContext context;
+
+  private final long size;
+
+  private final MemorySegment getter;
+
+  private final MethodHandle hndGetter;
+
+  ScratchBuffer(ThreadContext context, long size, MemorySegment getter){
+    this.context = context;
+    this.size = size;
+    this.getter = getter;
+    this.hndGetter = Linker.nativeLinker()
+                           .downcallHandle(getter, FunctionDescriptor.of(ValueLayout.ADDRESS));
+  }
+
+  /**
+   * Get scratch area of current thread.
+   * It is allocated if it is not yet allocated in current thread.
+   *
+   * @return MemorySegment of scratch area
+   * @throws IllegalStateException thrown when the area cannot be allocated
+   */
+  public MemorySegment segment(){
+    MemorySegment area;
+    try{
+      area = (MemorySegment)hndGetter.invokeExact();
+    }
+    catch(Throwable t){
+      throw new RuntimeException(t);
+    }
+
+    if(area.equals(MemorySegment.NULL)){
+      throw new IllegalStateException("Could not allocate scratch area");
+    }
+    return area.reinterpret(size);
+  }
+
+  /**
+   * Get size of scratch area.
+   *
+   * @return size in bytes
+   */
+  public long size(){
+    return size;
+  }
+
+  /**
+   * Get per-thread slot which holds the address of scratch area.
+   *
+   * @return ThreadContext instance
+   */
+  public ThreadContext context(){
+    return context;
+  }
+
+  /**
+   * Get function pointer which returns the address of scratch area of
+   * current thread. It allocates the area if it is not yet allocated.
+   * The function does not take any argument.
+   *
+   * @return function pointer
+   */
+  public MemorySegment getter(){
+    return getter;
+  }
+
+}
@@ -0,0 +1,208 @@
+/*
+ * Copyright (C) 2025, Yasumasa Suenaga
+ *
+ * This file is part of nativebinder.
+ *
+ * nativebinder is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * nativebinder is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with nativebinder. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.yasuenag.nativebinder;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.FunctionDescriptor;
+import java.lang.foreign.Linker;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.SymbolLookup;
+import java.lang.foreign.ValueLayout;
+import java.lang.invoke.MethodHandle;
+
+
+/**
+ * Per-thread slot in native which can be passed to C function.
+ * The value is held in native thread local storage (pthread key in Linux,
+ * TLS index in Windows), and the stub loads it in each call.
+ * It can be used for the context which should be passed to every call
+ * per thread (e.g. allocator arena, compression context).
+ *
+ * Note that the value is set to the native thread. Virtual thread might
+ * be mounted on another carrier thread.
+ *
+ * @author Yasumasa Suenaga
+ */
+public class ThreadContext{
+
+  private static final MethodHandle hndAlloc;
+
+  private static final MethodHandle hndSet;
+
+  private static final MethodHandle hndGet;
+
+  /**
+   * Function pointer to get the value from the slot.
+   * It takes the key as 1st argument, and returns the value.
+   */
+  private static final MemorySegment getter;
+
+  /**
+   * Function pointer to set the value to the slot.
+   * It takes the key as 1st argument, and the value as 2nd argument.
+   */
+  private static final MemorySegment setter;
+
+  static{
+    var linker = Linker.nativeLinker();
+    var osName = System.getProperty("os.name");
+    if(osName.startsWith("Windows")){
+      var kernel32 = SymbolLookup.libraryLookup("Kernel32", Arena.global());
+      hndAlloc = linker.downcallHandle(kernel32.find("TlsAlloc").get(),
+                                       FunctionDescriptor.of(ValueLayout.JAVA_INT));
+      setter = kernel32.find("TlsSetValue").get();
+      getter = kernel32.find("TlsGetValue").get();
+    }
+    else{
+      var libc = linker.defaultLookup();
+      hndAlloc = linker.downcallHandle(libc.find("pthread_key_create").get(),
+                                       FunctionDescriptor.of(ValueLayout.JAVA_INT, ValueLayout.ADDRESS, ValueLayout.ADDRESS));
+      setter = libc.find("pthread_setspecific").get();
+      getter = libc.find("pthread_getspecific").get();
+    }
+    hndSet = linker.downcallHandle(setter, FunctionDescriptor.of(ValueLayout.JAVA_INT, ValueLayout.JAVA_INT, ValueLayout.ADDRESS));
+    hndGet = linker.downcallHandle(getter, FunctionDescriptor.of(ValueLayout.ADDRESS, ValueLayout.JAVA_INT));
+  }
+
+  private final int key;
+
+  private ThreadContext(int key){
+    this.key = key;
+  }
+
+  /**
+   * Create new slot.
+   * The slot would not be released because stubs might refer it.
+   *
+   * @return new ThreadContext instance
+   * @throws IllegalStateException thrown when the slot cannot be allocated
+   */
+  public static ThreadContext create(){
+    return create(MemorySegment.NULL);
+  }
+
+  /**
+   * Create new slot with destructor.
+   * The destructor is called with the value in the slot when the thread
+   * exits in Linux. It is ignored in Windows because TLS in Windows does
+   * not have destructor.
+   * The slot would not be released because stubs might refer it.
+   *
+   * @param destructor function pointer of destructor (e.g. free()),
+   *        or MemorySegment.NULL
+   * @return new ThreadContext instance
+   * @throws IllegalStateException thrown when the slot cannot be allocated
+   */
+  public static ThreadContext create(MemorySegment destructor){
+    try{
+      if(System.getProperty("os.name").startsWith("Windows")){
+        int index = (int)hndAlloc.invokeExact();
+        if(index == 0xffffffff){ // TLS_OUT_OF_INDEXES
+          throw new IllegalStateException("TlsAlloc() failed");
+        }
+        return new ThreadContext(index);
+      }
+      else{
+        try(var arena = Arena.ofConfined()){
+          var keySeg = arena.allocate(ValueLayout.JAVA_INT);
+          int result = (int)hndAlloc.invokeExact(keySeg, destructor);
+          if(result != 0){
+            throw new IllegalStateException("pthread_key_create() failed: " + result);
+          }
+          return new ThreadContext(keySeg.get(ValueLayout.JAVA_INT, 0));
+        }
+      }
+    }
+    catch(RuntimeException e){
+      throw e;
+    }
+    catch(Throwable t){
+      throw new RuntimeException(t);
+    }
+  }
+
+  /**
+   * Set the value to the slot of current thread.
+   *
+   * @param value value to set
+   * @throws IllegalStateException thrown when the value cannot be set
+   */
+  public void set(MemorySegment value){
+    try{
+      int result = (int)hndSet.invokeExact(key, value);
+      // TlsSetValue() returns nonzero if succeeded,
+      // pthread_setspecific() returns zero if succeeded.
+      boolean succeeded = System.getProperty("os.name").startsWith("Windows") ? (result != 0) : (result == 0);
+      if(!succeeded){
+        throw new IllegalStateException("Could not set the value to thread slot: " + result);
+      }
+    }
+    catch(RuntimeException e){
+      throw e;
+    }
+    catch(Throwable t){
+      throw new RuntimeException(t);
+    }
+  }
+
+  /**
+   * Get the value in the slot of current thread.
+   *
+   * @return the value. MemorySegment.NULL would be returned if it is not set.
+   */
+  public MemorySegment get(){
+    try{
+      return (MemorySegment)hndGet.invokeExact(key);
+    }
+    catch(Throwable t){
+      throw new RuntimeException(t);
+    }
+  }
+
+  /**
+   * Get the key of the slot in native.
+   *
+   * @return pthread key in Linux, TLS index in Windows
+   */
+  public int key(){
+    return key;
+  }
+
+  /**
+   * Get function pointer to get the value from the slot.
+   * The function takes the key as 1st argument, and returns the value.
+   *
+   * @return function pointer (pthread_getspecific() in Linux, TlsGetValue() in Windows)
+   */
+  public static MemorySegment getter(){
+    return getter;
+  }
+
+  /**
+   * Get function pointer to set the value to the slot.
+   * The function takes the key as 1st argument, and the value as 2nd
+   * argument.
+   *
+   * @return function pointer (pthread_setspecific() in Linux, TlsSetValue() in Windows)
+   */
+  public static MemorySegment setter(){
+    return setter;
+  }
+
+}
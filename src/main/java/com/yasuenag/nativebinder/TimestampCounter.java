@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2025, Yasumasa Suenaga
+ *
+ * This file is part of nativebinder.
+ *
+ * nativebinder is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * nativebinder is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with nativebinder. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.yasuenag.nativebinder;
+
+import java.lang.foreign.FunctionDescriptor;
+import java.lang.foreign.Linker;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.lang.invoke.MethodHandle;
+
+
+/**
+ * Time stamp counter which is read by stubs.
+ * It converts ticks to nanoseconds after calibration with
+ * System.nanoTime().
+ *
+ * @author Yasumasa Suenaga
+ */
+class TimestampCounter{
+
+  private static double ticksPerNanos = 0.0d;
+
+  private final MethodHandle hndReader;
+
+  /**
+   * Constructor.
+   *
+   * @param reader function pointer which returns time stamp counter
+   */
+  TimestampCounter(MemorySegment reader){
+    hndReader = Linker.nativeLinker()
+                      .downcallHandle(reader, FunctionDescriptor.of(ValueLayout.JAVA_LONG));
+  }
+
+  /**
+   * Read time stamp counter.
+   *
+   * @return current value of time stamp counter
+   */
+  long read(){
+    try{
+      return (long)hndReader.invokeExact();
+    }
+    catch(Throwable t){
+      throw new RuntimeException(t);
+    }
+  }
+
+  /**
+   * Get frequency of time stamp counter.
+   * It is calibrated with System.nanoTime() at the first call.
+   *
+   * @return ticks per nanosecond
+   */
+  double ticksPerNanos(){
+    synchronized(TimestampCounter.class){
+      if(ticksPerNanos == 0.0d){
+        long startTicks = read();
+        long startNanos = System.nanoTime();
+        long endNanos;
+        do{
+          Thread.onSpinWait();
+          endNanos = System.nanoTime();
+        }while((endNanos - startNanos) < 20_000_000L); // 20ms
+        long endTicks = read();
+        ticksPerNanos = (double)(endTicks - startTicks) / (double)(endNanos - startNanos);
+      }
+      return ticksPerNanos;
+    }
+  }
+
+}
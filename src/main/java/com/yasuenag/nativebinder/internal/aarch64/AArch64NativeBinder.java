@@ -19,19 +19,23 @@
 package com.yasuenag.nativebinder.internal.aarch64;
 
 import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
 import java.lang.reflect.Method;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
 import java.util.Optional;
 import java.util.OptionalInt;
+import java.util.Set;
 
 import com.yasuenag.ffmasm.AsmBuilder;
-import com.yasuenag.ffmasm.NativeRegister;
 import com.yasuenag.ffmasm.PlatformException;
 import com.yasuenag.ffmasm.UnsupportedPlatformException;
 import com.yasuenag.ffmasm.aarch64.HWShift;
 import com.yasuenag.ffmasm.aarch64.IndexClass;
 import com.yasuenag.ffmasm.aarch64.Register;
 
+import com.yasuenag.nativebinder.LatencySampler;
 import com.yasuenag.nativebinder.NativeBinder;
 
 
@@ -72,6 +76,245 @@ public abstract class AArch64NativeBinder extends NativeBinder{
     }
   }
 
+  /**
+   * Record to store the rule of loading constant value.
+   *
+   * @param value value to load
+   * @param to register in native function
+   * @param toOffset offset on stack if the argument is on stack.
+   *        This value is for `to` - `to` would be SP in this case.
+   */
+  public static record ImmediateLoader(long value, Register to, OptionalInt toOffset){
+
+    @Override
+    public String toString(){
+      String result = String.format("#0x%x -> ", value);
+      result += toOffset.isEmpty() ? to.toString()
+                                   : String.format("[%s, #%d]", to.toString(), toOffset.getAsInt());
+      return result;
+    }
+  }
+
+  /**
+   * Record to store location of the argument.
+   * FP registers are not shifted by the transformation because JNIEnv
+   * and jobject/jclass are integer arguments. So FP register is
+   * represented as null in `reg`, and it is kept as it is.
+   *
+   * @param reg register which holds the argument. This is base register
+   *        if the argument is on stack.
+   * @param offset offset from base register if the argument is on stack.
+   * @param type argument type
+   */
+  protected static record Location(Register reg, OptionalInt offset, ArgType type){
+
+    public Location(Register reg, ArgType type){
+      this(reg, OptionalInt.empty(), type);
+    }
+
+    public boolean isStack(){
+      return offset.isPresent();
+    }
+
+    public boolean isFPRegister(){
+      return (type == ArgType.FP) && offset.isEmpty();
+    }
+  }
+
+  /**
+   * Record to store the rule of loading the value which is determined
+   * in each call (e.g. value in per-thread slot).
+   * The value is stored into local variable in the stub.
+   *
+   * @param source source of the value
+   * @param to base register of local variable
+   * @param toOffset offset of local variable
+   */
+  public static record ValueLoader(ArgSource source, Register to, OptionalInt toOffset){}
+
+  /**
+   * Record to store all of rules to call native function.
+   *
+   * @param spills rules to evacuate arguments in registers into local
+   *        variables. They are needed if the stub calls other functions
+   *        before native function.
+   * @param loaders rules of loading values which are determined in each call
+   * @param transformers rules of argument transformation
+   * @param immediates rules of loading constant values
+   * @param stackSize stack size for arguments of native function
+   *        and local variables.
+   * @param isJMPAvailable true if arguments for native function can be
+   *        stored into the stack of JNI caller. It is valid when the rule
+   *        is created for the stub with JMP operation.
+   */
+  public static record CallRule(Transformer[] spills, ValueLoader[] loaders, Transformer[] transformers, ImmediateLoader[] immediates, int stackSize, boolean isJMPAvailable){}
+
+  /**
+   * Get locations of arguments from JNI caller.
+   * 1st and 2nd arguments (JNIEnv and jobject/jclass) are not included.
+   *
+   * @param javaArgs argument types of Java method
+   * @param isJMP true if the stub should be generated with JMP operation.
+   * @return locations of arguments
+   */
+  protected abstract Location[] locateJNIArgs(ArgType[] javaArgs, boolean isJMP);
+
+  /**
+   * Get locations of arguments for native function.
+   *
+   * @param nativeArgs argument types of native function
+   * @param isJMP true if the stub should be generated with JMP operation.
+   * @return locations of arguments
+   */
+  protected abstract Location[] locateNativeArgs(ArgType[] nativeArgs, boolean isJMP);
+
+  /**
+   * Generate machine code to load the value which is determined in each call.
+   * The value should be set to X0.
+   *
+   * @param builder AsmBuilder instance for generating stub code.
+   * @param source source of the value
+   */
+  protected abstract void loadValue(AsmBuilder.AArch64 builder, ArgSource source);
+
+  private static int countStackArgs(Location[] locations){
+    int count = 0;
+    for(var location : locations){
+      if(location.isStack()){
+        count++;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Sort transformers not to clobber the argument which is not yet moved.
+   *
+   * @param transformers to sort
+   * @return sorted transformers
+   */
+  private static Transformer[] sortTransformers(List<Transformer> transformers){
+    var remaining = new ArrayList<Transformer>(transformers);
+    var sorted = new ArrayList<Transformer>();
+
+    while(!remaining.isEmpty()){
+      Transformer next = null;
+      for(var candidate : remaining){
+        boolean clobber = remaining.stream()
+                                   .anyMatch(t -> (t != candidate) &&
+                                                  (t.from() == candidate.to()) &&
+                                                  t.fromOffset().equals(candidate.toOffset()));
+        if(!clobber){
+          next = candidate;
+          break;
+        }
+      }
+
+      if(next == null){
+        throw new IllegalStateException("Argument transformation is cyclic: " + remaining);
+      }
+      sorted.add(next);
+      remaining.remove(next);
+    }
+
+    return sorted.toArray(new Transformer[0]);
+  }
+
+  /**
+   * Create rules to call native function.
+   *
+   * @param javaArgs argument types of Java method
+   * @param nativeArgs sources of arguments for native function
+   * @param isJMP true if the stub should be generated with JMP operation.
+   * @return rules to call native function
+   */
+  protected CallRule createCallRule(ArgType[] javaArgs, ArgSource[] nativeArgs, boolean isJMP){
+    var nativeArgTypes = new ArgType[nativeArgs.length];
+    boolean hasLoader = false;
+    for(int i = 0; i < nativeArgs.length; i++){
+      nativeArgTypes[i] = nativeArgs[i].type();
+      hasLoader |= nativeArgs[i] instanceof ArgSource.ThreadContextValue;
+    }
+
+    var from = locateJNIArgs(javaArgs, isJMP);
+    var to = locateNativeArgs(nativeArgTypes, isJMP);
+    int jniStackArgs = countStackArgs(from);
+
+    int stackSize = 0;
+    for(var location : to){
+      if(location.isStack()){
+        stackSize = Math.max(stackSize, location.offset().getAsInt() + 8);
+      }
+    }
+
+    // Local variables are placed on the top of arguments on the stack.
+    var spills = new ArrayList<Transformer>();
+    int localSize = 0;
+    if(hasLoader){
+      // Arguments in registers would be clobbered by function call to
+      // load values. So they should be evacuated to local variables.
+      spills.add(new Transformer(Register.X0, OptionalInt.empty(), Register.SP, OptionalInt.of(stackSize), ArgType.INT)); // JNIEnv
+      localSize = 8;
+      for(int i = 0; i < from.length; i++){
+        if(from[i].isFPRegister()){
+          throw new IllegalArgumentException("FP argument cannot be evacuated.");
+        }
+        else if(!from[i].isStack()){
+          var local = new Location(Register.SP, OptionalInt.of(stackSize + localSize), ArgType.INT);
+          spills.add(new Transformer(from[i].reg(), OptionalInt.empty(), local.reg(), local.offset(), javaArgs[i]));
+          from[i] = local;
+          localSize += 8;
+        }
+      }
+    }
+
+    var loaders = new ArrayList<ValueLoader>();
+    var transformers = new ArrayList<Transformer>();
+    var immediates = new ArrayList<ImmediateLoader>();
+    for(int i = 0; i < nativeArgs.length; i++){
+      switch(nativeArgs[i]){
+        case ArgSource.Param param -> {
+          var src = from[param.index()];
+          if(src.isFPRegister() || to[i].isFPRegister()){
+            if(src.isFPRegister() != to[i].isFPRegister()){
+              throw new IllegalStateException("FP reg to/from memory is not supported.");
+            }
+            // FP register is kept as it is.
+          }
+          else if(!src.equals(to[i])){
+            transformers.add(new Transformer(src.reg(), src.offset(), to[i].reg(), to[i].offset(), param.type()));
+          }
+        }
+        case ArgSource.Immediate imm -> immediates.add(new ImmediateLoader(imm.value(), to[i].reg(), to[i].offset()));
+        case ArgSource.Result result -> throw new IllegalArgumentException("Result is available in composite binding only");
+        case ArgSource.ThreadContextValue value -> {
+          var local = new Location(Register.SP, OptionalInt.of(stackSize + localSize), ArgType.INT);
+          loaders.add(new ValueLoader(value, local.reg(), local.offset()));
+          transformers.add(new Transformer(local.reg(), local.offset(), to[i].reg(), to[i].offset(), value.type()));
+          localSize += 8;
+        }
+        case ArgSource.Env env -> {
+          // JNIEnv is in 1st local variable if arguments are evacuated.
+          var src = hasLoader ? new Location(Register.SP, OptionalInt.of(stackSize), ArgType.INT)
+                              : new Location(Register.X0, OptionalInt.empty(), ArgType.INT);
+          if(!src.equals(to[i])){
+            transformers.add(new Transformer(src.reg(), src.offset(), to[i].reg(), to[i].offset(), env.type()));
+          }
+        }
+        // Other sources are rejected by supportedFeatures() before the rule is created.
+        default -> throw new IllegalStateException("Unexpected argument source: " + nativeArgs[i]);
+      }
+    }
+
+    boolean isJMPAvailable = !hasLoader && (countStackArgs(to) <= jniStackArgs);
+    return new CallRule(spills.toArray(new Transformer[0]),
+                        loaders.toArray(new ValueLoader[0]),
+                        sortTransformers(transformers),
+                        immediates.toArray(new ImmediateLoader[0]),
+                        stackSize + localSize,
+                        isJMPAvailable);
+  }
+
   /**
    * Create transformation rule.
    *
@@ -79,7 +322,181 @@ public abstract class AArch64NativeBinder extends NativeBinder{
    * @param isJMP true if the stub should be generated with JMP operation.
    * @return transformation ruleset
    */
-  protected abstract Transformer[] createArgTransformRule(Method method, boolean isJMP);
+  protected Transformer[] createArgTransformRule(Method method, boolean isJMP){
+    var bindMethod = new BindMethod(method, MemorySegment.NULL);
+    return createCallRule(getArgTypes(method), createArgSources(bindMethod), isJMP).transformers();
+  }
+
+  /**
+   * Generate machine code to load 64 bit immediate value into the register.
+   *
+   * @param builder AsmBuilder instance for generating stub code.
+   * @param reg register to load
+   * @param imm value to load
+   */
+  protected static void movImm(AsmBuilder.AArch64 builder, Register reg, long imm){
+    builder
+/* movz  reg, #imm[0:15]           */ .movz(reg, (int)(imm & 0xffff), HWShift.None)
+/* movk  reg, #imm[16:31], lsl #16 */ .movk(reg, (int)((imm >> 16) & 0xffff), HWShift.HW_16)
+/* movk  reg, #imm[32:47], lsl #32 */ .movk(reg, (int)((imm >> 32) & 0xffff), HWShift.HW_32)
+/* movk  reg, #imm[48:63], lsl #48 */ .movk(reg, (int)((imm >> 48) & 0xffff), HWShift.HW_48);
+  }
+
+  /**
+   * Instruction synchronization barrier (isb). It is issued before reading
+   * the counter not to read it speculatively.
+   */
+  private static final int ISB = 0xd5033fdf;
+
+  /**
+   * ret
+   */
+  private static final int RET = 0xd65f03c0;
+
+  /**
+   * Functions to take latency sample. 1st one is called before the call
+   * of C function, and 2nd one is called after that.
+   */
+  private static MemorySegment[] sampleFunctions = null;
+
+  /**
+   * Encode "mrs xt, cntvct_el0" to read virtual counter.
+   *
+   * @param rt register number to store the counter
+   * @return encoded instruction
+   */
+  private static int encodeMRSCNTVCT(int rt){
+    return 0xd53be040 | rt;
+  }
+
+  /**
+   * Encode "ldr xt, [xn, #offset]" with unsigned offset.
+   *
+   * @param rt register number to load
+   * @param rn register number of the base
+   * @param offset offset from the base. It should be multiple of 8.
+   * @return encoded instruction
+   */
+  private static int encodeLDR(int rt, int rn, long offset){
+    return 0xf9400000 | ((int)(offset / 8) << 10) | (rn << 5) | rt;
+  }
+
+  /**
+   * Encode "str xt, [xn, #offset]" with unsigned offset.
+   *
+   * @param rt register number to store
+   * @param rn register number of the base
+   * @param offset offset from the base. It should be multiple of 8.
+   * @return encoded instruction
+   */
+  private static int encodeSTR(int rt, int rn, long offset){
+    return 0xf9000000 | ((int)(offset / 8) << 10) | (rn << 5) | rt;
+  }
+
+  /**
+   * Encode "add xd, xn, #imm".
+   *
+   * @param rd register number of the destination
+   * @param rn register number of the source
+   * @param imm 12 bit immediate value
+   * @return encoded instruction
+   */
+  private static int encodeADD(int rd, int rn, long imm){
+    return 0x91000000 | ((int)imm << 10) | (rn << 5) | rd;
+  }
+
+  /**
+   * Write encoded instructions to the tail of the code segment.
+   * AsmBuilder.AArch64 cannot generate system register access (mrs),
+   * barrier, and conditional branch, so the function which needs them
+   * is written in this way.
+   *
+   * @param instructions encoded instructions
+   * @return MemorySegment of the function
+   */
+  private static MemorySegment emit(int... instructions){
+    long size = instructions.length * 4L;
+    var mem = seg.getTailOfMemorySegment()
+                 .asSlice(0, size);
+    for(int i = 0; i < instructions.length; i++){
+      mem.setAtIndex(ValueLayout.JAVA_INT, i, instructions[i]);
+    }
+    seg.incTail(size);
+    return mem;
+  }
+
+  /**
+   * Get functions to take latency sample.
+   * The countdown is updated without atomic operation as well as AMD64.
+   * 1st function takes the header of LatencySampler in X10, and returns
+   * the counter in X9 if the countdown reaches zero, or returns zero.
+   * 2nd function takes the counter from 1st function in X9 and the header
+   * in X10. It stores both counters into the entry which is pointed by
+   * the cursor if X9 is not zero, then it publishes advanced cursor with
+   * release store. The ring is aligned to 64KB, so the cursor wraps by
+   * inserting lower 16 bits of advanced one into old cursor.
+   * They clobber X9 - X13 only, so arguments and return value are
+   * preserved. The stub calls them via X16, and X30 is saved in its frame.
+   *
+   * @return functions to take latency sample
+   */
+  private static synchronized MemorySegment[] getSampleFunctions(){
+    if(sampleFunctions == null){
+      int countdown = (int)LatencySampler.COUNTDOWN_OFFSET;
+      int cursor = (int)LatencySampler.CURSOR_OFFSET;
+      int interval = (int)LatencySampler.INTERVAL_OFFSET;
+      int ringBits = Long.numberOfTrailingZeros(LatencySampler.RING_SIZE);
+
+      var startSample = emit(
+/*         ldr  x11, [x10, #countdown] */ encodeLDR(11, 10, countdown),
+/*         subs x11, x11, #1           */ 0xf100056b,
+/*         b.le sampled                */ 0x5400008d,
+/*         str  x11, [x10, #countdown] */ encodeSTR(11, 10, countdown),
+/*         movz x9, #0                 */ 0xd2800009,
+/*         ret                         */ RET,
+/* sampled: ldr x11, [x10, #interval]  */ encodeLDR(11, 10, interval),
+/*         str  x11, [x10, #countdown] */ encodeSTR(11, 10, countdown),
+/*         isb                         */ ISB,
+/*         mrs  x9, cntvct_el0         */ encodeMRSCNTVCT(9),
+/*         ret                         */ RET);
+
+      var endSample = emit(
+/*         cbz   x9, not_sampled       */ 0xb4000129,
+/*         isb                         */ ISB,
+/*         mrs   x11, cntvct_el0       */ encodeMRSCNTVCT(11),
+/*         ldr   x12, [x10, #cursor]   */ encodeLDR(12, 10, cursor),
+/*         stp   x9, x11, [x12]        */ 0xa9002d89,
+/*         add   x13, x12, #16         */ encodeADD(13, 12, LatencySampler.ENTRY_SIZE),
+/*         bfxil x12, x13, #0, #bits   */ 0xb3400000 | ((ringBits - 1) << 10) | (13 << 5) | 12,
+/*         add   x11, x10, #cursor     */ encodeADD(11, 10, cursor),
+/*         stlr  x12, [x11]            */ 0xc89ffd6c,
+/* not_sampled: ret                    */ RET);
+
+      sampleFunctions = new MemorySegment[]{startSample, endSample};
+    }
+    return sampleFunctions;
+  }
+
+  /**
+   * {@inheritDoc}
+   * LatencySampler is available on AArch64 in addition to basic binding.
+   */
+  @Override
+  protected Set<Feature> supportedFeatures(){
+    return EnumSet.of(Feature.SAMPLER);
+  }
+
+  /**
+   * {@inheritDoc}
+   * It reads virtual counter (CNTVCT_EL0).
+   */
+  @Override
+  protected MemorySegment generateTimestampReader(){
+    return emit(
+/* isb                 */ ISB,
+/* mrs x0, cntvct_el0  */ encodeMRSCNTVCT(0),
+/* ret                 */ RET);
+  }
 
   /**
    * Generate machine code to obtain error code (errno in Linux, GetLastError() in Windows)
@@ -105,8 +522,8 @@ public abstract class AArch64NativeBinder extends NativeBinder{
     }
   }
 
-  private void bindInner(AsmBuilder.AArch64 builder, Transformer[] rule){
-    for(var transformer : rule){
+  private void transform(AsmBuilder.AArch64 builder, Transformer[] transformers){
+    for(var transformer : transformers){
       if(transformer.fromOffset().isEmpty() && transformer.toOffset().isEmpty()){
         // reg to reg
         if(transformer.type() == ArgType.INT){
@@ -131,84 +548,165 @@ public abstract class AArch64NativeBinder extends NativeBinder{
                .str(Register.X9, transformer.to(), IndexClass.UnsignedOffset, transformer.toOffset().getAsInt());
       }
       else{
-        throw new IllegalStateException("Should not be reg-mem");
+        // reg to mem
+        if(transformer.type() == ArgType.INT){
+          builder.str(transformer.from(), transformer.to(), IndexClass.UnsignedOffset, transformer.toOffset().getAsInt());
+        }
+        else{ // should be FP
+          throw new IllegalStateException("FP reg to mem is not supported.");
+        }
       }
     }
   }
 
-  /**
-   * {@inheritDoc}
-   */
-  @Override
-  public void bind(Class<?> targetClass, BindMethod[] bindMethods) throws Throwable{
-    var methodMap = new HashMap<Method, MemorySegment>();
-
-    for(var bindMethod : bindMethods){
-      var rule = createArgTransformRule(bindMethod.method(), true);
+  private void bindInner(AsmBuilder.AArch64 builder, CallRule rule){
+    transform(builder, rule.spills());
 
-      var builder = new AsmBuilder.AArch64(seg);
-      bindInner(builder, rule);
+    for(var loader : rule.loaders()){
+      loadValue(builder, loader.source());
+      builder.str(Register.X0, loader.to(), IndexClass.UnsignedOffset, loader.toOffset().getAsInt());
+    }
 
-      final long addr = bindMethod.seg().address();
-      builder
-/* movz  x0, #addr[0:15]           */ .movz(Register.X9, (int)(addr & 0xffff), HWShift.None)
-/* movk  x0, #addr[16:31], lsl #16 */ .movk(Register.X9, (int)((addr >> 16) & 0xffff), HWShift.HW_16)
-/* movk  x0, #addr[32:47], lsl #32 */ .movk(Register.X9, (int)((addr >> 32) & 0xffff), HWShift.HW_32)
-/* movk  x0, #addr[48:63], lsl #48 */ .movk(Register.X9, (int)((addr >> 48) & 0xffff), HWShift.HW_48)
-                                      .br(Register.X9);
+    transform(builder, rule.transformers());
 
-      var stubName = "stub_" + bindMethod.method().getName();
-      var stubSeg = builder.getMemorySegment(stubName);
-      methodMap.put(bindMethod.method(), stubSeg);
+    // Constant values should be loaded after all of transformation
+    // because the destination might be a source of other transformer.
+    for(var immediate : rule.immediates()){
+      if(immediate.toOffset().isEmpty()){
+        movImm(builder, immediate.to(), immediate.value());
+      }
+      else{
+        movImm(builder, Register.X9, immediate.value());
+        builder.str(Register.X9, immediate.to(), IndexClass.UnsignedOffset, immediate.toOffset().getAsInt());
+      }
     }
-
-    var register = NativeRegister.create(targetClass);
-    register.registerNatives(methodMap);
   }
 
-  /**
-   * {@inheritDoc}
-   */
-  @Override
-  public void bindWithErrorCode(Class<?> targetClass, BindMethod[] bindMethods) throws Throwable{
-    var methodMap = new HashMap<Method, MemorySegment>();
+  private MemorySegment generateJMPStub(StubTarget target, CallRule rule){
+    var builder = new AsmBuilder.AArch64(seg);
+    bindInner(builder, rule);
 
-    for(var bindMethod : bindMethods){
-      // Stack size is estimated a max value.
-      int stackSize = 8 * bindMethod.method().getParameterTypes().length;
-      int alignedStackSize = ((stackSize & 0xf) == 0) ? stackSize
-                                                      : (stackSize + 0x10) & 0xfffffff0;
+    movImm(builder, Register.X9, target.seg().address());
+    builder.br(Register.X9);
+
+    var stubName = "stub_" + target.name();
+    return builder.getMemorySegment(stubName);
+  }
 
-      var builder = new AsmBuilder.AArch64(seg)
+  private MemorySegment generateCallStub(StubTarget target, boolean withErrorCode){
+    var rule = createCallRule(target.javaArgs(), target.nativeArgs(), false);
+    int stackSize = rule.stackSize();
+    var sampler = target.sampler();
+    // Time stamp counter before the call is stored on the top of
+    // local variables.
+    int sampleOffset = stackSize;
+    if(sampler != null){
+      stackSize += 8;
+    }
+    int alignedStackSize = ((stackSize & 0xf) == 0) ? stackSize
+                                                    : (stackSize + 0x10) & 0xfffffff0;
+
+    var builder = new AsmBuilder.AArch64(seg)
 /* stp x29, x30, [sp, #-16]!       */ .stp(Register.X29, Register.X30, Register.SP, IndexClass.PreIndex, -16)
 /* mov x29,  sp                    */ .mov(Register.X29, Register.SP)
 /* sub  sp,  sp, #alignedStackSize */ .subImm(Register.SP, Register.SP, alignedStackSize, false);
 
-      var rule = createArgTransformRule(bindMethod.method(), false);
-      bindInner(builder, rule);
+    if(sampler != null){
+      movImm(builder, Register.X10, sampler.address());
+      movImm(builder, Register.X16, getSampleFunctions()[0].address());
+      builder.blr(Register.X16)
+             .str(Register.X9, Register.SP, IndexClass.UnsignedOffset, sampleOffset);
+    }
 
-      final long addr = bindMethod.seg().address();
-      builder
-/* movz  x0, #addr[0:15]           */ .movz(Register.X9, (int)(addr & 0xffff), HWShift.None)
-/* movk  x0, #addr[16:31], lsl #16 */ .movk(Register.X9, (int)((addr >> 16) & 0xffff), HWShift.HW_16)
-/* movk  x0, #addr[32:47], lsl #32 */ .movk(Register.X9, (int)((addr >> 32) & 0xffff), HWShift.HW_32)
-/* movk  x0, #addr[48:63], lsl #48 */ .movk(Register.X9, (int)((addr >> 48) & 0xffff), HWShift.HW_48)
-                                      .blr(Register.X9);
+    bindInner(builder, rule);
 
+    movImm(builder, Register.X9, target.seg().address());
+    builder.blr(Register.X9);
+
+    if(sampler != null){
+      builder.ldr(Register.X9, Register.SP, IndexClass.UnsignedOffset, sampleOffset);
+      movImm(builder, Register.X10, sampler.address());
+      movImm(builder, Register.X16, getSampleFunctions()[1].address());
+      builder.blr(Register.X16);
+    }
+
+    if(withErrorCode){
       obtainErrorCode(builder);
+    }
 
-      builder
+    builder
 /* mov  sp, x29              */ .mov(Register.SP, Register.X29)
 /* ldp x29, x30, [sp], #16   */ .ldp(Register.X29, Register.X30, Register.SP, IndexClass.PostIndex, 16)
 /* ret                       */ .ret(Optional.empty());
 
-      var stubName = "stub_" + bindMethod.method().getName();
-      var stubSeg = builder.getMemorySegment(stubName);
-      methodMap.put(bindMethod.method(), stubSeg);
+    var stubName = "stub_" + target.name();
+    return builder.getMemorySegment(stubName);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  protected MemorySegment generateCalibrationTarget(){
+    return new AsmBuilder.AArch64(seg)
+/* movz x0, #0 */ .movz(Register.X0, 0, HWShift.None)
+/* ret         */ .ret(Optional.empty())
+                  .getMemorySegment("calibration_target");
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  protected MemorySegment generateStub(StubTarget target, boolean withErrorCode){
+    if(withErrorCode || (target.sampler() != null)){
+      return generateCallStub(target, true);
     }
 
-    var register = NativeRegister.create(targetClass);
-    register.registerNatives(methodMap);
+    // Arguments for native function cannot be stored into the stack of
+    // JNI caller if they need more stack than JNI. Generate the stub
+    // with its own stack frame in that case.
+    var rule = createCallRule(target.javaArgs(), target.nativeArgs(), true);
+    return rule.isJMPAvailable() ? generateJMPStub(target, rule)
+                                 : generateCallStub(target, false);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  protected MemorySegment generateJNIFunctionStub(ArgType[] javaArgs, int index){
+    var nativeArgs = new ArgSource[javaArgs.length + 1];
+    nativeArgs[0] = new ArgSource.Env();
+    for(int i = 0; i < javaArgs.length; i++){
+      nativeArgs[i + 1] = new ArgSource.Param(i, javaArgs[i]);
+    }
+    var rule = createCallRule(javaArgs, nativeArgs, true);
+
+    var builder = new AsmBuilder.AArch64(seg);
+    bindInner(builder, rule);
+    builder
+/* ldr x9, [x0]             */ .ldr(Register.X9, Register.X0, IndexClass.UnsignedOffset, 0)
+/* ldr x9, [x9, #index*8]   */ .ldr(Register.X9, Register.X9, IndexClass.UnsignedOffset, 8 * index)
+/* br  x9                   */ .br(Register.X9);
+
+    return builder.getMemorySegment("jni_function_" + index);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void bind(Class<?> targetClass, BindMethod[] bindMethods) throws Throwable{
+    bindMethodsInner(targetClass, bindMethods, false);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void bindWithErrorCode(Class<?> targetClass, BindMethod[] bindMethods) throws Throwable{
+    bindMethodsInner(targetClass, bindMethods, true);
   }
 
 }
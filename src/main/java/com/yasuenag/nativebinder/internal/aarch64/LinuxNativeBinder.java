@@ -19,15 +19,14 @@ package com.yasuenag.nativebinder.internal.aarch64;
 
 import java.lang.foreign.Linker;
 import java.lang.foreign.MemorySegment;
-import java.lang.reflect.Method;
-import java.util.ArrayList;
 import java.util.OptionalInt;
 
 import com.yasuenag.ffmasm.AsmBuilder;
-import com.yasuenag.ffmasm.aarch64.HWShift;
 import com.yasuenag.ffmasm.aarch64.IndexClass;
 import com.yasuenag.ffmasm.aarch64.Register;
 
+import com.yasuenag.nativebinder.ThreadContext;
+
 
 public class LinuxNativeBinder extends AArch64NativeBinder{
 
@@ -54,77 +53,72 @@ public class LinuxNativeBinder extends AArch64NativeBinder{
                              .get();
   }
 
-  private Transformer[] createArgTransformRuleInner(Method method, Register fromBaseReg, int fromStackOffset){
-    var argTypes = method.getParameterTypes();
-
-    int toStackOffset = 0;
-    int intArgs = 0;
+  private Location[] locateArgs(ArgType[] argTypes, int intArgs, Register baseReg, int stackOffset){
     int fpArgs = 0;
-    var transformers = new ArrayList<Transformer>();
+    var locations = new Location[argTypes.length];
 
     for(int i = 0; i < argTypes.length; i++){
-      var type = argTypes[i];
-      if(isIntegerClass(type)){
-        if(intArgs < (intArgRegs.length - 2)){
-          transformers.add(new Transformer(intArgRegs[intArgs + 2], intArgRegs[intArgs], ArgType.INT));
+      if(argTypes[i] == ArgType.INT){
+        if(intArgs < intArgRegs.length){
+          locations[i] = new Location(intArgRegs[intArgs], ArgType.INT);
         }
         else{
-          if(intArgs < intArgRegs.length){
-            transformers.add(new Transformer(fromBaseReg, OptionalInt.of(fromStackOffset), intArgRegs[intArgs], OptionalInt.empty(), ArgType.INT));
-          }
-          else{
-            transformers.add(new Transformer(fromBaseReg, OptionalInt.of(fromStackOffset), Register.SP, OptionalInt.of(toStackOffset), ArgType.INT));
-            toStackOffset += 8;
-          }
-          fromStackOffset += 8;
+          locations[i] = new Location(baseReg, OptionalInt.of(stackOffset), ArgType.INT);
+          stackOffset += 8;
         }
         intArgs++;
       }
-      else if(isFloatingPointClass(type)){
-        if(fpArgs >= FP_ARGREG_LIMIT){
-          if(fromStackOffset != toStackOffset){
-            transformers.add(new Transformer(fromBaseReg, OptionalInt.of(fromStackOffset), Register.SP, OptionalInt.of(toStackOffset), ArgType.FP));
-          }
-          fromStackOffset += 8;
-          toStackOffset += 8;
+      else{ // should be FP
+        if(fpArgs < FP_ARGREG_LIMIT){
+          locations[i] = new Location(null, ArgType.FP); // v0 - v7
+        }
+        else{
+          locations[i] = new Location(baseReg, OptionalInt.of(stackOffset), ArgType.FP);
+          stackOffset += 8;
         }
         fpArgs++;
       }
-      else{
-        throw new IllegalArgumentException("Unsupported argument type: " + type.getName());
-      }
     }
 
-    return transformers.toArray(new Transformer[0]);
+    return locations;
   }
 
   @Override
-  protected Transformer[] createArgTransformRule(Method method, boolean isJMP){
+  protected Location[] locateJNIArgs(ArgType[] javaArgs, boolean isJMP){
+    // 1st and 2nd arguments are JNIEnv and jobject/jclass
     if(isJMP){
-      return createArgTransformRuleInner(method, Register.SP, 0);
+      return locateArgs(javaArgs, 2, Register.SP, 0);
     }
     else{
-      return createArgTransformRuleInner(method, Register.X29, 16 /* Saved FP + LR */);
+      return locateArgs(javaArgs, 2, Register.X29, 16 /* Saved FP + LR */);
+    }
+  }
+
+  @Override
+  protected Location[] locateNativeArgs(ArgType[] nativeArgs, boolean isJMP){
+    return locateArgs(nativeArgs, 0, Register.SP, 0);
+  }
+
+  @Override
+  protected void loadValue(AsmBuilder.AArch64 builder, ArgSource source){
+    switch(source){
+      case ArgSource.ThreadContextValue value -> {
+        movImm(builder, Register.X0, value.key());
+        movImm(builder, Register.X9, ThreadContext.getter().address());
+        builder.blr(Register.X9);
+      }
+      default -> throw new IllegalArgumentException("Unsupported source: " + source);
     }
   }
 
   @Override
   protected void obtainErrorCode(AsmBuilder.AArch64 builder){
-    long errno_addr = __errno_location.address();
-    long cb_addr = ptrErrorCodeCallback.address();
-
-    builder.stp(Register.X0, Register.X0, Register.SP, IndexClass.PreIndex, -16) // evacuate original return val with 16 bytes alignment
-           .movz(Register.X9, (int)(errno_addr & 0xffff), HWShift.None)
-           .movk(Register.X9, (int)((errno_addr >> 16) & 0xffff), HWShift.HW_16)
-           .movk(Register.X9, (int)((errno_addr >> 32) & 0xffff), HWShift.HW_32)
-           .movk(Register.X9, (int)((errno_addr >> 48) & 0xffff), HWShift.HW_48)
-           .blr(Register.X9) // get errno
-           .ldr(Register.X0, Register.X0, IndexClass.UnsignedOffset, 0)
-           .movz(Register.X9, (int)(cb_addr & 0xffff), HWShift.None)
-           .movk(Register.X9, (int)((cb_addr >> 16) & 0xffff), HWShift.HW_16)
-           .movk(Register.X9, (int)((cb_addr >> 32) & 0xffff), HWShift.HW_32)
-           .movk(Register.X9, (int)((cb_addr >> 48) & 0xffff), HWShift.HW_48)
-           .blr(Register.X9)
+    builder.stp(Register.X0, Register.X0, Register.SP, IndexClass.PreIndex, -16); // evacuate original return val with 16 bytes alignment
+    movImm(builder, Register.X9, __errno_location.address());
+    builder.blr(Register.X9) // get errno
+           .ldr(Register.X0, Register.X0, IndexClass.UnsignedOffset, 0);
+    movImm(builder, Register.X9, ptrErrorCodeCallback.address());
+    builder.blr(Register.X9)
            .ldp(Register.X0, Register.X9 /* dummy */, Register.SP, IndexClass.PostIndex, 16); // restore original return val
   }
 
@@ -19,10 +19,14 @@
 package com.yasuenag.nativebinder.internal.amd64;
 
 import java.lang.foreign.FunctionDescriptor;
+import java.lang.foreign.Linker;
 import java.lang.foreign.MemorySegment;
 import java.lang.foreign.ValueLayout;
 import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.List;
 import java.util.OptionalInt;
 
 import com.yasuenag.ffmasm.AsmBuilder;
@@ -31,7 +35,14 @@ import com.yasuenag.ffmasm.PlatformException;
 import com.yasuenag.ffmasm.UnsupportedPlatformException;
 import com.yasuenag.ffmasm.amd64.Register;
 
+import com.yasuenag.nativebinder.AsyncRing;
+import com.yasuenag.nativebinder.CallBatch;
+import com.yasuenag.nativebinder.CallTracer;
+import com.yasuenag.nativebinder.CompositeMethod;
+import com.yasuenag.nativebinder.LatencySampler;
 import com.yasuenag.nativebinder.NativeBinder;
+import com.yasuenag.nativebinder.NativeLock;
+import com.yasuenag.nativebinder.ThreadContext;
 
 
 /**
@@ -48,6 +59,14 @@ public abstract class AMD64NativeBinder extends NativeBinder{
   private static volatile boolean initialized;
   private static boolean isAVX;
 
+  /**
+   * Function pointer of calloc() to allocate ScratchBuffer.
+   */
+  private static final MemorySegment calloc = Linker.nativeLinker()
+                                                    .defaultLookup()
+                                                    .find("calloc")
+                                                    .get();
+
   /**
    * Record to store the rule of argument transformation.
    *
@@ -74,6 +93,451 @@ public abstract class AMD64NativeBinder extends NativeBinder{
     }
   }
 
+  /**
+   * Record to store the rule of loading constant value.
+   *
+   * @param value value to load
+   * @param to register in native function
+   * @param toOffset offset on stack if the argument is on stack.
+   *        This value is for `to` - `to` would be RSP in this case.
+   */
+  public static record ImmediateLoader(long value, Register to, OptionalInt toOffset){
+
+    @Override
+    public String toString(){
+      String result = String.format("$0x%x -> ", value);
+      result += toOffset.isEmpty() ? to.toString()
+                                   : String.format("%d(%s)", toOffset.getAsInt(), to.toString());
+      return result;
+    }
+  }
+
+  /**
+   * Record to store location of the argument.
+   *
+   * @param reg register which holds the argument. This is base register
+   *        if the argument is on stack.
+   * @param offset offset from base register if the argument is on stack.
+   */
+  protected static record Location(Register reg, OptionalInt offset){
+
+    public Location(Register reg){
+      this(reg, OptionalInt.empty());
+    }
+
+    public boolean isStack(){
+      return offset.isPresent();
+    }
+  }
+
+  /**
+   * Record to store the rule of loading the value which is determined
+   * in each call (e.g. value in per-thread slot).
+   * The value is stored into local variable in the stub.
+   *
+   * @param source source of the value
+   * @param to base register of local variable
+   * @param toOffset offset of local variable
+   */
+  public static record ValueLoader(ArgSource source, Register to, OptionalInt toOffset){}
+
+  /**
+   * Record to store the rule of pinning the reference from Java (e.g.
+   * primitive array) during native function call.
+   * The pointer is obtained via JNI before the call, and it is released
+   * after the call.
+   *
+   * @param source source of the pointer
+   * @param handle location of the reference (jobject)
+   * @param pointer location of local variable to hold the pointer
+   */
+  protected static record PinRule(ArgSource source, Location handle, Location pointer){}
+
+  /**
+   * Record to store all of rules to call native function.
+   *
+   * @param spills rules to evacuate arguments in registers into local
+   *        variables. They are needed if the stub calls other functions
+   *        before native function.
+   * @param loaders rules of loading values which are determined in each call
+   * @param pins rules of pinning references from Java
+   * @param packers rules of packing members of the struct into local
+   *        variables. They are processed before `transformers`.
+   * @param transformers rules of argument transformation
+   * @param immediates rules of loading constant values
+   * @param stackSize stack size for arguments of native function
+   *        (includes reg param stack in Windows) and local variables.
+   * @param savedSlot index of 1st local variable to hold return value
+   *        (RAX, XMM0) and error code while pinned references are
+   *        released. Negative value if there is no pinned reference
+   *        which should be released.
+   * @param isJMPAvailable true if arguments for native function can be
+   *        stored into the stack of JNI caller. It is valid when the rule
+   *        is created for the stub with JMP operation.
+   */
+  public static record CallRule(Transformer[] spills, ValueLoader[] loaders, PinRule[] pins, Transformer[] packers, Transformer[] transformers, ImmediateLoader[] immediates, int stackSize, int savedSlot, boolean isJMPAvailable){}
+
+  /**
+   * Offset of local variable to hold JNIEnv from RBP.
+   * It is available when the stub evacuates arguments.
+   */
+  protected static final int JNIENV_OFFSET = -8;
+
+  private static final String LABEL_EXIT = "exit";
+
+  private static final String LABEL_LOOP = "loop";
+
+  private static final String LABEL_CALL = "call";
+
+  /**
+   * Get locations of arguments from JNI caller.
+   * 1st and 2nd arguments (JNIEnv and jobject/jclass) are not included.
+   *
+   * @param javaArgs argument types of Java method
+   * @param isJMP true if the stub should be generated with JMP operation.
+   * @return locations of arguments
+   */
+  protected abstract Location[] locateJNIArgs(ArgType[] javaArgs, boolean isJMP);
+
+  /**
+   * Get locations of arguments for native function.
+   *
+   * @param nativeArgs argument types of native function
+   * @param isJMP true if the stub should be generated with JMP operation.
+   * @return locations of arguments
+   */
+  protected abstract Location[] locateNativeArgs(ArgType[] nativeArgs, boolean isJMP);
+
+  /**
+   * Get locations of arguments from C caller in the callback stub.
+   * The stub has its own stack frame, so arguments in the stack are
+   * relative to RBP.
+   *
+   * @param args argument types of the callback
+   * @return locations of arguments
+   */
+  protected abstract Location[] locateCallbackArgs(ArgType[] args);
+
+  /**
+   * Get register which holds JNIEnv at the entry of JNI function.
+   *
+   * @return register for JNIEnv
+   */
+  protected abstract Register jniEnvRegister();
+
+  /**
+   * Generate machine code to load the value which is determined in each call.
+   * The value should be set to RAX.
+   *
+   * @param builder AsmBuilder instance for generating stub code.
+   * @param source source of the value
+   */
+  protected abstract void loadValue(AsmBuilder.AVX builder, ArgSource source);
+
+  /**
+   * Get minimum stack size for native function call.
+   *
+   * @return minimum stack size
+   */
+  protected abstract int minimumStackSize();
+
+  private static int countStackArgs(Location[] locations){
+    int count = 0;
+    for(var location : locations){
+      if(location.isStack()){
+        count++;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Sort transformers not to clobber the argument which is not yet moved.
+   *
+   * @param transformers to sort
+   * @return sorted transformers
+   */
+  private static Transformer[] sortTransformers(List<Transformer> transformers){
+    var remaining = new ArrayList<Transformer>(transformers);
+    var sorted = new ArrayList<Transformer>();
+
+    while(!remaining.isEmpty()){
+      Transformer next = null;
+      for(var candidate : remaining){
+        boolean clobber = remaining.stream()
+                                   .anyMatch(t -> (t != candidate) &&
+                                                  (t.from() == candidate.to()) &&
+                                                  t.fromOffset().equals(candidate.toOffset()));
+        if(!clobber){
+          next = candidate;
+          break;
+        }
+      }
+
+      if(next == null){
+        throw new IllegalStateException("Argument transformation is cyclic: " + remaining);
+      }
+      sorted.add(next);
+      remaining.remove(next);
+    }
+
+    return sorted.toArray(new Transformer[0]);
+  }
+
+  /**
+   * Get location of local variable in the stub.
+   * Local variable is placed under saved RBP.
+   *
+   * @param slot index of local variable
+   * @return location of local variable
+   */
+  protected static Location localVariable(int slot){
+    return new Location(Register.RBP, OptionalInt.of(-8 * (slot + 1)));
+  }
+
+  /**
+   * Create rules to evacuate JNIEnv and arguments in registers to local
+   * variables. JNIEnv is stored into 1st local variable (JNIENV_OFFSET),
+   * and arguments are stored into subsequent local variables.
+   * Locations in `from` are updated to local variables.
+   *
+   * @param javaArgs argument types of Java method
+   * @param from locations of arguments from JNI caller
+   * @return rules to evacuate
+   */
+  private Transformer[] evacuateArgs(ArgType[] javaArgs, Location[] from){
+    var spills = new ArrayList<Transformer>();
+
+    var env = localVariable(0);
+    spills.add(new Transformer(jniEnvRegister(), OptionalInt.empty(), env.reg(), env.offset(), ArgType.INT));
+
+    for(int i = 0; i < from.length; i++){
+      if(!from[i].isStack()){
+        var local = localVariable(spills.size());
+        spills.add(new Transformer(from[i].reg(), OptionalInt.empty(), local.reg(), local.offset(), javaArgs[i]));
+        from[i] = local;
+      }
+    }
+
+    return spills.toArray(new Transformer[0]);
+  }
+
+  /**
+   * Create rules to call native function.
+   *
+   * @param from locations of arguments from JNI caller
+   * @param nativeArgs sources of arguments for native function
+   * @param isJMP true if the stub should be generated with JMP operation.
+   * @param spills rules to evacuate arguments
+   * @param localSlots number of local variables which are already used
+   * @param resultSlot index of local variable for the result of 1st
+   *        step in composite binding. Negative value if it is not
+   *        composite binding.
+   * @return rules to call native function
+   */
+  private CallRule createCallRule(Location[] from, ArgSource[] nativeArgs, boolean isJMP, Transformer[] spills, int localSlots, int resultSlot){
+    var nativeArgTypes = new ArgType[nativeArgs.length];
+    for(int i = 0; i < nativeArgs.length; i++){
+      nativeArgTypes[i] = nativeArgs[i].type();
+    }
+    var to = locateNativeArgs(nativeArgTypes, isJMP);
+
+    var loaders = new ArrayList<ValueLoader>();
+    var pins = new ArrayList<PinRule>();
+    var packers = new ArrayList<Transformer>();
+    var transformers = new ArrayList<Transformer>();
+    var immediates = new ArrayList<ImmediateLoader>();
+    int stackSize = minimumStackSize();
+    for(int i = 0; i < nativeArgs.length; i++){
+      switch(nativeArgs[i]){
+        case ArgSource.Param param -> {
+          var src = from[param.index()];
+          if(!src.equals(to[i])){
+            transformers.add(new Transformer(src.reg(), src.offset(), to[i].reg(), to[i].offset(), param.type()));
+          }
+        }
+        case ArgSource.Immediate imm -> immediates.add(new ImmediateLoader(imm.value(), to[i].reg(), to[i].offset()));
+        case ArgSource.Result result -> {
+          if(resultSlot < 0){
+            throw new IllegalArgumentException("Result is available in composite binding only");
+          }
+          var local = localVariable(resultSlot + result.step());
+          transformers.add(new Transformer(local.reg(), local.offset(), to[i].reg(), to[i].offset(), result.type()));
+        }
+        case ArgSource.ThreadContextValue value -> {
+          var local = localVariable(localSlots++);
+          loaders.add(new ValueLoader(value, local.reg(), local.offset()));
+          transformers.add(new Transformer(local.reg(), local.offset(), to[i].reg(), to[i].offset(), value.type()));
+        }
+        case ArgSource.ScratchPointer pointer -> {
+          var local = localVariable(localSlots++);
+          loaders.add(new ValueLoader(pointer, local.reg(), local.offset()));
+          transformers.add(new Transformer(local.reg(), local.offset(), to[i].reg(), to[i].offset(), pointer.type()));
+        }
+        case ArgSource.Env env -> {
+          // JNIEnv is in 1st local variable if arguments are evacuated.
+          var src = ((spills.length > 0) || (resultSlot >= 0)) ? localVariable(0) : new Location(jniEnvRegister());
+          if(!src.equals(to[i])){
+            transformers.add(new Transformer(src.reg(), src.offset(), to[i].reg(), to[i].offset(), env.type()));
+          }
+        }
+        case ArgSource.ArrayElements array -> {
+          var local = localVariable(localSlots++);
+          pins.add(new PinRule(array, from[array.index()], local));
+          transformers.add(new Transformer(local.reg(), local.offset(), to[i].reg(), to[i].offset(), array.type()));
+        }
+        case ArgSource.BufferAddress buffer -> {
+          var local = localVariable(localSlots++);
+          pins.add(new PinRule(buffer, from[buffer.index()], local));
+          transformers.add(new Transformer(local.reg(), local.offset(), to[i].reg(), to[i].offset(), buffer.type()));
+        }
+        case ArgSource.StringChars str -> {
+          var local = localVariable(localSlots++);
+          pins.add(new PinRule(str, from[str.index()], local));
+          transformers.add(new Transformer(local.reg(), local.offset(), to[i].reg(), to[i].offset(), str.type()));
+        }
+        case ArgSource.Packed packed -> {
+          var fields = packed.fields();
+          var first = fields.get(0);
+          if((fields.size() == 1) && (first.offset() == 0) && (first.type() == packed.type())){
+            // Nothing to pack
+            var src = from[first.index()];
+            if(!src.equals(to[i])){
+              transformers.add(new Transformer(src.reg(), src.offset(), to[i].reg(), to[i].offset(), packed.type()));
+            }
+          }
+          else{
+            // Each member is stored as 8 bytes in order of offset, so
+            // the area has 8 bytes more than the chunk for the last one.
+            localSlots += 2;
+            var area = localVariable(localSlots - 1);
+            for(var field : fields){
+              var src = from[field.index()];
+              packers.add(new Transformer(src.reg(), src.offset(), area.reg(), OptionalInt.of(area.offset().getAsInt() + field.offset()), field.type()));
+            }
+            transformers.add(new Transformer(area.reg(), area.offset(), to[i].reg(), to[i].offset(), packed.type()));
+          }
+        }
+      }
+
+      if(to[i].isStack()){
+        stackSize = Math.max(stackSize, to[i].offset().getAsInt() + 8);
+      }
+    }
+
+    // Struct should be passed in registers or on the stack entirely.
+    var structOnStack = new HashMap<Integer, Boolean>();
+    for(int i = 0; i < nativeArgs.length; i++){
+      if(nativeArgs[i] instanceof ArgSource.Packed packed){
+        var prev = structOnStack.put(packed.struct(), to[i].isStack());
+        if((prev != null) && (prev != to[i].isStack())){
+          throw new IllegalArgumentException("Struct from parameter " + packed.struct() + " is split into registers and stack");
+        }
+      }
+    }
+
+    // Other JNI functions should not be called in critical region, so
+    // primitive arrays are pinned at last.
+    pins.sort(Comparator.comparing(p -> p.source() instanceof ArgSource.ArrayElements));
+
+    // RAX, XMM0 and error code
+    int savedSlot = -1;
+    if(pins.stream().anyMatch(p -> needsRelease(p.source()))){
+      savedSlot = localSlots;
+      localSlots += 3;
+    }
+
+    // Struct is packed into local variables, so it needs stack frame.
+    boolean isJMPAvailable = (spills.length == 0) && packers.isEmpty() && (countStackArgs(to) <= countStackArgs(from));
+    return new CallRule(spills,
+                        loaders.toArray(new ValueLoader[0]),
+                        pins.toArray(new PinRule[0]),
+                        packers.toArray(new Transformer[0]),
+                        sortTransformers(transformers),
+                        immediates.toArray(new ImmediateLoader[0]),
+                        stackSize + (8 * localSlots),
+                        savedSlot,
+                        isJMPAvailable);
+  }
+
+  /**
+   * Create rules to call native function.
+   *
+   * @param javaArgs argument types of Java method
+   * @param nativeArgs sources of arguments for native function
+   * @param isJMP true if the stub should be generated with JMP operation.
+   * @return rules to call native function
+   */
+  protected CallRule createCallRule(ArgType[] javaArgs, ArgSource[] nativeArgs, boolean isJMP){
+    return createCallRule(javaArgs, nativeArgs, isJMP, false);
+  }
+
+  /**
+   * Create rules to call native function.
+   *
+   * @param javaArgs argument types of Java method
+   * @param nativeArgs sources of arguments for native function
+   * @param isJMP true if the stub should be generated with JMP operation.
+   * @param evacuate true if arguments should be evacuated because the
+   *        stub calls other function before the target (e.g. lock).
+   * @return rules to call native function
+   */
+  protected CallRule createCallRule(ArgType[] javaArgs, ArgSource[] nativeArgs, boolean isJMP, boolean evacuate){
+    return createCallRule(javaArgs, nativeArgs, isJMP, evacuate, 0);
+  }
+
+  /**
+   * Create rules to call native function.
+   *
+   * @param javaArgs argument types of Java method
+   * @param nativeArgs sources of arguments for native function
+   * @param isJMP true if the stub should be generated with JMP operation.
+   * @param evacuate true if arguments should be evacuated because the
+   *        stub calls other function before the target (e.g. lock).
+   * @param reservedSlots number of local variables which are reserved for
+   *        the stub. They begin from the slot after evacuated arguments.
+   * @return rules to call native function
+   */
+  protected CallRule createCallRule(ArgType[] javaArgs, ArgSource[] nativeArgs, boolean isJMP, boolean evacuate, int reservedSlots){
+    boolean hasLoader = evacuate;
+    for(var nativeArg : nativeArgs){
+      hasLoader |= (nativeArg instanceof ArgSource.ThreadContextValue) ||
+                   (nativeArg instanceof ArgSource.ScratchPointer) ||
+                   (nativeArg instanceof ArgSource.ArrayElements) ||
+                   (nativeArg instanceof ArgSource.BufferAddress) ||
+                   (nativeArg instanceof ArgSource.StringChars);
+    }
+
+    var from = locateJNIArgs(javaArgs, isJMP);
+    // Arguments in registers would be clobbered by function call to
+    // load values or to pin references. So they should be evacuated to
+    // local variables.
+    var spills = hasLoader ? evacuateArgs(javaArgs, from) : new Transformer[0];
+    return createCallRule(from, nativeArgs, isJMP, spills, spills.length + reservedSlots, -1);
+  }
+
+  /**
+   * Create rules to call native functions in composite binding.
+   * Arguments are evacuated in 1st rule, and return value of each step
+   * is stored into local variable which begins from `resultSlot`.
+   *
+   * @param compositeMethod composite binding information
+   * @return rules to call native functions in each step
+   */
+  protected CallRule[] createCompositeCallRules(CompositeMethod compositeMethod){
+    var javaArgs = getArgTypes(compositeMethod.method());
+    var from = locateJNIArgs(javaArgs, false);
+    var spills = evacuateArgs(javaArgs, from);
+    int resultSlot = spills.length;
+    int localSlots = resultSlot + compositeMethod.steps().length;
+
+    var rules = new CallRule[compositeMethod.steps().length];
+    for(int i = 0; i < rules.length; i++){
+      rules[i] = createCallRule(from, createArgSources(compositeMethod, i), false, (i == 0) ? spills : new Transformer[0], localSlots, resultSlot);
+    }
+    return rules;
+  }
+
   /**
    * Create transformation rule.
    *
@@ -81,7 +545,10 @@ public abstract class AMD64NativeBinder extends NativeBinder{
    * @param isJMP true if the stub should be generated with JMP operation.
    * @return transformation ruleset
    */
-  protected abstract Transformer[] createArgTransformRule(Method method, boolean isJMP);
+  protected Transformer[] createArgTransformRule(Method method, boolean isJMP){
+    var bindMethod = new BindMethod(method, MemorySegment.NULL);
+    return createCallRule(getArgTypes(method), createArgSources(bindMethod), isJMP).transformers();
+  }
 
   /**
    * Generate machine code to obtain error code (errno in Linux, GetLastError() in Windows)
@@ -90,6 +557,43 @@ public abstract class AMD64NativeBinder extends NativeBinder{
    */
   protected abstract void obtainErrorCode(AsmBuilder.AVX builder);
 
+  /**
+   * Generate machine code to load error code (errno in Linux, GetLastError() in Windows)
+   * into EAX. Upper 32 bits of RAX should be cleared.
+   *
+   * @param builder AsmBuilder instance for generating stub code.
+   */
+  protected abstract void loadErrorCode(AsmBuilder.AVX builder);
+
+  /**
+   * Generate machine code to jump to `label` if the lock is acquired.
+   * Return value of {@link NativeLock#tryLock()} is in RAX.
+   *
+   * @param builder AsmBuilder instance for generating stub code.
+   * @param label label to jump
+   */
+  protected abstract void jumpIfLockAcquired(AsmBuilder.AVX builder, String label);
+
+  /**
+   * Generate machine code to prepare the call of variadic C function.
+   * It is generated after all of arguments are set, just before the call.
+   * R10 and R11 are available as scratch registers.
+   *
+   * @param builder AsmBuilder instance for generating stub code.
+   * @param nativeArgs argument types of C function
+   * @param fixedArgs number of fixed arguments of C function
+   * @param isJMP true if the stub jumps to C function
+   */
+  protected abstract void prepareVariadicCall(AsmBuilder.AVX builder, ArgType[] nativeArgs, int fixedArgs, boolean isJMP);
+
+  private static ArgType[] getNativeArgTypes(ArgSource[] nativeArgs){
+    var types = new ArgType[nativeArgs.length];
+    for(int i = 0; i < nativeArgs.length; i++){
+      types[i] = nativeArgs[i].type();
+    }
+    return types;
+  }
+
   private static void init(){
     if(!initialized){
       try{
@@ -141,8 +645,8 @@ public abstract class AMD64NativeBinder extends NativeBinder{
    */
   protected abstract Register xmmVolatileRegister();
 
-  private void bindInner(AsmBuilder.AVX builder, Transformer[] rule){
-    for(var transformer : rule){
+  private void transform(AsmBuilder.AVX builder, Transformer[] transformers){
+    for(var transformer : transformers){
       if(transformer.fromOffset().isEmpty() && transformer.toOffset().isEmpty()){
         // reg to reg
         if(transformer.type() == ArgType.INT){
@@ -174,83 +678,1289 @@ public abstract class AMD64NativeBinder extends NativeBinder{
         }
       }
       else{
-        throw new IllegalStateException("Should not be reg-mem");
+        // reg to mem
+        if(transformer.type() == ArgType.INT){
+          builder.movMR(transformer.from(), transformer.to(), transformer.toOffset());
+        }
+        else{ // should be FP
+          builder.movqMR(transformer.from(), transformer.to(), transformer.toOffset());
+        }
       }
     }
   }
 
   /**
-   * {@inheritDoc}
+   * Generate machine code to call JNI function.
+   * Arguments should be set to registers for native function call.
+   *
+   * @param builder AsmBuilder instance for generating stub code.
+   * @param envReg register which holds JNIEnv
+   * @param index index of the function in JNI function table
    */
-  @Override
-  public void bind(Class<?> targetClass, BindMethod[] bindMethods) throws Throwable{
-    var methodMap = new HashMap<Method, MemorySegment>();
+  private void callJNIFunction(AsmBuilder.AVX builder, Register envReg, int index){
+    builder
+/* mov (<env>),          %r10 */ .movRM(Register.R10, envReg, OptionalInt.of(0))
+/* mov <index*8>(%r10),  %r10 */ .movRM(Register.R10, Register.R10, OptionalInt.of(8 * index))
+/* call *%r10                 */ .call(Register.R10);
+  }
+
+  /**
+   * Generate machine code to obtain the pointer from the reference.
+   * NULL is stored if the reference is null.
+   *
+   * @param builder AsmBuilder instance for generating stub code.
+   * @param pin rule of pinning
+   * @param label label to skip JNI call
+   */
+  private void pin(AsmBuilder.AVX builder, PinRule pin, String label){
+    var args = locateNativeArgs(new ArgType[]{ArgType.INT, ArgType.INT, ArgType.INT}, false);
+    builder.movImm(Register.RAX, 0)
+           .movMR(Register.RAX, pin.pointer().reg(), pin.pointer().offset());
+    loadFrom(builder, pin.handle(), args[1].reg());
+    builder.cmp(args[1].reg(), 1, OptionalInt.empty())
+           .jl(label) // null
+           .movRM(args[0].reg(), Register.RBP, OptionalInt.of(JNIENV_OFFSET));
 
-    for(var bindMethod : bindMethods){
-      var rule = createArgTransformRule(bindMethod.method(), true);
+    switch(pin.source()){
+      case ArgSource.ArrayElements array -> {
+        builder.movImm(args[2].reg(), 0); // isCopy
+        callJNIFunction(builder, args[0].reg(), JNI_GET_PRIMITIVE_ARRAY_CRITICAL);
+      }
+      case ArgSource.BufferAddress buffer -> callJNIFunction(builder, args[0].reg(), JNI_GET_DIRECT_BUFFER_ADDRESS);
+      case ArgSource.StringChars str -> {
+        builder.movImm(args[2].reg(), 0); // isCopy
+        callJNIFunction(builder, args[0].reg(), JNI_GET_STRING_UTF_CHARS);
+      }
+      default -> throw new IllegalArgumentException("Unsupported source: " + pin.source());
+    }
+
+    builder.movMR(Register.RAX, pin.pointer().reg(), pin.pointer().offset())
+           .label(label);
+  }
+
+  /**
+   * Check the pointer should be released after the call or not.
+   *
+   * @param source source of the pointer
+   * @return true if the pointer should be released
+   */
+  private static boolean needsRelease(ArgSource source){
+    // Address of direct buffer is valid while the buffer is alive.
+    return !(source instanceof ArgSource.BufferAddress);
+  }
+
+  /**
+   * Generate machine code to release the pointer which is obtained by
+   * pin(). Nothing is done if the reference is null.
+   *
+   * @param builder AsmBuilder instance for generating stub code.
+   * @param pin rule of pinning
+   * @param label label to skip JNI call
+   */
+  private void unpin(AsmBuilder.AVX builder, PinRule pin, String label){
+    if(!needsRelease(pin.source())){
+      return;
+    }
 
-      var builder = new AsmBuilder.AVX(seg);
-      if(isAVX){
-        builder.vzeroupper();
+    var args = locateNativeArgs(new ArgType[]{ArgType.INT, ArgType.INT, ArgType.INT, ArgType.INT}, false);
+    loadFrom(builder, pin.handle(), args[1].reg());
+    builder.cmp(args[1].reg(), 1, OptionalInt.empty())
+           .jl(label) // null
+           .movRM(args[0].reg(), Register.RBP, OptionalInt.of(JNIENV_OFFSET))
+           .movRM(args[2].reg(), pin.pointer().reg(), pin.pointer().offset());
+
+    switch(pin.source()){
+      case ArgSource.ArrayElements array -> {
+        builder.movImm(args[3].reg(), 0); // mode: copy back and free
+        callJNIFunction(builder, args[0].reg(), JNI_RELEASE_PRIMITIVE_ARRAY_CRITICAL);
       }
+      case ArgSource.StringChars str -> callJNIFunction(builder, args[0].reg(), JNI_RELEASE_STRING_UTF_CHARS);
+      default -> throw new IllegalArgumentException("Unsupported source: " + pin.source());
+    }
+
+    builder.label(label);
+  }
+
+  /**
+   * Generate machine code to release all of pinned references after
+   * native function call. Return value is kept in local variables during
+   * releasing. Error code is obtained before releasing because JNI
+   * function might change it, and it is reported after releasing because
+   * the callback must not be called in critical region.
+   *
+   * @param builder AsmBuilder instance for generating stub code.
+   * @param rule rules to call native function
+   * @param withErrorCode true if error code should be obtained
+   */
+  private void unpinAll(AsmBuilder.AVX builder, CallRule rule, boolean withErrorCode){
+    var savedRAX = localVariable(rule.savedSlot());
+    var savedXMM0 = localVariable(rule.savedSlot() + 1);
+    var savedErrorCode = localVariable(rule.savedSlot() + 2);
 
-      bindInner(builder, rule);
+    builder.movMR(Register.RAX, savedRAX.reg(), savedRAX.offset())
+           .movqMR(Register.XMM0, savedXMM0.reg(), savedXMM0.offset());
+    if(withErrorCode){
+      loadErrorCode(builder);
+      builder.movMR(Register.RAX, savedErrorCode.reg(), savedErrorCode.offset());
+    }
 
-      builder.movImm(Register.R10, bindMethod.seg().address())
-             .jmp(Register.R10);
+    // Release in reverse order of pinning.
+    for(int i = rule.pins().length - 1; i >= 0; i--){
+      unpin(builder, rule.pins()[i], "unpin_" + i);
+    }
 
-      var stubName = "stub_" + bindMethod.method().getName();
-      var stubSeg = builder.getMemorySegment(stubName);
-      methodMap.put(bindMethod.method(), stubSeg);
+    if(withErrorCode){
+      var arg = locateNativeArgs(new ArgType[]{ArgType.INT}, false)[0].reg();
+      builder.movRM(arg, savedErrorCode.reg(), savedErrorCode.offset())
+             .movImm(Register.R10, ptrErrorCodeCallback.address())
+             .call(Register.R10);
     }
 
-    var register = NativeRegister.create(targetClass);
-    register.registerNatives(methodMap);
+    builder.movRM(Register.RAX, savedRAX.reg(), savedRAX.offset())
+           .movqRM(Register.XMM0, savedXMM0.reg(), savedXMM0.offset());
+  }
+
+  private static void incrementCounter(AsmBuilder.AVX builder, long address){
+    builder.movImm(Register.R10, address)
+           .movRM(Register.R11, Register.R10, OptionalInt.of(0))
+           .add(Register.R11, 1, OptionalInt.empty())
+           .movMR(Register.R11, Register.R10, OptionalInt.of(0));
   }
 
   /**
-   * {@inheritDoc}
+   * Generate machine code to increment striped call counter.
+   * The stripe is chosen from 2nd byte of RSP (bits 16-23), and it is
+   * written to 2nd byte of the address of the counter because the block
+   * of CallCounters is aligned to 64KB. It uses RAX, R10, and R11 only,
+   * so it can be placed at the entry of the stub.
+   *
+   * @param builder AsmBuilder instance for generating stub code.
+   * @param counter counter in 1st stripe
    */
-  @Override
-  public void bindWithErrorCode(Class<?> targetClass, BindMethod[] bindMethods) throws Throwable{
-    var methodMap = new HashMap<Method, MemorySegment>();
+  private static void countCall(AsmBuilder.AVX builder, MemorySegment counter){
+    builder
+/* push %rsp               */ .push(Register.RSP)
+/* mov 2(%rsp),       %al  */ .movRM(Register.AL, Register.RSP, OptionalInt.of(2))
+/* mov <counter>,     %r11 */ .movImm(Register.R11, counter.address())
+/* mov %r11,      (%rsp)   */ .movMR(Register.R11, Register.RSP, OptionalInt.of(0))
+/* mov %al,      1(%rsp)   */ .movMR(Register.AL, Register.RSP, OptionalInt.of(1))
+/* mov (%rsp),        %r11 */ .movRM(Register.R11, Register.RSP, OptionalInt.of(0))
+/* add $8,            %rsp */ .add(Register.RSP, 8, OptionalInt.empty())
+/* mov (%r11),        %r10 */ .movRM(Register.R10, Register.R11, OptionalInt.of(0))
+/* add $1,            %r10 */ .add(Register.R10, 1, OptionalInt.empty())
+/* mov %r10,      (%r11)   */ .movMR(Register.R10, Register.R11, OptionalInt.of(0));
+  }
 
-    for(var bindMethod : bindMethods){
-      // Stack size is estimated a max value.
-      int stackSize = 8 * bindMethod.method().getParameterTypes().length;
-      if(stackSize < 32){  // for Windows reg param stack
-        stackSize = 32;
-      }
-      int alignedStackSize = ((stackSize & 0xf) == 0) ? stackSize
-                                                      : (stackSize + 0x10) & 0xfffffff0;
+  /**
+   * Generate machine code to acquire the lock.
+   * It tries to acquire at first, and waits for the lock only if it
+   * fails. Counters are updated after the lock is acquired.
+   *
+   * @param builder AsmBuilder instance for generating stub code.
+   * @param lock lock to acquire
+   */
+  private void acquireLock(AsmBuilder.AVX builder, NativeLock lock){
+    final String LABEL_ACQUIRED = "lock_acquired";
+    var arg = locateNativeArgs(new ArgType[]{ArgType.INT}, false)[0].reg();
+    long base = lock.segment().address();
 
-      var builder = new AsmBuilder.AVX(seg)
-/* push %rbp                    */ .push(Register.RBP)
-/* mov %rsp,               %rbp */ .movMR(Register.RSP, Register.RBP, OptionalInt.empty())
-/* sub <alignedStackSize>, %rsp */ .sub(Register.RSP, alignedStackSize, OptionalInt.empty());
+    builder.movImm(arg, base + NativeLock.LOCK_OFFSET)
+           .movImm(Register.R10, NativeLock.tryLock().address())
+           .call(Register.R10);
+    jumpIfLockAcquired(builder, LABEL_ACQUIRED);
+    builder.movImm(arg, base + NativeLock.LOCK_OFFSET)
+           .movImm(Register.R10, NativeLock.lock().address())
+           .call(Register.R10);
+    incrementCounter(builder, base + NativeLock.CONTENTIONS_OFFSET);
+    builder.label(LABEL_ACQUIRED);
+    incrementCounter(builder, base + NativeLock.ACQUISITIONS_OFFSET);
+  }
 
-      if(isAVX){
-        builder.vzeroupper();
-      }
+  /**
+   * Generate machine code to release the lock.
+   * Return value in RAX and XMM0 is preserved.
+   *
+   * @param builder AsmBuilder instance for generating stub code.
+   * @param lock lock to release
+   */
+  private void releaseLock(AsmBuilder.AVX builder, NativeLock lock){
+    var arg = locateNativeArgs(new ArgType[]{ArgType.INT}, false)[0].reg();
+    int savedOffset = minimumStackSize();
+    int size = savedOffset + 16; // RAX and XMM0 (16 bytes aligned)
 
-      var rule = createArgTransformRule(bindMethod.method(), false);
-      bindInner(builder, rule);
+    builder.sub(Register.RSP, size, OptionalInt.empty())
+           .movMR(Register.RAX, Register.RSP, OptionalInt.of(savedOffset))
+           .movqMR(Register.XMM0, Register.RSP, OptionalInt.of(savedOffset + 8))
+           .movImm(arg, lock.segment().address() + NativeLock.LOCK_OFFSET)
+           .movImm(Register.R10, NativeLock.unlock().address())
+           .call(Register.R10)
+           .movRM(Register.RAX, Register.RSP, OptionalInt.of(savedOffset))
+           .movqRM(Register.XMM0, Register.RSP, OptionalInt.of(savedOffset + 8))
+           .add(Register.RSP, size, OptionalInt.empty());
+  }
 
-      builder.movImm(Register.R10, bindMethod.seg().address())
-             .call(Register.R10);
+  /**
+   * Generate machine code to read time stamp counter before the call if
+   * the countdown in the header of LatencySampler reaches zero.
+   * The countdown is updated without atomic operation, so it might be
+   * negative if threads race. It is compared as signed value, then the
+   * next call takes the sample and resets the countdown.
+   * The value is stored into `slot`, or zero is stored if this call is not
+   * sampled. It uses RAX, RDX, R10, and R11, so arguments should not be in
+   * them.
+   *
+   * @param builder AsmBuilder instance for generating stub code.
+   * @param sampler header of LatencySampler
+   * @param slot local variable to store time stamp counter
+   */
+  private void startSample(AsmBuilder.AVX builder, MemorySegment sampler, Location slot){
+    final String LABEL_SAMPLED = "sampled";
+    final String LABEL_NOT_SAMPLED = "not_sampled";
+    long interval = sampler.get(ValueLayout.JAVA_LONG, LatencySampler.INTERVAL_OFFSET);
+    int offset = slot.offset().getAsInt();
 
-      obtainErrorCode(builder);
+    builder
+/* mov <header>,        %r11 */ .movImm(Register.R11, sampler.address())
+/* mov (%r11),          %r10 */ .movRM(Register.R10, Register.R11, OptionalInt.of((int)LatencySampler.COUNTDOWN_OFFSET))
+/* sub $1,              %r10 */ .sub(Register.R10, 1, OptionalInt.empty())
+/* mov %r10,        (%r11)   */ .movMR(Register.R10, Register.R11, OptionalInt.of((int)LatencySampler.COUNTDOWN_OFFSET))
+/* mov $0,              %rax */ .movImm(Register.RAX, 0L)
+/* mov %rax,        <slot>   */ .movMR(Register.RAX, slot.reg(), slot.offset())
+/* cmp $1,              %r10 */ .cmp(Register.R10, 1, OptionalInt.empty())
+/* jl sampled                */ .jl(LABEL_SAMPLED) // signed: countdown <= 0
+/* jmp not_sampled           */ .jmp(LABEL_NOT_SAMPLED)
+/* sampled:                  */ .label(LABEL_SAMPLED)
+/* mov <interval>,      %r10 */ .movImm(Register.R10, interval)
+/* mov %r10,        (%r11)   */ .movMR(Register.R10, Register.R11, OptionalInt.of((int)LatencySampler.COUNTDOWN_OFFSET))
+/* rdtsc                     */ .rdtsc()
+/* mov %eax,        <slot>   */ .movMR(Register.EAX, slot.reg(), OptionalInt.of(offset))
+/* mov %edx,      <slot+4>   */ .movMR(Register.EDX, slot.reg(), OptionalInt.of(offset + 4))
+/* not_sampled:              */ .label(LABEL_NOT_SAMPLED);
+  }
 
-      builder.leave()
-             .ret();
+  /**
+   * Generate machine code to record the sample after the call.
+   * Time stamp counters before and after the call are stored into the
+   * entry which is pointed by the cursor in the header, then the cursor
+   * is advanced. The ring is aligned to 64KB, so the cursor wraps by
+   * restoring upper 6 bytes of the address of the ring after the advance.
+   * New cursor is built in the stack, and it is published to the header
+   * with one store, so other threads never see the cursor out of the ring.
+   * Return value in RAX and XMM0 is preserved.
+   *
+   * @param builder AsmBuilder instance for generating stub code.
+   * @param sampler header of LatencySampler
+   * @param slot local variable which has time stamp counter before the call
+   */
+  private void endSample(AsmBuilder.AVX builder, MemorySegment sampler, Location slot){
+    final String LABEL_NOT_SAMPLED = "not_sampled_end";
+    long ring = sampler.get(ValueLayout.JAVA_LONG, LatencySampler.CURSOR_OFFSET) & ~(LatencySampler.RING_SIZE - 1);
+    int cursor = (int)LatencySampler.CURSOR_OFFSET;
+    int savedOffset = minimumStackSize();
+    int size = savedOffset + 32; // RAX, XMM0, and new cursor (16 bytes aligned)
 
-      var stubName = "stub_" + bindMethod.method().getName();
-      var stubSeg = builder.getMemorySegment(stubName);
-      methodMap.put(bindMethod.method(), stubSeg);
-    }
+    builder
+/* mov <slot>,            %r10 */ .movRM(Register.R10, slot.reg(), slot.offset())
+/* cmp $1,                %r10 */ .cmp(Register.R10, 1, OptionalInt.empty())
+/* jl not_sampled_end          */ .jl(LABEL_NOT_SAMPLED)
+/* sub <size>,            %rsp */ .sub(Register.RSP, size, OptionalInt.empty())
+/* mov %rax,      <saved>(%rsp) */ .movMR(Register.RAX, Register.RSP, OptionalInt.of(savedOffset))
+/* movq %xmm0,  <saved+8>(%rsp) */ .movqMR(Register.XMM0, Register.RSP, OptionalInt.of(savedOffset + 8))
+/* rdtsc                       */ .rdtsc()
+/* mov <header>,          %r11 */ .movImm(Register.R11, sampler.address())
+/* mov <cursor>(%r11),    %r10 */ .movRM(Register.R10, Register.R11, OptionalInt.of(cursor))
+/* mov %eax,           8(%r10) */ .movMR(Register.EAX, Register.R10, OptionalInt.of(8))
+/* mov %edx,          12(%r10) */ .movMR(Register.EDX, Register.R10, OptionalInt.of(12))
+/* mov <slot>,            %rax */ .movRM(Register.RAX, slot.reg(), slot.offset())
+/* mov %rax,            (%r10) */ .movMR(Register.RAX, Register.R10, OptionalInt.of(0))
+/* add $16,               %r10 */ .add(Register.R10, (int)LatencySampler.ENTRY_SIZE, OptionalInt.empty())
+/* mov %r10, <saved+16>(%rsp)  */ .movMR(Register.R10, Register.RSP, OptionalInt.of(savedOffset + 16))
+/* mov <ring >> 16>,      %r10 */ .movImm(Register.R10, ring >>> 16)
+/* mov %r10, <saved+18>(%rsp)  */ .movMR(Register.R10, Register.RSP, OptionalInt.of(savedOffset + 18))
+/* mov <saved+16>(%rsp),  %r10 */ .movRM(Register.R10, Register.RSP, OptionalInt.of(savedOffset + 16))
+/* mov %r10,   <cursor>(%r11)  */ .movMR(Register.R10, Register.R11, OptionalInt.of(cursor))
+/* mov <saved>(%rsp),     %rax */ .movRM(Register.RAX, Register.RSP, OptionalInt.of(savedOffset))
+/* movq <saved+8>(%rsp), %xmm0 */ .movqRM(Register.XMM0, Register.RSP, OptionalInt.of(savedOffset + 8))
+/* add <size>,            %rsp */ .add(Register.RSP, size, OptionalInt.empty())
+/* not_sampled_end:            */ .label(LABEL_NOT_SAMPLED);
+  }
+
+  /**
+   * Generate machine code to read time stamp counter before the call if
+   * current thread has the ring of CallTracer. The address of the ring is
+   * stored into `ringSlot` (or 0 or 1 if the thread does not have it),
+   * and time stamp counter is stored into `ticksSlot`.
+   * It calls the getter of the ring, so arguments should be evacuated.
+   *
+   * @param builder AsmBuilder instance for generating stub code.
+   * @param trace trace point of the binding
+   * @param ringSlot local variable to store the address of the ring
+   * @param ticksSlot local variable to store time stamp counter
+   */
+  private void startTrace(AsmBuilder.AVX builder, TracePoint trace, Location ringSlot, Location ticksSlot){
+    final String LABEL_NOT_TRACED = "not_traced";
+    int offset = ticksSlot.offset().getAsInt();
+
+    builder
+/* mov <getter>,          %r10 */ .movImm(Register.R10, trace.getter().address())
+/* call *%r10                  */ .call(Register.R10)
+/* mov %rax,       <ringSlot>  */ .movMR(Register.RAX, ringSlot.reg(), ringSlot.offset())
+/* cmp $2,                %rax */ .cmp(Register.RAX, 2, OptionalInt.empty())
+/* jl not_traced               */ .jl(LABEL_NOT_TRACED)
+/* rdtsc                       */ .rdtsc()
+/* mov %eax,      <ticksSlot>  */ .movMR(Register.EAX, ticksSlot.reg(), OptionalInt.of(offset))
+/* mov %edx,    <ticksSlot+4>  */ .movMR(Register.EDX, ticksSlot.reg(), OptionalInt.of(offset + 4))
+/* not_traced:                 */ .label(LABEL_NOT_TRACED);
+  }
+
+  /**
+   * Generate machine code to write the record into the ring of current
+   * thread after the call. Error code (errno in Linux, GetLastError() in
+   * Windows) is recorded together. The entry is written at first, then
+   * the number of written entries is incremented. The ring is aligned to
+   * 64KB, so the cursor wraps to 1st entry when lower 16 bits are zero.
+   * Return value in RAX and XMM0 is preserved.
+   *
+   * @param builder AsmBuilder instance for generating stub code.
+   * @param trace trace point of the binding
+   * @param ringSlot local variable which has the address of the ring
+   * @param ticksSlot local variable which has time stamp counter before
+   *        the call
+   */
+  private void endTrace(AsmBuilder.AVX builder, TracePoint trace, Location ringSlot, Location ticksSlot){
+    final String LABEL_NOT_TRACED = "not_traced_end";
+    final String LABEL_NO_WRAP = "trace_no_wrap";
+    int cursor = (int)CallTracer.CURSOR_OFFSET;
+    int sequence = (int)CallTracer.SEQUENCE_OFFSET;
+    int savedOffset = minimumStackSize();
+    int size = savedOffset + 32; // RAX, XMM0, and time stamp counter (16 bytes aligned)
+
+    builder
+/* mov <ringSlot>,        %r11 */ .movRM(Register.R11, ringSlot.reg(), ringSlot.offset())
+/* cmp $2,                %r11 */ .cmp(Register.R11, 2, OptionalInt.empty())
+/* jl not_traced_end           */ .jl(LABEL_NOT_TRACED)
+/* sub <size>,            %rsp */ .sub(Register.RSP, size, OptionalInt.empty())
+/* mov %rax,   <saved>(%rsp)   */ .movMR(Register.RAX, Register.RSP, OptionalInt.of(savedOffset))
+/* movq %xmm0, <saved+8>(%rsp) */ .movqMR(Register.XMM0, Register.RSP, OptionalInt.of(savedOffset + 8))
+/* rdtsc                       */ .rdtsc()
+/* mov %eax,  <saved+16>(%rsp) */ .movMR(Register.EAX, Register.RSP, OptionalInt.of(savedOffset + 16))
+/* mov %edx,  <saved+20>(%rsp) */ .movMR(Register.EDX, Register.RSP, OptionalInt.of(savedOffset + 20));
+    // Error code is read after time stamp counter to exclude the function
+    // for it from the latency. It clobbers R11.
+    loadErrorCode(builder);
+    builder
+/* mov <ringSlot>,        %r11 */ .movRM(Register.R11, ringSlot.reg(), ringSlot.offset())
+/* mov <cursor>(%r11),    %r10 */ .movRM(Register.R10, Register.R11, OptionalInt.of(cursor))
+/* mov %rax,          40(%r10) */ .movMR(Register.RAX, Register.R10, OptionalInt.of(40))
+/* mov <saved+16>(%rsp),  %rax */ .movRM(Register.RAX, Register.RSP, OptionalInt.of(savedOffset + 16))
+/* mov %rax,          16(%r10) */ .movMR(Register.RAX, Register.R10, OptionalInt.of(16))
+/* mov <saved>(%rsp),     %rax */ .movRM(Register.RAX, Register.RSP, OptionalInt.of(savedOffset))
+/* mov %rax,          24(%r10) */ .movMR(Register.RAX, Register.R10, OptionalInt.of(24))
+/* mov <saved+8>(%rsp),   %rax */ .movRM(Register.RAX, Register.RSP, OptionalInt.of(savedOffset + 8))
+/* mov %rax,          32(%r10) */ .movMR(Register.RAX, Register.R10, OptionalInt.of(32))
+/* mov <id>,              %rax */ .movImm(Register.RAX, trace.id())
+/* mov %rax,            (%r10) */ .movMR(Register.RAX, Register.R10, OptionalInt.of(0))
+/* mov <ticksSlot>,       %rax */ .movRM(Register.RAX, ticksSlot.reg(), ticksSlot.offset())
+/* mov %rax,           8(%r10) */ .movMR(Register.RAX, Register.R10, OptionalInt.of(8))
+/* add $64,               %r10 */ .add(Register.R10, (int)CallTracer.ENTRY_SIZE, OptionalInt.empty())
+/* mov %r10,  <cursor>(%r11)   */ .movMR(Register.R10, Register.R11, OptionalInt.of(cursor))
+/* mov $0,                %rax */ .movImm(Register.RAX, 0L)
+/* mov <cursor>(%r11),     %ax */ .movRM(Register.AX, Register.R11, OptionalInt.of(cursor))
+/* cmp $1,                %rax */ .cmp(Register.RAX, 1, OptionalInt.empty())
+/* jae trace_no_wrap           */ .jae(LABEL_NO_WRAP)
+/* lea 64(%r11),          %r10 */ .lea(Register.R10, Register.R11, OptionalInt.of((int)CallTracer.ENTRIES_OFFSET))
+/* mov %r10,  <cursor>(%r11)   */ .movMR(Register.R10, Register.R11, OptionalInt.of(cursor))
+/* trace_no_wrap:              */ .label(LABEL_NO_WRAP)
+/* mov <sequence>(%r11),  %r10 */ .movRM(Register.R10, Register.R11, OptionalInt.of(sequence))
+/* add $1,                %r10 */ .add(Register.R10, 1, OptionalInt.empty())
+/* mov %r10, <sequence>(%r11)  */ .movMR(Register.R10, Register.R11, OptionalInt.of(sequence))
+/* mov <saved>(%rsp),     %rax */ .movRM(Register.RAX, Register.RSP, OptionalInt.of(savedOffset))
+/* movq <saved+8>(%rsp), %xmm0 */ .movqRM(Register.XMM0, Register.RSP, OptionalInt.of(savedOffset + 8))
+/* add <size>,            %rsp */ .add(Register.RSP, size, OptionalInt.empty())
+/* not_traced_end:             */ .label(LABEL_NOT_TRACED);
+  }
+
+  /**
+   * Get local variables which are reserved for instrumentation in
+   * StubTarget. They begin from the slot after evacuated arguments in the
+   * order of the sampler, then the ring and time stamp counter of the
+   * tracer.
+   *
+   * @param target information to generate the stub
+   * @return number of reserved local variables
+   */
+  private static int countReservedSlots(StubTarget target){
+    return ((target.sampler() == null) ? 0 : 1) + ((target.trace() == null) ? 0 : 2);
+  }
+
+  private void bindInner(AsmBuilder.AVX builder, CallRule rule){
+    bindInner(builder, rule, null);
+  }
+
+  private void bindInner(AsmBuilder.AVX builder, CallRule rule, StubTarget target){
+    var lock = (target == null) ? null : target.lock();
+    var sampler = (target == null) ? null : target.sampler();
+    var trace = (target == null) ? null : target.trace();
+    int reserved = rule.spills().length;
+
+    transform(builder, rule.spills());
+
+    for(var loader : rule.loaders()){
+      loadValue(builder, loader.source());
+      builder.movMR(Register.RAX, loader.to(), loader.toOffset());
+    }
+
+    // Acquire the lock before pinning because the thread should not wait
+    // for it in critical region.
+    if(lock != null){
+      acquireLock(builder, lock);
+    }
+
+    for(int i = 0; i < rule.pins().length; i++){
+      pin(builder, rule.pins()[i], "pin_" + i);
+    }
+
+    transform(builder, rule.packers());
+
+    // Time stamp counter is read just before arguments are set to
+    // registers because RDTSC clobbers RDX. The tracer calls the getter
+    // of the ring, so it is prior to the sampler to exclude it from the
+    // latency.
+    if(trace != null){
+      int slot = reserved + ((sampler == null) ? 0 : 1);
+      startTrace(builder, trace, localVariable(slot), localVariable(slot + 1));
+    }
+    if(sampler != null){
+      startSample(builder, sampler, localVariable(reserved));
+    }
+
+    transform(builder, rule.transformers());
+
+    // Constant values should be loaded after all of transformation
+    // because the destination might be a source of other transformer.
+    for(var immediate : rule.immediates()){
+      if(immediate.toOffset().isEmpty()){
+        builder.movImm(immediate.to(), immediate.value());
+      }
+      else{
+        builder.movImm(Register.R11, immediate.value())
+               .movMR(Register.R11, immediate.to(), immediate.toOffset());
+      }
+    }
+  }
+
+  private MemorySegment generateJMPStub(StubTarget target, CallRule rule){
+    var builder = new AsmBuilder.AVX(seg);
+    if(target.counter() != null){
+      countCall(builder, target.counter());
+    }
+    if(isAVX){
+      builder.vzeroupper();
+    }
+
+    bindInner(builder, rule);
+    if(target.fixedArgs() >= 0){
+      prepareVariadicCall(builder, getNativeArgTypes(target.nativeArgs()), target.fixedArgs(), true);
+    }
+
+    builder.movImm(Register.R10, target.seg().address())
+           .jmp(Register.R10);
+
+    var stubName = "stub_" + target.name();
+    return builder.getMemorySegment(stubName);
+  }
+
+  private MemorySegment generateCallStub(StubTarget target, boolean withErrorCode){
+    // Arguments should be evacuated because functions for the lock and
+    // the tracer are called before the target, and RDTSC clobbers RDX.
+    // Values for instrumentation are stored into the slots after
+    // evacuated arguments.
+    boolean evacuate = (target.lock() != null) || (target.sampler() != null) || (target.trace() != null);
+    var rule = createCallRule(target.javaArgs(), target.nativeArgs(), false, evacuate, countReservedSlots(target));
+    int stackSize = rule.stackSize();
+    int alignedStackSize = ((stackSize & 0xf) == 0) ? stackSize
+                                                    : (stackSize + 0x10) & 0xfffffff0;
+
+    var builder = new AsmBuilder.AVX(seg)
+/* push %rbp                    */ .push(Register.RBP)
+/* mov %rsp,               %rbp */ .movMR(Register.RSP, Register.RBP, OptionalInt.empty())
+/* sub <alignedStackSize>, %rsp */ .sub(Register.RSP, alignedStackSize, OptionalInt.empty());
+
+    if(target.counter() != null){
+      countCall(builder, target.counter());
+    }
+    if(isAVX){
+      builder.vzeroupper();
+    }
+
+    bindInner(builder, rule, target);
+    if(target.fixedArgs() >= 0){
+      prepareVariadicCall(builder, getNativeArgTypes(target.nativeArgs()), target.fixedArgs(), false);
+    }
+
+    builder.movImm(Register.R10, target.seg().address())
+           .call(Register.R10);
+
+    if(target.sampler() != null){
+      endSample(builder, target.sampler(), localVariable(rule.spills().length));
+    }
+    if(target.trace() != null){
+      int slot = rule.spills().length + ((target.sampler() == null) ? 0 : 1);
+      endTrace(builder, target.trace(), localVariable(slot), localVariable(slot + 1));
+    }
+
+    // Release the lock as soon as possible. It does not change error code.
+    if(target.lock() != null){
+      releaseLock(builder, target.lock());
+    }
+
+    if(rule.savedSlot() >= 0){
+      unpinAll(builder, rule, withErrorCode);
+    }
+    else if(withErrorCode){
+      obtainErrorCode(builder);
+    }
+
+    builder.leave()
+           .ret();
+
+    var stubName = "stub_" + target.name();
+    return builder.getMemorySegment(stubName);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  protected MemorySegment generateCalibrationTarget(){
+    return new AsmBuilder.AVX(seg)
+/* mov $0, %rax */ .movImm(Register.RAX, 0L)
+/* ret          */ .ret()
+                   .getMemorySegment("calibration_target");
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  protected MemorySegment generateTimestampReader(){
+    return new AsmBuilder.AVX(seg)
+/* push %rax         */ .push(Register.RAX) // area for the result
+/* rdtsc             */ .rdtsc()
+/* mov %eax,  (%rsp) */ .movMR(Register.EAX, Register.RSP, OptionalInt.of(0))
+/* mov %edx, 4(%rsp) */ .movMR(Register.EDX, Register.RSP, OptionalInt.of(4))
+/* pop %rax          */ .pop(Register.RAX, OptionalInt.empty())
+/* ret               */ .ret()
+                        .getMemorySegment("timestamp_reader");
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  protected MemorySegment generateStub(StubTarget target, boolean withErrorCode){
+    if(withErrorCode || (target.lock() != null) || (target.sampler() != null) || (target.trace() != null)){
+      return generateCallStub(target, withErrorCode);
+    }
+
+    // Arguments for native function cannot be stored into the stack of
+    // JNI caller if they need more stack than JNI. Generate the stub
+    // with its own stack frame in that case.
+    var rule = createCallRule(target.javaArgs(), target.nativeArgs(), true);
+    return rule.isJMPAvailable() ? generateJMPStub(target, rule)
+                                 : generateCallStub(target, false);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  protected MemorySegment generateJNIFunctionStub(ArgType[] javaArgs, int index){
+    var nativeArgs = new ArgSource[javaArgs.length + 1];
+    nativeArgs[0] = new ArgSource.Env();
+    for(int i = 0; i < javaArgs.length; i++){
+      nativeArgs[i + 1] = new ArgSource.Param(i, javaArgs[i]);
+    }
+    var rule = createCallRule(javaArgs, nativeArgs, true);
+    var envReg = locateNativeArgs(new ArgType[]{ArgType.INT}, true)[0].reg();
+
+    var builder = new AsmBuilder.AVX(seg);
+    bindInner(builder, rule);
+    builder
+/* mov (<env>),        %rax */ .movRM(Register.RAX, envReg, OptionalInt.of(0))
+/* mov <index*8>(%rax), %rax */ .movRM(Register.RAX, Register.RAX, OptionalInt.of(8 * index))
+/* jmp *%rax                */ .jmp(Register.RAX);
+
+    return builder.getMemorySegment("jni_function_" + index);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void bind(Class<?> targetClass, BindMethod[] bindMethods) throws Throwable{
+    bindMethodsInner(targetClass, bindMethods, false);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void bindWithErrorCode(Class<?> targetClass, BindMethod[] bindMethods) throws Throwable{
+    bindMethodsInner(targetClass, bindMethods, true);
+  }
+
+  private void checkFailure(AsmBuilder.AVX builder, CompositeMethod.Failure failure){
+    switch(failure){
+      case NONE -> {}
+      case NONZERO -> builder.cmp(Register.EAX, 1, OptionalInt.empty())
+                             .jae(LABEL_EXIT); // unsigned: EAX >= 1 means EAX != 0
+      case NEGATIVE -> builder.cmp(Register.EAX, 0, OptionalInt.empty())
+                              .jl(LABEL_EXIT);
+      case NULL -> builder.cmp(Register.RAX, 1, OptionalInt.empty())
+                          .jl(LABEL_EXIT); // pointer in user space would not be negative
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  protected MemorySegment generateCompositeStub(CompositeMethod compositeMethod, boolean withErrorCode){
+    var rules = createCompositeCallRules(compositeMethod);
+    var steps = compositeMethod.steps();
+
+    int stackSize = 0;
+    for(var rule : rules){
+      stackSize = Math.max(stackSize, rule.stackSize());
+    }
+    int alignedStackSize = ((stackSize & 0xf) == 0) ? stackSize
+                                                    : (stackSize + 0x10) & 0xfffffff0;
+
+    var builder = new AsmBuilder.AVX(seg)
+/* push %rbp                    */ .push(Register.RBP)
+/* mov %rsp,               %rbp */ .movMR(Register.RSP, Register.RBP, OptionalInt.empty())
+/* sub <alignedStackSize>, %rsp */ .sub(Register.RSP, alignedStackSize, OptionalInt.empty());
+
+    if(isAVX){
+      builder.vzeroupper();
+    }
+
+    int resultSlot = rules[0].spills().length;
+    for(int i = 0; i < steps.length; i++){
+      bindInner(builder, rules[i]);
+      builder.movImm(Register.R10, steps[i].seg().address())
+             .call(Register.R10);
+
+      if(i < (steps.length - 1)){
+        var result = localVariable(resultSlot + i);
+        builder.movMR(Register.RAX, result.reg(), result.offset());
+        checkFailure(builder, steps[i].failure());
+      }
+    }
+
+    builder.label(LABEL_EXIT);
+    if(withErrorCode){
+      obtainErrorCode(builder);
+    }
+
+    builder.leave()
+           .ret();
+
+    var stubName = "stub_" + compositeMethod.method().getName();
+    return builder.getMemorySegment(stubName);
+  }
+
+  /**
+   * Create rules to call native function from the record in CallBatch.
+   * Arguments are loaded from the record which is pointed by RBX.
+   * RBX is saved into 1st local variable, so values which are loaded in
+   * each call are stored into subsequent local variables.
+   *
+   * @param bindMethod binding information
+   * @return rules to call native function
+   */
+  protected CallRule createBatchCallRule(BindMethod bindMethod){
+    return createRecordCallRule(bindMethod, (int)CallBatch.ARGS_OFFSET, 1);
+  }
+
+  /**
+   * Create rules to call native function in map binding.
+   * Arguments are loaded from the tuple which is pointed by RBX.
+   * RBX, R12 and R13 are saved into local variables, so values which are
+   * loaded in each call are stored into subsequent local variables.
+   *
+   * @param mapMethod map binding information
+   * @return rules to call native function
+   */
+  protected CallRule createMapCallRule(MapMethod mapMethod){
+    var bindMethod = new BindMethod(mapMethod.signature(), mapMethod.seg(), mapMethod.options());
+    return createRecordCallRule(bindMethod, 0, 3);
+  }
+
+  /**
+   * Create rules to call native function with arguments in memory.
+   * Arguments are loaded from 8 bytes slots from `argsOffset(%rbx)`.
+   *
+   * @param bindMethod binding information
+   * @param argsOffset offset of 1st argument from RBX
+   * @param reservedSlots number of local variables which are used by the stub
+   * @return rules to call native function
+   */
+  private CallRule createRecordCallRule(BindMethod bindMethod, int argsOffset, int reservedSlots){
+    var nativeArgs = createArgSources(bindMethod);
+    var nativeArgTypes = new ArgType[nativeArgs.length];
+    for(int i = 0; i < nativeArgs.length; i++){
+      nativeArgTypes[i] = nativeArgs[i].type();
+    }
+    var to = locateNativeArgs(nativeArgTypes, false);
+
+    var loaders = new ArrayList<ValueLoader>();
+    var transformers = new ArrayList<Transformer>();
+    var immediates = new ArrayList<ImmediateLoader>();
+    int stackSize = minimumStackSize();
+    int localSlots = reservedSlots;
+    for(int i = 0; i < nativeArgs.length; i++){
+      switch(nativeArgs[i]){
+        case ArgSource.Param param -> transformers.add(new Transformer(Register.RBX, OptionalInt.of(argsOffset + (8 * param.index())), to[i].reg(), to[i].offset(), param.type()));
+        case ArgSource.Immediate imm -> immediates.add(new ImmediateLoader(imm.value(), to[i].reg(), to[i].offset()));
+        case ArgSource.ThreadContextValue value -> {
+          var local = localVariable(localSlots++);
+          loaders.add(new ValueLoader(value, local.reg(), local.offset()));
+          transformers.add(new Transformer(local.reg(), local.offset(), to[i].reg(), to[i].offset(), value.type()));
+        }
+        case ArgSource.ScratchPointer pointer -> {
+          var local = localVariable(localSlots++);
+          loaders.add(new ValueLoader(pointer, local.reg(), local.offset()));
+          transformers.add(new Transformer(local.reg(), local.offset(), to[i].reg(), to[i].offset(), pointer.type()));
+        }
+        case ArgSource.Result result -> throw new IllegalArgumentException("Result is available in composite binding only");
+        case ArgSource.Env env -> throw new IllegalArgumentException("JNIEnv is not available in the call from native");
+        case ArgSource.ArrayElements array -> throw new IllegalArgumentException("Primitive array is not available in the call from native");
+        case ArgSource.BufferAddress buffer -> throw new IllegalArgumentException("ByteBuffer is not available in the call from native");
+        case ArgSource.StringChars str -> throw new IllegalArgumentException("String is not available in the call from native");
+        case ArgSource.Packed packed -> throw new IllegalArgumentException("Struct is not available in the call from native");
+      }
+
+      if(to[i].isStack()){
+        stackSize = Math.max(stackSize, to[i].offset().getAsInt() + 8);
+      }
+    }
+
+    return new CallRule(new Transformer[0],
+                        loaders.toArray(new ValueLoader[0]),
+                        new PinRule[0],
+                        new Transformer[0],
+                        sortTransformers(transformers),
+                        immediates.toArray(new ImmediateLoader[0]),
+                        stackSize + (8 * localSlots),
+                        -1,
+                        false);
+  }
+
+  private void loadFrom(AsmBuilder.AVX builder, Location from, Register to){
+    if(from.isStack()){
+      builder.movRM(to, from.reg(), from.offset());
+    }
+    else{
+      builder.movMR(from.reg(), to, OptionalInt.empty());
+    }
+  }
+
+  /**
+   * Store integral return value in RAX into 8 bytes slot at (base).
+   * Upper bits of RAX are undefined if the type is narrower than long,
+   * so the value is sign-extended, or zero-extended for boolean and char.
+   * RCX is used as scratch register.
+   *
+   * @param builder builder to emit instructions
+   * @param returnType return type of C function
+   * @param base register which points the slot
+   */
+  private void storeExtendedResult(AsmBuilder.AVX builder, Class<?> returnType, Register base){
+    final String LABEL_NEGATIVE = "result_negative";
+    final String LABEL_STORE = "result_store";
+
+    Register narrow;
+    int bits;
+    if(returnType.equals(boolean.class) || returnType.equals(byte.class)){
+      narrow = Register.AL;
+      bits = 8;
+    }
+    else if(returnType.equals(char.class) || returnType.equals(short.class)){
+      narrow = Register.AX;
+      bits = 16;
+    }
+    else if(returnType.equals(int.class)){
+      narrow = Register.EAX;
+      bits = 32;
+    }
+    else{
+/* mov %rax,     (base) */ builder.movMR(Register.RAX, base, OptionalInt.of(0));
+      return;
+    }
+
+    if(returnType.equals(boolean.class) || returnType.equals(char.class)){
+/* mov $0,         %rcx */ builder.movImm(Register.RCX, 0L);
+    }
+    else{
+/* mov %rax,       %rcx */ builder.movMR(Register.RAX, Register.RCX, OptionalInt.empty());
+      if(bits < 32){
+/* shl <32-bits>,  %ecx */ builder.shl(Register.ECX, (byte)(32 - bits), OptionalInt.empty()); // sign bit to bit 31
+      }
+/* cmp $0,         %ecx */ builder.cmp(Register.ECX, 0, OptionalInt.empty())
+/* jl negative          */        .jl(LABEL_NEGATIVE)
+/* mov $0,         %rcx */        .movImm(Register.RCX, 0L)
+/* jmp store            */        .jmp(LABEL_STORE)
+/* negative:            */        .label(LABEL_NEGATIVE)
+/* mov $-1,        %rcx */        .movImm(Register.RCX, -1L)
+/* store:               */        .label(LABEL_STORE);
+    }
+/* mov %rcx,     (base) */ builder.movMR(Register.RCX, base, OptionalInt.of(0))
+/* mov <narrow>, (base) */        .movMR(narrow, base, OptionalInt.of(0));
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  protected MemorySegment generateMapStub(MapMethod mapMethod){
+    var params = mapMethod.method().getParameterTypes();
+    if((params.length != 3) || !params[0].equals(long.class) || !params[1].equals(long.class) || !params[2].equals(long.class)){
+      throw new IllegalArgumentException(mapMethod.method().getName() + " should take (long, long, long)");
+    }
+
+    var rule = createMapCallRule(mapMethod);
+    var from = locateJNIArgs(new ArgType[]{ArgType.INT, ArgType.INT, ArgType.INT}, false);
+    var savedRBX = localVariable(0);
+    var savedR12 = localVariable(1);
+    var savedR13 = localVariable(2);
+    int tupleSize = 8 * mapMethod.signature().getParameterCount();
+    var returnType = mapMethod.signature().getReturnType();
+    int stackSize = rule.stackSize();
+    int alignedStackSize = ((stackSize & 0xf) == 0) ? stackSize
+                                                    : (stackSize + 0x10) & 0xfffffff0;
+
+    // RBX: current tuple, R12: current result, R13: remaining count
+    var builder = new AsmBuilder.AVX(seg)
+/* push %rbp                    */ .push(Register.RBP)
+/* mov %rsp,               %rbp */ .movMR(Register.RSP, Register.RBP, OptionalInt.empty())
+/* sub <alignedStackSize>, %rsp */ .sub(Register.RSP, alignedStackSize, OptionalInt.empty())
+/* mov %rbx,         -8(%rbp)   */ .movMR(Register.RBX, savedRBX.reg(), savedRBX.offset())
+/* mov %r12,         -16(%rbp)  */ .movMR(Register.R12, savedR12.reg(), savedR12.offset())
+/* mov %r13,         -24(%rbp)  */ .movMR(Register.R13, savedR13.reg(), savedR13.offset());
+
+    loadFrom(builder, from[0], Register.RBX);
+    loadFrom(builder, from[1], Register.R12);
+    loadFrom(builder, from[2], Register.R13);
+
+    if(isAVX){
+      builder.vzeroupper();
+    }
+
+    builder.cmp(Register.R13, 1, OptionalInt.empty())
+           .jl(LABEL_EXIT)
+           .label(LABEL_LOOP);
+
+    bindInner(builder, rule);
+
+    builder.movImm(Register.R10, mapMethod.seg().address())
+           .call(Register.R10);
+
+    if(isFloatingPointClass(returnType)){
+      builder.movqMR(Register.XMM0, Register.R12, OptionalInt.of(0));
+    }
+    else if(!returnType.equals(void.class)){
+      storeExtendedResult(builder, returnType, Register.R12);
+    }
+
+    if(tupleSize > 0){
+      builder.add(Register.RBX, tupleSize, OptionalInt.empty());
+    }
+    builder.add(Register.R12, 8, OptionalInt.empty())
+           .sub(Register.R13, 1, OptionalInt.empty())
+           .cmp(Register.R13, 1, OptionalInt.empty())
+           .jae(LABEL_LOOP)
+           .label(LABEL_EXIT)
+           .movRM(Register.RBX, savedRBX.reg(), savedRBX.offset())
+           .movRM(Register.R12, savedR12.reg(), savedR12.offset())
+           .movRM(Register.R13, savedR13.reg(), savedR13.offset())
+           .leave()
+           .ret();
+
+    var stubName = "map_" + mapMethod.method().getName();
+    return builder.getMemorySegment(stubName);
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  protected MemorySegment generateBatchDispatcher(){
+    var from = locateJNIArgs(new ArgType[]{ArgType.INT, ArgType.INT}, false);
+    var recordReg = locateNativeArgs(new ArgType[]{ArgType.INT}, false)[0].reg();
+    var savedRBX = localVariable(0);
+    var savedR12 = localVariable(1);
+
+    // RBX and R12 are callee-saved registers in both of System V and Windows.
+    // 48 bytes = saved registers (16 bytes) + reg param stack in Windows (32 bytes)
+    var builder = new AsmBuilder.AVX(seg)
+/* push %rbp                  */ .push(Register.RBP)
+/* mov %rsp,             %rbp */ .movMR(Register.RSP, Register.RBP, OptionalInt.empty())
+/* sub $48,              %rsp */ .sub(Register.RSP, 48, OptionalInt.empty())
+/* mov %rbx,       -8(%rbp)   */ .movMR(Register.RBX, savedRBX.reg(), savedRBX.offset())
+/* mov %r12,       -16(%rbp)  */ .movMR(Register.R12, savedR12.reg(), savedR12.offset())
+/* mov <first>,          %rbx */ .movMR(from[0].reg(), Register.RBX, OptionalInt.empty())
+/* mov <count>,          %r12 */ .movMR(from[1].reg(), Register.R12, OptionalInt.empty());
+
+    if(isAVX){
+      builder.vzeroupper();
+    }
+
+    builder
+/* cmp $1,               %r12 */ .cmp(Register.R12, 1, OptionalInt.empty())
+/* jl exit                    */ .jl(LABEL_EXIT)
+/* loop:                      */ .label(LABEL_LOOP)
+/* mov (%rbx),           %rax */ .movRM(Register.RAX, Register.RBX, OptionalInt.of((int)CallBatch.THUNK_OFFSET))
+/* mov %rbx,      <recordReg> */ .movMR(Register.RBX, recordReg, OptionalInt.empty())
+/* call *%rax                 */ .call(Register.RAX)
+/* mov 8(%rbx),          %rbx */ .movRM(Register.RBX, Register.RBX, OptionalInt.of((int)CallBatch.NEXT_OFFSET))
+/* sub $1,               %r12 */ .sub(Register.R12, 1, OptionalInt.empty())
+/* cmp $1,               %r12 */ .cmp(Register.R12, 1, OptionalInt.empty())
+/* jae loop                   */ .jae(LABEL_LOOP)
+/* exit:                      */ .label(LABEL_EXIT)
+/* mov -8(%rbp),         %rbx */ .movRM(Register.RBX, savedRBX.reg(), savedRBX.offset())
+/* mov -16(%rbp),        %r12 */ .movRM(Register.R12, savedR12.reg(), savedR12.offset())
+/* leave                      */ .leave()
+/* ret                        */ .ret();
+
+    return builder.getMemorySegment("batch_dispatcher");
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  protected MemorySegment generateAsyncWorker(long stateOffset, long releaseOffset){
+    final String LABEL_SLEEP = "sleep";
+    final String LABEL_RELEASE = "release";
+    var argReg = locateNativeArgs(new ArgType[]{ArgType.INT}, false)[0].reg();
+    var savedRBX = localVariable(0);
+    var savedR12 = localVariable(1);
+
+    // RBX: header of the ring, R12: current slot
+    // Memory ordering of loads and stores on AMD64 is enough for
+    // single consumer: state is loaded before the record, and the result
+    // is stored before the state.
+    // The state is loaded again after the stop flag is found because the
+    // slot might be published between loads of the state and the flag.
+    var builder = new AsmBuilder.AVX(seg)
+/* push %rbp                  */ .push(Register.RBP)
+/* mov %rsp,             %rbp */ .movMR(Register.RSP, Register.RBP, OptionalInt.empty())
+/* sub $48,              %rsp */ .sub(Register.RSP, 48, OptionalInt.empty())
+/* mov %rbx,       -8(%rbp)   */ .movMR(Register.RBX, savedRBX.reg(), savedRBX.offset())
+/* mov %r12,       -16(%rbp)  */ .movMR(Register.R12, savedR12.reg(), savedR12.offset())
+/* mov <header>,         %rbx */ .movMR(argReg, Register.RBX, OptionalInt.empty())
+/* mov 0(%rbx),          %r12 */ .movRM(Register.R12, Register.RBX, OptionalInt.of((int)AsyncRing.FIRST_SLOT_OFFSET))
+/* loop:                      */ .label(LABEL_LOOP)
+/* mov <state>(%r12),    %rax */ .movRM(Register.RAX, Register.R12, OptionalInt.of((int)stateOffset))
+/* cmp $READY,           %rax */ .cmp(Register.RAX, (int)AsyncRing.STATE_READY, OptionalInt.empty())
+/* jae call                   */ .jae(LABEL_CALL)
+/* mov 8(%rbx),          %rax */ .movRM(Register.RAX, Register.RBX, OptionalInt.of((int)AsyncRing.STOP_OFFSET))
+/* cmp $1,               %rax */ .cmp(Register.RAX, 1, OptionalInt.empty())
+/* jl sleep                   */ .jl(LABEL_SLEEP)
+/* mov <state>(%r12),    %rax */ .movRM(Register.RAX, Register.R12, OptionalInt.of((int)stateOffset))
+/* cmp $READY,           %rax */ .cmp(Register.RAX, (int)AsyncRing.STATE_READY, OptionalInt.empty())
+/* jae call                   */ .jae(LABEL_CALL)
+/* jmp exit                   */ .jmp(LABEL_EXIT)
+/* sleep:                     */ .label(LABEL_SLEEP)
+/* mov <arg>,        <argReg> */ .movImm(argReg, AsyncRing.sleeperArgument())
+/* mov <sleeper>,        %r10 */ .movImm(Register.R10, AsyncRing.sleeper().address())
+/* call *%r10                 */ .call(Register.R10)
+/* jmp loop                   */ .jmp(LABEL_LOOP)
+/* call:                      */ .label(LABEL_CALL)
+/* cmp $CANCELLED,       %rax */ .cmp(Register.RAX, (int)AsyncRing.STATE_CANCELLED, OptionalInt.empty())
+/* jae release                */ .jae(LABEL_RELEASE)
+/* mov (%r12),           %rax */ .movRM(Register.RAX, Register.R12, OptionalInt.of((int)CallBatch.THUNK_OFFSET))
+/* mov %r12,         <argReg> */ .movMR(Register.R12, argReg, OptionalInt.empty())
+/* call *%rax                 */ .call(Register.RAX)
+/* release:                   */ .label(LABEL_RELEASE)
+/* mov <release>(%r12),  %rax */ .movRM(Register.RAX, Register.R12, OptionalInt.of((int)releaseOffset))
+/* mov %rax,  <state>(%r12)   */ .movMR(Register.RAX, Register.R12, OptionalInt.of((int)stateOffset))
+/* mov 8(%r12),          %r12 */ .movRM(Register.R12, Register.R12, OptionalInt.of((int)CallBatch.NEXT_OFFSET))
+/* jmp loop                   */ .jmp(LABEL_LOOP)
+/* exit:                      */ .label(LABEL_EXIT)
+/* mov -8(%rbp),         %rbx */ .movRM(Register.RBX, savedRBX.reg(), savedRBX.offset())
+/* mov -16(%rbp),        %r12 */ .movRM(Register.R12, savedR12.reg(), savedR12.offset())
+/* mov $0,               %rax */ .movImm(Register.RAX, 0L)
+/* leave                      */ .leave()
+/* ret                        */ .ret();
+
+    return builder.getMemorySegment("async_worker");
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  protected MemorySegment generateScratchGetter(ThreadContext context, long size){
+    var args = locateNativeArgs(new ArgType[]{ArgType.INT, ArgType.INT}, false);
+    var area = localVariable(0);
+    int stackSize = minimumStackSize() + 8;
+    int alignedStackSize = ((stackSize & 0xf) == 0) ? stackSize
+                                                    : (stackSize + 0x10) & 0xfffffff0;
+
+    var builder = new AsmBuilder.AVX(seg)
+/* push %rbp                    */ .push(Register.RBP)
+/* mov %rsp,               %rbp */ .movMR(Register.RSP, Register.RBP, OptionalInt.empty())
+/* sub <alignedStackSize>, %rsp */ .sub(Register.RSP, alignedStackSize, OptionalInt.empty())
+/* mov <key>,           <arg0>  */ .movImm(args[0].reg(), context.key())
+/* mov <getter>,          %r10  */ .movImm(Register.R10, ThreadContext.getter().address())
+/* call *%r10                   */ .call(Register.R10)
+/* cmp $1,                %rax  */ .cmp(Register.RAX, 1, OptionalInt.empty())
+/* jae exit                     */ .jae(LABEL_EXIT) // unsigned: RAX >= 1 means already allocated
+/* mov $1,              <arg0>  */ .movImm(args[0].reg(), 1L)
+/* mov <size>,          <arg1>  */ .movImm(args[1].reg(), size)
+/* mov <calloc>,          %r10  */ .movImm(Register.R10, calloc.address())
+/* call *%r10                   */ .call(Register.R10)
+/* mov %rax,        -8(%rbp)    */ .movMR(Register.RAX, area.reg(), area.offset())
+/* mov <key>,           <arg0>  */ .movImm(args[0].reg(), context.key())
+/* mov %rax,            <arg1>  */ .movMR(Register.RAX, args[1].reg(), OptionalInt.empty())
+/* mov <setter>,          %r10  */ .movImm(Register.R10, ThreadContext.setter().address())
+/* call *%r10                   */ .call(Register.R10)
+/* mov -8(%rbp),          %rax  */ .movRM(Register.RAX, area.reg(), area.offset())
+/* exit:                        */ .label(LABEL_EXIT)
+/* leave                        */ .leave()
+/* ret                          */ .ret();
+
+    return builder.getMemorySegment("scratch_getter_" + context.key());
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  protected MemorySegment generateTraceRingGetter(ThreadContext context, NativeLock lock, MemorySegment control){
+    final String LABEL_FULL = "full";
+    final String LABEL_SET = "set";
+    var args = locateNativeArgs(new ArgType[]{ArgType.INT, ArgType.INT}, false);
+    var ring = localVariable(0);
+    long lockObj = lock.segment().address() + NativeLock.LOCK_OFFSET;
+    int stackSize = minimumStackSize() + 8;
+    int alignedStackSize = ((stackSize & 0xf) == 0) ? stackSize
+                                                    : (stackSize + 0x10) & 0xfffffff0;
+
+    var builder = new AsmBuilder.AVX(seg)
+/* push %rbp                      */ .push(Register.RBP)
+/* mov %rsp,                 %rbp */ .movMR(Register.RSP, Register.RBP, OptionalInt.empty())
+/* sub <alignedStackSize>,   %rsp */ .sub(Register.RSP, alignedStackSize, OptionalInt.empty())
+/* mov <key>,              <arg0> */ .movImm(args[0].reg(), context.key())
+/* mov <getter>,             %r10 */ .movImm(Register.R10, ThreadContext.getter().address())
+/* call *%r10                     */ .call(Register.R10)
+/* cmp $1,                   %rax */ .cmp(Register.RAX, 1, OptionalInt.empty())
+/* jae exit                       */ .jae(LABEL_EXIT) // unsigned: the ring or 1 (not traced)
+/* mov <lock>,             <arg0> */ .movImm(args[0].reg(), lockObj)
+/* mov <lock()>,             %r10 */ .movImm(Register.R10, NativeLock.lock().address())
+/* call *%r10                     */ .call(Register.R10)
+/* mov <control>,            %r11 */ .movImm(Register.R11, control.address())
+/* mov <free>(%r11),         %r10 */ .movRM(Register.R10, Register.R11, OptionalInt.of((int)CallTracer.FREE_RINGS_OFFSET))
+/* cmp $1,                   %r10 */ .cmp(Register.R10, 1, OptionalInt.empty())
+/* jl full                        */ .jl(LABEL_FULL)
+/* sub $1,                   %r10 */ .sub(Register.R10, 1, OptionalInt.empty())
+/* mov %r10,     <free>(%r11)     */ .movMR(Register.R10, Register.R11, OptionalInt.of((int)CallTracer.FREE_RINGS_OFFSET))
+/* mov <next>(%r11),         %rax */ .movRM(Register.RAX, Register.R11, OptionalInt.of((int)CallTracer.NEXT_RING_OFFSET))
+/* lea <ringSize>(%rax),     %r10 */ .lea(Register.R10, Register.RAX, OptionalInt.of((int)CallTracer.RING_SIZE))
+/* mov %r10,     <next>(%r11)     */ .movMR(Register.R10, Register.R11, OptionalInt.of((int)CallTracer.NEXT_RING_OFFSET))
+/* lea <entries>(%rax),      %r10 */ .lea(Register.R10, Register.RAX, OptionalInt.of((int)CallTracer.ENTRIES_OFFSET))
+/* mov %r10,   <cursor>(%rax)     */ .movMR(Register.R10, Register.RAX, OptionalInt.of((int)CallTracer.CURSOR_OFFSET))
+/* mov %rax,          -8(%rbp)    */ .movMR(Register.RAX, ring.reg(), ring.offset())
+/* mov <threadId>,           %r10 */ .movImm(Register.R10, CallTracer.threadId().address())
+/* call *%r10                     */ .call(Register.R10)
+/* mov -8(%rbp),             %r11 */ .movRM(Register.R11, ring.reg(), ring.offset())
+/* mov %eax,        <tid>(%r11)   */ .movMR(Register.EAX, Register.R11, OptionalInt.of((int)CallTracer.THREAD_ID_OFFSET))
+/* jmp set                        */ .jmp(LABEL_SET)
+/* full:                          */ .label(LABEL_FULL)
+/* mov <rejected>(%r11),     %r10 */ .movRM(Register.R10, Register.R11, OptionalInt.of((int)CallTracer.REJECTED_OFFSET))
+/* add $1,                   %r10 */ .add(Register.R10, 1, OptionalInt.empty())
+/* mov %r10, <rejected>(%r11)     */ .movMR(Register.R10, Register.R11, OptionalInt.of((int)CallTracer.REJECTED_OFFSET))
+/* mov $1,                   %rax */ .movImm(Register.RAX, 1L)
+/* mov %rax,          -8(%rbp)    */ .movMR(Register.RAX, ring.reg(), ring.offset())
+/* set:                           */ .label(LABEL_SET)
+/* mov <key>,              <arg0> */ .movImm(args[0].reg(), context.key())
+/* mov -8(%rbp),           <arg1> */ .movRM(args[1].reg(), ring.reg(), ring.offset())
+/* mov <setter>,             %r10 */ .movImm(Register.R10, ThreadContext.setter().address())
+/* call *%r10                     */ .call(Register.R10)
+/* mov <lock>,             <arg0> */ .movImm(args[0].reg(), lockObj)
+/* mov <unlock()>,           %r10 */ .movImm(Register.R10, NativeLock.unlock().address())
+/* call *%r10                     */ .call(Register.R10)
+/* mov -8(%rbp),             %rax */ .movRM(Register.RAX, ring.reg(), ring.offset())
+/* exit:                          */ .label(LABEL_EXIT)
+/* leave                          */ .leave()
+/* ret                            */ .ret();
+
+    return builder.getMemorySegment("trace_ring_getter_" + context.key());
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  protected MemorySegment generateCallbackStub(CallbackTarget target){
+    final String LABEL_CALL = "call";
+    final String LABEL_ATTACH = "attach";
+    final String LABEL_PENDING = "pending";
+    final String LABEL_ZERO = "zero";
+    final String LABEL_EXIT = "exit";
+
+    var args = target.args();
+    var from = locateCallbackArgs(args);
+    var regs = locateNativeArgs(new ArgType[]{ArgType.INT, ArgType.INT, ArgType.INT, ArgType.INT}, false);
+    var env = localVariable(0);
+    var jvalues = localVariable(args.length); // jvalue[i] is at (jvalues + 8 * i)
+    var retInt = localVariable(args.length + 1);
+    var retFP = localVariable(args.length + 2);
+
+    var transformers = new Transformer[args.length];
+    for(int i = 0; i < args.length; i++){
+      transformers[i] = new Transformer(from[i].reg(), from[i].offset(), jvalues.reg(), OptionalInt.of(jvalues.offset().getAsInt() + (8 * i)), args[i]);
+    }
+
+    int stackSize = (8 * (args.length + 3)) + minimumStackSize();
+    int alignedStackSize = ((stackSize & 0xf) == 0) ? stackSize
+                                                    : (stackSize + 0x10) & 0xfffffff0;
+
+    var builder = new AsmBuilder.AVX(seg)
+/* push %rbp                    */ .push(Register.RBP)
+/* mov %rsp,               %rbp */ .movMR(Register.RSP, Register.RBP, OptionalInt.empty())
+/* sub <alignedStackSize>, %rsp */ .sub(Register.RSP, alignedStackSize, OptionalInt.empty());
+
+    transform(builder, transformers);
+
+    // (*vm)->GetEnv(vm, &env, JNI_VERSION_1_8)
+    builder.movImm(regs[0].reg(), target.vm())
+           .lea(regs[1].reg(), env.reg(), env.offset())
+           .movImm(regs[2].reg(), JNI_VERSION_1_8)
+           .movRM(Register.R10, regs[0].reg(), OptionalInt.of(0))
+           .movRM(Register.R10, Register.R10, OptionalInt.of(8 * JAVA_VM_GET_ENV))
+           .call(Register.R10)
+/* cmp $0, %eax     */ .cmp(Register.EAX, 0, OptionalInt.empty())
+/* jl attach        */ .jl(LABEL_ATTACH)
+/* call:            */ .label(LABEL_CALL)
+                       // Do not call Java while an exception is pending
+                       // (*env)->ExceptionCheck(env)
+                       .movRM(regs[0].reg(), env.reg(), env.offset());
+    callJNIFunction(builder, regs[0].reg(), JNI_EXCEPTION_CHECK);
+/* shl $24, %eax    */ builder.shl(Register.EAX, (byte)24, OptionalInt.empty()) // jboolean is in AL
+/* cmp $1, %eax     */        .cmp(Register.EAX, 1, OptionalInt.empty())
+/* jae pending      */        .jae(LABEL_PENDING)
+                              // (*env)->CallStatic<Type>MethodA(env, clazz, methodID, jvalues)
+                              .movRM(regs[0].reg(), env.reg(), env.offset())
+                              .movImm(regs[1].reg(), target.clazz())
+                              .movImm(regs[2].reg(), target.methodID())
+                              .lea(regs[3].reg(), jvalues.reg(), jvalues.offset());
+    callJNIFunction(builder, regs[0].reg(), target.index());
+/* mov %rax,  <retInt> */ builder.movMR(Register.RAX, retInt.reg(), retInt.offset())
+/* movq %xmm0, <retFP> */        .movqMR(Register.XMM0, retFP.reg(), retFP.offset())
+                                 // (*env)->ExceptionCheck(env)
+                                 .movRM(regs[0].reg(), env.reg(), env.offset());
+    callJNIFunction(builder, regs[0].reg(), JNI_EXCEPTION_CHECK);
+/* shl $24, %eax       */ builder.shl(Register.EAX, (byte)24, OptionalInt.empty())
+/* cmp $1, %eax        */        .cmp(Register.EAX, 1, OptionalInt.empty())
+/* jae pending         */        .jae(LABEL_PENDING)
+/* mov <retInt>, %rax  */        .movRM(Register.RAX, retInt.reg(), retInt.offset())
+/* movq <retFP>, %xmm0 */        .movqRM(Register.XMM0, retFP.reg(), retFP.offset())
+/* jmp exit            */        .jmp(LABEL_EXIT)
+/* pending:            */        .label(LABEL_PENDING)
+/* mov <key>,   <arg0> */        .movImm(regs[0].reg(), target.attached().key())
+/* mov <getter>, %r10  */        .movImm(Register.R10, ThreadContext.getter().address())
+/* call *%r10          */        .call(Register.R10)
+/* cmp $1, %rax        */        .cmp(Register.RAX, 1, OptionalInt.empty())
+/* jl zero             */        .jl(LABEL_ZERO)
+                                 // This thread is attached by this stub, thus
+                                 // nobody can throw the exception in Java.
+                                 // (*env)->ExceptionDescribe(env)
+                                 .movRM(regs[0].reg(), env.reg(), env.offset());
+    callJNIFunction(builder, regs[0].reg(), JNI_EXCEPTION_DESCRIBE);
+                                 // (*env)->ExceptionClear(env)
+    builder.movRM(regs[0].reg(), env.reg(), env.offset());
+    callJNIFunction(builder, regs[0].reg(), JNI_EXCEPTION_CLEAR);
+/* zero:               */ builder.label(LABEL_ZERO)
+/* mov $0, %rax        */        .movImm(Register.RAX, 0L)
+/* mov %rax, <retFP>   */        .movMR(Register.RAX, retFP.reg(), retFP.offset())
+/* movq <retFP>, %xmm0 */        .movqRM(Register.XMM0, retFP.reg(), retFP.offset())
+/* exit:               */        .label(LABEL_EXIT)
+/* leave               */        .leave()
+/* ret                 */        .ret()
+/* attach:             */        .label(LABEL_ATTACH)
+                                 // (*vm)->AttachCurrentThreadAsDaemon(vm, &env, NULL)
+                                 .movImm(regs[0].reg(), target.vm())
+                                 .lea(regs[1].reg(), env.reg(), env.offset())
+                                 .movImm(regs[2].reg(), 0L)
+                                 .movRM(Register.R10, regs[0].reg(), OptionalInt.of(0))
+                                 .movRM(Register.R10, Register.R10, OptionalInt.of(8 * JAVA_VM_ATTACH_CURRENT_THREAD_AS_DAEMON))
+                                 .call(Register.R10)
+                                 // env is not available if attach failed
+                                 // (e.g. during VM shutdown)
+/* cmp $0, %eax        */        .cmp(Register.EAX, 0, OptionalInt.empty())
+/* jl zero             */        .jl(LABEL_ZERO)
+                                 // Mark this thread as attached by callback stub
+/* mov <key>,   <arg0> */        .movImm(regs[0].reg(), target.attached().key())
+/* mov $1,      <arg1> */        .movImm(regs[1].reg(), 1L)
+/* mov <setter>, %r10  */        .movImm(Register.R10, ThreadContext.setter().address())
+/* call *%r10          */        .call(Register.R10)
+/* jmp call            */        .jmp(LABEL_CALL);
+
+    return builder.getMemorySegment("callback_" + target.name());
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  protected MemorySegment generateBatchThunk(BindMethod bindMethod, boolean withErrorCode){
+    var rule = createBatchCallRule(bindMethod);
+    var recordReg = locateNativeArgs(new ArgType[]{ArgType.INT}, false)[0].reg();
+    var savedRBX = localVariable(0);
+    int stackSize = rule.stackSize();
+    int alignedStackSize = ((stackSize & 0xf) == 0) ? stackSize
+                                                    : (stackSize + 0x10) & 0xfffffff0;
+
+    var builder = new AsmBuilder.AVX(seg)
+/* push %rbp                    */ .push(Register.RBP)
+/* mov %rsp,               %rbp */ .movMR(Register.RSP, Register.RBP, OptionalInt.empty())
+/* sub <alignedStackSize>, %rsp */ .sub(Register.RSP, alignedStackSize, OptionalInt.empty())
+/* mov %rbx,         -8(%rbp)   */ .movMR(Register.RBX, savedRBX.reg(), savedRBX.offset())
+/* mov <recordReg>,        %rbx */ .movMR(recordReg, Register.RBX, OptionalInt.empty());
+
+    bindInner(builder, rule);
+
+    var nativeArgs = createArgSources(bindMethod);
+    int fixedArgs = getFixedArgs(nativeArgs, bindMethod.method().getParameterTypes(), bindMethod.options());
+    if(fixedArgs >= 0){
+      prepareVariadicCall(builder, getNativeArgTypes(nativeArgs), fixedArgs, false);
+    }
+
+    builder.movImm(Register.R10, bindMethod.seg().address())
+           .call(Register.R10);
+
+    if(isFloatingPointClass(bindMethod.method().getReturnType())){
+      builder.movqMR(Register.XMM0, Register.RBX, OptionalInt.of((int)CallBatch.RESULT_OFFSET));
+    }
+    else{
+      builder.movMR(Register.RAX, Register.RBX, OptionalInt.of((int)CallBatch.RESULT_OFFSET));
+    }
+
+    if(withErrorCode){
+      loadErrorCode(builder);
+      builder.movMR(Register.RAX, Register.RBX, OptionalInt.of((int)CallBatch.ERROR_CODE_OFFSET));
+    }
+
+    builder.movRM(Register.RBX, savedRBX.reg(), savedRBX.offset())
+           .leave()
+           .ret();
 
-    var register = NativeRegister.create(targetClass);
-    register.registerNatives(methodMap);
+    var thunkName = "batch_" + bindMethod.method().getName();
+    return builder.getMemorySegment(thunkName);
   }
 
 }
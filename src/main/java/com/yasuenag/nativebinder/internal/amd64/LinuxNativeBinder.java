@@ -19,14 +19,15 @@ package com.yasuenag.nativebinder.internal.amd64;
 
 import java.lang.foreign.Linker;
 import java.lang.foreign.MemorySegment;
-import java.lang.reflect.Method;
+import java.lang.foreign.StructLayout;
 import java.util.ArrayList;
+import java.util.List;
 import java.util.OptionalInt;
 
 import com.yasuenag.ffmasm.AsmBuilder;
 import com.yasuenag.ffmasm.amd64.Register;
 
-import com.yasuenag.nativebinder.NativeBinder;
+import com.yasuenag.nativebinder.ThreadContext;
 
 
 public class LinuxNativeBinder extends AMD64NativeBinder{
@@ -40,7 +41,16 @@ public class LinuxNativeBinder extends AMD64NativeBinder{
                                                  Register.R9
                                                };
 
-  private static final int FP_ARGREG_LIMIT = 8; // xmm0 - xmm7
+  private static final Register[] fpArgRegs = new Register[]{
+                                                Register.XMM0,
+                                                Register.XMM1,
+                                                Register.XMM2,
+                                                Register.XMM3,
+                                                Register.XMM4,
+                                                Register.XMM5,
+                                                Register.XMM6,
+                                                Register.XMM7
+                                              };
 
   /* errno is defined as "*__errno_location ()" in errno.h */
   private static final MemorySegment __errno_location;
@@ -52,56 +62,110 @@ public class LinuxNativeBinder extends AMD64NativeBinder{
                              .get();
   }
 
-  private Transformer[] createArgTransformRuleInner(Method method, Register fromBaseReg, int fromStackOffset, int toStackOffset){
-    var argTypes = method.getParameterTypes();
-
-    int intArgs = 0;
+  private Location[] locateArgs(ArgType[] argTypes, int intArgs, Register baseReg, int stackOffset){
     int fpArgs = 0;
-    var transformers = new ArrayList<Transformer>();
+    var locations = new Location[argTypes.length];
 
     for(int i = 0; i < argTypes.length; i++){
-      var type = argTypes[i];
-      if(isIntegerClass(type)){
-        if(intArgs < (intArgRegs.length - 2)){
-          transformers.add(new Transformer(intArgRegs[intArgs + 2], intArgRegs[intArgs], ArgType.INT));
+      if(argTypes[i] == ArgType.INT){
+        if(intArgs < intArgRegs.length){
+          locations[i] = new Location(intArgRegs[intArgs]);
         }
         else{
-          if(intArgs < intArgRegs.length){
-            transformers.add(new Transformer(fromBaseReg, OptionalInt.of(fromStackOffset), intArgRegs[intArgs], OptionalInt.empty(), ArgType.INT));
-          }
-          else{
-            transformers.add(new Transformer(fromBaseReg, OptionalInt.of(fromStackOffset), Register.RSP, OptionalInt.of(toStackOffset), ArgType.INT));
-            toStackOffset += 8;
-          }
-          fromStackOffset += 8;
+          locations[i] = new Location(baseReg, OptionalInt.of(stackOffset));
+          stackOffset += 8;
         }
         intArgs++;
       }
-      else if(isFloatingPointClass(type)){
-        if(fpArgs >= FP_ARGREG_LIMIT){
-          if(fromStackOffset != toStackOffset){
-            transformers.add(new Transformer(fromBaseReg, OptionalInt.of(fromStackOffset), Register.RSP, OptionalInt.of(toStackOffset), ArgType.FP));
-          }
-          fromStackOffset += 8;
-          toStackOffset += 8;
+      else{ // should be FP
+        if(fpArgs < fpArgRegs.length){
+          locations[i] = new Location(fpArgRegs[fpArgs]);
+        }
+        else{
+          locations[i] = new Location(baseReg, OptionalInt.of(stackOffset));
+          stackOffset += 8;
         }
         fpArgs++;
       }
-      else{
-        throw new IllegalArgumentException("Unsupported argument type: " + type.getName());
-      }
     }
 
-    return transformers.toArray(new Transformer[0]);
+    return locations;
+  }
+
+  @Override
+  protected Location[] locateJNIArgs(ArgType[] javaArgs, boolean isJMP){
+    // 1st and 2nd arguments are JNIEnv and jobject/jclass
+    if(isJMP){
+      return locateArgs(javaArgs, 2, Register.RSP, 8 /* RSP + (return address) */);
+    }
+    else{
+      return locateArgs(javaArgs, 2, Register.RBP, 16 /* RSP + (saved RBP) + (return address) */);
+    }
   }
 
   @Override
-  protected Transformer[] createArgTransformRule(Method method, boolean isJMP){
+  protected Location[] locateNativeArgs(ArgType[] nativeArgs, boolean isJMP){
     if(isJMP){
-      return createArgTransformRuleInner(method, Register.RSP, 8 /* RSP + (return address) */, 8 /* return address */);
+      return locateArgs(nativeArgs, 0, Register.RSP, 8 /* return address */);
     }
     else{
-      return createArgTransformRuleInner(method, Register.RBP, 16 /* RSP + (saved RBP) + (return address) */, 0);
+      return locateArgs(nativeArgs, 0, Register.RSP, 0);
+    }
+  }
+
+  @Override
+  protected Location[] locateCallbackArgs(ArgType[] args){
+    return locateArgs(args, 0, Register.RBP, 16 /* (saved RBP) + (return address) */);
+  }
+
+  @Override
+  protected int minimumStackSize(){
+    return 0;
+  }
+
+  @Override
+  protected ArgSource[] packStruct(StructLayout layout, List<ArgSource.PackedField> fields){
+    // System V ABI passes struct up to 16 bytes in eightbytes.
+    // Each eightbyte is classified as SSE if all of members are FP.
+    if(layout.byteSize() > 16){
+      throw new IllegalArgumentException("Struct larger than 16 bytes is passed in memory: " + layout);
+    }
+
+    var chunks = new ArrayList<List<ArgSource.PackedField>>();
+    for(var field : fields){
+      int chunk = field.offset() / 8;
+      while(chunks.size() <= chunk){
+        chunks.add(new ArrayList<>());
+      }
+      chunks.get(chunk).add(new ArgSource.PackedField(field.index(), field.type(), field.offset() % 8));
+    }
+
+    int struct = fields.get(0).index();
+    var result = new ArrayList<ArgSource>();
+    for(var chunk : chunks){
+      if(chunk.isEmpty()){
+        throw new IllegalArgumentException("Eightbyte which has padding only is not supported: " + layout);
+      }
+      var type = chunk.stream().allMatch(f -> f.type() == ArgType.FP) ? ArgType.FP : ArgType.INT;
+      result.add(new ArgSource.Packed(chunk, type, struct));
+    }
+    return result.toArray(new ArgSource[0]);
+  }
+
+  @Override
+  protected Register jniEnvRegister(){
+    return Register.RDI;
+  }
+
+  @Override
+  protected void loadValue(AsmBuilder.AVX builder, ArgSource source){
+    switch(source){
+      case ArgSource.ThreadContextValue value -> builder.movImm(Register.RDI, value.key())
+                                                        .movImm(Register.R10, ThreadContext.getter().address())
+                                                        .call(Register.R10);
+      case ArgSource.ScratchPointer pointer -> builder.movImm(Register.R10, pointer.getter())
+                                                      .call(Register.R10);
+      default -> throw new IllegalArgumentException("Unsupported source: " + source);
     }
   }
 
@@ -117,6 +181,33 @@ public class LinuxNativeBinder extends AMD64NativeBinder{
            .pop(Register.RAX, OptionalInt.empty()); // restore original return val
   }
 
+  @Override
+  protected void loadErrorCode(AsmBuilder.AVX builder){
+    builder.movImm(Register.R10, __errno_location.address())
+           .call(Register.R10) // get errno
+           .movRM(Register.EAX, Register.RAX, OptionalInt.of(0));
+  }
+
+  @Override
+  protected void jumpIfLockAcquired(AsmBuilder.AVX builder, String label){
+    // pthread_mutex_trylock() returns 0 if the lock is acquired.
+    builder.cmp(Register.EAX, 1, OptionalInt.empty())
+           .jl(label);
+  }
+
+  @Override
+  protected void prepareVariadicCall(AsmBuilder.AVX builder, ArgType[] nativeArgs, int fixedArgs, boolean isJMP){
+    // AL should hold upper bound of the number of vector registers
+    // which are used for arguments.
+    int vectors = 0;
+    for(var type : nativeArgs){
+      if(type == ArgType.FP){
+        vectors++;
+      }
+    }
+    builder.movImm(Register.RAX, Math.min(vectors, fpArgRegs.length));
+  }
+
   @Override
   protected Register xmmVolatileRegister(){
     return Register.XMM8;
@@ -20,15 +20,15 @@ package com.yasuenag.nativebinder.internal.amd64;
 
 import java.lang.foreign.Arena;
 import java.lang.foreign.MemorySegment;
+import java.lang.foreign.StructLayout;
 import java.lang.foreign.SymbolLookup;
-import java.lang.reflect.Method;
-import java.util.ArrayList;
+import java.util.List;
 import java.util.OptionalInt;
 
 import com.yasuenag.ffmasm.AsmBuilder;
 import com.yasuenag.ffmasm.amd64.Register;
 
-import com.yasuenag.nativebinder.NativeBinder;
+import com.yasuenag.nativebinder.ThreadContext;
 
 
 public class WindowsNativeBinder extends AMD64NativeBinder{
@@ -55,46 +55,79 @@ public class WindowsNativeBinder extends AMD64NativeBinder{
                                .get();
   }
 
-  private Transformer[] createArgTransformRuleInner(Method method, Register fromBaseReg, int fromStackOffset, int toStackOffset){
-    var argTypes = method.getParameterTypes();
+  private Location[] locateArgs(ArgType[] argTypes, int position, Register baseReg, int stackOffset){
+    var locations = new Location[argTypes.length];
 
-    var transformers = new ArrayList<Transformer>();
-
-    for(int i = 0; i < argTypes.length; i++){
-      var type = argTypes[i];
-      var argType = isIntegerClass(type) ? ArgType.INT : ArgType.FP;
-      if(i < 2){ // reg-reg
-        var fromReg = isIntegerClass(type) ? intArgRegs[i + 2] : fpArgRegs[i + 2];
-        var toReg = isIntegerClass(type) ? intArgRegs[i] : fpArgRegs[i];
-        transformers.add(new Transformer(fromReg, toReg, argType));
+    for(int i = 0; i < argTypes.length; i++, position++){
+      if(position < intArgRegs.length){
+        locations[i] = new Location((argTypes[i] == ArgType.INT) ? intArgRegs[position] : fpArgRegs[position]);
       }
       else{
-        if(i < 4){ // mem-reg
-          var toReg = isIntegerClass(type) ? intArgRegs[i] : fpArgRegs[i];
-          transformers.add(new Transformer(fromBaseReg, OptionalInt.of(fromStackOffset), toReg, OptionalInt.empty(), argType));
-        }
-        else{ // mem-mem
-          transformers.add(new Transformer(fromBaseReg, OptionalInt.of(fromStackOffset), Register.RSP, OptionalInt.of(toStackOffset), argType));
-          toStackOffset += 8;
-        }
-
-        fromStackOffset += 8;
+        locations[i] = new Location(baseReg, OptionalInt.of(stackOffset));
+        stackOffset += 8;
       }
-
     }
 
-    return transformers.toArray(new Transformer[0]);
+    return locations;
+  }
+
+  @Override
+  protected Location[] locateJNIArgs(ArgType[] javaArgs, boolean isJMP){
+    // 1st and 2nd arguments are JNIEnv and jobject/jclass
+    if(isJMP){
+      return locateArgs(javaArgs, 2, Register.RSP, 40 /* RSP + (return address) + (reg param stack (8 bytes * 4 registers)) */);
+    }
+    else{
+      return locateArgs(javaArgs, 2, Register.RBP, 48 /* RSP + (saved RBP) + (return address) + (reg param stack (8 bytes * 4 registers)) */);
+    }
   }
 
   @Override
-  protected Transformer[] createArgTransformRule(Method method, boolean isJMP){
+  protected Location[] locateNativeArgs(ArgType[] nativeArgs, boolean isJMP){
     if(isJMP){
-      return createArgTransformRuleInner(method, Register.RSP, 40 /* RSP + (return address) + (reg param stack (8 bytes * 4 registers)) */, 40 /* RSP + (return address) + (reg param stack (8 bytes * 4 registers)) */);
+      return locateArgs(nativeArgs, 0, Register.RSP, 40 /* RSP + (return address) + (reg param stack (8 bytes * 4 registers)) */);
     }
     else{
-      return createArgTransformRuleInner(method, Register.RBP, 48 /* RSP + (return address) + (reg param stack (8 bytes * 4 registers)) */, 32 /* reg param stack (8 bytes * 4 registers) */);
+      return locateArgs(nativeArgs, 0, Register.RSP, 32 /* reg param stack (8 bytes * 4 registers) */);
+    }
+  }
+
+  @Override
+  protected Location[] locateCallbackArgs(ArgType[] args){
+    return locateArgs(args, 0, Register.RBP, 48 /* (saved RBP) + (return address) + (reg param stack (8 bytes * 4 registers)) */);
+  }
+
+  @Override
+  protected int minimumStackSize(){
+    return 32; // reg param stack (8 bytes * 4 registers)
+  }
+
+  @Override
+  protected ArgSource[] packStruct(StructLayout layout, List<ArgSource.PackedField> fields){
+    // Struct which is 1, 2, 4, or 8 bytes is passed as integer.
+    // Others are passed by reference.
+    long size = layout.byteSize();
+    if((size != 1) && (size != 2) && (size != 4) && (size != 8)){
+      throw new IllegalArgumentException("Struct which is not 1, 2, 4, or 8 bytes is passed by reference on Windows: " + layout);
     }
+    return new ArgSource[]{new ArgSource.Packed(fields, ArgType.INT, fields.get(0).index())};
+  }
 
+  @Override
+  protected Register jniEnvRegister(){
+    return Register.RCX;
+  }
+
+  @Override
+  protected void loadValue(AsmBuilder.AVX builder, ArgSource source){
+    switch(source){
+      case ArgSource.ThreadContextValue value -> builder.movImm(Register.RCX, value.key())
+                                                        .movImm(Register.R10, ThreadContext.getter().address())
+                                                        .call(Register.R10);
+      case ArgSource.ScratchPointer pointer -> builder.movImm(Register.R10, pointer.getter())
+                                                      .call(Register.R10);
+      default -> throw new IllegalArgumentException("Unsupported source: " + source);
+    }
   }
 
   @Override
@@ -109,6 +142,36 @@ public class WindowsNativeBinder extends AMD64NativeBinder{
            .movRM(Register.RAX, Register.RSP, OptionalInt.of(32)); // restore original return val
   }
 
+  @Override
+  protected void loadErrorCode(AsmBuilder.AVX builder){
+    builder.movImm(Register.R10, getLastError.address())
+           .call(Register.R10); // get error code
+  }
+
+  @Override
+  protected void jumpIfLockAcquired(AsmBuilder.AVX builder, String label){
+    // TryAcquireSRWLockExclusive() returns nonzero BOOLEAN (1 byte) if
+    // the lock is acquired. Upper bits of EAX are discarded by shift.
+    builder.shl(Register.EAX, (byte)24, OptionalInt.empty())
+           .cmp(Register.EAX, 1, OptionalInt.empty())
+           .jae(label);
+  }
+
+  @Override
+  protected void prepareVariadicCall(AsmBuilder.AVX builder, ArgType[] nativeArgs, int fixedArgs, boolean isJMP){
+    // FP value in variadic arguments should be passed in both XMM and
+    // integer register. It is copied via home slot of the argument
+    // because the callee owns it.
+    int homeOffset = isJMP ? 8 /* return address */ : 0;
+    for(int i = fixedArgs; i < Math.min(nativeArgs.length, intArgRegs.length); i++){
+      if(nativeArgs[i] == ArgType.FP){
+        var home = OptionalInt.of(homeOffset + (8 * i));
+        builder.movqMR(fpArgRegs[i], Register.RSP, home)
+               .movRM(intArgRegs[i], Register.RSP, home);
+      }
+    }
+  }
+
   @Override
   protected Register xmmVolatileRegister(){
     return Register.XMM4;
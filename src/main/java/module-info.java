@@ -17,5 +17,7 @@
  */
 module com.yasuenag.nativebinder {
   requires transitive com.yasuenag.ffmasm;
+  requires java.management;
+  requires jdk.jfr;
   exports com.yasuenag.nativebinder;
 }
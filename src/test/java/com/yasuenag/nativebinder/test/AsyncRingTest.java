@@ -0,0 +1,183 @@
+/*
+ * Copyright (C) 2025, Yasumasa Suenaga
+ *
+ * This file is part of nativebinder.
+ *
+ * nativebinder is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * nativebinder is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with nativebinder. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.yasuenag.nativebinder.test;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.Linker;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledOnOs;
+import org.junit.jupiter.api.condition.OS;
+
+import com.yasuenag.nativebinder.AsyncRing;
+import com.yasuenag.nativebinder.NativeBinder;
+
+
+@EnabledOnOs(value = {OS.LINUX}, architectures = {"amd64"})
+public class AsyncRingTest{
+
+  // Signature of long labs(long j);
+  public static long labs(long j){
+    throw new UnsupportedOperationException();
+  }
+
+  private static AsyncRing createRing(int capacity, Arena arena) throws Throwable{
+    var p_labs = Linker.nativeLinker()
+                       .defaultLookup()
+                       .find("labs")
+                       .get();
+    var bindMethods = new NativeBinder.BindMethod[]{new NativeBinder.BindMethod(AsyncRingTest.class.getMethod("labs", long.class), p_labs)};
+    return NativeBinder.getInstance().createAsyncRing(bindMethods, capacity, arena, false);
+  }
+
+  @Test
+  public void testPublishForResult() throws Throwable{
+    try(var arena = Arena.ofShared();
+        var ring = createRing(4, arena)){
+      int slot = ring.claim(0);
+      ring.setLong(slot, 0, -10L);
+      ring.publishForResult(slot);
+      Assertions.assertEquals(10L, ring.await(slot).value());
+    }
+  }
+
+  @Test
+  public void testPublish() throws Throwable{
+    try(var arena = Arena.ofShared();
+        var ring = createRing(4, arena)){
+      // Fire-and-forget slots are released by the worker, so the ring
+      // should not be full.
+      for(int i = 0; i < 16; i++){
+        int slot = ring.claim(0);
+        ring.setLong(slot, 0, -i);
+        ring.publish(slot);
+      }
+
+      // Records are called in order, so the result is available after
+      // all of them.
+      int slot = ring.claim(0);
+      ring.setLong(slot, 0, -1L);
+      ring.publishForResult(slot);
+      Assertions.assertEquals(1L, ring.await(slot).value());
+    }
+  }
+
+  @Test
+  public void testWrapAround() throws Throwable{
+    try(var arena = Arena.ofShared();
+        var ring = createRing(4, arena)){
+      for(int i = 0; i < 20; i++){
+        int slot = ring.claim(0);
+        Assertions.assertEquals(i % 4, slot);
+        ring.setLong(slot, 0, -i);
+        ring.publishForResult(slot);
+        Assertions.assertEquals(i, ring.await(slot).value());
+      }
+    }
+  }
+
+  @Test
+  public void testCancel() throws Throwable{
+    try(var arena = Arena.ofShared();
+        var ring = createRing(4, arena)){
+      int cancelled = ring.claim(0);
+      Assertions.assertThrows(IndexOutOfBoundsException.class, () -> ring.setLong(cancelled, 1, 1L));
+      ring.cancel(cancelled);
+
+      // The worker should skip cancelled slot, and call next one.
+      int slot = ring.claim(0);
+      ring.setLong(slot, 0, -5L);
+      ring.publishForResult(slot);
+      Assertions.assertEquals(5L, ring.await(slot).value());
+    }
+  }
+
+  @Test
+  public void testArgumentOutOfBounds() throws Throwable{
+    try(var arena = Arena.ofShared();
+        var ring = createRing(4, arena)){
+      int slot = ring.claim(0);
+      Assertions.assertThrows(IndexOutOfBoundsException.class, () -> ring.setLong(slot, 1, 1L));
+      Assertions.assertThrows(IndexOutOfBoundsException.class, () -> ring.setInt(slot, -1, 1));
+      Assertions.assertThrows(IndexOutOfBoundsException.class, () -> ring.setDouble(slot, -2, 1.0d));
+      Assertions.assertThrows(IndexOutOfBoundsException.class, () -> ring.setFloat(4, 0, 1.0f));
+      ring.cancel(slot);
+    }
+  }
+
+  @Test
+  public void testClose() throws Throwable{
+    try(var arena = Arena.ofShared()){
+      var ring = createRing(4, arena);
+      int slot = ring.claim(0);
+      ring.setLong(slot, 0, -3L);
+      ring.publishForResult(slot);
+      ring.close();
+
+      // Published slots should be called before the worker exits.
+      Assertions.assertTrue(ring.isDone(slot));
+      Assertions.assertEquals(3L, ring.await(slot).value());
+      Assertions.assertThrows(IllegalStateException.class, () -> ring.claim(0));
+
+      // close() is idempotent.
+      ring.close();
+    }
+  }
+
+  @Test
+  public void testCloseWhileClaiming() throws Throwable{
+    try(var arena = Arena.ofShared()){
+      var ring = createRing(4, arena);
+      var error = new AtomicReference<Throwable>();
+      var producer = new Thread(() -> {
+        try{
+          for(long i = 0; ; i++){
+            int slot;
+            try{
+              slot = ring.claim(0);
+            }
+            catch(IllegalStateException e){
+              return; // closed
+            }
+            ring.setLong(slot, 0, -i);
+            ring.publishForResult(slot);
+            Assertions.assertEquals(i, ring.await(slot).value());
+          }
+        }
+        catch(Throwable t){
+          error.set(t);
+        }
+      });
+      producer.start();
+
+      Thread.sleep(10);
+      ring.close();
+
+      // Slots which are claimed before close() should be completed.
+      producer.join(10_000);
+      Assertions.assertFalse(producer.isAlive());
+      if(error.get() != null){
+        throw error.get();
+      }
+    }
+  }
+
+}
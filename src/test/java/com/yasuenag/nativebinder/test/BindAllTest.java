@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2025, Yasumasa Suenaga
+ *
+ * This file is part of nativebinder.
+ *
+ * nativebinder is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * nativebinder is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with nativebinder. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.yasuenag.nativebinder.test;
+
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.SymbolLookup;
+import java.util.ArrayList;
+import java.util.Optional;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import com.yasuenag.nativebinder.NativeBinder;
+import com.yasuenag.nativebinder.NativeFunction;
+
+
+public class BindAllTest extends NativeBinder{
+
+  public static class Target{
+    public native int getpid();
+
+    @NativeFunction(value = "getauxval", withErrorCode = true)
+    public native long getAuxVal(long type);
+
+    public int notNative(){
+      return 0;
+    }
+  }
+
+  private int generatedStubs;
+
+  @Override
+  protected MemorySegment generateStub(StubTarget target, boolean withErrorCode) throws Throwable{
+    generatedStubs++;
+    throw new RuntimeException("Not implemented");
+  }
+
+  @Override
+  public void bind(Class<?> targetClass, BindMethod[] bindMethods) throws Throwable{
+    throw new RuntimeException("Not implemented");
+  }
+
+  @Override
+  public void bindWithErrorCode(Class<?> targetClass, BindMethod[] bindMethods) throws Throwable{
+    throw new RuntimeException("Not implemented");
+  }
+
+  @Test
+  public void testMissingSymbols(){
+    var requested = new ArrayList<String>();
+    SymbolLookup lookup = name -> {
+      requested.add(name);
+      return Optional.empty();
+    };
+
+    var e = Assertions.assertThrows(IllegalArgumentException.class, () -> bindAll(Target.class, lookup));
+
+    // Symbol in the annotation should be used, and all of missing symbols
+    // should be reported at once.
+    Assertions.assertEquals(2, requested.size());
+    Assertions.assertTrue(requested.contains("getpid"));
+    Assertions.assertTrue(requested.contains("getauxval"));
+    Assertions.assertTrue(e.getMessage().contains("getpid"));
+    Assertions.assertTrue(e.getMessage().contains("getauxval"));
+  }
+
+  @Test
+  public void testNoStubForMissingSymbols(){
+    // getpid is found, but getauxval is not.
+    SymbolLookup lookup = name -> name.equals("getpid") ? Optional.of(MemorySegment.ofAddress(1L)) : Optional.empty();
+    generatedStubs = 0;
+
+    var e = Assertions.assertThrows(IllegalArgumentException.class, () -> bindAll(Target.class, lookup));
+    Assertions.assertTrue(e.getMessage().contains("getauxval"));
+    Assertions.assertEquals(0, generatedStubs);
+  }
+
+  @Test
+  public void testLazy() throws Throwable{
+    SymbolLookup lookup = name -> Optional.empty();
+    var missing = bindAll(Target.class, lookup, true);
+
+    Assertions.assertEquals(2, missing.size());
+    Assertions.assertThrows(UnsatisfiedLinkError.class, () -> new Target().getpid());
+  }
+
+}
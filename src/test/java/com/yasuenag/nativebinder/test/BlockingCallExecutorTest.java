@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2025, Yasumasa Suenaga
+ *
+ * This file is part of nativebinder.
+ *
+ * nativebinder is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * nativebinder is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with nativebinder. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.yasuenag.nativebinder.test;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import com.yasuenag.nativebinder.BlockingCallExecutor;
+
+
+public class BlockingCallExecutorTest{
+
+  @Test
+  public void testCallFromVirtualThread() throws Throwable{
+    try(var executor = new BlockingCallExecutor(1)){
+      var error = new AtomicReference<Throwable>();
+      var thread = Thread.ofVirtual().start(() -> {
+        try{
+          var caller = executor.call(() -> Thread.currentThread());
+          Assertions.assertFalse(caller.isVirtual());
+          Assertions.assertTrue(caller.getName().startsWith("nativebinder-blocking-"));
+        }
+        catch(Throwable t){
+          error.set(t);
+        }
+      });
+      thread.join();
+      rethrow(error);
+    }
+  }
+
+  @Test
+  public void testCallFromPlatformThread() throws Throwable{
+    try(var executor = new BlockingCallExecutor(1)){
+      var caller = executor.call(() -> Thread.currentThread());
+      Assertions.assertSame(Thread.currentThread(), caller);
+    }
+  }
+
+  @Test
+  public void testException() throws Throwable{
+    try(var executor = new BlockingCallExecutor(1)){
+      var error = new AtomicReference<Throwable>();
+      var thread = Thread.ofVirtual().start(() -> {
+        try{
+          Assertions.assertThrows(IllegalStateException.class, () -> executor.call(() -> {
+            throw new IllegalStateException();
+          }));
+        }
+        catch(Throwable t){
+          error.set(t);
+        }
+      });
+      thread.join();
+      rethrow(error);
+    }
+  }
+
+  /**
+   * Rethrow the failure in other thread on the test thread.
+   * JUnit cannot see assertion errors which are thrown in other thread.
+   */
+  static void rethrow(AtomicReference<Throwable> error) throws Throwable{
+    var t = error.get();
+    if(t != null){
+      throw t;
+    }
+  }
+
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2025, Yasumasa Suenaga
+ *
+ * This file is part of nativebinder.
+ *
+ * nativebinder is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * nativebinder is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with nativebinder. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.yasuenag.nativebinder.test;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.Linker;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledOnOs;
+import org.junit.jupiter.api.condition.OS;
+
+import com.yasuenag.nativebinder.NativeBinder;
+
+
+@EnabledOnOs(value = {OS.LINUX}, architectures = {"amd64"})
+public class CallBatchTest{
+
+  // Signature of long labs(long j);
+  public static long labs(long j){
+    throw new UnsupportedOperationException();
+  }
+
+  private static NativeBinder.BindMethod[] createBindMethods() throws Throwable{
+    var p_labs = Linker.nativeLinker()
+                       .defaultLookup()
+                       .find("labs")
+                       .get();
+    return new NativeBinder.BindMethod[]{new NativeBinder.BindMethod(CallBatchTest.class.getMethod("labs", long.class), p_labs)};
+  }
+
+  @Test
+  public void testExecute() throws Throwable{
+    try(var arena = Arena.ofConfined()){
+      var batch = NativeBinder.getInstance().createCallBatch(createBindMethods(), 4, arena, false);
+      for(int i = 0; i < 4; i++){
+        batch.setLong(batch.add(0), 0, -i);
+      }
+      batch.execute();
+
+      for(int i = 0; i < 4; i++){
+        Assertions.assertEquals(i, batch.resultAsLong(i));
+      }
+    }
+  }
+
+  @Test
+  public void testArgumentOutOfBounds() throws Throwable{
+    try(var arena = Arena.ofConfined()){
+      var batch = NativeBinder.getInstance().createCallBatch(createBindMethods(), 2, arena, false);
+      int index = batch.add(0);
+
+      // labs() takes only one argument.
+      Assertions.assertThrows(IndexOutOfBoundsException.class, () -> batch.setLong(index, 1, 1L));
+      Assertions.assertThrows(IndexOutOfBoundsException.class, () -> batch.setInt(index, -1, 1));
+      Assertions.assertThrows(IndexOutOfBoundsException.class, () -> batch.setDouble(index, -2, 1.0d));
+      Assertions.assertThrows(IndexOutOfBoundsException.class, () -> batch.setFloat(index, 1, 1.0f));
+      Assertions.assertThrows(IndexOutOfBoundsException.class, () -> batch.setLong(index + 1, 0, 1L));
+    }
+  }
+
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) 2025, Yasumasa Suenaga
+ *
+ * This file is part of nativebinder.
+ *
+ * nativebinder is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * nativebinder is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with nativebinder. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.yasuenag.nativebinder.test;
+
+import java.lang.foreign.Linker;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledOnOs;
+import org.junit.jupiter.api.condition.OS;
+
+import com.yasuenag.nativebinder.BindOption;
+import com.yasuenag.nativebinder.CallCounters;
+import com.yasuenag.nativebinder.NativeBinder;
+
+
+@EnabledOnOs(value = {OS.LINUX}, architectures = {"amd64"})
+public class CallCountersTest{
+
+  public static native int getpid();
+
+  // long labs(long j);
+  public static native long labs(long j);
+
+  @Test
+  public void testCount() throws Throwable{
+    var counters = CallCounters.create();
+    var libc = Linker.nativeLinker().defaultLookup();
+    var getpid = CallCountersTest.class.getMethod("getpid");
+    var labs = CallCountersTest.class.getMethod("labs", long.class);
+    var bindMethods = new NativeBinder.BindMethod[]{
+      new NativeBinder.BindMethod(getpid, libc.find("getpid").get(), new BindOption.Counter(counters)),
+      new NativeBinder.BindMethod(labs, libc.find("labs").get(), new BindOption.Counter(counters))
+    };
+    NativeBinder.getInstance().bind(CallCountersTest.class, bindMethods);
+
+    for(int i = 0; i < 10; i++){
+      Assertions.assertEquals(ProcessHandle.current().pid(), getpid());
+    }
+    Assertions.assertEquals(3L, labs(-3L));
+
+    Assertions.assertEquals(10L, counters.count(getpid));
+    Assertions.assertEquals(1L, counters.count(labs));
+    Assertions.assertEquals(11L, counters.getTotalCalls());
+  }
+
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2025, Yasumasa Suenaga
+ *
+ * This file is part of nativebinder.
+ *
+ * nativebinder is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * nativebinder is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with nativebinder. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.yasuenag.nativebinder.test;
+
+import java.lang.foreign.Linker;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledOnOs;
+import org.junit.jupiter.api.condition.OS;
+
+import com.yasuenag.nativebinder.BindOption;
+import com.yasuenag.nativebinder.CallTracer;
+import com.yasuenag.nativebinder.NativeBinder;
+
+
+@EnabledOnOs(value = {OS.LINUX}, architectures = {"amd64"})
+public class CallTracerTest{
+
+  // long labs(long j);
+  public static native long labs(long j);
+
+  // int getpid(void);
+  public static native int getpid();
+
+  // int close(int fd);
+  public static native int close(int fd);
+
+  @Test
+  public void testTrace() throws Throwable{
+    var binder = NativeBinder.getInstance();
+    var tracer = binder.createCallTracer(4);
+    var libc = Linker.nativeLinker().defaultLookup();
+    var labsMethod = CallTracerTest.class.getMethod("labs", long.class);
+    var getpidMethod = CallTracerTest.class.getMethod("getpid");
+    var bindMethods = new NativeBinder.BindMethod[]{
+      new NativeBinder.BindMethod(labsMethod, libc.find("labs").get(), new BindOption.Trace(tracer)),
+      new NativeBinder.BindMethod(getpidMethod, libc.find("getpid").get(), new BindOption.Trace(tracer))
+    };
+    binder.bind(CallTracerTest.class, bindMethods);
+
+    Assertions.assertEquals(10L, labs(-10L));
+    int pid = getpid();
+
+    var records = tracer.snapshot();
+    Assertions.assertEquals(2, records.size());
+    Assertions.assertEquals(labsMethod, records.get(0).method());
+    Assertions.assertEquals(10L, records.get(0).returnValue());
+    Assertions.assertEquals(getpidMethod, records.get(1).method());
+    Assertions.assertEquals(pid, records.get(1).returnValue());
+    for(var record : records){
+      Assertions.assertNotEquals(0L, record.threadId());
+      Assertions.assertTrue(record.endTicks() >= record.startTicks());
+    }
+
+    // Snapshot does not consume records.
+    Assertions.assertEquals(2, tracer.drain().size());
+    Assertions.assertTrue(tracer.drain().isEmpty());
+
+    Assertions.assertEquals(3L, labs(3L));
+    var drained = tracer.drain();
+    Assertions.assertEquals(1, drained.size());
+    Assertions.assertEquals(3L, drained.get(0).returnValue());
+  }
+
+  @Test
+  public void testErrorCode() throws Throwable{
+    var binder = NativeBinder.getInstance();
+    var tracer = binder.createCallTracer(1);
+    var p_close = Linker.nativeLinker()
+                        .defaultLookup()
+                        .find("close")
+                        .get();
+    binder.bind(CallTracerTest.class, new NativeBinder.BindMethod[]{new NativeBinder.BindMethod(CallTracerTest.class.getMethod("close", int.class), p_close, new BindOption.Trace(tracer))});
+
+    Assertions.assertEquals(-1, close(-1));
+
+    var records = tracer.drain();
+    Assertions.assertEquals(1, records.size());
+    Assertions.assertEquals(-1L, records.get(0).returnValue()); // upper bits of RAX are not defined
+    Assertions.assertEquals(9, records.get(0).errorCode()); // EBADF
+  }
+
+  @Test
+  public void testRingOverwritten() throws Throwable{
+    var binder = NativeBinder.getInstance();
+    var tracer = binder.createCallTracer(1);
+    var labsMethod = CallTracerTest.class.getMethod("labs", long.class);
+    var p_labs = Linker.nativeLinker()
+                       .defaultLookup()
+                       .find("labs")
+                       .get();
+    binder.bind(CallTracerTest.class, new NativeBinder.BindMethod[]{new NativeBinder.BindMethod(labsMethod, p_labs, new BindOption.Trace(tracer))});
+
+    int calls = CallTracer.RING_ENTRIES + 10;
+    for(int i = 0; i < calls; i++){
+      labs(i);
+    }
+
+    // Only the latest entries should be kept.
+    var records = tracer.drain();
+    Assertions.assertEquals(CallTracer.RING_ENTRIES - 1, records.size());
+    Assertions.assertEquals(11L, records.get(0).returnValue());
+    Assertions.assertEquals(calls - 1, records.getLast().returnValue());
+  }
+
+  @Test
+  public void testPoolExhausted() throws Throwable{
+    var binder = NativeBinder.getInstance();
+    var tracer = binder.createCallTracer(1);
+    var p_labs = Linker.nativeLinker()
+                       .defaultLookup()
+                       .find("labs")
+                       .get();
+    binder.bind(CallTracerTest.class, new NativeBinder.BindMethod[]{new NativeBinder.BindMethod(CallTracerTest.class.getMethod("labs", long.class), p_labs, new BindOption.Trace(tracer))});
+
+    labs(1L);
+    var thread = new Thread(() -> labs(2L));
+    thread.start();
+    thread.join();
+
+    // 2nd thread cannot take the ring, but the call should succeed.
+    Assertions.assertEquals(1L, tracer.rejectedThreads());
+    Assertions.assertEquals(1, tracer.snapshot().size());
+  }
+
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2025, Yasumasa Suenaga
+ *
+ * This file is part of nativebinder.
+ *
+ * nativebinder is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * nativebinder is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with nativebinder. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.yasuenag.nativebinder.test;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.FunctionDescriptor;
+import java.lang.foreign.Linker;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledOnOs;
+import org.junit.jupiter.api.condition.OS;
+
+import com.yasuenag.nativebinder.NativeBinder;
+
+
+@EnabledOnOs(value = {OS.LINUX}, architectures = {"amd64"})
+public class CallbackTest{
+
+  private static final MemorySegment ALL = MemorySegment.NULL.reinterpret(Long.MAX_VALUE);
+
+  private static int calls;
+
+  // void qsort(void *base, size_t nmemb, size_t size, int (*compar)(const void *, const void *));
+  public static native void qsort(long base, long nmemb, long size, long compar);
+
+  public static int compare(long a, long b){
+    calls++;
+    return Integer.compare(ALL.get(ValueLayout.JAVA_INT, a), ALL.get(ValueLayout.JAVA_INT, b));
+  }
+
+  public static double sum(int a, double b, long c, float d){
+    return a + b + c + d;
+  }
+
+  public static int throwingCompare(long a, long b){
+    calls++;
+    throw new IllegalStateException("from callback");
+  }
+
+  public int notStatic(int a){
+    return a;
+  }
+
+  @Test
+  public void testQsort() throws Throwable{
+    var binder = NativeBinder.getInstance();
+    var p_qsort = Linker.nativeLinker()
+                        .defaultLookup()
+                        .find("qsort")
+                        .get();
+    var method = CallbackTest.class.getMethod("qsort", long.class, long.class, long.class, long.class);
+    binder.bind(CallbackTest.class, new NativeBinder.BindMethod[]{new NativeBinder.BindMethod(method, p_qsort)});
+    var compar = binder.createCallback(CallbackTest.class.getMethod("compare", long.class, long.class));
+
+    try(var arena = Arena.ofConfined()){
+      var values = new int[]{5, 3, 9, 1, 7, 2, 8};
+      var array = arena.allocateFrom(ValueLayout.JAVA_INT, values);
+      calls = 0;
+      qsort(array.address(), values.length, 4, compar.address());
+
+      Assertions.assertArrayEquals(new int[]{1, 2, 3, 5, 7, 8, 9}, array.toArray(ValueLayout.JAVA_INT));
+      Assertions.assertTrue(calls > 0);
+    }
+  }
+
+  @Test
+  public void testException() throws Throwable{
+    var binder = NativeBinder.getInstance();
+    var p_qsort = Linker.nativeLinker()
+                        .defaultLookup()
+                        .find("qsort")
+                        .get();
+    var method = CallbackTest.class.getMethod("qsort", long.class, long.class, long.class, long.class);
+    binder.bind(CallbackTest.class, new NativeBinder.BindMethod[]{new NativeBinder.BindMethod(method, p_qsort)});
+    var compar = binder.createCallback(CallbackTest.class.getMethod("throwingCompare", long.class, long.class));
+
+    try(var arena = Arena.ofConfined()){
+      var values = new int[]{5, 3, 9, 1, 7, 2, 8};
+      var array = arena.allocateFrom(ValueLayout.JAVA_INT, values);
+      calls = 0;
+      var ex = Assertions.assertThrows(IllegalStateException.class, () -> qsort(array.address(), values.length, 4, compar.address()));
+      Assertions.assertEquals("from callback", ex.getMessage());
+      // Java method should not be called while the exception is pending
+      Assertions.assertEquals(1, calls);
+    }
+    finally{
+      binder.releaseCallback(compar);
+    }
+  }
+
+  @Test
+  public void testReleaseCallback() throws Throwable{
+    var binder = NativeBinder.getInstance();
+    var callback = binder.createCallback(CallbackTest.class.getMethod("sum", int.class, double.class, long.class, float.class));
+    binder.releaseCallback(callback);
+    Assertions.assertThrows(IllegalArgumentException.class, () -> binder.releaseCallback(callback));
+    Assertions.assertThrows(IllegalArgumentException.class, () -> binder.releaseCallback(MemorySegment.NULL));
+  }
+
+  @Test
+  public void testMixedArgs() throws Throwable{
+    var callback = NativeBinder.getInstance()
+                               .createCallback(CallbackTest.class.getMethod("sum", int.class, double.class, long.class, float.class));
+    var desc = FunctionDescriptor.of(ValueLayout.JAVA_DOUBLE, ValueLayout.JAVA_INT, ValueLayout.JAVA_DOUBLE, ValueLayout.JAVA_LONG, ValueLayout.JAVA_FLOAT);
+    var handle = Linker.nativeLinker().downcallHandle(callback, desc);
+    Assertions.assertEquals(10.5d, (double)handle.invoke(1, 2.0d, 3L, 4.5f));
+  }
+
+  @Test
+  public void testInvalidMethod() throws Throwable{
+    var binder = NativeBinder.getInstance();
+    Assertions.assertThrows(IllegalArgumentException.class, () -> binder.createCallback(CallbackTest.class.getMethod("notStatic", int.class)));
+    Assertions.assertThrows(IllegalArgumentException.class, () -> binder.createCallback(Object.class.getMethod("toString")));
+  }
+
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2025, Yasumasa Suenaga
+ *
+ * This file is part of nativebinder.
+ *
+ * nativebinder is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * nativebinder is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with nativebinder. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.yasuenag.nativebinder.test;
+
+import java.lang.foreign.Linker;
+import java.lang.foreign.MemorySegment;
+import java.util.Optional;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledOnOs;
+import org.junit.jupiter.api.condition.OS;
+
+import com.yasuenag.nativebinder.ElfSymbolIndex;
+
+
+@EnabledOnOs(OS.LINUX)
+public class ElfSymbolIndexTest{
+
+  @Test
+  public void testSameAddressWithDefaultLookup() throws Throwable{
+    var defaultLookup = Linker.nativeLinker().defaultLookup();
+    var index = ElfSymbolIndex.create(name -> Optional.empty());
+
+    Assertions.assertFalse(index.names().isEmpty());
+    for(var name : new String[]{"getpid", "write", "pthread_self"}){
+      var expected = defaultLookup.find(name).get();
+      var actual = index.find(name).get();
+      Assertions.assertEquals(expected.address(), actual.address(), name);
+    }
+  }
+
+  @Test
+  public void testFallback() throws Throwable{
+    var index = ElfSymbolIndex.create(name -> name.equals("no_such_symbol") ? Optional.of(MemorySegment.ofAddress(1L)) : Optional.empty());
+    Assertions.assertEquals(1L, index.find("no_such_symbol").get().address());
+    Assertions.assertTrue(index.find("no_such_symbol2").isEmpty());
+  }
+
+  @Test
+  public void testFilter() throws Throwable{
+    var index = ElfSymbolIndex.create(name -> Optional.empty(), path -> path.getFileName().toString().startsWith("libc.so"));
+    Assertions.assertTrue(index.names().contains("getpid"));
+    Assertions.assertFalse(index.names().contains("JNI_CreateJavaVM")); // in libjvm
+
+    var empty = ElfSymbolIndex.create(name -> Optional.empty(), path -> false);
+    Assertions.assertTrue(empty.names().isEmpty());
+  }
+
+  @Test
+  public void testDuplicateSymbol() throws Throwable{
+    // GLIBC_PRIVATE is version definition which is defined in both libc and ld.so
+    var index = ElfSymbolIndex.create(name -> Optional.of(MemorySegment.ofAddress(1L)),
+                                      path -> path.getFileName().toString().startsWith("libc.so") ||
+                                              path.getFileName().toString().startsWith("ld-linux"));
+    Assertions.assertFalse(index.names().contains("GLIBC_PRIVATE"));
+    Assertions.assertEquals(1L, index.find("GLIBC_PRIVATE").get().address());
+  }
+
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2025, Yasumasa Suenaga
+ *
+ * This file is part of nativebinder.
+ *
+ * nativebinder is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * nativebinder is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with nativebinder. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.yasuenag.nativebinder.test;
+
+import java.lang.foreign.Linker;
+import java.nio.file.Files;
+import java.util.List;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledOnOs;
+import org.junit.jupiter.api.condition.OS;
+
+import com.yasuenag.nativebinder.BindOption;
+import com.yasuenag.nativebinder.NativeBinder;
+
+
+@EnabledOnOs(value = {OS.LINUX}, architectures = {"amd64"})
+public class FlightRecorderTest{
+
+  // long labs(long j);
+  public static native long labs(long j);
+
+  // int close(int fd);
+  public static native int close(int fd);
+
+  private static List<RecordedEvent> dump(Recording recording) throws Throwable{
+    var file = Files.createTempFile("nativebinder", ".jfr");
+    try{
+      recording.dump(file);
+      return RecordingFile.readAllEvents(file);
+    }
+    finally{
+      Files.delete(file);
+    }
+  }
+
+  @Test
+  public void testBindEvent() throws Throwable{
+    var p_labs = Linker.nativeLinker()
+                       .defaultLookup()
+                       .find("labs")
+                       .get();
+    var bindMethod = new NativeBinder.BindMethod(FlightRecorderTest.class.getMethod("labs", long.class), p_labs);
+
+    List<RecordedEvent> events;
+    try(var recording = new Recording()){
+      recording.enable("com.yasuenag.nativebinder.Bind");
+      recording.start();
+      NativeBinder.getInstance().bind(FlightRecorderTest.class, new NativeBinder.BindMethod[]{bindMethod});
+      recording.stop();
+      events = dump(recording);
+    }
+
+    Assertions.assertEquals(1, events.size());
+    var event = events.get(0);
+    Assertions.assertEquals(FlightRecorderTest.class.getName(), event.getClass("targetClass").getName());
+    Assertions.assertEquals(1, event.getInt("stubs"));
+    Assertions.assertTrue(event.getLong("codeSize") > 0);
+    Assertions.assertFalse(event.getBoolean("withErrorCode"));
+  }
+
+  @Test
+  public void testBindAllEvent() throws Throwable{
+    List<RecordedEvent> events;
+    try(var recording = new Recording()){
+      recording.enable("com.yasuenag.nativebinder.Bind");
+      recording.start();
+      NativeBinder.getInstance().bindAll(FlightRecorderTest.class, Linker.nativeLinker().defaultLookup());
+      recording.stop();
+      events = dump(recording);
+    }
+
+    Assertions.assertEquals(1, events.size());
+    var event = events.get(0);
+    Assertions.assertEquals(FlightRecorderTest.class.getName(), event.getClass("targetClass").getName());
+    Assertions.assertEquals(2, event.getInt("stubs")); // labs and close
+    Assertions.assertTrue(event.getLong("codeSize") > 0);
+  }
+
+  @Test
+  public void testNativeCallEvent() throws Throwable{
+    var binder = NativeBinder.getInstance();
+    var tracer = binder.createCallTracer(1);
+    var p_close = Linker.nativeLinker()
+                        .defaultLookup()
+                        .find("close")
+                        .get();
+    var method = FlightRecorderTest.class.getMethod("close", int.class);
+    binder.bind(FlightRecorderTest.class, new NativeBinder.BindMethod[]{new NativeBinder.BindMethod(method, p_close, new BindOption.Trace(tracer))});
+
+    List<RecordedEvent> events;
+    tracer.registerFlightRecorderEvents();
+    try(var recording = new Recording()){
+      recording.enable("com.yasuenag.nativebinder.NativeCall")
+               .with("period", "endChunk");
+      recording.start();
+      Assertions.assertEquals(-1, close(-1));
+      recording.stop();
+      events = dump(recording);
+    }
+    finally{
+      Assertions.assertTrue(tracer.unregisterFlightRecorderEvents());
+    }
+
+    Assertions.assertEquals(1, events.size());
+    var event = events.get(0);
+    Assertions.assertEquals(FlightRecorderTest.class.getName() + ".close(int)", event.getString("method"));
+    Assertions.assertEquals(-1L, event.getLong("returnValue"));
+    Assertions.assertEquals(9, event.getInt("errorCode")); // EBADF
+    Assertions.assertTrue(event.getLong("callDuration") >= 0);
+
+    // Records should be drained by the event.
+    Assertions.assertTrue(tracer.drain().isEmpty());
+  }
+
+}
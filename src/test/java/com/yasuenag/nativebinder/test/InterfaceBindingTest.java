@@ -0,0 +1,170 @@
+/*
+ * Copyright (C) 2025, Yasumasa Suenaga
+ *
+ * This file is part of nativebinder.
+ *
+ * nativebinder is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * nativebinder is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with nativebinder. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.yasuenag.nativebinder.test;
+
+import java.lang.foreign.Linker;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.SymbolLookup;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Modifier;
+import java.util.Optional;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import com.yasuenag.nativebinder.NativeBinder;
+
+
+public class InterfaceBindingTest extends NativeBinder{
+
+  public static interface TestLib{
+    public int getpid();
+    public long mixArgs(int a, long b, float c, double d);
+    public void noReturn();
+    public default int notBound(){
+      return 0;
+    }
+  }
+
+  public static interface LibC{
+    public int getpid();
+    public long labs(long j);
+  }
+
+  public static interface RefLib{
+    public long strlen(String s);
+  }
+
+  static interface PrivateLib{
+    public int getpid();
+  }
+
+  private Class<?> boundClass;
+
+  private BindMethod[] boundMethods;
+
+  @Override
+  public void bind(Class<?> targetClass, BindMethod[] bindMethods) throws Throwable{
+    boundClass = targetClass;
+    boundMethods = bindMethods;
+  }
+
+  @Override
+  public void bindWithErrorCode(Class<?> targetClass, BindMethod[] bindMethods) throws Throwable{
+    throw new RuntimeException("Not implemented");
+  }
+
+  @Test
+  public void testBindInterface() throws Throwable{
+    SymbolLookup lookup = name -> Optional.of(MemorySegment.ofAddress(name.length()));
+    var inst = bindInterface(TestLib.class, lookup);
+
+    var cls = inst.getClass();
+    Assertions.assertTrue(cls.isHidden());
+    Assertions.assertTrue(Modifier.isFinal(cls.getModifiers()));
+    Assertions.assertSame(cls, boundClass);
+
+    // Default method should not be bound.
+    Assertions.assertEquals(3, boundMethods.length);
+    for(var bindMethod : boundMethods){
+      var method = bindMethod.method();
+      Assertions.assertSame(cls, method.getDeclaringClass());
+      Assertions.assertTrue(Modifier.isNative(method.getModifiers()));
+      Assertions.assertTrue(Modifier.isStatic(method.getModifiers()));
+
+      var ifaceMethod = TestLib.class.getMethod(method.getName().substring("native$".length()), method.getParameterTypes());
+      Assertions.assertEquals(ifaceMethod.getReturnType(), method.getReturnType());
+      Assertions.assertEquals(ifaceMethod.getName().length(), bindMethod.seg().address());
+    }
+
+    // Native method is not registered in this test.
+    Assertions.assertThrows(UnsatisfiedLinkError.class, () -> inst.mixArgs(1, 2L, 3.0f, 4.0d));
+    Assertions.assertEquals(0, inst.notBound());
+  }
+
+  @Test
+  public void testMissingSymbols(){
+    SymbolLookup lookup = name -> name.equals("getpid") ? Optional.of(MemorySegment.ofAddress(1)) : Optional.empty();
+    var e = Assertions.assertThrows(IllegalArgumentException.class, () -> bindInterface(TestLib.class, lookup));
+    Assertions.assertTrue(e.getMessage().contains("mixArgs"));
+    Assertions.assertTrue(e.getMessage().contains("noReturn"));
+  }
+
+  @Test
+  public void testNotInterface(){
+    SymbolLookup lookup = name -> Optional.empty();
+    Assertions.assertThrows(IllegalArgumentException.class, () -> bindInterface(Object.class, lookup));
+  }
+
+  @Test
+  public void testNotAccessibleInterface(){
+    SymbolLookup lookup = name -> Optional.of(MemorySegment.ofAddress(1));
+    var e = Assertions.assertThrows(IllegalArgumentException.class, () -> bindInterface(PrivateLib.class, lookup));
+    Assertions.assertTrue(e.getMessage().contains("MethodHandles.Lookup"));
+  }
+
+  @Test
+  public void testBindInterfaceWithLookup() throws Throwable{
+    SymbolLookup lookup = name -> Optional.of(MemorySegment.ofAddress(1));
+    var inst = bindInterface(MethodHandles.lookup(), PrivateLib.class, lookup);
+
+    // Hidden class should be defined in the package of the caller.
+    var cls = inst.getClass();
+    Assertions.assertTrue(cls.isHidden());
+    Assertions.assertSame(cls, boundClass);
+    Assertions.assertEquals(InterfaceBindingTest.class.getPackageName(), cls.getPackageName());
+    Assertions.assertEquals(1, boundMethods.length);
+  }
+
+  @Test
+  public void testLookupWithoutFullPrivilege(){
+    SymbolLookup lookup = name -> Optional.of(MemorySegment.ofAddress(1));
+    Assertions.assertThrows(IllegalArgumentException.class, () -> bindInterface(MethodHandles.publicLookup(), TestLib.class, lookup));
+  }
+
+  @Test
+  public void testFFMCriticalBackend() throws Throwable{
+    var inst = bindInterface(LibC.class, Linker.nativeLinker().defaultLookup(), NativeBinder.Backend.FFM_CRITICAL);
+
+    // All of methods are served by downcall handles.
+    Assertions.assertNull(boundClass);
+    Assertions.assertTrue(inst.getClass().isHidden());
+    Assertions.assertEquals(ProcessHandle.current().pid(), inst.getpid());
+    Assertions.assertEquals(100L, inst.labs(-100L));
+  }
+
+  @Test
+  public void testBackendPerMethod() throws Throwable{
+    SymbolLookup lookup = name -> Optional.of(MemorySegment.ofAddress(name.length()));
+    var inst = bindInterface(TestLib.class, lookup, m -> m.getName().equals("getpid") ? NativeBinder.Backend.FFM_CRITICAL : NativeBinder.Backend.JNI);
+
+    Assertions.assertSame(inst.getClass(), boundClass);
+    Assertions.assertEquals(2, boundMethods.length);
+    for(var bindMethod : boundMethods){
+      Assertions.assertNotEquals("native$getpid", bindMethod.method().getName());
+    }
+  }
+
+  @Test
+  public void testFFMCriticalNotAvailable(){
+    SymbolLookup lookup = name -> Optional.of(MemorySegment.ofAddress(1));
+    Assertions.assertThrows(IllegalArgumentException.class, () -> bindInterface(RefLib.class, lookup, NativeBinder.Backend.FFM_CRITICAL));
+  }
+
+}
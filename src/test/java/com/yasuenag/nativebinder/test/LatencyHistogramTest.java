@@ -0,0 +1,61 @@
+/*
+ * Copyright (C) 2025, Yasumasa Suenaga
+ *
+ * This file is part of nativebinder.
+ *
+ * nativebinder is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * nativebinder is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with nativebinder. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.yasuenag.nativebinder.test;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import com.yasuenag.nativebinder.LatencyHistogram;
+
+
+public class LatencyHistogramTest{
+
+  @Test
+  public void testBucketOf(){
+    Assertions.assertEquals(1, LatencyHistogram.bucketOf(1));
+    Assertions.assertEquals(2, LatencyHistogram.bucketOf(2));
+    Assertions.assertEquals(2, LatencyHistogram.bucketOf(3));
+    Assertions.assertEquals(11, LatencyHistogram.bucketOf(1024));
+    Assertions.assertEquals(63, LatencyHistogram.bucketOf(Long.MAX_VALUE));
+  }
+
+  @Test
+  public void testPercentile(){
+    var buckets = new long[LatencyHistogram.BUCKETS];
+    buckets[LatencyHistogram.bucketOf(100)] = 90;  // [64, 128)
+    buckets[LatencyHistogram.bucketOf(5000)] = 9;  // [4096, 8192)
+    buckets[LatencyHistogram.bucketOf(70000)] = 1; // [65536, 131072)
+    var histogram = new LatencyHistogram(buckets, 2.0d);
+
+    Assertions.assertEquals(100, histogram.count());
+    Assertions.assertEquals(64.0d, histogram.percentile(50.0d));
+    Assertions.assertEquals(64.0d, histogram.percentile(90.0d));
+    Assertions.assertEquals(4096.0d, histogram.percentile(99.0d));
+    Assertions.assertEquals(65536.0d, histogram.percentile(100.0d));
+    Assertions.assertThrows(IllegalArgumentException.class, () -> histogram.percentile(101.0d));
+  }
+
+  @Test
+  public void testEmpty(){
+    var histogram = new LatencyHistogram(new long[LatencyHistogram.BUCKETS], 1.0d);
+    Assertions.assertEquals(0, histogram.count());
+    Assertions.assertEquals(0.0d, histogram.percentile(99.0d));
+  }
+
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) 2025, Yasumasa Suenaga
+ *
+ * This file is part of nativebinder.
+ *
+ * nativebinder is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * nativebinder is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with nativebinder. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.yasuenag.nativebinder.test;
+
+import java.lang.foreign.Linker;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledOnOs;
+import org.junit.jupiter.api.condition.OS;
+
+import com.yasuenag.nativebinder.BindOption;
+import com.yasuenag.nativebinder.NativeBinder;
+
+
+@EnabledOnOs(value = {OS.LINUX}, architectures = {"amd64"})
+public class LatencySamplerTest{
+
+  // int usleep(useconds_t usec);
+  public static native int usleep(int usec);
+
+  @Test
+  public void testSampling() throws Throwable{
+    var binder = NativeBinder.getInstance();
+    var sampler = binder.createLatencySampler(2);
+    var method = LatencySamplerTest.class.getMethod("usleep", int.class);
+    var p_usleep = Linker.nativeLinker()
+                         .defaultLookup()
+                         .find("usleep")
+                         .get();
+    var bindMethod = new NativeBinder.BindMethod(method, p_usleep, new BindOption.Sampler(sampler));
+    binder.bind(LatencySamplerTest.class, new NativeBinder.BindMethod[]{bindMethod});
+
+    for(int i = 0; i < 20; i++){
+      Assertions.assertEquals(0, usleep(1000));
+    }
+
+    // Every 2nd call should be sampled.
+    var histogram = sampler.histogram(method);
+    Assertions.assertEquals(10, histogram.count());
+    Assertions.assertTrue(histogram.percentile(50.0d) >= 1_000_000.0d);
+
+    // Samples should not be counted twice.
+    Assertions.assertEquals(10, sampler.histogram(method).count());
+  }
+
+}
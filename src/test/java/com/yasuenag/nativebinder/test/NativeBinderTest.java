@@ -19,14 +19,22 @@ package com.yasuenag.nativebinder.test;
 
 import java.lang.foreign.FunctionDescriptor;
 import java.lang.foreign.Linker;
+import java.lang.foreign.MemorySegment;
 import java.lang.foreign.ValueLayout;
 import java.lang.invoke.MethodHandle;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.management.openmbean.TabularData;
 
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.condition.EnabledOnOs;
 import org.junit.jupiter.api.condition.OS;
 
+import com.yasuenag.nativebinder.BindOption;
+import com.yasuenag.nativebinder.BlockingCallExecutor;
+import com.yasuenag.nativebinder.CallCounters;
 import com.yasuenag.nativebinder.NativeBinder;
 
 
@@ -91,6 +99,86 @@ public class NativeBinderTest extends NativeBinder{
     Assertions.assertFalse(isFloatingPointClass(Object.class));
   }
 
+  @Test
+  public void testIsPrimitiveArrayClass(){
+    Assertions.assertTrue(isPrimitiveArrayClass(byte[].class));
+    Assertions.assertTrue(isPrimitiveArrayClass(int[].class));
+    Assertions.assertTrue(isPrimitiveArrayClass(double[].class));
+
+    Assertions.assertFalse(isPrimitiveArrayClass(byte.class));
+    Assertions.assertFalse(isPrimitiveArrayClass(Object[].class));
+    Assertions.assertFalse(isPrimitiveArrayClass(int[][].class));
+  }
+
+  @Test
+  public void testIsStringClass(){
+    Assertions.assertTrue(isStringClass(String.class));
+
+    Assertions.assertFalse(isStringClass(CharSequence.class));
+    Assertions.assertFalse(isStringClass(char[].class));
+  }
+
+  @Test
+  public void testGetCallStaticMethodAIndex(){
+    Assertions.assertEquals(119, getCallStaticMethodAIndex(boolean.class));
+    Assertions.assertEquals(131, getCallStaticMethodAIndex(int.class));
+    Assertions.assertEquals(134, getCallStaticMethodAIndex(long.class));
+    Assertions.assertEquals(140, getCallStaticMethodAIndex(double.class));
+    Assertions.assertEquals(143, getCallStaticMethodAIndex(void.class));
+
+    Assertions.assertThrows(IllegalArgumentException.class, () -> getCallStaticMethodAIndex(Object.class));
+  }
+
+  @Test
+  public void testCallCounters() throws Throwable{
+    var counters = CallCounters.create();
+    var length = String.class.getMethod("length");
+    var isEmpty = String.class.getMethod("isEmpty");
+
+    var target1 = createStubTarget(new NativeBinder.BindMethod(length, MemorySegment.NULL, new BindOption.Counter(counters)));
+    var target2 = createStubTarget(new NativeBinder.BindMethod(isEmpty, MemorySegment.NULL, new BindOption.Counter(counters)));
+    var target3 = createStubTarget(new NativeBinder.BindMethod(length, MemorySegment.NULL, new BindOption.Counter(counters)));
+    Assertions.assertNull(createStubTarget(new NativeBinder.BindMethod(length, MemorySegment.NULL)).counter());
+
+    // Block should be aligned to 64KB to replace 2nd byte with the stripe.
+    Assertions.assertEquals(0, target1.counter().address() & 0xffff);
+    Assertions.assertEquals(target1.counter().address() + 8, target2.counter().address());
+
+    // Emulate increments by stubs in several stripes.
+    var block = target1.counter().reinterpret(CallCounters.STRIPES * CallCounters.STRIPE_SIZE);
+    block.set(ValueLayout.JAVA_LONG, 0, 3L);
+    block.set(ValueLayout.JAVA_LONG, 255 * CallCounters.STRIPE_SIZE, 4L);
+    block.set(ValueLayout.JAVA_LONG, (10 * CallCounters.STRIPE_SIZE) + 8, 5L);
+    target3.counter().reinterpret(CallCounters.STRIPES * CallCounters.STRIPE_SIZE)
+                     .set(ValueLayout.JAVA_LONG, 128 * CallCounters.STRIPE_SIZE, 6L);
+
+    Assertions.assertEquals(13L, counters.count(length));
+    Assertions.assertEquals(5L, counters.count(isEmpty));
+    Assertions.assertEquals(0L, counters.count(String.class.getMethod("hashCode")));
+    Assertions.assertEquals(Map.of(length, 13L, isEmpty, 5L), counters.counts());
+    Assertions.assertEquals(18L, counters.getTotalCalls());
+    Assertions.assertEquals(Map.of("java.lang.String.length()", 13L, "java.lang.String.isEmpty()", 5L), counters.getCallCounts());
+
+    Assertions.assertThrows(IllegalArgumentException.class, () -> createStubTarget(new NativeBinder.BindDescriptor("length", "()I", MemorySegment.NULL, new BindOption.Counter(counters))));
+  }
+
+  @Test
+  public void testCallCountersMXBean() throws Throwable{
+    var counters = CallCounters.create();
+    createStubTarget(new NativeBinder.BindMethod(String.class.getMethod("length"), MemorySegment.NULL, new BindOption.Counter(counters)));
+
+    var name = counters.registerMXBean("testCallCountersMXBean");
+    var server = ManagementFactory.getPlatformMBeanServer();
+    try{
+      Assertions.assertEquals(0L, server.getAttribute(name, "TotalCalls"));
+      var callCounts = (TabularData)server.getAttribute(name, "CallCounts");
+      Assertions.assertEquals(1, callCounts.size());
+    }
+    finally{
+      server.unregisterMBean(name);
+    }
+  }
+
   private void errorCodeTestInMT(MethodHandle callback, int errcode){
     try{
       callback.invoke(errcode);
@@ -120,4 +208,30 @@ public class NativeBinderTest extends NativeBinder{
     test2.join();
   }
 
+  @Test
+  public void testErrorCodeWithBlockingCallExecutor() throws Throwable{
+    getInstance(); // Initialize ptrErrorCodeCallback
+
+    var desc = FunctionDescriptor.ofVoid(ValueLayout.JAVA_INT);
+    var callback = Linker.nativeLinker()
+                         .downcallHandle(NativeBinder.ptrErrorCodeCallback, desc);
+
+    try(var executor = new BlockingCallExecutor(1)){
+      // Error code is set on the thread in the pool, and it should be
+      // propagated to the virtual thread.
+      var error = new AtomicReference<Throwable>();
+      var test = Thread.ofVirtual().start(() -> {
+        try{
+          executor.run(() -> errorCodeTestInMT(callback, 300));
+          Assertions.assertEquals(300, NativeBinder.errorCodeInPreviousCall());
+        }
+        catch(Throwable t){
+          error.set(t);
+        }
+      });
+      test.join();
+      BlockingCallExecutorTest.rethrow(error);
+    }
+  }
+
 }
@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2025, Yasumasa Suenaga
+ *
+ * This file is part of nativebinder.
+ *
+ * nativebinder is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * nativebinder is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with nativebinder. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.yasuenag.nativebinder.test;
+
+import java.lang.foreign.Linker;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledOnOs;
+import org.junit.jupiter.api.condition.OS;
+
+import com.yasuenag.nativebinder.BindOption;
+import com.yasuenag.nativebinder.NativeBinder;
+import com.yasuenag.nativebinder.NativeLock;
+
+
+@EnabledOnOs(value = {OS.LINUX}, architectures = {"amd64"})
+public class NativeLockTest{
+
+  private static final int THREADS = 4;
+
+  private static final int CALLS = 10000;
+
+  public static native int getpid();
+
+  public static native long labs(long j);
+
+  @Test
+  public void testCounters() throws Throwable{
+    var lock = NativeLock.create();
+    Assertions.assertEquals(0, lock.acquisitions());
+    Assertions.assertEquals(0, lock.contentions());
+
+    var libc = Linker.nativeLinker().defaultLookup();
+    var bindMethods = new NativeBinder.BindMethod[]{
+      new NativeBinder.BindMethod(NativeLockTest.class.getMethod("getpid"), libc.find("getpid").get(), new BindOption.Lock(lock)),
+      new NativeBinder.BindMethod(NativeLockTest.class.getMethod("labs", long.class), libc.find("labs").get(), new BindOption.Lock(lock))
+    };
+    NativeBinder.getInstance().bind(NativeLockTest.class, bindMethods);
+
+    Assertions.assertEquals(ProcessHandle.current().pid(), getpid());
+    Assertions.assertEquals(100L, labs(-100L));
+    Assertions.assertEquals(2, lock.acquisitions());
+
+    var threads = new Thread[THREADS];
+    for(int i = 0; i < threads.length; i++){
+      threads[i] = new Thread(() -> {
+        for(int j = 0; j < CALLS; j++){
+          labs(j);
+        }
+      });
+      threads[i].start();
+    }
+    for(var thread : threads){
+      thread.join();
+    }
+
+    Assertions.assertEquals(2 + (THREADS * CALLS), lock.acquisitions());
+    Assertions.assertTrue(lock.contentions() <= lock.acquisitions());
+  }
+
+}
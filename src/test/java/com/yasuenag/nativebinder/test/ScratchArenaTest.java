@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2025, Yasumasa Suenaga
+ *
+ * This file is part of nativebinder.
+ *
+ * nativebinder is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * nativebinder is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with nativebinder. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.yasuenag.nativebinder.test;
+
+import java.lang.foreign.Linker;
+import java.lang.foreign.ValueLayout;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledOnOs;
+import org.junit.jupiter.api.condition.OS;
+
+import com.yasuenag.nativebinder.NativeBinder;
+
+
+@EnabledOnOs(value = {OS.LINUX}, architectures = {"amd64"})
+public class ScratchArenaTest{
+
+  // size_t strlen(const char *s);
+  public static native long strlen(long s);
+
+  @Test
+  public void testString() throws Throwable{
+    var binder = NativeBinder.getInstance();
+    var scratch = binder.createScratchArena(64);
+    var method = ScratchArenaTest.class.getMethod("strlen", long.class);
+    var p_strlen = Linker.nativeLinker()
+                         .defaultLookup()
+                         .find("strlen")
+                         .get();
+    binder.bind(ScratchArenaTest.class, new NativeBinder.BindMethod[]{new NativeBinder.BindMethod(method, p_strlen)});
+
+    long mark = scratch.mark();
+    Assertions.assertEquals(5L, strlen(scratch.allocateString("Hello").address()));
+    Assertions.assertEquals(6L, strlen(scratch.allocateString("あい").address()));
+    scratch.reset(mark);
+    Assertions.assertEquals(mark, scratch.mark());
+  }
+
+  @Test
+  public void testMarkAndReset() throws Throwable{
+    var scratch = NativeBinder.getInstance().createScratchArena(64);
+    Assertions.assertEquals(64, scratch.capacity());
+    Assertions.assertEquals(0, scratch.mark());
+
+    var first = scratch.allocate(1, 1);
+    long mark = scratch.mark();
+    var ints = scratch.allocateArray(new int[]{1, 2, 3});
+    Assertions.assertEquals(0, ints.address() % 4);
+    Assertions.assertEquals(3, ints.getAtIndex(ValueLayout.JAVA_INT, 2));
+    Assertions.assertEquals(first.address() + 4, ints.address());
+
+    // Memory after the mark should be reused.
+    scratch.reset(mark);
+    Assertions.assertEquals(ints.address(), scratch.allocateArray(new int[]{4}).address());
+
+    scratch.reset();
+    Assertions.assertEquals(first.address(), scratch.allocate(8).address());
+    Assertions.assertThrows(IllegalArgumentException.class, () -> scratch.reset(64));
+  }
+
+  @Test
+  public void testExhausted() throws Throwable{
+    var scratch = NativeBinder.getInstance().createScratchArena(16);
+    scratch.allocate(16);
+    Assertions.assertThrows(IllegalStateException.class, () -> scratch.allocate(1, 1));
+    Assertions.assertThrows(IllegalArgumentException.class, () -> scratch.allocate(1, 3));
+    scratch.reset();
+  }
+
+  @Test
+  public void testHugeSize() throws Throwable{
+    var scratch = NativeBinder.getInstance().createScratchArena(16);
+    scratch.reset();
+    scratch.allocate(8);
+    long mark = scratch.mark();
+
+    // (offset + size) overflows, and the arena should not be changed.
+    Assertions.assertThrows(IllegalStateException.class, () -> scratch.allocate(Long.MAX_VALUE, 1));
+    Assertions.assertThrows(IllegalStateException.class, () -> scratch.allocate(Long.MAX_VALUE - 4, 8));
+    Assertions.assertEquals(mark, scratch.mark());
+    Assertions.assertEquals(8, scratch.allocate(8).byteSize());
+    scratch.reset();
+  }
+
+  @Test
+  public void testArenaPerThread() throws Throwable{
+    var scratch = NativeBinder.getInstance().createScratchArena(64);
+    scratch.reset();
+    scratch.allocate(32);
+
+    var other = new long[1];
+    var thread = new Thread(() -> other[0] = scratch.mark());
+    thread.start();
+    thread.join();
+    Assertions.assertEquals(0, other[0]);
+    Assertions.assertEquals(32, scratch.mark());
+  }
+
+}
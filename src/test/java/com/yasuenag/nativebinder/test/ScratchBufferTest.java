@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2025, Yasumasa Suenaga
+ *
+ * This file is part of nativebinder.
+ *
+ * nativebinder is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * nativebinder is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with nativebinder. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.yasuenag.nativebinder.test;
+
+import java.lang.foreign.Linker;
+import java.lang.foreign.ValueLayout;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledOnOs;
+import org.junit.jupiter.api.condition.OS;
+
+import com.yasuenag.nativebinder.BindOption;
+import com.yasuenag.nativebinder.NativeBinder;
+
+
+@EnabledOnOs(value = {OS.LINUX}, architectures = {"amd64"})
+public class ScratchBufferTest{
+
+  private static final int CLOCK_REALTIME = 0;
+
+  // int clock_gettime(clockid_t clockid, struct timespec *tp);
+  public static native int clockGettime(int clockid);
+
+  @Test
+  public void testOutParameter() throws Throwable{
+    var binder = NativeBinder.getInstance();
+    var scratch = binder.createScratchBuffer(16); // struct timespec
+    var method = ScratchBufferTest.class.getMethod("clockGettime", int.class);
+    var p_clock_gettime = Linker.nativeLinker()
+                                .defaultLookup()
+                                .find("clock_gettime")
+                                .get();
+    var bindMethod = new NativeBinder.BindMethod(method, p_clock_gettime, new BindOption.ScratchArg(scratch, 1));
+    binder.bind(ScratchBufferTest.class, new NativeBinder.BindMethod[]{bindMethod});
+
+    Assertions.assertEquals(0, clockGettime(CLOCK_REALTIME));
+    var tv_sec = scratch.segment().get(ValueLayout.JAVA_LONG, 0);
+    Assertions.assertTrue(Math.abs((System.currentTimeMillis() / 1000) - tv_sec) <= 1);
+  }
+
+  @Test
+  public void testSegmentPerThread() throws Throwable{
+    var scratch = NativeBinder.getInstance().createScratchBuffer(8);
+    var seg = scratch.segment();
+    Assertions.assertEquals(8, seg.byteSize());
+    Assertions.assertEquals(seg.address(), scratch.segment().address());
+
+    var other = new long[1];
+    var thread = new Thread(() -> other[0] = scratch.segment().address());
+    thread.start();
+    thread.join();
+    Assertions.assertNotEquals(seg.address(), other[0]);
+  }
+
+}
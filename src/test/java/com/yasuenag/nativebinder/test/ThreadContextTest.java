@@ -0,0 +1,60 @@
+/*
+ * Copyright (C) 2025, Yasumasa Suenaga
+ *
+ * This file is part of nativebinder.
+ *
+ * nativebinder is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * nativebinder is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with nativebinder. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.yasuenag.nativebinder.test;
+
+import java.lang.foreign.MemorySegment;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import com.yasuenag.nativebinder.ThreadContext;
+
+
+public class ThreadContextTest{
+
+  private void setAndGetInMT(ThreadContext context, long value){
+    Assertions.assertEquals(MemorySegment.NULL, context.get());
+    context.set(MemorySegment.ofAddress(value));
+    Assertions.assertEquals(value, context.get().address());
+  }
+
+  @Test
+  public void testSetAndGet() throws Throwable{
+    var context = ThreadContext.create();
+
+    var test1 = new Thread(() -> setAndGetInMT(context, 100L));
+    var test2 = new Thread(() -> setAndGetInMT(context, 200L));
+
+    test1.start();
+    test2.start();
+
+    test1.join();
+    test2.join();
+
+    Assertions.assertEquals(MemorySegment.NULL, context.get());
+  }
+
+  @Test
+  public void testDifferentKeys(){
+    var context1 = ThreadContext.create();
+    var context2 = ThreadContext.create();
+    Assertions.assertNotEquals(context1.key(), context2.key());
+  }
+
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2025, Yasumasa Suenaga
+ *
+ * This file is part of nativebinder.
+ *
+ * nativebinder is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * nativebinder is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with nativebinder. If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.yasuenag.nativebinder.test;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.Linker;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import com.yasuenag.nativebinder.BindOption;
+import com.yasuenag.nativebinder.NativeBinder;
+
+
+public class VariadicTest{
+
+  // int snprintf(char *str, size_t size, const char *format, ...);
+  public static native int snprintf(long str, long size, long format, double a, int b, double c);
+
+  public static native int snprintfFloat(long str, long size, long format, float a);
+
+  @Test
+  public void testSnprintf() throws Throwable{
+    var p_snprintf = Linker.nativeLinker()
+                           .defaultLookup()
+                           .find("snprintf")
+                           .get();
+    var method = VariadicTest.class.getMethod("snprintf", long.class, long.class, long.class, double.class, int.class, double.class);
+    NativeBinder.getInstance().bind(VariadicTest.class, new NativeBinder.BindMethod[]{new NativeBinder.BindMethod(method, p_snprintf, new BindOption.Variadic(3))});
+
+    try(var arena = Arena.ofConfined()){
+      var buf = arena.allocate(64);
+      var format = arena.allocateFrom("%.2f %d %.1f");
+
+      // Number of vector registers (AL) in Linux AMD64, and copy to integer
+      // registers in Windows should be set for variadic doubles.
+      int len = snprintf(buf.address(), buf.byteSize(), format.address(), 1.25d, 42, -3.5d);
+      Assertions.assertEquals("1.25 42 -3.5", buf.getString(0));
+      Assertions.assertEquals(12, len);
+    }
+  }
+
+  @Test
+  public void testFloatInVariadicArgs() throws Throwable{
+    var p_snprintf = Linker.nativeLinker()
+                           .defaultLookup()
+                           .find("snprintf")
+                           .get();
+    var method = VariadicTest.class.getMethod("snprintfFloat", long.class, long.class, long.class, float.class);
+    var binder = NativeBinder.getInstance();
+    Assertions.assertThrows(IllegalArgumentException.class, () -> binder.bind(VariadicTest.class, new NativeBinder.BindMethod[]{new NativeBinder.BindMethod(method, p_snprintf, new BindOption.Variadic(3))}));
+
+    // float in fixed arguments is allowed.
+    binder.bind(VariadicTest.class, new NativeBinder.BindMethod[]{new NativeBinder.BindMethod(method, p_snprintf, new BindOption.Variadic(4))});
+  }
+
+}
@@ -17,6 +17,7 @@
  */
 package com.yasuenag.nativebinder.test.internal.aarch64;
 
+import java.lang.foreign.MemorySegment;
 import java.lang.reflect.Method;
 import java.util.Arrays;
 
@@ -27,6 +28,8 @@ import org.junit.jupiter.api.condition.OS;
 
 import com.yasuenag.ffmasm.aarch64.Register;
 
+import com.yasuenag.nativebinder.BindOption;
+import com.yasuenag.nativebinder.CallCounters;
 import com.yasuenag.nativebinder.NativeBinder;
 import com.yasuenag.nativebinder.internal.aarch64.LinuxNativeBinder;
 
@@ -423,4 +426,60 @@ public class LinuxNativeBinderTest extends LinuxNativeBinder{
     Assertions.assertEquals(NativeBinder.ArgType.FP, rule[9].type());
   }
 
+  @Test
+  void testLeadingArgsWithJMP(){
+    var targetMethod = getTargetMethod("intManyArgs");
+    var bindMethod = new BindMethod(targetMethod, MemorySegment.NULL, new BindOption.LeadingArgs(100L));
+    var rule = createCallRule(getArgTypes(targetMethod), createArgSources(bindMethod), true);
+
+    Assertions.assertTrue(rule.isJMPAvailable());
+    Assertions.assertEquals(10, rule.transformers().length);
+    Assertions.assertEquals(1, rule.immediates().length);
+
+    // arg1
+    Assertions.assertEquals(Register.X2, rule.transformers()[0].from());
+    Assertions.assertEquals(Register.X1, rule.transformers()[0].to());
+
+    // arg7
+    Assertions.assertEquals(Register.SP, rule.transformers()[6].from());
+    Assertions.assertEquals(0, rule.transformers()[6].fromOffset().getAsInt());
+    Assertions.assertEquals(Register.X7, rule.transformers()[6].to());
+    Assertions.assertTrue(rule.transformers()[6].toOffset().isEmpty());
+
+    // arg8
+    Assertions.assertEquals(Register.SP, rule.transformers()[7].from());
+    Assertions.assertEquals(8, rule.transformers()[7].fromOffset().getAsInt());
+    Assertions.assertEquals(Register.SP, rule.transformers()[7].to());
+    Assertions.assertEquals(0, rule.transformers()[7].toOffset().getAsInt());
+
+    // constant
+    Assertions.assertEquals(100L, rule.immediates()[0].value());
+    Assertions.assertEquals(Register.X0, rule.immediates()[0].to());
+    Assertions.assertTrue(rule.immediates()[0].toOffset().isEmpty());
+  }
+
+  @Test
+  void testTrailingArgsWithJMP(){
+    var targetMethod = getTargetMethod("fpManyArgs");
+    var bindMethod = new BindMethod(targetMethod, MemorySegment.NULL, new BindOption.TrailingArgs(100L));
+    var rule = createCallRule(getArgTypes(targetMethod), createArgSources(bindMethod), true);
+
+    Assertions.assertTrue(rule.isJMPAvailable());
+    Assertions.assertEquals(0, rule.transformers().length);
+    Assertions.assertEquals(1, rule.immediates().length);
+    Assertions.assertEquals(Register.X0, rule.immediates()[0].to());
+  }
+
+  @Test
+  void testSupportedFeatures() throws Throwable{
+    Assertions.assertTrue(isSupported(Feature.SAMPLER));
+    Assertions.assertFalse(isSupported(Feature.COUNTER));
+    Assertions.assertFalse(isSupported(Feature.CALLBACK));
+
+    var targetMethod = getTargetMethod("intManyArgs");
+    var bindMethod = new BindMethod(targetMethod, MemorySegment.NULL, new BindOption.Counter(CallCounters.create()));
+    Assertions.assertThrows(UnsupportedOperationException.class, () -> createStubTarget(bindMethod));
+    Assertions.assertThrows(UnsupportedOperationException.class, () -> createScratchBuffer(64));
+  }
+
 }
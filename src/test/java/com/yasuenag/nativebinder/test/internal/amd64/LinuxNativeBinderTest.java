@@ -17,23 +17,44 @@
  */
 package com.yasuenag.nativebinder.test.internal.amd64;
 
+import java.lang.foreign.Arena;
+import java.lang.foreign.Linker;
+import java.lang.foreign.MemoryLayout;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
 import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalInt;
 
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.condition.EnabledOnOs;
 import org.junit.jupiter.api.condition.OS;
 
+import com.yasuenag.ffmasm.NativeRegister;
 import com.yasuenag.ffmasm.amd64.Register;
 
+import com.yasuenag.nativebinder.BindOption;
+import com.yasuenag.nativebinder.CompositeMethod;
+import com.yasuenag.nativebinder.LatencySampler;
 import com.yasuenag.nativebinder.NativeBinder;
+import com.yasuenag.nativebinder.NativeLock;
+import com.yasuenag.nativebinder.ThreadContext;
 import com.yasuenag.nativebinder.internal.amd64.LinuxNativeBinder;
 
 
 @EnabledOnOs(value = {OS.LINUX}, architectures = {"amd64"})
 public class LinuxNativeBinderTest extends LinuxNativeBinder{
 
+  // int getpid(void);
+  public static native int getpid();
+
+  // Map binding of int close(int fd);
+  public static native void closeAll(long args, long results, long count);
+
   // Skeltons for test
   public void intManyArgs(boolean a1,
                           byte a2,
@@ -71,6 +92,18 @@ public class LinuxNativeBinderTest extends LinuxNativeBinder{
                           double a16,
                           int a17,
                           float a18){}
+  public int lockAndWrite(long mutex, int fd, long buf, long len){
+    return 0;
+  }
+  public int hashArray(byte[] buf, long len){
+    return 0;
+  }
+  public long readBuffer(int fd, ByteBuffer buf, long len, int[] stats){
+    return 0;
+  }
+  public int closeFd(int fd){
+    return 0;
+  }
 
   @Test
   public void testXmmVolatileRegister(){
@@ -398,4 +431,591 @@ public class LinuxNativeBinderTest extends LinuxNativeBinder{
     Assertions.assertEquals(NativeBinder.ArgType.FP, rule[9].type());
   }
 
+  @Test
+  void testLeadingArgsWithJMP(){
+    var targetMethod = getTargetMethod("intManyArgs");
+    var bindMethod = new BindMethod(targetMethod, MemorySegment.NULL, new BindOption.LeadingArgs(100L));
+    var rule = createCallRule(getArgTypes(targetMethod), createArgSources(bindMethod), true);
+
+    Assertions.assertTrue(rule.isJMPAvailable());
+    Assertions.assertEquals(8, rule.transformers().length);
+    Assertions.assertEquals(1, rule.immediates().length);
+
+    // arg1
+    Assertions.assertEquals(Register.RDX, rule.transformers()[0].from());
+    Assertions.assertTrue(rule.transformers()[0].fromOffset().isEmpty());
+    Assertions.assertEquals(Register.RSI, rule.transformers()[0].to());
+    Assertions.assertTrue(rule.transformers()[0].toOffset().isEmpty());
+
+    // arg5
+    Assertions.assertEquals(Register.RSP, rule.transformers()[4].from());
+    Assertions.assertEquals(8, rule.transformers()[4].fromOffset().getAsInt());
+    Assertions.assertEquals(Register.R9, rule.transformers()[4].to());
+    Assertions.assertTrue(rule.transformers()[4].toOffset().isEmpty());
+
+    // arg6
+    Assertions.assertEquals(Register.RSP, rule.transformers()[5].from());
+    Assertions.assertEquals(16, rule.transformers()[5].fromOffset().getAsInt());
+    Assertions.assertEquals(Register.RSP, rule.transformers()[5].to());
+    Assertions.assertEquals(8, rule.transformers()[5].toOffset().getAsInt());
+
+    // arg8
+    Assertions.assertEquals(Register.RSP, rule.transformers()[7].from());
+    Assertions.assertEquals(32, rule.transformers()[7].fromOffset().getAsInt());
+    Assertions.assertEquals(Register.RSP, rule.transformers()[7].to());
+    Assertions.assertEquals(24, rule.transformers()[7].toOffset().getAsInt());
+
+    // constant
+    Assertions.assertEquals(100L, rule.immediates()[0].value());
+    Assertions.assertEquals(Register.RDI, rule.immediates()[0].to());
+    Assertions.assertTrue(rule.immediates()[0].toOffset().isEmpty());
+  }
+
+  @Test
+  void testLeadingArgsWhichOverflowStack(){
+    var targetMethod = getTargetMethod("intManyArgs");
+    var bindMethod = new BindMethod(targetMethod, MemorySegment.NULL, new BindOption.LeadingArgs(1L, 2L, 3L));
+
+    var ruleForJMP = createCallRule(getArgTypes(targetMethod), createArgSources(bindMethod), true);
+    Assertions.assertFalse(ruleForJMP.isJMPAvailable());
+
+    var rule = createCallRule(getArgTypes(targetMethod), createArgSources(bindMethod), false);
+    Assertions.assertEquals(8, rule.transformers().length);
+    Assertions.assertEquals(40, rule.stackSize());
+
+    // Arguments in registers should be moved from the tail
+    // not to clobber source registers.
+
+    // arg4
+    Assertions.assertEquals(Register.R9, rule.transformers()[0].from());
+    Assertions.assertEquals(Register.RSP, rule.transformers()[0].to());
+    Assertions.assertEquals(0, rule.transformers()[0].toOffset().getAsInt());
+
+    // arg3
+    Assertions.assertEquals(Register.R8, rule.transformers()[1].from());
+    Assertions.assertEquals(Register.R9, rule.transformers()[1].to());
+
+    // arg2
+    Assertions.assertEquals(Register.RCX, rule.transformers()[2].from());
+    Assertions.assertEquals(Register.R8, rule.transformers()[2].to());
+
+    // arg1
+    Assertions.assertEquals(Register.RDX, rule.transformers()[3].from());
+    Assertions.assertEquals(Register.RCX, rule.transformers()[3].to());
+
+    // arg5
+    Assertions.assertEquals(Register.RBP, rule.transformers()[4].from());
+    Assertions.assertEquals(16, rule.transformers()[4].fromOffset().getAsInt());
+    Assertions.assertEquals(Register.RSP, rule.transformers()[4].to());
+    Assertions.assertEquals(8, rule.transformers()[4].toOffset().getAsInt());
+
+    // constants
+    Assertions.assertEquals(3, rule.immediates().length);
+    Assertions.assertEquals(Register.RDI, rule.immediates()[0].to());
+    Assertions.assertEquals(Register.RSI, rule.immediates()[1].to());
+    Assertions.assertEquals(Register.RDX, rule.immediates()[2].to());
+  }
+
+  @Test
+  void testTrailingArgsWithJMP(){
+    var targetMethod = getTargetMethod("fpManyArgs");
+    var bindMethod = new BindMethod(targetMethod, MemorySegment.NULL, new BindOption.TrailingArgs(100L));
+    var rule = createCallRule(getArgTypes(targetMethod), createArgSources(bindMethod), true);
+
+    Assertions.assertTrue(rule.isJMPAvailable());
+    Assertions.assertEquals(0, rule.transformers().length);
+    Assertions.assertEquals(1, rule.immediates().length);
+    Assertions.assertEquals(100L, rule.immediates()[0].value());
+    Assertions.assertEquals(Register.RDI, rule.immediates()[0].to());
+  }
+
+  @Test
+  void testThreadContextArg(){
+    var targetMethod = getTargetMethod("intManyArgs");
+    var context = ThreadContext.create();
+    var bindMethod = new BindMethod(targetMethod, MemorySegment.NULL, new BindOption.ThreadContextArg(context, 0));
+    var rule = createCallRule(getArgTypes(targetMethod), createArgSources(bindMethod), true);
+
+    // Stub with JMP cannot load the value.
+    Assertions.assertFalse(rule.isJMPAvailable());
+
+    rule = createCallRule(getArgTypes(targetMethod), createArgSources(bindMethod), false);
+    Assertions.assertEquals(72, rule.stackSize());
+
+    // JNIEnv and arguments in registers should be evacuated.
+    Assertions.assertEquals(5, rule.spills().length);
+    Assertions.assertEquals(Register.RDI, rule.spills()[0].from());
+    Assertions.assertEquals(Register.RBP, rule.spills()[0].to());
+    Assertions.assertEquals(-8, rule.spills()[0].toOffset().getAsInt());
+    Assertions.assertEquals(Register.R9, rule.spills()[4].from());
+    Assertions.assertEquals(Register.RBP, rule.spills()[4].to());
+    Assertions.assertEquals(-40, rule.spills()[4].toOffset().getAsInt());
+
+    Assertions.assertEquals(1, rule.loaders().length);
+    Assertions.assertEquals(new ArgSource.ThreadContextValue(context.key()), rule.loaders()[0].source());
+    Assertions.assertEquals(Register.RBP, rule.loaders()[0].to());
+    Assertions.assertEquals(-48, rule.loaders()[0].toOffset().getAsInt());
+
+    Assertions.assertEquals(9, rule.transformers().length);
+
+    // context
+    Assertions.assertEquals(Register.RBP, rule.transformers()[0].from());
+    Assertions.assertEquals(-48, rule.transformers()[0].fromOffset().getAsInt());
+    Assertions.assertEquals(Register.RDI, rule.transformers()[0].to());
+    Assertions.assertTrue(rule.transformers()[0].toOffset().isEmpty());
+
+    // arg1
+    Assertions.assertEquals(Register.RBP, rule.transformers()[1].from());
+    Assertions.assertEquals(-16, rule.transformers()[1].fromOffset().getAsInt());
+    Assertions.assertEquals(Register.RSI, rule.transformers()[1].to());
+    Assertions.assertTrue(rule.transformers()[1].toOffset().isEmpty());
+
+    // arg5
+    Assertions.assertEquals(Register.RBP, rule.transformers()[5].from());
+    Assertions.assertEquals(16, rule.transformers()[5].fromOffset().getAsInt());
+    Assertions.assertEquals(Register.R9, rule.transformers()[5].to());
+    Assertions.assertTrue(rule.transformers()[5].toOffset().isEmpty());
+
+    // arg6
+    Assertions.assertEquals(Register.RBP, rule.transformers()[6].from());
+    Assertions.assertEquals(24, rule.transformers()[6].fromOffset().getAsInt());
+    Assertions.assertEquals(Register.RSP, rule.transformers()[6].to());
+    Assertions.assertEquals(0, rule.transformers()[6].toOffset().getAsInt());
+  }
+
+  @Test
+  void testCompositeCallRules(){
+    var targetMethod = getTargetMethod("lockAndWrite");
+    var compositeMethod = new CompositeMethod(targetMethod,
+                            new CompositeMethod.Step(MemorySegment.NULL, CompositeMethod.Failure.NONZERO,
+                                                     new CompositeMethod.Arg.Param(0)),
+                            new CompositeMethod.Step(MemorySegment.NULL, CompositeMethod.Failure.NEGATIVE,
+                                                     new CompositeMethod.Arg.Param(1),
+                                                     new CompositeMethod.Arg.Param(2),
+                                                     new CompositeMethod.Arg.Result(0)),
+                            new CompositeMethod.Step(MemorySegment.NULL, CompositeMethod.Failure.NONE,
+                                                     new CompositeMethod.Arg.Param(0)));
+    var rules = createCompositeCallRules(compositeMethod);
+
+    Assertions.assertEquals(3, rules.length);
+
+    // Arguments should be evacuated at once.
+    Assertions.assertEquals(5, rules[0].spills().length);
+    Assertions.assertEquals(0, rules[1].spills().length);
+    Assertions.assertEquals(0, rules[2].spills().length);
+
+    // evacuated arguments + results of 3 steps
+    Assertions.assertEquals(64, rules[0].stackSize());
+
+    // step 1
+    Assertions.assertEquals(1, rules[0].transformers().length);
+    Assertions.assertEquals(Register.RBP, rules[0].transformers()[0].from());
+    Assertions.assertEquals(-16, rules[0].transformers()[0].fromOffset().getAsInt());
+    Assertions.assertEquals(Register.RDI, rules[0].transformers()[0].to());
+
+    // step 2
+    Assertions.assertEquals(3, rules[1].transformers().length);
+    Assertions.assertEquals(-24, rules[1].transformers()[0].fromOffset().getAsInt());
+    Assertions.assertEquals(Register.RDI, rules[1].transformers()[0].to());
+    Assertions.assertEquals(-32, rules[1].transformers()[1].fromOffset().getAsInt());
+    Assertions.assertEquals(Register.RSI, rules[1].transformers()[1].to());
+    Assertions.assertEquals(-48, rules[1].transformers()[2].fromOffset().getAsInt()); // result of step 1
+    Assertions.assertEquals(Register.RDX, rules[1].transformers()[2].to());
+
+    // step 3
+    Assertions.assertEquals(1, rules[2].transformers().length);
+    Assertions.assertEquals(-16, rules[2].transformers()[0].fromOffset().getAsInt());
+    Assertions.assertEquals(Register.RDI, rules[2].transformers()[0].to());
+  }
+
+  @Test
+  void testCompositeWithInvalidResult(){
+    var targetMethod = getTargetMethod("lockAndWrite");
+    var compositeMethod = new CompositeMethod(targetMethod,
+                            new CompositeMethod.Step(MemorySegment.NULL, CompositeMethod.Failure.NONE,
+                                                     new CompositeMethod.Arg.Result(0)));
+    Assertions.assertThrows(IllegalArgumentException.class, () -> createCompositeCallRules(compositeMethod));
+  }
+
+  @Test
+  void testBatchCallRule(){
+    var targetMethod = getTargetMethod("intManyArgs");
+    var bindMethod = new NativeBinder.BindMethod(targetMethod, MemorySegment.NULL, new BindOption.LeadingArgs(1L));
+    var rule = createBatchCallRule(bindMethod);
+
+    Assertions.assertEquals(0, rule.spills().length);
+    Assertions.assertFalse(rule.isJMPAvailable());
+
+    // 3 args on stack + saved RBX
+    Assertions.assertEquals(32, rule.stackSize());
+
+    // All of arguments should be loaded from the record pointed by RBX.
+    Assertions.assertEquals(8, rule.transformers().length);
+    for(var transformer : rule.transformers()){
+      Assertions.assertEquals(Register.RBX, transformer.from());
+    }
+    var first = Arrays.stream(rule.transformers())
+                      .filter(t -> t.to() == Register.RSI)
+                      .findFirst()
+                      .get();
+    Assertions.assertEquals(32, first.fromOffset().getAsInt());
+    var last = Arrays.stream(rule.transformers())
+                     .filter(t -> t.toOffset().equals(OptionalInt.of(16)))
+                     .findFirst()
+                     .get();
+    Assertions.assertEquals(Register.RSP, last.to());
+    Assertions.assertEquals(88, last.fromOffset().getAsInt());
+
+    Assertions.assertEquals(1, rule.immediates().length);
+    Assertions.assertEquals(Register.RDI, rule.immediates()[0].to());
+  }
+
+  @Test
+  void testStubTargetFromDescriptor(){
+    var targetMethod = getTargetMethod("mixManyArgs");
+    var expected = createStubTarget(new NativeBinder.BindMethod(targetMethod, MemorySegment.NULL));
+    var actual = createStubTarget(new NativeBinder.BindDescriptor("mixManyArgs", "(ZFCDIFJDBFSDZFSDIF)V", MemorySegment.NULL));
+
+    Assertions.assertEquals("mixManyArgs", actual.name());
+    Assertions.assertArrayEquals(expected.javaArgs(), actual.javaArgs());
+    Assertions.assertArrayEquals(expected.nativeArgs(), actual.nativeArgs());
+
+    var expectedRule = createCallRule(expected.javaArgs(), expected.nativeArgs(), true);
+    var actualRule = createCallRule(actual.javaArgs(), actual.nativeArgs(), true);
+    Assertions.assertArrayEquals(expectedRule.transformers(), actualRule.transformers());
+  }
+
+  @Test
+  void testInvalidDescriptor(){
+    Assertions.assertThrows(IllegalArgumentException.class, () -> getArgTypes("IJ"));
+    Assertions.assertThrows(IllegalArgumentException.class, () -> getArgTypes("(Ljava/lang/Object;)V"));
+  }
+
+  @Test
+  void testJNIFunctionRule(){
+    var javaArgs = new ArgType[]{ArgType.INT, ArgType.INT, ArgType.INT};
+    var nativeArgs = new ArgSource[]{new ArgSource.Env(),
+                                     new ArgSource.Param(0, ArgType.INT),
+                                     new ArgSource.Param(1, ArgType.INT),
+                                     new ArgSource.Param(2, ArgType.INT)};
+    var rule = createCallRule(javaArgs, nativeArgs, true);
+
+    Assertions.assertTrue(rule.isJMPAvailable());
+    Assertions.assertEquals(0, rule.spills().length);
+
+    // JNIEnv is kept in RDI
+    Assertions.assertEquals(3, rule.transformers().length);
+    Assertions.assertEquals(Register.RDX, rule.transformers()[0].from());
+    Assertions.assertEquals(Register.RSI, rule.transformers()[0].to());
+    Assertions.assertEquals(Register.RCX, rule.transformers()[1].from());
+    Assertions.assertEquals(Register.RDX, rule.transformers()[1].to());
+    Assertions.assertEquals(Register.R8, rule.transformers()[2].from());
+    Assertions.assertEquals(Register.RCX, rule.transformers()[2].to());
+  }
+
+  @Test
+  void testMapCallRule(){
+    var signature = getTargetMethod("lockAndWrite");
+    var mapMethod = new NativeBinder.MapMethod(signature, MemorySegment.NULL, signature);
+    var rule = createMapCallRule(mapMethod);
+
+    // saved RBX, R12, R13
+    Assertions.assertEquals(24, rule.stackSize());
+
+    // Arguments should be loaded from the tuple pointed by RBX.
+    var expectedRegs = new Register[]{Register.RDI, Register.RSI, Register.RDX, Register.RCX};
+    Assertions.assertEquals(4, rule.transformers().length);
+    for(int i = 0; i < 4; i++){
+      Assertions.assertEquals(Register.RBX, rule.transformers()[i].from());
+      Assertions.assertEquals(8 * i, rule.transformers()[i].fromOffset().getAsInt());
+      Assertions.assertEquals(expectedRegs[i], rule.transformers()[i].to());
+    }
+  }
+
+  @Test
+  void testArrayCallRule(){
+    var targetMethod = getTargetMethod("hashArray");
+    var target = createStubTarget(new NativeBinder.BindMethod(targetMethod, MemorySegment.NULL));
+    Assertions.assertArrayEquals(new ArgSource[]{new ArgSource.ArrayElements(0), new ArgSource.Param(1, ArgType.INT)}, target.nativeArgs());
+
+    var rule = createCallRule(target.javaArgs(), target.nativeArgs(), false);
+    Assertions.assertFalse(rule.isJMPAvailable());
+
+    // JNIEnv, buf, len
+    Assertions.assertEquals(3, rule.spills().length);
+
+    // Array is pinned into 4th local variable.
+    Assertions.assertEquals(1, rule.pins().length);
+    Assertions.assertEquals(-16, rule.pins()[0].handle().offset().getAsInt());
+    Assertions.assertEquals(-32, rule.pins()[0].pointer().offset().getAsInt());
+
+    // RAX, XMM0 and error code are saved after the pointer.
+    Assertions.assertEquals(4, rule.savedSlot());
+    Assertions.assertEquals(8 * 7, rule.stackSize());
+
+    var toRDI = Arrays.stream(rule.transformers())
+                      .filter(t -> t.to() == Register.RDI)
+                      .findFirst()
+                      .get();
+    Assertions.assertEquals(-32, toRDI.fromOffset().getAsInt());
+    var toRSI = Arrays.stream(rule.transformers())
+                      .filter(t -> t.to() == Register.RSI)
+                      .findFirst()
+                      .get();
+    Assertions.assertEquals(-24, toRSI.fromOffset().getAsInt());
+  }
+
+  @Test
+  void testArrayDescriptor(){
+    var targetMethod = getTargetMethod("hashArray");
+    var expected = createStubTarget(new NativeBinder.BindMethod(targetMethod, MemorySegment.NULL));
+    var actual = createStubTarget(new NativeBinder.BindDescriptor("hashArray", "([BJ)I", MemorySegment.NULL));
+    Assertions.assertArrayEquals(expected.javaArgs(), actual.javaArgs());
+    Assertions.assertArrayEquals(expected.nativeArgs(), actual.nativeArgs());
+
+    Assertions.assertThrows(IllegalArgumentException.class, () -> getArgTypes("([[BJ)I"));
+  }
+
+  @Test
+  void testArrayInBatch(){
+    var targetMethod = getTargetMethod("hashArray");
+    var bindMethod = new NativeBinder.BindMethod(targetMethod, MemorySegment.NULL);
+    Assertions.assertThrows(IllegalArgumentException.class, () -> createBatchCallRule(bindMethod));
+  }
+
+  @Test
+  void testBufferCallRule(){
+    var targetMethod = getTargetMethod("readBuffer");
+    var target = createStubTarget(new NativeBinder.BindDescriptor("readBuffer", "(ILjava/nio/ByteBuffer;J[I)J", MemorySegment.NULL));
+    Assertions.assertArrayEquals(createStubTarget(new NativeBinder.BindMethod(targetMethod, MemorySegment.NULL)).nativeArgs(), target.nativeArgs());
+    Assertions.assertEquals(new ArgSource.BufferAddress(1), target.nativeArgs()[1]);
+
+    var rule = createCallRule(target.javaArgs(), target.nativeArgs(), false);
+
+    // Direct buffer should be pinned before primitive array.
+    Assertions.assertEquals(2, rule.pins().length);
+    Assertions.assertInstanceOf(ArgSource.BufferAddress.class, rule.pins()[0].source());
+    Assertions.assertInstanceOf(ArgSource.ArrayElements.class, rule.pins()[1].source());
+
+    // JNIEnv, 4 args, 2 pointers
+    Assertions.assertEquals(7, rule.savedSlot());
+
+    Assertions.assertThrows(IllegalArgumentException.class, () -> getArgTypes("(Ljava/nio/CharBuffer;)V"));
+    Assertions.assertThrows(IllegalArgumentException.class, () -> getArgTypes("(Ljava/nio/ByteBuffer)V"));
+  }
+
+  @Test
+  void testBufferOnlyCallRule(){
+    var target = createStubTarget(new NativeBinder.BindDescriptor("readBuffer", "(Ljava/nio/ByteBuffer;)J", MemorySegment.NULL));
+    var rule = createCallRule(target.javaArgs(), target.nativeArgs(), false);
+
+    // Direct buffer does not need to be released.
+    Assertions.assertEquals(1, rule.pins().length);
+    Assertions.assertEquals(-1, rule.savedSlot());
+  }
+
+  @Test
+  void testStringCallRule(){
+    var target = createStubTarget(new NativeBinder.BindDescriptor("writeLog", "([BLjava/lang/String;)I", MemorySegment.NULL));
+    Assertions.assertArrayEquals(new ArgSource[]{new ArgSource.ArrayElements(0), new ArgSource.StringChars(1)}, target.nativeArgs());
+
+    var rule = createCallRule(target.javaArgs(), target.nativeArgs(), false);
+
+    // String should be pinned before primitive array.
+    Assertions.assertEquals(2, rule.pins().length);
+    Assertions.assertEquals(new ArgSource.StringChars(1), rule.pins()[0].source());
+    Assertions.assertEquals(new ArgSource.ArrayElements(0), rule.pins()[1].source());
+
+    // JNIEnv, 2 args, 2 pointers
+    Assertions.assertEquals(5, rule.savedSlot());
+  }
+
+  @Test
+  void testScratchCallRule(){
+    var javaArgs = new ArgType[]{ArgType.INT};
+    var nativeArgs = new ArgSource[]{new ArgSource.Param(0, ArgType.INT),
+                                     new ArgSource.ScratchPointer(0x1234L)};
+    var rule = createCallRule(javaArgs, nativeArgs, true);
+
+    // Arguments should be evacuated because the getter is called.
+    Assertions.assertFalse(rule.isJMPAvailable());
+    Assertions.assertEquals(2, rule.spills().length);
+
+    Assertions.assertEquals(1, rule.loaders().length);
+    Assertions.assertEquals(new ArgSource.ScratchPointer(0x1234L), rule.loaders()[0].source());
+    Assertions.assertEquals(-24, rule.loaders()[0].toOffset().getAsInt());
+
+    var toRSI = Arrays.stream(rule.transformers())
+                      .filter(t -> t.to() == Register.RSI)
+                      .findFirst()
+                      .get();
+    Assertions.assertEquals(-24, toRSI.fromOffset().getAsInt());
+  }
+
+  @Test
+  void testFloatStructCallRule(){
+    // float distance(struct point p1, struct point p2)
+    var point = MemoryLayout.structLayout(ValueLayout.JAVA_FLOAT, ValueLayout.JAVA_FLOAT);
+    var target = createStubTarget(new NativeBinder.BindDescriptor("distance", "(FFFF)F", MemorySegment.NULL,
+                                                                  new BindOption.StructArg(0, point),
+                                                                  new BindOption.StructArg(2, point)));
+    Assertions.assertArrayEquals(new ArgSource[]{
+                                   new ArgSource.Packed(List.of(new ArgSource.PackedField(0, ArgType.FP, 0), new ArgSource.PackedField(1, ArgType.FP, 4)), ArgType.FP, 0),
+                                   new ArgSource.Packed(List.of(new ArgSource.PackedField(2, ArgType.FP, 0), new ArgSource.PackedField(3, ArgType.FP, 4)), ArgType.FP, 2)
+                                 }, target.nativeArgs());
+
+    var rule = createCallRule(target.javaArgs(), target.nativeArgs(), true);
+
+    // Members should be packed in local variables.
+    Assertions.assertFalse(rule.isJMPAvailable());
+    Assertions.assertEquals(4, rule.packers().length);
+    Assertions.assertEquals(Register.XMM1, rule.packers()[1].from());
+    Assertions.assertEquals(Register.RBP, rule.packers()[1].to());
+    Assertions.assertEquals(rule.packers()[0].toOffset().getAsInt() + 4, rule.packers()[1].toOffset().getAsInt());
+
+    Assertions.assertEquals(2, rule.transformers().length);
+    Assertions.assertEquals(Register.RBP, rule.transformers()[0].from());
+    Assertions.assertEquals(rule.packers()[0].toOffset(), rule.transformers()[0].fromOffset());
+    Assertions.assertEquals(Register.XMM0, rule.transformers()[0].to());
+    Assertions.assertEquals(Register.RBP, rule.transformers()[1].from());
+    Assertions.assertEquals(rule.packers()[2].toOffset(), rule.transformers()[1].fromOffset());
+    Assertions.assertEquals(Register.XMM1, rule.transformers()[1].to());
+  }
+
+  @Test
+  void testLongStructCallRule(){
+    var pair = MemoryLayout.structLayout(ValueLayout.JAVA_LONG, ValueLayout.JAVA_LONG);
+    var target = createStubTarget(new NativeBinder.BindDescriptor("sum", "(JJ)J", MemorySegment.NULL,
+                                                                  new BindOption.StructArg(0, pair)));
+    Assertions.assertArrayEquals(new ArgSource[]{
+                                   new ArgSource.Packed(List.of(new ArgSource.PackedField(0, ArgType.INT, 0)), ArgType.INT, 0),
+                                   new ArgSource.Packed(List.of(new ArgSource.PackedField(1, ArgType.INT, 0)), ArgType.INT, 0)
+                                 }, target.nativeArgs());
+
+    // Each eightbyte has one member, so packing is not needed.
+    var rule = createCallRule(target.javaArgs(), target.nativeArgs(), true);
+    Assertions.assertTrue(rule.isJMPAvailable());
+    Assertions.assertEquals(0, rule.packers().length);
+    Assertions.assertEquals(2, rule.transformers().length);
+  }
+
+  @Test
+  void testInvalidStruct(){
+    var pair = MemoryLayout.structLayout(ValueLayout.JAVA_LONG, ValueLayout.JAVA_LONG);
+
+    // 2nd eightbyte would be passed on the stack.
+    var straddle = new NativeBinder.BindDescriptor("func", "(JJJJJJJ)V", MemorySegment.NULL, new BindOption.StructArg(5, pair));
+    var target = createStubTarget(straddle);
+    Assertions.assertThrows(IllegalArgumentException.class, () -> createCallRule(target.javaArgs(), target.nativeArgs(), false));
+
+    // Struct larger than 16 bytes
+    var large = MemoryLayout.structLayout(ValueLayout.JAVA_LONG, ValueLayout.JAVA_LONG, ValueLayout.JAVA_LONG);
+    Assertions.assertThrows(IllegalArgumentException.class, () -> createStubTarget(new NativeBinder.BindDescriptor("func", "(JJJ)V", MemorySegment.NULL, new BindOption.StructArg(0, large))));
+
+    // Type mismatch
+    Assertions.assertThrows(IllegalArgumentException.class, () -> createStubTarget(new NativeBinder.BindDescriptor("func", "(JD)V", MemorySegment.NULL, new BindOption.StructArg(0, pair))));
+
+    // Out of parameters
+    Assertions.assertThrows(IllegalArgumentException.class, () -> createStubTarget(new NativeBinder.BindDescriptor("func", "(J)V", MemorySegment.NULL, new BindOption.StructArg(0, pair))));
+  }
+
+  @Test
+  void testVariadicStubTarget(){
+    // int open(const char *pathname, int flags, ...);
+    var target = createStubTarget(new NativeBinder.BindDescriptor("open", "(JII)I", MemorySegment.NULL, new BindOption.Variadic(2)));
+    Assertions.assertEquals(2, target.fixedArgs());
+
+    // Arguments which are inserted by other options are counted in fixed args.
+    target = createStubTarget(new NativeBinder.BindDescriptor("ioctl", "(IJJ)I", MemorySegment.NULL, new BindOption.LeadingArgs(100L), new BindOption.Variadic(3)));
+    Assertions.assertEquals(3, target.fixedArgs());
+
+    target = createStubTarget(new NativeBinder.BindDescriptor("getpid", "()I", MemorySegment.NULL));
+    Assertions.assertEquals(-1, target.fixedArgs());
+
+    Assertions.assertThrows(IllegalArgumentException.class, () -> createStubTarget(new NativeBinder.BindDescriptor("open", "(JII)I", MemorySegment.NULL, new BindOption.Variadic(4))));
+
+    // float in variadic arguments should be declared as double.
+    Assertions.assertThrows(IllegalArgumentException.class, () -> createStubTarget(new NativeBinder.BindDescriptor("printf", "(JF)I", MemorySegment.NULL, new BindOption.Variadic(1))));
+    Assertions.assertEquals(1, createStubTarget(new NativeBinder.BindDescriptor("printf", "(JD)I", MemorySegment.NULL, new BindOption.Variadic(1))).fixedArgs());
+  }
+
+  @Test
+  void testLockCallRule(){
+    var lock = NativeLock.create();
+    var target = createStubTarget(new NativeBinder.BindDescriptor("func", "(IJ)I", MemorySegment.NULL, new BindOption.Lock(lock)));
+    Assertions.assertSame(lock, target.lock());
+
+    // Arguments should be evacuated because the lock is acquired before
+    // the call.
+    var rule = createCallRule(target.javaArgs(), target.nativeArgs(), false, true);
+    Assertions.assertFalse(rule.isJMPAvailable());
+    Assertions.assertEquals(3, rule.spills().length);
+    Assertions.assertEquals(-16, rule.transformers()[0].fromOffset().getAsInt());
+    Assertions.assertEquals(Register.RDI, rule.transformers()[0].to());
+
+    target = createStubTarget(new NativeBinder.BindDescriptor("func", "(IJ)I", MemorySegment.NULL));
+    Assertions.assertNull(target.lock());
+  }
+
+  @Test
+  void testSamplerCallRule() throws Throwable{
+    var targetMethod = getTargetMethod("intManyArgs");
+    var sampler = createLatencySampler(100);
+    var target = createStubTarget(new BindMethod(targetMethod, MemorySegment.NULL, new BindOption.Sampler(sampler)));
+    Assertions.assertEquals(100L, target.sampler().get(ValueLayout.JAVA_LONG, LatencySampler.COUNTDOWN_OFFSET));
+    Assertions.assertEquals(100L, target.sampler().get(ValueLayout.JAVA_LONG, LatencySampler.INTERVAL_OFFSET));
+    // Ring should be aligned to 64KB to wrap the cursor.
+    Assertions.assertEquals(0L, target.sampler().get(ValueLayout.JAVA_LONG, LatencySampler.CURSOR_OFFSET) & 0xffff);
+
+    // Time stamp counter is stored into the slot after evacuated
+    // arguments, so the value from ThreadContext is moved to next slot.
+    var context = ThreadContext.create();
+    var bindMethod = new BindMethod(targetMethod, MemorySegment.NULL, new BindOption.ThreadContextArg(context, 0));
+    var rule = createCallRule(getArgTypes(targetMethod), createArgSources(bindMethod), false, true, 1);
+    Assertions.assertEquals(80, rule.stackSize());
+    Assertions.assertEquals(5, rule.spills().length);
+    Assertions.assertEquals(-56, rule.loaders()[0].toOffset().getAsInt());
+
+    Assertions.assertThrows(IllegalArgumentException.class, () -> createStubTarget(new NativeBinder.BindDescriptor("func", "(IJ)I", MemorySegment.NULL, new BindOption.Sampler(sampler))));
+  }
+
+  @Test
+  void testMapNarrowResult() throws Throwable{
+    var p_close = Linker.nativeLinker()
+                        .defaultLookup()
+                        .find("close")
+                        .get();
+    var method = LinuxNativeBinderTest.class.getMethod("closeAll", long.class, long.class, long.class);
+    bindMap(LinuxNativeBinderTest.class, new NativeBinder.MapMethod[]{new NativeBinder.MapMethod(method, p_close, getTargetMethod("closeFd"))});
+
+    try(var arena = Arena.ofConfined()){
+      var args = arena.allocateFrom(ValueLayout.JAVA_LONG, -1L, -1L);
+      var results = arena.allocate(ValueLayout.JAVA_LONG, 2);
+      closeAll(args.address(), results.address(), 2);
+
+      // -1 in int should be sign-extended to long.
+      Assertions.assertArrayEquals(new long[]{-1L, -1L}, results.toArray(ValueLayout.JAVA_LONG));
+    }
+  }
+
+  @Test
+  void testSamplerNegativeCountdown() throws Throwable{
+    var method = LinuxNativeBinderTest.class.getMethod("getpid");
+    var p_getpid = Linker.nativeLinker()
+                         .defaultLookup()
+                         .find("getpid")
+                         .get();
+    var sampler = createLatencySampler(100);
+    var target = createStubTarget(new BindMethod(method, p_getpid, new BindOption.Sampler(sampler)));
+    NativeRegister.create(LinuxNativeBinderTest.class)
+                  .registerNatives(Map.of(method, generateStub(target, false)));
+
+    // Lost update of the countdown between threads might make it negative.
+    // The next call should take the sample, and reset the countdown.
+    target.sampler().set(ValueLayout.JAVA_LONG, LatencySampler.COUNTDOWN_OFFSET, -1L);
+    getpid();
+    Assertions.assertEquals(1, sampler.histogram(method).count());
+    Assertions.assertEquals(100L, target.sampler().get(ValueLayout.JAVA_LONG, LatencySampler.COUNTDOWN_OFFSET));
+  }
+
 }
@@ -17,6 +17,9 @@
  */
 package com.yasuenag.nativebinder.test.internal.amd64;
 
+import java.lang.foreign.MemoryLayout;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
 import java.lang.reflect.Method;
 import java.util.Arrays;
 
@@ -27,6 +30,7 @@ import org.junit.jupiter.api.condition.OS;
 
 import com.yasuenag.ffmasm.amd64.Register;
 
+import com.yasuenag.nativebinder.BindOption;
 import com.yasuenag.nativebinder.NativeBinder;
 import com.yasuenag.nativebinder.internal.amd64.WindowsNativeBinder;
 
@@ -456,4 +460,73 @@ public class WindowsNativeBinderTest extends WindowsNativeBinder{
     Assertions.assertEquals(NativeBinder.ArgType.FP, rule[11].type());
   }
 
+  @Test
+  void testLeadingArgsWithJMP(){
+    var targetMethod = getTargetMethod("intManyArgs");
+    var bindMethod = new BindMethod(targetMethod, MemorySegment.NULL, new BindOption.LeadingArgs(100L));
+    var rule = createCallRule(getArgTypes(targetMethod), createArgSources(bindMethod), true);
+
+    Assertions.assertTrue(rule.isJMPAvailable());
+    Assertions.assertEquals(6, rule.transformers().length);
+    Assertions.assertEquals(1, rule.immediates().length);
+
+    // arg1
+    Assertions.assertEquals(Register.R8, rule.transformers()[0].from());
+    Assertions.assertEquals(Register.RDX, rule.transformers()[0].to());
+
+    // arg2
+    Assertions.assertEquals(Register.R9, rule.transformers()[1].from());
+    Assertions.assertEquals(Register.R8, rule.transformers()[1].to());
+
+    // arg3
+    Assertions.assertEquals(Register.RSP, rule.transformers()[2].from());
+    Assertions.assertEquals(40, rule.transformers()[2].fromOffset().getAsInt());
+    Assertions.assertEquals(Register.R9, rule.transformers()[2].to());
+    Assertions.assertTrue(rule.transformers()[2].toOffset().isEmpty());
+
+    // arg4
+    Assertions.assertEquals(Register.RSP, rule.transformers()[3].from());
+    Assertions.assertEquals(48, rule.transformers()[3].fromOffset().getAsInt());
+    Assertions.assertEquals(Register.RSP, rule.transformers()[3].to());
+    Assertions.assertEquals(40, rule.transformers()[3].toOffset().getAsInt());
+
+    // constant
+    Assertions.assertEquals(100L, rule.immediates()[0].value());
+    Assertions.assertEquals(Register.RCX, rule.immediates()[0].to());
+    Assertions.assertTrue(rule.immediates()[0].toOffset().isEmpty());
+  }
+
+  @Test
+  void testTrailingArgsWithErrorCode(){
+    var targetMethod = getTargetMethod("fpManyArgs");
+    var bindMethod = new BindMethod(targetMethod, MemorySegment.NULL, new BindOption.TrailingArgs(100L));
+    var rule = createCallRule(getArgTypes(targetMethod), createArgSources(bindMethod), false);
+
+    Assertions.assertEquals(6, rule.transformers().length);
+    Assertions.assertEquals(1, rule.immediates().length);
+    Assertions.assertEquals(56, rule.stackSize());
+
+    Assertions.assertEquals(100L, rule.immediates()[0].value());
+    Assertions.assertEquals(Register.RSP, rule.immediates()[0].to());
+    Assertions.assertEquals(48, rule.immediates()[0].toOffset().getAsInt());
+  }
+
+  @Test
+  void testStructCallRule(){
+    var point = MemoryLayout.structLayout(ValueLayout.JAVA_INT, ValueLayout.JAVA_INT);
+    var target = createStubTarget(new NativeBinder.BindDescriptor("func", "(II)V", MemorySegment.NULL, new BindOption.StructArg(0, point)));
+    Assertions.assertEquals(1, target.nativeArgs().length);
+    var packed = (ArgSource.Packed)target.nativeArgs()[0];
+    Assertions.assertEquals(ArgType.INT, packed.type());
+    Assertions.assertEquals(2, packed.fields().size());
+
+    var rule = createCallRule(target.javaArgs(), target.nativeArgs(), false);
+    Assertions.assertEquals(2, rule.packers().length);
+    Assertions.assertEquals(Register.RCX, rule.transformers()[0].to());
+
+    // 12 bytes struct is passed by reference.
+    var triple = MemoryLayout.structLayout(ValueLayout.JAVA_INT, ValueLayout.JAVA_INT, ValueLayout.JAVA_INT);
+    Assertions.assertThrows(IllegalArgumentException.class, () -> createStubTarget(new NativeBinder.BindDescriptor("func", "(III)V", MemorySegment.NULL, new BindOption.StructArg(0, triple))));
+  }
+
 }